@@ -7,26 +7,31 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.bytedeco.ffmpeg.avcodec.AVPacket;
 import org.bytedeco.ffmpeg.avformat.AVFormatContext;
@@ -45,6 +50,8 @@ import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.Gson;
+
 import io.antmedia.cluster.IClusterNotifier;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
@@ -74,6 +81,8 @@ import io.antmedia.statistic.type.WebRTCVideoReceiveStats;
 import io.antmedia.statistic.type.WebRTCVideoSendStats;
 import io.antmedia.streamsource.StreamFetcher;
 import io.antmedia.streamsource.StreamFetcherManager;
+import io.antmedia.webhook.WebhookDispatcher;
+import io.antmedia.webrtc.adaptor.RTMPAdaptor;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
@@ -93,6 +102,12 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 	
 	public static final String DEFAULT_LOCALHOST = "127.0.0.1";
 
+	private static final int WEBHOOK_TIMEOUT_MS = 2000;
+	private static final int WEBHOOK_MAX_CONNECTIONS = 200;
+	private static final int WEBHOOK_MAX_CONNECTIONS_PER_ROUTE = 20;
+	private static final long WEBHOOK_SHUTDOWN_TIMEOUT_MS = 5000;
+	private static final Gson gson = new Gson();
+
 	protected static Logger logger = LoggerFactory.getLogger(AntMediaApplicationAdapter.class);
 	private ServerSettings serverSettings;
 	public static final String VOD = "VoD";
@@ -114,6 +129,8 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 	private HashMap<String, OnvifCamera> onvifCameraList = new HashMap<>();
 	protected StreamFetcherManager streamFetcherManager;
 	protected List<MuxAdaptor> muxAdaptors;
+
+	private Map<String, RTMPAdaptor> rtmpAdaptors = new ConcurrentHashMap<>();
 	private DataStore dataStore;
 	private DataStoreFactory dataStoreFactory;
 
@@ -128,6 +145,9 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 	private List<String> publishTimeoutStreamsList = new ArrayList<>();
 	private boolean shutdownProperly = true;
 
+	private volatile WebhookDispatcher webhookDispatcher;
+	private CloseableHttpClient httpClient;
+
 	protected WebRTCVideoReceiveStats webRTCVideoReceiveStats = new WebRTCVideoReceiveStats();
 
 	protected WebRTCAudioReceiveStats webRTCAudioReceiveStats = new WebRTCAudioReceiveStats();
@@ -309,8 +329,8 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 					if (listenerHookURL != null && listenerHookURL.length() > 0) {
 						final String name = broadcast.getName();
 						final String category = broadcast.getCategory();
-						logger.info("Setting timer to call live stream ended hook for stream:{}",streamId );
-						vertx.setTimer(10, e -> notifyHook(listenerHookURL, streamId, HOOK_ACTION_END_LIVE_STREAM, name, category, null, null));
+						logger.info("Calling live stream ended hook for stream:{}",streamId );
+						notifyHook(listenerHookURL, streamId, HOOK_ACTION_END_LIVE_STREAM, name, category, null, null);
 					}
 
 					stopPublishingSocialEndpoints(broadcast);
@@ -462,9 +482,9 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 					if (listenerHookURL != null && !listenerHookURL.isEmpty()) {
 						final String name = broadcast.getName();
 						final String category = broadcast.getCategory();
-						logger.info("Setting timer to call live stream started hook for stream:{}",streamId );
-						vertx.setTimer(10, e -> notifyHook(listenerHookURL, streamId, HOOK_ACTION_START_LIVE_STREAM, name, category,
-								null, null));
+						logger.info("Calling live stream started hook for stream:{}",streamId );
+						notifyHook(listenerHookURL, streamId, HOOK_ACTION_START_LIVE_STREAM, name, category,
+								null, null);
 					}
 
 					publishSocialEndpoints(broadcast.getEndPointList());
@@ -585,8 +605,8 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 		{
 			final String baseName = vodName.substring(0, index);
 			String finalListenerHookURL = listenerHookURL;
-			logger.info("Setting timer for calling vod ready hook for stream:{}", streamId);
-			vertx.setTimer(10, e ->	notifyHook(finalListenerHookURL, streamId, HOOK_ACTION_VOD_READY, null, null, baseName, vodId));
+			logger.info("Calling vod ready hook for stream:{}", streamId);
+			notifyHook(finalListenerHookURL, streamId, HOOK_ACTION_VOD_READY, null, null, baseName, vodId);
 		}
 
 		String muxerFinishScript = appSettings.getMuxerFinishScript();
@@ -735,61 +755,141 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 				variables.put("vodId", vodId);
 			}
 
-			try {
-				response = sendPOST(url, variables);
-			} catch (Exception e) {
-				//Make Exception generi
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+			//hook is sent in the webhook dispatcher threads so response is not available here
+			getWebhookDispatcher().dispatch(url, variables);
 		}
 		return response;
 	}
 
-	public StringBuilder sendPOST(String url, Map<String, String> variables) throws IOException {
+	/**
+	 * Creates the dispatcher that sends the webhooks of this application if it's not created
+	 * @return
+	 */
+	public WebhookDispatcher getWebhookDispatcher() {
+		WebhookDispatcher dispatcher = webhookDispatcher;
+		if (dispatcher == null) {
+			dispatcher = createWebhookDispatcher();
+		}
+		return dispatcher;
+	}
 
-		StringBuilder response = null;
-		try (CloseableHttpClient httpClient = getHttpClient()) 
-		{
-			HttpPost httpPost = new HttpPost(url);
-			RequestConfig requestConfig =RequestConfig.custom()
-					.setConnectTimeout(2000)
-					.setConnectionRequestTimeout(2000)
-					.setSocketTimeout(2000).build();
-			httpPost.setConfig(requestConfig);
-			List<NameValuePair> urlParameters = new ArrayList<>();
-			Set<Entry<String, String>> entrySet = variables.entrySet();
-			for (Entry<String, String> entry : entrySet) {
-				urlParameters.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
+	private synchronized WebhookDispatcher createWebhookDispatcher() {
+		if (webhookDispatcher == null) {
+			ServerSettings settings = serverSettings;
+			if (settings == null && scope != null && scope.getContext() != null 
+					&& scope.getContext().getApplicationContext() != null) {
+				settings = getServerSettings();
+			}
+			if (settings == null) {
+				settings = new ServerSettings();
 			}
+			webhookDispatcher = new WebhookDispatcher(this::sendHookEvents, settings.getWebhookThreadCount(), 
+					settings.getWebhookQueueSize(), settings.getWebhookMaxConcurrencyPerUrl(), 
+					settings.getWebhookRetryCount(), settings.getWebhookBatchSize());
+		}
+		return webhookDispatcher;
+	}
 
-			HttpEntity postParams = new UrlEncodedFormEntity(urlParameters);
-			httpPost.setEntity(postParams);
+	/**
+	 * Sends the webhook events. If batching is enabled, events are always sent as a JSON array even if there is one event 
+	 * so that the receiver gets a single format. Otherwise the event is sent as form parameters
+	 * @param url
+	 * @param events
+	 * @throws IOException
+	 */
+	public void sendHookEvents(String url, List<Map<String, String>> events) throws IOException {
+		if (getWebhookDispatcher().getBatchSize() > 1) {
+			sendJsonPOST(url, events);
+		}
+		else {
+			sendPOST(url, events.get(0));
+		}
+	}
 
-			try (CloseableHttpResponse httpResponse = httpClient.execute(httpPost)) {
-				logger.info("POST Response Status:: {}" , httpResponse.getStatusLine().getStatusCode());
-	
-				HttpEntity entity = httpResponse.getEntity();
-				if (entity != null) 
-				{ 
-					//read entity if it's available
-					BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent()));
-	
+	public StringBuilder sendPOST(String url, Map<String, String> variables) throws IOException {
+
+		List<NameValuePair> urlParameters = new ArrayList<>();
+		Set<Entry<String, String>> entrySet = variables.entrySet();
+		for (Entry<String, String> entry : entrySet) {
+			urlParameters.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
+		}
+
+		return sendPOST(url, new UrlEncodedFormEntity(urlParameters));
+	}
+
+	public StringBuilder sendJsonPOST(String url, List<Map<String, String>> events) throws IOException {
+		return sendPOST(url, new StringEntity(gson.toJson(events), ContentType.APPLICATION_JSON));
+	}
+
+	/**
+	 * Sends the entity with the shared http client. 
+	 * @throws HttpResponseException if server responds with an error so that the request is retried
+	 */
+	private StringBuilder sendPOST(String url, HttpEntity postParams) throws IOException {
+
+		StringBuilder response = null;
+		HttpPost httpPost = new HttpPost(url);
+		RequestConfig requestConfig =RequestConfig.custom()
+				.setConnectTimeout(WEBHOOK_TIMEOUT_MS)
+				.setConnectionRequestTimeout(WEBHOOK_TIMEOUT_MS)
+				.setSocketTimeout(WEBHOOK_TIMEOUT_MS).build();
+		httpPost.setConfig(requestConfig);
+		httpPost.setEntity(postParams);
+
+		try (CloseableHttpResponse httpResponse = getHttpClient().execute(httpPost)) {
+			int statusCode = httpResponse.getStatusLine().getStatusCode();
+			logger.info("POST Response Status:: {}" , statusCode);
+
+			HttpEntity entity = httpResponse.getEntity();
+			if (entity != null) 
+			{ 
+				//read entity if it's available and release the connection to the pool
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent()))) {
 					String inputLine;
 					response = new StringBuilder();
-	
+
 					while ((inputLine = reader.readLine()) != null) {
 						response.append(inputLine);
 					}
-					reader.close();
-			}
+				}
 			}
 
+			if (statusCode >= 500) {
+				throw new HttpResponseException(statusCode, "Webhook server responded with error");
+			}
 		}
 		return response;
 	}
-	
-	public CloseableHttpClient getHttpClient() {
-		return HttpClients.createDefault();
+
+	/**
+	 * @return the http client shared by the webhooks. Connections are pooled and reused
+	 */
+	public synchronized CloseableHttpClient getHttpClient() {
+		if (httpClient == null) {
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(WEBHOOK_MAX_CONNECTIONS);
+			connectionManager.setDefaultMaxPerRoute(WEBHOOK_MAX_CONNECTIONS_PER_ROUTE);
+			httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+		}
+		return httpClient;
+	}
+
+	private void closeWebhooks() {
+		WebhookDispatcher dispatcher = webhookDispatcher;
+		//lock is not held while waiting because dispatcher threads get the http client
+		if (dispatcher != null) {
+			dispatcher.shutdown(WEBHOOK_SHUTDOWN_TIMEOUT_MS);
+		}
+		synchronized (this) {
+			if (httpClient != null) {
+				try {
+					httpClient.close();
+				} catch (IOException e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+				httpClient = null;
+			}
+		}
 	}
 
 	public List<IStreamPublishSecurity> getStreamPublishSecurityList() {
@@ -955,7 +1055,7 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 	
 	public void closeStreamFetchers() {
 		if (streamFetcherManager != null) {
-			Queue<StreamFetcher> fetchers = streamFetcherManager.getStreamFetcherList();
+			Collection<StreamFetcher> fetchers = streamFetcherManager.getStreamFetcherList();
 			for (StreamFetcher streamFetcher : fetchers) {
 				streamFetcher.stopStream();
 				fetchers.remove(streamFetcher);
@@ -1042,6 +1142,8 @@ public class AntMediaApplicationAdapter implements IAntMediaStreamHandler, IShut
 		
 		createShutdownFile(getScope().getName());
 		
+		closeWebhooks();
+		
 		getDataStore().close();
 	}
 	
@@ -1145,6 +1247,24 @@ public Result createInitializationProcess(String appName){
 		getMuxAdaptors().remove(muxAdaptor);
 	}
 
+	/**
+	 * Registers the adaptor of a WebRTC stream ingested in community edition so that its statistics are available
+	 */
+	public void rtmpAdaptorStarted(String streamId, RTMPAdaptor rtmpAdaptor) {
+		rtmpAdaptors.put(streamId, rtmpAdaptor);
+	}
+
+	public void rtmpAdaptorStopped(String streamId, RTMPAdaptor rtmpAdaptor) {
+		rtmpAdaptors.remove(streamId, rtmpAdaptor);
+	}
+
+	/**
+	 * @return adaptor of the WebRTC stream ingested in community edition or null if there is no such stream
+	 */
+	public RTMPAdaptor getRTMPAdaptor(String streamId) {
+		return rtmpAdaptors.get(streamId);
+	}
+
 	public List<MuxAdaptor> getMuxAdaptors() {
 		if(muxAdaptors == null){
 			muxAdaptors = Collections.synchronizedList(new ArrayList());
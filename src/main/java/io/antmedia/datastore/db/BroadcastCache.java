@@ -0,0 +1,195 @@
+package io.antmedia.datastore.db;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.antmedia.datastore.db.types.Broadcast;
+
+/**
+ * Read-through cache of {@link DataStore#get(String)} for the paths that read the broadcast
+ * on every request like HLS segment requests and publish security checks.
+ *
+ * Entries expire after time to live. If the data store implements {@link IBroadcastChangeNotifier},
+ * entries are also invalidated when the broadcast is changed by this node so time to live
+ * is the staleness of the changes made by the other nodes in cluster mode and of the frequently
+ * updated stats fields(viewer counts, source quality) which are not notified.
+ *
+ * Returned broadcasts are shared between the callers so they should not be modified.
+ * Use {@link DataStore} methods to update them.
+ */
+public class BroadcastCache {
+
+	private static class Entry {
+		private final Broadcast broadcast;
+		private final long expireTime;
+
+		public Entry(Broadcast broadcast, long expireTime) {
+			this.broadcast = broadcast;
+			this.expireTime = expireTime;
+		}
+	}
+
+	private final DataStore dataStore;
+
+	private final long timeToLiveMs;
+
+	private final int maxSize;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Incremented on every invalidation. A loaded broadcast is not put to the cache if there is
+	 * an invalidation during the load because it may be loaded before the change
+	 */
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param dataStore
+	 * @param timeToLiveMs time in milliseconds that an entry is served without reading the data store
+	 * @param maxSize maximum number of entries
+	 */
+	public BroadcastCache(DataStore dataStore, long timeToLiveMs, int maxSize) {
+		this.dataStore = dataStore;
+		this.timeToLiveMs = timeToLiveMs;
+		this.maxSize = maxSize;
+		if (dataStore instanceof IBroadcastChangeNotifier) {
+			((IBroadcastChangeNotifier) dataStore).addBroadcastChangeListener(this::invalidate);
+		}
+	}
+
+	/**
+	 * Reads the broadcast through the cache of the factory if the cache is enabled and belongs to the data store.
+	 * Otherwise reads it from the data store directly
+	 * @param dataStoreFactory may be null
+	 * @param dataStore the data store that the caller uses
+	 * @param streamId
+	 * @return the broadcast or null if it does not exist
+	 */
+	public static Broadcast getBroadcast(DataStoreFactory dataStoreFactory, DataStore dataStore, String streamId) {
+		BroadcastCache broadcastCache = dataStoreFactory != null ? dataStoreFactory.getBroadcastCache() : null;
+		if (broadcastCache != null && broadcastCache.getDataStore() == dataStore) {
+			return broadcastCache.get(streamId);
+		}
+		return dataStore.get(streamId);
+	}
+
+	/**
+	 * Returns the broadcast from the cache or loads it from the data store.
+	 * Absent broadcasts are not cached so that a newly created broadcast is read immediately
+	 * @param streamId
+	 * @return the broadcast or null if it does not exist
+	 */
+	public Broadcast get(String streamId) {
+		if (streamId == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		Entry entry = entries.get(streamId);
+		if (entry != null && entry.expireTime > now) {
+			hitCount.incrementAndGet();
+			return entry.broadcast;
+		}
+		missCount.incrementAndGet();
+
+		long invalidationCountBeforeLoad = invalidationCount.get();
+		Broadcast broadcast = dataStore.get(streamId);
+		if (broadcast != null) {
+			if (entry == null && entries.size() >= maxSize) {
+				evict(now);
+			}
+			Entry newEntry = new Entry(broadcast, now + timeToLiveMs);
+			entries.put(streamId, newEntry);
+			if (invalidationCount.get() != invalidationCountBeforeLoad) {
+				entries.remove(streamId, newEntry);
+			}
+		}
+		else if (entry != null) {
+			entries.remove(streamId, entry);
+		}
+		return broadcast;
+	}
+
+	/**
+	 * Removes the expired entries and if it is still full, removes the tenth of the entries
+	 */
+	private void evict(long now) {
+		int removedCount = 0;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().expireTime <= now) {
+				iterator.remove();
+				removedCount++;
+			}
+		}
+
+		int excessCount = entries.size() - maxSize + Math.max(1, maxSize / 10);
+		iterator = entries.values().iterator();
+		while (excessCount > 0 && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			excessCount--;
+			removedCount++;
+		}
+		evictionCount.addAndGet(removedCount);
+	}
+
+	/**
+	 * @param streamId id of the broadcast to be removed from the cache. All entries are removed if it is null
+	 */
+	public void invalidate(String streamId) {
+		invalidationCount.incrementAndGet();
+		if (streamId != null) {
+			entries.remove(streamId);
+		}
+		else {
+			entries.clear();
+		}
+	}
+
+	public void invalidateAll() {
+		invalidate(null);
+	}
+
+	public DataStore getDataStore() {
+		return dataStore;
+	}
+
+	public long getTimeToLiveMs() {
+		return timeToLiveMs;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * @return ratio of the hits to all requests, 0 if there is no request
+	 */
+	public double getHitRatio() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total != 0 ? (double) hits / total : 0;
+	}
+}
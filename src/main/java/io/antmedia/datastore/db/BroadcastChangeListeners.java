@@ -0,0 +1,38 @@
+package io.antmedia.datastore.db;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listeners of the data stores implementing {@link IBroadcastChangeNotifier}
+ */
+public class BroadcastChangeListeners {
+
+	protected static Logger logger = LoggerFactory.getLogger(BroadcastChangeListeners.class);
+
+	private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+	public void add(Consumer<String> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Calls the listeners in the caller thread so that they should return quickly
+	 * @param id of the changed broadcast, null if many broadcasts are changed
+	 */
+	public void notifyChanged(String id) {
+		for (Consumer<String> listener : listeners) {
+			try {
+				listener.accept(id);
+			}
+			catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package io.antmedia.datastore.db;
+
+import java.io.IOException;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.serializer.GroupSerializerObjectArray;
+
+import io.antmedia.datastore.db.types.Broadcast;
+
+/**
+ * Frequently updated fields of a {@link Broadcast}.
+ *
+ * MapDBStore keeps these fields in a separate map with a compact binary serializer
+ * so that status, duration and quality updates do not parse and re-encode
+ * the whole broadcast json. Values in this record override the ones in the json.
+ * Viewer counts are kept in viewer count maps of MapDBStore, they are only read from
+ * this record to migrate older db files
+ *
+ */
+public class BroadcastLiveFields {
+
+	public static final LiveFieldsSerializer SERIALIZER = new LiveFieldsSerializer();
+
+	private String status;
+	private long startTime;
+	private long duration;
+	private int hlsViewerCount;
+	private int webRTCViewerCount;
+	private int rtmpViewerCount;
+	private double speed;
+	private String quality;
+	private int pendingPacketSize;
+
+	public static BroadcastLiveFields of(Broadcast broadcast) {
+		BroadcastLiveFields liveFields = new BroadcastLiveFields();
+		liveFields.status = broadcast.getStatus();
+		liveFields.startTime = broadcast.getStartTime();
+		liveFields.duration = broadcast.getDuration();
+		liveFields.hlsViewerCount = broadcast.getHlsViewerCount();
+		liveFields.webRTCViewerCount = broadcast.getWebRTCViewerCount();
+		liveFields.rtmpViewerCount = broadcast.getRtmpViewerCount();
+		liveFields.speed = broadcast.getSpeed();
+		liveFields.quality = broadcast.getQuality();
+		liveFields.pendingPacketSize = broadcast.getPendingPacketSize();
+		return liveFields;
+	}
+
+	/**
+	 * Writes the fields in this record to the broadcast
+	 * @param broadcast
+	 */
+	public void applyTo(Broadcast broadcast) {
+		broadcast.setStatus(status);
+		broadcast.setStartTime(startTime);
+		broadcast.setDuration(duration);
+		broadcast.setHlsViewerCount(hlsViewerCount);
+		broadcast.setWebRTCViewerCount(webRTCViewerCount);
+		broadcast.setRtmpViewerCount(rtmpViewerCount);
+		broadcast.setSpeed(speed);
+		broadcast.setQuality(quality);
+		broadcast.setPendingPacketSize(pendingPacketSize);
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(long duration) {
+		this.duration = duration;
+	}
+
+	public int getHlsViewerCount() {
+		return hlsViewerCount;
+	}
+
+	public void setHlsViewerCount(int hlsViewerCount) {
+		this.hlsViewerCount = hlsViewerCount;
+	}
+
+	public int getWebRTCViewerCount() {
+		return webRTCViewerCount;
+	}
+
+	public void setWebRTCViewerCount(int webRTCViewerCount) {
+		this.webRTCViewerCount = webRTCViewerCount;
+	}
+
+	public int getRtmpViewerCount() {
+		return rtmpViewerCount;
+	}
+
+	public void setRtmpViewerCount(int rtmpViewerCount) {
+		this.rtmpViewerCount = rtmpViewerCount;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(double speed) {
+		this.speed = speed;
+	}
+
+	public String getQuality() {
+		return quality;
+	}
+
+	public void setQuality(String quality) {
+		this.quality = quality;
+	}
+
+	public int getPendingPacketSize() {
+		return pendingPacketSize;
+	}
+
+	public void setPendingPacketSize(int pendingPacketSize) {
+		this.pendingPacketSize = pendingPacketSize;
+	}
+
+	/**
+	 * Fixed order binary layout of {@link BroadcastLiveFields}.
+	 * First byte is the layout version so that the layout can be extended later
+	 */
+	public static class LiveFieldsSerializer extends GroupSerializerObjectArray<BroadcastLiveFields> {
+
+		private static final int VERSION = 1;
+
+		@Override
+		public void serialize(DataOutput2 out, BroadcastLiveFields value) throws IOException {
+			out.writeByte(VERSION);
+			writeNullableString(out, value.status);
+			out.writeLong(value.startTime);
+			out.writeLong(value.duration);
+			out.writeInt(value.hlsViewerCount);
+			out.writeInt(value.webRTCViewerCount);
+			out.writeInt(value.rtmpViewerCount);
+			out.writeDouble(value.speed);
+			writeNullableString(out, value.quality);
+			out.writeInt(value.pendingPacketSize);
+		}
+
+		@Override
+		public BroadcastLiveFields deserialize(DataInput2 input, int available) throws IOException {
+			int version = input.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unknown broadcast live fields layout version: " + version);
+			}
+			BroadcastLiveFields value = new BroadcastLiveFields();
+			value.status = readNullableString(input);
+			value.startTime = input.readLong();
+			value.duration = input.readLong();
+			value.hlsViewerCount = input.readInt();
+			value.webRTCViewerCount = input.readInt();
+			value.rtmpViewerCount = input.readInt();
+			value.speed = input.readDouble();
+			value.quality = readNullableString(input);
+			value.pendingPacketSize = input.readInt();
+			return value;
+		}
+
+		private static void writeNullableString(DataOutput2 out, String value) throws IOException {
+			out.writeBoolean(value != null);
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+
+		private static String readNullableString(DataInput2 input) throws IOException {
+			if (input.readBoolean()) {
+				return input.readUTF();
+			}
+			return null;
+		}
+	}
+}
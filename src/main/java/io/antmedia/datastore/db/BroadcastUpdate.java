@@ -0,0 +1,149 @@
+package io.antmedia.datastore.db;
+
+import java.util.List;
+
+/**
+ * Update of the live fields of a broadcast to be applied in a batch with {@link IBatchUpdateStore#applyBatch(List)}.
+ * Only the fields that are set are updated. Semantics of each field are the same as the single update methods
+ * in {@link DataStore}
+ */
+public class BroadcastUpdate {
+
+	private String streamId;
+
+	/**
+	 * New status of the broadcast, null if status is not updated.
+	 * @see DataStore#updateStatus(String, String)
+	 */
+	private String status;
+
+	/**
+	 * Difference in HLS viewer count, 0 if it is not updated.
+	 * @see DataStore#updateHLSViewerCount(String, int)
+	 */
+	private int hlsViewerDiff;
+
+	/**
+	 * True if quality, speed and pending packet size are updated.
+	 * @see DataStore#updateSourceQualityParameters(String, String, double, int)
+	 */
+	private boolean sourceQualityUpdated;
+	private String quality;
+	private double speed;
+	private int pendingPacketSize;
+
+	public BroadcastUpdate(String streamId) {
+		this.streamId = streamId;
+	}
+
+	public static BroadcastUpdate status(String streamId, String status) {
+		BroadcastUpdate update = new BroadcastUpdate(streamId);
+		update.setStatus(status);
+		return update;
+	}
+
+	public static BroadcastUpdate hlsViewerCount(String streamId, int diffCount) {
+		BroadcastUpdate update = new BroadcastUpdate(streamId);
+		update.setHlsViewerDiff(diffCount);
+		return update;
+	}
+
+	public static BroadcastUpdate sourceQuality(String streamId, String quality, double speed, int pendingPacketSize) {
+		BroadcastUpdate update = new BroadcastUpdate(streamId);
+		update.setSourceQualityParameters(quality, speed, pendingPacketSize);
+		return update;
+	}
+
+	/**
+	 * Applies the updates with the batch update of the data store if it supports.
+	 * Otherwise applies them one by one
+	 * @param dataStore
+	 * @param updates
+	 * @return number of updated broadcasts
+	 */
+	public static int applyAll(DataStore dataStore, List<BroadcastUpdate> updates) {
+		if (updates == null || updates.isEmpty()) {
+			return 0;
+		}
+		if (dataStore instanceof IBatchUpdateStore) {
+			return ((IBatchUpdateStore) dataStore).applyBatch(updates);
+		}
+		int updatedCount = 0;
+		for (BroadcastUpdate update : updates) {
+			if (update.applyTo(dataStore)) {
+				updatedCount++;
+			}
+		}
+		return updatedCount;
+	}
+
+	/**
+	 * Applies the update with the single update methods of the data store
+	 * @param dataStore
+	 * @return true if any field is updated
+	 */
+	public boolean applyTo(DataStore dataStore) {
+		boolean result = false;
+		if (status != null) {
+			result = dataStore.updateStatus(streamId, status);
+		}
+		if (hlsViewerDiff != 0) {
+			result |= dataStore.updateHLSViewerCount(streamId, hlsViewerDiff);
+		}
+		if (sourceQualityUpdated) {
+			result |= dataStore.updateSourceQualityParameters(streamId, quality, speed, pendingPacketSize);
+		}
+		return result;
+	}
+
+	/**
+	 * @param writeStatsToDatastore
+	 * @return true if the update has a field to write
+	 */
+	public boolean hasUpdate(boolean writeStatsToDatastore) {
+		return status != null || (writeStatsToDatastore && (hlsViewerDiff != 0 || sourceQualityUpdated));
+	}
+
+	public String getStreamId() {
+		return streamId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public int getHlsViewerDiff() {
+		return hlsViewerDiff;
+	}
+
+	public void setHlsViewerDiff(int hlsViewerDiff) {
+		this.hlsViewerDiff = hlsViewerDiff;
+	}
+
+	public boolean isSourceQualityUpdated() {
+		return sourceQualityUpdated;
+	}
+
+	public void setSourceQualityParameters(String quality, double speed, int pendingPacketSize) {
+		this.sourceQualityUpdated = true;
+		this.quality = quality;
+		this.speed = speed;
+		this.pendingPacketSize = pendingPacketSize;
+	}
+
+	public String getQuality() {
+		return quality;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public int getPendingPacketSize() {
+		return pendingPacketSize;
+	}
+}
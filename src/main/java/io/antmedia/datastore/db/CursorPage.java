@@ -0,0 +1,67 @@
+package io.antmedia.datastore.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.function.Function;
+
+/**
+ * A page of records returned by cursor based list methods.
+ * Records are in ascending order of their ids.
+ *
+ * @param <T> type of the records
+ */
+public class CursorPage<T> {
+
+	private List<T> list;
+
+	/**
+	 * Pass this value as the cursor to get the next page. It's null if there are no more records
+	 */
+	private String nextCursor;
+
+	public CursorPage(List<T> list, String nextCursor) {
+		this.list = list;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Creates the page by loading the records of the ids after the cursor
+	 * @param ids sorted ids
+	 * @param cursor
+	 * @param size it's limited to {@link DataStore#MAX_ITEM_IN_ONE_LIST}
+	 * @param loader returns the record of the id or null if record should not be in the page
+	 * @return
+	 */
+	public static <T> CursorPage<T> of(NavigableSet<String> ids, String cursor, int size, Function<String, T> loader) {
+		size = getPageSize(size);
+		Iterator<String> iterator = (cursor != null ? ids.tailSet(cursor, false) : ids).iterator();
+		List<T> list = new ArrayList<>();
+		String lastId = null;
+		while (list.size() < size && iterator.hasNext()) {
+			String id = iterator.next();
+			T item = loader.apply(id);
+			if (item != null) {
+				list.add(item);
+				lastId = id;
+			}
+		}
+		return new CursorPage<>(list, iterator.hasNext() ? lastId : null);
+	}
+
+	public static int getPageSize(int size) {
+		if (size > DataStore.MAX_ITEM_IN_ONE_LIST) {
+			return DataStore.MAX_ITEM_IN_ONE_LIST;
+		}
+		return Math.max(size, 0);
+	}
+
+	public List<T> getList() {
+		return list;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
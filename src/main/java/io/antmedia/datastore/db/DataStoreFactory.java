@@ -23,6 +23,10 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 	public static final String SETTINGS_DB_HOST = "db.host";
 	public static final String SETTINGS_DB_USER = "db.user";
 	public static final String SETTINGS_DB_PASS = "db.password";
+	public static final String SETTINGS_DB_GROUP_COMMIT_INTERVAL = "db.groupCommitInterval";
+	public static final String SETTINGS_DB_GROUP_COMMIT_BATCH_SIZE = "db.groupCommitBatchSize";
+	public static final String SETTINGS_DB_BROADCAST_CACHE_TTL = "db.broadcastCacheTtl";
+	public static final String SETTINGS_DB_BROADCAST_CACHE_MAX_SIZE = "db.broadcastCacheMaxSize";
 
 
 	private static Logger logger = LoggerFactory.getLogger(DataStoreFactory.class);
@@ -54,6 +58,33 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 	
 	@Value( "${"+SETTINGS_DB_PASS+":#{null}}" )
 	private String dbPassword;
+	
+	/**
+	 * Group commit interval in milliseconds for MapDB. 
+	 * Zero means every mutation is committed immediately
+	 */
+	@Value( "${"+SETTINGS_DB_GROUP_COMMIT_INTERVAL+":0}" )
+	private long groupCommitInterval;
+	
+	/**
+	 * Number of pending mutations that triggers a commit before group commit interval elapses
+	 */
+	@Value( "${"+SETTINGS_DB_GROUP_COMMIT_BATCH_SIZE+":500}" )
+	private int groupCommitBatchSize;
+	
+	/**
+	 * Time to live in milliseconds of the broadcasts in {@link BroadcastCache}. 
+	 * It's the staleness of the changes made by the other nodes in cluster mode.
+	 * Zero disables the cache
+	 */
+	@Value( "${"+SETTINGS_DB_BROADCAST_CACHE_TTL+":2000}" )
+	private long broadcastCacheTtl;
+	
+	@Value( "${"+SETTINGS_DB_BROADCAST_CACHE_MAX_SIZE+":10000}" )
+	private int broadcastCacheMaxSize;
+	
+	private volatile BroadcastCache broadcastCache;
+	
 	private String hostAddress;
 	
 	public String getDbName() {
@@ -96,6 +127,38 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 		this.dbPassword = dbPassword;
 	}
 	
+	public long getGroupCommitInterval() {
+		return groupCommitInterval;
+	}
+
+	public void setGroupCommitInterval(long groupCommitInterval) {
+		this.groupCommitInterval = groupCommitInterval;
+	}
+
+	public int getGroupCommitBatchSize() {
+		return groupCommitBatchSize;
+	}
+
+	public void setGroupCommitBatchSize(int groupCommitBatchSize) {
+		this.groupCommitBatchSize = groupCommitBatchSize;
+	}
+	
+	public long getBroadcastCacheTtl() {
+		return broadcastCacheTtl;
+	}
+
+	public void setBroadcastCacheTtl(long broadcastCacheTtl) {
+		this.broadcastCacheTtl = broadcastCacheTtl;
+	}
+
+	public int getBroadcastCacheMaxSize() {
+		return broadcastCacheMaxSize;
+	}
+
+	public void setBroadcastCacheMaxSize(int broadcastCacheMaxSize) {
+		this.broadcastCacheMaxSize = broadcastCacheMaxSize;
+	}
+	
 	public void init()  
 	{
 		if(dbType.contentEquals(DB_TYPE_MONGODB))
@@ -104,7 +167,7 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 		}
 		else if(dbType .contentEquals(DB_TYPE_MAPDB))
 		{
-			dataStore = new MapDBStore(dbName+".db");
+			dataStore = new MapDBStore(dbName+".db", groupCommitInterval, groupCommitBatchSize);
 		}
 		else if(dbType .contentEquals(DB_TYPE_MEMORYDB))
 		{
@@ -128,6 +191,30 @@ public class DataStoreFactory implements IDataStoreFactory, ApplicationContextAw
 	public void setDataStore(DataStore dataStore) {
 		this.dataStore = dataStore;
 	}
+	
+	/**
+	 * @return the cache of the broadcasts in the data store or null if it's disabled
+	 */
+	public BroadcastCache getBroadcastCache() {
+		if (broadcastCacheTtl <= 0 || dataStore == null) {
+			return null;
+		}
+		BroadcastCache cache = broadcastCache;
+		if (cache == null || cache.getDataStore() != dataStore) {
+			cache = createBroadcastCache();
+		}
+		return cache;
+	}
+	
+	private synchronized BroadcastCache createBroadcastCache() {
+		if (dataStore == null || broadcastCacheTtl <= 0) {
+			broadcastCache = null;
+		}
+		else if (broadcastCache == null || broadcastCache.getDataStore() != dataStore) {
+			broadcastCache = new BroadcastCache(dataStore, broadcastCacheTtl, broadcastCacheMaxSize);
+		}
+		return broadcastCache;
+	}
 
 	public boolean isWriteStatsToDatastore() {
 		return writeStatsToDatastore;
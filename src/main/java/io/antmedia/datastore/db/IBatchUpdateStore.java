@@ -0,0 +1,22 @@
+package io.antmedia.datastore.db;
+
+import java.util.List;
+
+/**
+ * Applies the updates of many broadcasts in a single round trip to the db
+ * instead of calling single update methods for each broadcast.
+ *
+ * Use {@link BroadcastUpdate#applyAll(DataStore, List)} to fall back to single updates
+ * for the data stores that do not implement it.
+ */
+public interface IBatchUpdateStore {
+
+	/**
+	 * Applies the updates. Updates are independent of each other, failure of one of them
+	 * does not prevent the others. Stats fields(viewer counts, source quality) are not updated
+	 * if writing stats to data store is disabled
+	 * @param updates
+	 * @return number of updated broadcasts
+	 */
+	int applyBatch(List<BroadcastUpdate> updates);
+}
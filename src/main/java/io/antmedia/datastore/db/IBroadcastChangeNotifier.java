@@ -0,0 +1,18 @@
+package io.antmedia.datastore.db;
+
+import java.util.function.Consumer;
+
+/**
+ * Notifies the listeners about the broadcasts that are changed by the local node.
+ * Caches of the broadcasts use it to invalidate their entries. 
+ * Changes made by the other nodes of the cluster are not notified.
+ */
+public interface IBroadcastChangeNotifier {
+
+	/**
+	 * Adds the listener that is called with the id of the changed broadcast.
+	 * Id is null if many broadcasts are changed at once
+	 * @param listener
+	 */
+	void addBroadcastChangeListener(Consumer<String> listener);
+}
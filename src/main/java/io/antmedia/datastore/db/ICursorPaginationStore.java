@@ -0,0 +1,36 @@
+package io.antmedia.datastore.db;
+
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.Token;
+import io.antmedia.datastore.db.types.VoD;
+
+/**
+ * Keyset pagination of the records in ascending order of their ids.
+ *
+ * Unlike offset based list methods, it starts directly from the cursor instead of skipping
+ * or sorting the records before it, so the cost of a page does not depend on its position.
+ * Cursor is the id of the last record in the previous page, null for the first page.
+ */
+public interface ICursorPaginationStore {
+
+	/**
+	 * @param cursor id of the last broadcast in the previous page or null for the first page
+	 * @param size max number of broadcasts in the page
+	 * @param type type of the broadcasts, null for all types
+	 */
+	CursorPage<Broadcast> getBroadcastListAfter(String cursor, int size, String type);
+
+	/**
+	 * @param cursor id of the last VoD in the previous page or null for the first page
+	 * @param size max number of VoDs in the page
+	 * @param streamId stream id of the VoDs, null for all VoDs
+	 */
+	CursorPage<VoD> getVodListAfter(String cursor, int size, String streamId);
+
+	/**
+	 * @param streamId stream id of the tokens
+	 * @param cursor id of the last token in the previous page or null for the first page
+	 * @param size max number of tokens in the page
+	 */
+	CursorPage<Token> listTokensAfter(String streamId, String cursor, int size);
+}
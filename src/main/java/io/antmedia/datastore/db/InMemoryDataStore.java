@@ -9,7 +9,10 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
@@ -31,7 +34,7 @@ import io.antmedia.datastore.db.types.Token;
 import io.antmedia.datastore.db.types.VoD;
 import io.antmedia.muxer.MuxAdaptor;
 
-public class InMemoryDataStore extends DataStore {
+public class InMemoryDataStore extends DataStore implements ICursorPaginationStore, IBatchUpdateStore, IBroadcastChangeNotifier {
 
 	protected static Logger logger = LoggerFactory.getLogger(InMemoryDataStore.class);
 	private Map<String, Broadcast> broadcastMap = new LinkedHashMap<>();
@@ -41,6 +44,24 @@ public class InMemoryDataStore extends DataStore {
 	private Map<String, Token> tokenMap = new LinkedHashMap<>();
 	private Map<String, ConferenceRoom> roomMap = new LinkedHashMap<>();
 	private Map<String, Playlist> playlistMap = new LinkedHashMap<>();
+	
+	private LiveBroadcastCounters liveBroadcastCounters = new LiveBroadcastCounters();
+	
+	/**
+	 * Sorted ids of the maps above for cursor based pagination. Filtered pages seek in the ids 
+	 * of the filter value so that a page does not visit the records of the other values
+	 */
+	private NavigableSet<String> broadcastIds = new TreeSet<>();
+	private NavigableSet<String> vodIds = new TreeSet<>();
+	private SecondaryIndex broadcastTypeIndex = new SecondaryIndex();
+	private SecondaryIndex vodStreamIdIndex = new SecondaryIndex();
+	private SecondaryIndex tokenStreamIdIndex = new SecondaryIndex();
+	
+	/**
+	 * Notified when broadcasts are added or removed. Other updates change the broadcast objects 
+	 * that are shared with the callers in place
+	 */
+	private BroadcastChangeListeners broadcastChangeListeners = new BroadcastChangeListeners();
 
 	public InMemoryDataStore(String dbName) {
 		
@@ -68,6 +89,10 @@ public class InMemoryDataStore extends DataStore {
 					broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED);
 				}
 				broadcastMap.put(streamId, broadcast);
+				broadcastIds.add(streamId);
+				broadcastTypeIndex.put(streamId, broadcast.getType());
+				liveBroadcastCounters.update(broadcast);
+				broadcastChangeListeners.notifyChanged(streamId);
 			} catch (Exception e) {
 				logger.error(e.getMessage());
 				streamId = null;
@@ -77,6 +102,11 @@ public class InMemoryDataStore extends DataStore {
 		return streamId;
 	}
 
+	@Override
+	public void addBroadcastChangeListener(Consumer<String> listener) {
+		broadcastChangeListeners.add(listener);
+	}
+
 	@Override
 	public Broadcast get(String id) {
 
@@ -93,20 +123,56 @@ public class InMemoryDataStore extends DataStore {
 		Broadcast broadcast = broadcastMap.get(id);
 		boolean result = false;
 		if (broadcast != null) {
-			broadcast.setStatus(status);
-			if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-				broadcast.setStartTime(System.currentTimeMillis());
-			}
-			else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
-				broadcast.setRtmpViewerCount(0);
-				broadcast.setWebRTCViewerCount(0);
-				broadcast.setHlsViewerCount(0);
-			}
+			setStatus(broadcast, status);
 			broadcastMap.put(id, broadcast);
+			liveBroadcastCounters.update(broadcast);
 			result = true;
 		}
 		return result;
 	}
+	
+	private static void setStatus(Broadcast broadcast, String status) {
+		broadcast.setStatus(status);
+		if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
+			broadcast.setStartTime(System.currentTimeMillis());
+		}
+		else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
+			broadcast.setRtmpViewerCount(0);
+			broadcast.setWebRTCViewerCount(0);
+			broadcast.setHlsViewerCount(0);
+		}
+	}
+	
+	private static void setSourceQualityParameters(Broadcast broadcast, String quality, double speed, int pendingPacketSize) {
+		if (quality != null) {
+			broadcast.setQuality(quality);
+		}
+		broadcast.setSpeed(speed);
+		broadcast.setPendingPacketSize(pendingPacketSize);
+	}
+	
+	@Override
+	public synchronized int applyBatch(List<BroadcastUpdate> updates) {
+		int updatedCount = 0;
+		boolean writeStats = isWriteStatsToDatastore();
+		for (BroadcastUpdate update : updates) {
+			Broadcast broadcast = update.getStreamId() != null ? broadcastMap.get(update.getStreamId()) : null;
+			if (broadcast != null && update.hasUpdate(writeStats)) {
+				if (update.getStatus() != null) {
+					setStatus(broadcast, update.getStatus());
+				}
+				if (writeStats) {
+					broadcast.setHlsViewerCount(broadcast.getHlsViewerCount() + update.getHlsViewerDiff());
+					if (update.isSourceQualityUpdated()) {
+						setSourceQualityParameters(broadcast, update.getQuality(), update.getSpeed(), update.getPendingPacketSize());
+					}
+				}
+				liveBroadcastCounters.update(broadcast);
+				updatedCount++;
+			}
+		}
+		return updatedCount;
+	}
 
 	@Override
 	public boolean updateDuration(String id, long duration) {
@@ -173,15 +239,28 @@ public class InMemoryDataStore extends DataStore {
 
 	@Override
 	public long getActiveBroadcastCount() {
-		Collection<Broadcast> values = broadcastMap.values();
-		long activeBroadcastCount = 0;
-		for (Broadcast broadcast : values) {
-			String status = broadcast.getStatus();
-			if (status != null && status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-				activeBroadcastCount++;
-			}
+		reconcileCountersIfNeeded();
+		return liveBroadcastCounters.getBroadcastingCount();
+	}
+	
+	@Override
+	public long getLocalLiveBroadcastCount(String hostAddress) {
+		reconcileCountersIfNeeded();
+		return liveBroadcastCounters.getLocalLiveBroadcastCount(hostAddress);
+	}
+	
+	/**
+	 * Broadcast objects are shared with the callers and they may be changed out of this class.
+	 * So counters are reconciled periodically
+	 */
+	private void reconcileCountersIfNeeded() {
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+	}
+	
+	private void loadCounters(LiveBroadcastCounters counters) {
+		for (Broadcast broadcast : broadcastMap.values()) {
+			counters.update(broadcast);
 		}
-		return activeBroadcastCount;
 	}
 
 
@@ -191,6 +270,10 @@ public class InMemoryDataStore extends DataStore {
 		boolean result = false;
 		if (broadcast != null) {
 			result = broadcastMap.remove(id) != null ? true : false;
+			broadcastIds.remove(id);
+			broadcastTypeIndex.remove(id);
+			liveBroadcastCounters.remove(id);
+			broadcastChangeListeners.notifyChanged(id);
 		}
 		return result;
 	}
@@ -244,6 +327,23 @@ public class InMemoryDataStore extends DataStore {
 		available = false;
 	}
 
+	@Override
+	public CursorPage<Broadcast> getBroadcastListAfter(String cursor, int size, String type) {
+		NavigableSet<String> ids = (type != null && !type.isEmpty()) ? broadcastTypeIndex.getIds(type) : broadcastIds;
+		return CursorPage.of(ids, cursor, size, broadcastMap::get);
+	}
+	
+	@Override
+	public CursorPage<VoD> getVodListAfter(String cursor, int size, String streamId) {
+		NavigableSet<String> ids = (streamId != null && !streamId.isEmpty()) ? vodStreamIdIndex.getIds(streamId) : vodIds;
+		return CursorPage.of(ids, cursor, size, vodMap::get);
+	}
+	
+	@Override
+	public CursorPage<Token> listTokensAfter(String streamId, String cursor, int size) {
+		return CursorPage.of(tokenStreamIdIndex.getIds(streamId), cursor, size, tokenMap::get);
+	}
+
 	@Override
 	public String addVod(VoD vod) {
 		String id = null;
@@ -255,6 +355,8 @@ public class InMemoryDataStore extends DataStore {
 					vod.setVodId(RandomStringUtils.randomNumeric(24));
 				}
 				vodMap.put(vod.getVodId(),vod);
+				vodIds.add(vod.getVodId());
+				vodStreamIdIndex.put(vod.getVodId(), vod.getStreamId());
 				result = true;
 
 			} catch (Exception e) {
@@ -294,6 +396,8 @@ public class InMemoryDataStore extends DataStore {
 
 	@Override
 	public boolean deleteVod(String id) {
+		vodIds.remove(id);
+		vodStreamIdIndex.remove(id);
 		return vodMap.remove(id) != null;
 	}
 
@@ -333,6 +437,8 @@ public class InMemoryDataStore extends DataStore {
 			VoD vod = (VoD) iterator.next();
 			if (vod.getType().equals(VoD.USER_VOD)) {
 				iterator.remove();
+				vodIds.remove(vod.getVodId());
+				vodStreamIdIndex.remove(vod.getVodId());
 			}
 		}
 
@@ -378,11 +484,7 @@ public class InMemoryDataStore extends DataStore {
 		if (id != null) {
 			Broadcast broadcast = broadcastMap.get(id);
 			if (broadcast != null) {
-				if (quality != null) {
-					broadcast.setQuality(quality);
-				}
-				broadcast.setSpeed(speed);
-				broadcast.setPendingPacketSize(pendingPacketSize);
+				setSourceQualityParameters(broadcast, quality, speed, pendingPacketSize);
 				broadcastMap.replace(id, broadcast);
 				result = true;
 			}
@@ -535,6 +637,7 @@ public class InMemoryDataStore extends DataStore {
 			if (oldBroadcast != null) {
 				updateStreamInfo(oldBroadcast, broadcast);
 				broadcastMap.replace(oldBroadcast.getStreamId(), oldBroadcast);
+				liveBroadcastCounters.update(oldBroadcast);
 
 				result = true;
 			}
@@ -557,6 +660,7 @@ public class InMemoryDataStore extends DataStore {
 
 				broadcast.setHlsViewerCount(hlsViewerCount);
 				broadcastMap.replace(streamId, broadcast);
+				liveBroadcastCounters.update(broadcast);
 				result = true;
 			}
 		}
@@ -579,6 +683,7 @@ public class InMemoryDataStore extends DataStore {
 				if(webRTCViewerCount >= 0) {
 					broadcast.setWebRTCViewerCount(webRTCViewerCount);
 					broadcastMap.replace(streamId, broadcast);
+					liveBroadcastCounters.update(broadcast);
 					result = true;
 				}
 			}
@@ -602,6 +707,7 @@ public class InMemoryDataStore extends DataStore {
 				if(rtmpViewerCount >= 0) {
 					broadcast.setRtmpViewerCount(rtmpViewerCount);
 					broadcastMap.replace(streamId, broadcast);
+					liveBroadcastCounters.update(broadcast);
 					result = true;
 				}
 			}
@@ -617,6 +723,7 @@ public class InMemoryDataStore extends DataStore {
 			try {
 
 				tokenMap.put(token.getTokenId(), token);
+				tokenStreamIdIndex.put(token.getTokenId(), token.getStreamId());
 				result = true;
 			} catch (Exception e) {
 				logger.error(ExceptionUtils.getStackTrace(e));
@@ -638,6 +745,7 @@ public class InMemoryDataStore extends DataStore {
 				if(token.getRoomId() == null || token.getRoomId().isEmpty()) {
 					if(fetchedToken.getStreamId().equals(token.getStreamId())) {
 						tokenMap.remove(token.getTokenId());
+						tokenStreamIdIndex.remove(token.getTokenId());
 					}
 					else {
 						fetchedToken = null;
@@ -660,7 +768,7 @@ public class InMemoryDataStore extends DataStore {
 			Token token = (Token) iterator.next();
 			if (token.getStreamId().equals(streamId)) {
 				iterator.remove();
-				tokenMap.remove(token.getTokenId());
+				tokenStreamIdIndex.remove(token.getTokenId());
 			}
 			result = true;
 
@@ -807,6 +915,7 @@ public class InMemoryDataStore extends DataStore {
 	@Override
 	public boolean deleteToken(String tokenId) {
 
+		tokenStreamIdIndex.remove(tokenId);
 		return tokenMap.remove(tokenId) != null;
 
 	}
@@ -896,6 +1005,8 @@ public class InMemoryDataStore extends DataStore {
 			Entry<String, Broadcast> next = iterator.next();
 			if (next.getValue().isZombi()) {
 				iterator.remove();
+				broadcastIds.remove(next.getKey());
+				broadcastTypeIndex.remove(next.getKey());
 				i++;
 			}
 			if (next.getValue().getStatus().equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING) ||
@@ -909,21 +1020,25 @@ public class InMemoryDataStore extends DataStore {
 			}
 		}
 		
+		liveBroadcastCounters.reconcile(this::loadCounters);
+		broadcastChangeListeners.notifyChanged(null);
 		
 		return i;
 	}
 
 	@Override
 	public int getTotalWebRTCViewersCount() {
-		long now = System.currentTimeMillis();
-		if(now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
-			int total = 0;
-			for (Broadcast broadcast : broadcastMap.values()) {
-				total += broadcast.getWebRTCViewerCount();
-			}
-			totalWebRTCViewerCount = total;
-			totalWebRTCViewerCountLastUpdateTime = now;
-		}  
-		return totalWebRTCViewerCount;
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalWebRTCViewerCount();
+	}
+	
+	public int getTotalHLSViewersCount() {
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalHLSViewerCount();
+	}
+	
+	public int getTotalRTMPViewersCount() {
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalRTMPViewerCount();
 	}
 }
@@ -0,0 +1,294 @@
+package io.antmedia.datastore.db;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.types.Broadcast;
+
+/**
+ * Running counters of broadcasting streams and viewers so that stats queries
+ * do not scan the broadcasts.
+ *
+ * Data stores call the update methods on their status and viewer mutation paths. Counters are
+ * computed from the difference between the last known state of the broadcast and the new state.
+ * Since broadcasts may be changed out of these paths (i.e. by other nodes in cluster mode),
+ * data stores should reconcile the counters periodically by loading the states from the db.
+ */
+public class LiveBroadcastCounters {
+
+	protected static Logger logger = LoggerFactory.getLogger(LiveBroadcastCounters.class);
+
+	public static final long DEFAULT_RECONCILE_PERIOD_MS = 60000;
+
+	/**
+	 * Key of the broadcasts that does not have origin address. They are counted as local in every host
+	 */
+	private static final String NO_ORIGIN = "";
+
+	private static class State {
+		private final String status;
+		private final String originAddress;
+		private final int hlsViewerCount;
+		private final int webRTCViewerCount;
+		private final int rtmpViewerCount;
+
+		public State(String status, String originAddress, int hlsViewerCount, int webRTCViewerCount, int rtmpViewerCount) {
+			this.status = status;
+			this.originAddress = originAddress;
+			this.hlsViewerCount = hlsViewerCount;
+			this.webRTCViewerCount = webRTCViewerCount;
+			this.rtmpViewerCount = rtmpViewerCount;
+		}
+
+		public boolean isBroadcasting() {
+			return AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING.equals(status);
+		}
+	}
+
+	private Map<String, State> states = new ConcurrentHashMap<>();
+
+	/**
+	 * States before the reconciliation. It's used to keep the origin addresses
+	 * when loader does not know them
+	 */
+	private Map<String, State> previousStates;
+
+	private final AtomicLong broadcastingCount = new AtomicLong();
+	private final Map<String, AtomicLong> broadcastingCountPerOrigin = new ConcurrentHashMap<>();
+	private final AtomicLong totalHLSViewerCount = new AtomicLong();
+	private final AtomicLong totalWebRTCViewerCount = new AtomicLong();
+	private final AtomicLong totalRTMPViewerCount = new AtomicLong();
+
+	/**
+	 * Updates share the read lock and reconciliation takes the write lock
+	 */
+	private final ReentrantReadWriteLock reconcileLock = new ReentrantReadWriteLock();
+
+	private final long reconcilePeriodMs;
+	private volatile long lastReconcileTime;
+
+	public LiveBroadcastCounters() {
+		this(DEFAULT_RECONCILE_PERIOD_MS);
+	}
+
+	public LiveBroadcastCounters(long reconcilePeriodMs) {
+		this.reconcilePeriodMs = reconcilePeriodMs;
+		//counters are consistent with an empty store
+		lastReconcileTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Sets the state of the broadcast
+	 * @param broadcast
+	 */
+	public void update(Broadcast broadcast) {
+		if (broadcast != null) {
+			update(broadcast.getStreamId(), broadcast.getStatus(), broadcast.getOriginAdress(),
+					broadcast.getHlsViewerCount(), broadcast.getWebRTCViewerCount(), broadcast.getRtmpViewerCount());
+		}
+	}
+
+	public void update(String id, String status, String originAddress, int hlsViewerCount, int webRTCViewerCount, int rtmpViewerCount) {
+		apply(id, oldState -> new State(status, originAddress, hlsViewerCount, webRTCViewerCount, rtmpViewerCount));
+	}
+
+	/**
+	 * Sets the state of the broadcast by keeping its last known origin address
+	 */
+	public void updateLiveFields(String id, String status, int hlsViewerCount, int webRTCViewerCount, int rtmpViewerCount) {
+		apply(id, oldState -> new State(status, getOriginAddress(id, oldState), hlsViewerCount, webRTCViewerCount, rtmpViewerCount));
+	}
+
+	/**
+	 * Sets the status of the broadcast by keeping its last known origin address and viewer counts.
+	 * It's for the stores that keep the viewer counts separately from the status
+	 */
+	public void updateStatus(String id, String status) {
+		apply(id, oldState -> {
+			if (oldState == null) {
+				return new State(status, getOriginAddress(id, null), 0, 0, 0);
+			}
+			return new State(status, oldState.originAddress, oldState.hlsViewerCount, 
+					oldState.webRTCViewerCount, oldState.rtmpViewerCount);
+		});
+	}
+
+	/**
+	 * Adds the differences to the viewer counts of the broadcast. It's for the stores that
+	 * update viewer counts without reading the broadcast
+	 */
+	public void addViewerCount(String id, int hlsDiff, int webRTCDiff, int rtmpDiff) {
+		apply(id, oldState -> {
+			if (oldState == null) {
+				return new State(null, null, hlsDiff, webRTCDiff, rtmpDiff);
+			}
+			return new State(oldState.status, oldState.originAddress, oldState.hlsViewerCount + hlsDiff,
+					oldState.webRTCViewerCount + webRTCDiff, oldState.rtmpViewerCount + rtmpDiff);
+		});
+	}
+
+	public void remove(String id) {
+		if (id == null) {
+			return;
+		}
+		reconcileLock.readLock().lock();
+		try {
+			states.computeIfPresent(id, (key, oldState) -> {
+				count(oldState, -1);
+				return null;
+			});
+		}
+		finally {
+			reconcileLock.readLock().unlock();
+		}
+	}
+
+	private void apply(String id, UnaryOperator<State> function) {
+		if (id == null) {
+			return;
+		}
+		reconcileLock.readLock().lock();
+		try {
+			states.compute(id, (key, oldState) -> {
+				State newState = function.apply(oldState);
+				count(oldState, -1);
+				count(newState, 1);
+				return newState;
+			});
+		}
+		finally {
+			reconcileLock.readLock().unlock();
+		}
+	}
+
+	private String getOriginAddress(String id, State oldState) {
+		if (oldState != null) {
+			return oldState.originAddress;
+		}
+		Map<String, State> previous = previousStates;
+		if (previous != null) {
+			State previousState = previous.get(id);
+			if (previousState != null) {
+				return previousState.originAddress;
+			}
+		}
+		return null;
+	}
+
+	private void count(State state, int sign) {
+		if (state == null) {
+			return;
+		}
+		if (state.isBroadcasting()) {
+			broadcastingCount.addAndGet(sign);
+			String origin = state.originAddress != null ? state.originAddress : NO_ORIGIN;
+			broadcastingCountPerOrigin.computeIfAbsent(origin, key -> new AtomicLong()).addAndGet(sign);
+		}
+		totalHLSViewerCount.addAndGet((long)sign * state.hlsViewerCount);
+		totalWebRTCViewerCount.addAndGet((long)sign * state.webRTCViewerCount);
+		totalRTMPViewerCount.addAndGet((long)sign * state.rtmpViewerCount);
+	}
+
+	private void resetCounts() {
+		broadcastingCount.set(0);
+		broadcastingCountPerOrigin.clear();
+		totalHLSViewerCount.set(0);
+		totalWebRTCViewerCount.set(0);
+		totalRTMPViewerCount.set(0);
+	}
+
+	public boolean isReconcileNeeded() {
+		return System.currentTimeMillis() - lastReconcileTime > reconcilePeriodMs;
+	}
+
+	/**
+	 * Reconciles the counters if reconcile period has elapsed
+	 * @param loader
+	 */
+	public void reconcileIfNeeded(Consumer<LiveBroadcastCounters> loader) {
+		if (isReconcileNeeded()) {
+			reconcileLock.writeLock().lock();
+			try {
+				//another thread may have reconciled while waiting for the lock
+				if (isReconcileNeeded()) {
+					reconcile(loader);
+				}
+			}
+			finally {
+				reconcileLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Clears the counters and lets the loader update the state of all broadcasts in the db.
+	 * Updates wait until reconciliation finishes. Counters are kept as they are if loader fails
+	 * @param loader
+	 */
+	public void reconcile(Consumer<LiveBroadcastCounters> loader) {
+		reconcileLock.writeLock().lock();
+		try {
+			previousStates = states;
+			states = new ConcurrentHashMap<>();
+			resetCounts();
+			try {
+				loader.accept(this);
+			}
+			catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				states = previousStates;
+				resetCounts();
+				for (State state : states.values()) {
+					count(state, 1);
+				}
+			}
+		}
+		finally {
+			previousStates = null;
+			lastReconcileTime = System.currentTimeMillis();
+			reconcileLock.writeLock().unlock();
+		}
+	}
+
+	public long getBroadcastingCount() {
+		return broadcastingCount.get();
+	}
+
+	/**
+	 * @param hostAddress
+	 * @return number of broadcasting streams whose origin is the host address or not set
+	 */
+	public long getLocalLiveBroadcastCount(String hostAddress) {
+		long count = getBroadcastingCount(NO_ORIGIN);
+		if (hostAddress != null && !hostAddress.equals(NO_ORIGIN)) {
+			count += getBroadcastingCount(hostAddress);
+		}
+		return count;
+	}
+
+	private long getBroadcastingCount(String origin) {
+		AtomicLong count = broadcastingCountPerOrigin.get(origin);
+		return count != null ? count.get() : 0;
+	}
+
+	public long getTotalHLSViewerCount() {
+		return totalHLSViewerCount.get();
+	}
+
+	public long getTotalWebRTCViewerCount() {
+		return totalWebRTCViewerCount.get();
+	}
+
+	public long getTotalRTMPViewerCount() {
+		return totalRTMPViewerCount.get();
+	}
+}
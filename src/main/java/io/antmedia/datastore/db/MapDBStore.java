@@ -1,7 +1,5 @@
 package io.antmedia.datastore.db;
 
-import static io.antmedia.datastore.db.DataStore.TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME;
-
 import java.io.File;
 import java.lang.reflect.Type;
 import java.time.Instant;
@@ -9,6 +7,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -21,6 +29,7 @@ import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -40,33 +49,106 @@ import io.antmedia.datastore.db.types.VoD;
 import io.antmedia.muxer.MuxAdaptor;
 
 
-public class MapDBStore extends DataStore {
+public class MapDBStore extends DataStore implements ICursorPaginationStore, IBatchUpdateStore, IBroadcastChangeNotifier {
 
 	private DB db;
 	private BTreeMap<String, String> map;
+	private BTreeMap<String, BroadcastLiveFields> liveFieldsMap;
 	private BTreeMap<String, String> vodMap;
 	private BTreeMap<String, String> detectionMap;
 	private BTreeMap<String, String> socialEndpointsCredentialsMap;
 	private BTreeMap<String, String> tokenMap;
 	private BTreeMap<String, String> conferenceRoomMap;
 	private BTreeMap<String, String> playlistMap;
-
+	
+	/**
+	 * Viewer counts are kept out of live fields map so that viewer updates are atomic increments
+	 * on a single integer instead of read-modify-write cycles of the live fields
+	 */
+	private ViewerCountMap hlsViewerCountMap;
+	private ViewerCountMap webRTCViewerCountMap;
+	private ViewerCountMap rtmpViewerCountMap;
+	
+	/**
+	 * Each map has its own lock so that operations on different maps do not contend with each other.
+	 * Broadcast lock is used for both broadcast map and live fields map
+	 */
+	private StripedMapLock broadcastLock = new StripedMapLock();
+	private StripedMapLock vodLock = new StripedMapLock();
+	private StripedMapLock detectionLock = new StripedMapLock();
+	private StripedMapLock socialEndpointsLock = new StripedMapLock();
+	private StripedMapLock tokenLock = new StripedMapLock();
+	private StripedMapLock conferenceRoomLock = new StripedMapLock();
+	private StripedMapLock playlistLock = new StripedMapLock();
+	
+	/**
+	 * Secondary indexes to filter records without parsing all of them. 
+	 * They're rebuilt when db is opened and updated under the lock of the related map
+	 */
+	private SecondaryIndex broadcastTypeIndex = new SecondaryIndex();
+	private SecondaryIndex broadcastStatusIndex = new SecondaryIndex();
+	private SecondaryIndex vodStreamIdIndex = new SecondaryIndex();
+	private SecondaryIndex tokenStreamIdIndex = new SecondaryIndex();
+	
+	private LiveBroadcastCounters liveBroadcastCounters = new LiveBroadcastCounters();
+	
+	/**
+	 * Notified when broadcasts are changed except viewer count and source quality updates
+	 */
+	private BroadcastChangeListeners broadcastChangeListeners = new BroadcastChangeListeners();
+	
+	/**
+	 * Group commit settings. If interval is zero or less, every mutation is committed immediately.
+	 * Otherwise mutations are applied to the maps immediately and committed together
+	 * when interval elapses or number of pending mutations reaches the batch size
+	 */
+	private final long groupCommitIntervalMs;
+	private final int groupCommitBatchSize;
+	private ScheduledExecutorService groupCommitExecutor;
+	private final AtomicInteger pendingCommitCount = new AtomicInteger();
+	private final ReentrantLock commitLock = new ReentrantLock();
+	private static final long GROUP_COMMIT_TERMINATION_TIMEOUT_MS = 10000;
+	
+	private volatile long commitCount;
+	private volatile long totalCommitTimeNs;
+	private volatile long lastCommitTimeNs;
+	private volatile long maxCommitTimeNs;
+	private volatile long totalCommittedMutations;
+	private volatile int lastCommitBatchSize;
+	private volatile int maxCommitBatchSize;
 
 	private Gson gson;
 	private String dbName;
 	protected static Logger logger = LoggerFactory.getLogger(MapDBStore.class);
 	private static final String MAP_NAME = "BROADCAST";
+	private static final String LIVE_FIELDS_MAP_NAME = "BROADCAST_LIVE_FIELDS";
 	private static final String VOD_MAP_NAME = "VOD";
 	private static final String PLAYLIST_MAP_NAME = "PLAYLIST";
 	private static final String DETECTION_MAP_NAME = "DETECTION";
 	private static final String TOKEN = "TOKEN";
 	private static final String SOCIAL_ENDPONT_CREDENTIALS_MAP_NAME = "SOCIAL_ENDPONT_CREDENTIALS_MAP_NAME";
 	private static final String CONFERENCE_ROOM_MAP_NAME = "CONFERENCE_ROOM";
+	private static final String HLS_VIEWER_COUNT_MAP_NAME = "HLS_VIEWER_COUNT";
+	private static final String WEBRTC_VIEWER_COUNT_MAP_NAME = "WEBRTC_VIEWER_COUNT";
+	private static final String RTMP_VIEWER_COUNT_MAP_NAME = "RTMP_VIEWER_COUNT";
 
 
 	public MapDBStore(String dbName) {
+		this(dbName, 0, 0);
+	}
+	
+	/**
+	 * @param dbName
+	 * @param groupCommitIntervalMs max time in ms that a mutation waits to be committed. 
+	 * Zero or less disables group commit and every mutation is committed immediately
+	 * @param groupCommitBatchSize number of pending mutations that triggers commit before interval elapses.
+	 * Zero or less means commits are triggered only by interval
+	 */
+	public MapDBStore(String dbName, long groupCommitIntervalMs, int groupCommitBatchSize) {
 
 		this.dbName = dbName;
+		this.groupCommitIntervalMs = groupCommitIntervalMs;
+		this.groupCommitBatchSize = groupCommitBatchSize;
 		db = DBMaker
 				.fileDB(dbName)
 				.fileMmapEnableIfSupported()
@@ -75,6 +157,14 @@ public class MapDBStore extends DataStore {
 
 		map = db.treeMap(MAP_NAME).keySerializer(Serializer.STRING).valueSerializer(Serializer.STRING).counterEnable()
 				.createOrOpen();
+		liveFieldsMap = db.treeMap(LIVE_FIELDS_MAP_NAME).keySerializer(Serializer.STRING).valueSerializer(BroadcastLiveFields.SERIALIZER)
+				.counterEnable().createOrOpen();
+		hlsViewerCountMap = new ViewerCountMap(db.treeMap(HLS_VIEWER_COUNT_MAP_NAME).keySerializer(Serializer.STRING)
+				.valueSerializer(Serializer.INTEGER).createOrOpen());
+		webRTCViewerCountMap = new ViewerCountMap(db.treeMap(WEBRTC_VIEWER_COUNT_MAP_NAME).keySerializer(Serializer.STRING)
+				.valueSerializer(Serializer.INTEGER).createOrOpen());
+		rtmpViewerCountMap = new ViewerCountMap(db.treeMap(RTMP_VIEWER_COUNT_MAP_NAME).keySerializer(Serializer.STRING)
+				.valueSerializer(Serializer.INTEGER).createOrOpen());
 		vodMap = db.treeMap(VOD_MAP_NAME).keySerializer(Serializer.STRING).valueSerializer(Serializer.STRING)
 				.counterEnable().createOrOpen();
 		
@@ -96,9 +186,302 @@ public class MapDBStore extends DataStore {
 		GsonBuilder builder = new GsonBuilder();
 		gson = builder.create();
 		
+		migrateBroadcastLiveFields();
+		
+		migrateViewerCounts();
+		
+		buildIndexes();
+		
+		if (isGroupCommitEnabled()) {
+			groupCommitExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("MapDBGroupCommit-"));
+			groupCommitExecutor.scheduleWithFixedDelay(this::flushSafely, groupCommitIntervalMs, groupCommitIntervalMs, TimeUnit.MILLISECONDS);
+			logger.info("Group commit is enabled for db:{} interval:{}ms batch size:{}", dbName, groupCommitIntervalMs, groupCommitBatchSize);
+		}
+		
 		available = true;
 
 	}
+	
+	public boolean isGroupCommitEnabled() {
+		return groupCommitIntervalMs > 0;
+	}
+	
+	/**
+	 * Commits the mutation immediately if group commit is disabled. 
+	 * Otherwise marks it as pending and commits only if batch size is reached
+	 */
+	private void commit() {
+		commit(1);
+	}
+	
+	/**
+	 * Commits the mutations as a single commit or adds them to the pending ones in group commit mode
+	 * @param mutationCount
+	 */
+	private void commit(int mutationCount) {
+		if (!isGroupCommitEnabled()) {
+			commitNow(mutationCount);
+		}
+		else if (pendingCommitCount.addAndGet(mutationCount) >= groupCommitBatchSize && groupCommitBatchSize > 0) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Commits pending mutations synchronously. It's called periodically in group commit mode and on close
+	 */
+	public void flush() {
+		commitLock.lock();
+		try {
+			int pending = pendingCommitCount.getAndSet(0);
+			if (pending > 0 && !db.isClosed()) {
+				commitNow(pending);
+			}
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+	
+	private void flushSafely() {
+		try {
+			flush();
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+	
+	/**
+	 * MapDB commits are serialized internally, so holding commit lock here does not cost extra
+	 * and keeps the metrics consistent
+	 */
+	private void commitNow(int batchSize) {
+		commitLock.lock();
+		try {
+			long startTime = System.nanoTime();
+			db.commit();
+			long elapsed = System.nanoTime() - startTime;
+
+			commitCount++;
+			totalCommitTimeNs += elapsed;
+			lastCommitTimeNs = elapsed;
+			if (elapsed > maxCommitTimeNs) {
+				maxCommitTimeNs = elapsed;
+			}
+			totalCommittedMutations += batchSize;
+			lastCommitBatchSize = batchSize;
+			if (batchSize > maxCommitBatchSize) {
+				maxCommitBatchSize = batchSize;
+			}
+		}
+		finally {
+			commitLock.unlock();
+		}
+	}
+	
+	public long getCommitCount() {
+		return commitCount;
+	}
+	
+	public int getPendingCommitCount() {
+		return pendingCommitCount.get();
+	}
+	
+	public double getAverageCommitTimeMs() {
+		long count = commitCount;
+		return count > 0 ? (totalCommitTimeNs / (double)count) / 1_000_000 : 0;
+	}
+	
+	public double getLastCommitTimeMs() {
+		return lastCommitTimeNs / 1_000_000.0;
+	}
+	
+	public double getMaxCommitTimeMs() {
+		return maxCommitTimeNs / 1_000_000.0;
+	}
+	
+	public double getAverageCommitBatchSize() {
+		long count = commitCount;
+		return count > 0 ? totalCommittedMutations / (double)count : 0;
+	}
+	
+	public int getLastCommitBatchSize() {
+		return lastCommitBatchSize;
+	}
+	
+	public int getMaxCommitBatchSize() {
+		return maxCommitBatchSize;
+	}
+	
+	/**
+	 * Older db files keep the whole broadcast as json in broadcast map. 
+	 * Extract the live fields of the broadcasts that does not have a record in live fields map yet.
+	 * It only writes once for a db file because records are created on save afterwards
+	 */
+	private void migrateBroadcastLiveFields() {
+		int migratedCount = 0;
+		try {
+			int size = map.size();
+			int i = 0;
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				i++;
+				if (!liveFieldsMap.containsKey(entry.getKey())) {
+					Broadcast broadcast = gson.fromJson(entry.getValue(), Broadcast.class);
+					liveFieldsMap.put(entry.getKey(), BroadcastLiveFields.of(broadcast));
+					migratedCount++;
+				}
+				if (i > size) {
+					logger.error("Inconsistency in DB found in migrating broadcasts. It's likely db file({}) is damaged", dbName);
+					break;
+				}
+			}
+			if (migratedCount > 0) {
+				commitNow(migratedCount);
+				logger.info("{} broadcasts are migrated to live fields map in db:{}", migratedCount, dbName);
+			}
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+	
+	/**
+	 * Older db files keep the viewer counts in live fields map. Move them to the viewer count maps.
+	 * Viewer counts in live fields map are always written as zero afterwards so it only moves once
+	 */
+	private void migrateViewerCounts() {
+		int migratedCount = 0;
+		try {
+			for (Map.Entry<String, BroadcastLiveFields> entry : liveFieldsMap.entrySet()) {
+				BroadcastLiveFields liveFields = entry.getValue();
+				if (liveFields.getHlsViewerCount() != 0 || liveFields.getWebRTCViewerCount() != 0 || liveFields.getRtmpViewerCount() != 0) {
+					hlsViewerCountMap.set(entry.getKey(), liveFields.getHlsViewerCount());
+					webRTCViewerCountMap.set(entry.getKey(), liveFields.getWebRTCViewerCount());
+					rtmpViewerCountMap.set(entry.getKey(), liveFields.getRtmpViewerCount());
+					writeLiveFields(entry.getKey(), liveFields);
+					migratedCount++;
+				}
+			}
+			if (migratedCount > 0) {
+				commitNow(migratedCount);
+				logger.info("Viewer counts of {} broadcasts are migrated to viewer count maps in db:{}", migratedCount, dbName);
+			}
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+	
+	/**
+	 * Builds the secondary indexes from the records in the db
+	 */
+	private void buildIndexes() {
+		long startTime = System.currentTimeMillis();
+		try {
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				Broadcast broadcast = toBroadcast(entry.getKey(), entry.getValue());
+				broadcastTypeIndex.put(entry.getKey(), broadcast.getType());
+				broadcastStatusIndex.put(entry.getKey(), broadcast.getStatus());
+				liveBroadcastCounters.update(broadcast);
+			}
+			for (Map.Entry<String, String> entry : vodMap.entrySet()) {
+				vodStreamIdIndex.put(entry.getKey(), gson.fromJson(entry.getValue(), VoD.class).getStreamId());
+			}
+			for (Map.Entry<String, String> entry : tokenMap.entrySet()) {
+				tokenStreamIdIndex.put(entry.getKey(), gson.fromJson(entry.getValue(), Token.class).getStreamId());
+			}
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		logger.info("Indexes are built in {}ms for db:{}", System.currentTimeMillis() - startTime, dbName);
+	}
+	
+	/**
+	 * Creates the broadcast from its json and overrides the live fields with the ones in live fields map
+	 */
+	private Broadcast toBroadcast(String id, String jsonString) {
+		Broadcast broadcast = gson.fromJson(jsonString, Broadcast.class);
+		BroadcastLiveFields liveFields = liveFieldsMap.get(id);
+		if (liveFields != null) {
+			liveFields.applyTo(broadcast);
+		}
+		broadcast.setHlsViewerCount(hlsViewerCountMap.get(id));
+		broadcast.setWebRTCViewerCount(webRTCViewerCountMap.get(id));
+		broadcast.setRtmpViewerCount(rtmpViewerCountMap.get(id));
+		return broadcast;
+	}
+	
+	/**
+	 * Viewer counts of the broadcast are not written. Use {@link #putViewerCounts(String, Broadcast)}
+	 * if they should be overwritten as well
+	 */
+	private void putBroadcast(String id, Broadcast broadcast) {
+		map.put(id, gson.toJson(broadcast));
+		writeLiveFields(id, BroadcastLiveFields.of(broadcast));
+		broadcastTypeIndex.put(id, broadcast.getType());
+		broadcastStatusIndex.put(id, broadcast.getStatus());
+		liveBroadcastCounters.update(broadcast);
+	}
+	
+	private void putViewerCounts(String id, Broadcast broadcast) {
+		hlsViewerCountMap.set(id, broadcast.getHlsViewerCount());
+		webRTCViewerCountMap.set(id, broadcast.getWebRTCViewerCount());
+		rtmpViewerCountMap.set(id, broadcast.getRtmpViewerCount());
+	}
+	
+	private void putLiveFields(String id, BroadcastLiveFields liveFields) {
+		writeLiveFields(id, liveFields);
+		broadcastStatusIndex.put(id, liveFields.getStatus());
+		liveBroadcastCounters.updateStatus(id, liveFields.getStatus());
+	}
+	
+	/**
+	 * Viewer counts are kept in viewer count maps so they are written as zero to live fields map
+	 */
+	private void writeLiveFields(String id, BroadcastLiveFields liveFields) {
+		liveFields.setHlsViewerCount(0);
+		liveFields.setWebRTCViewerCount(0);
+		liveFields.setRtmpViewerCount(0);
+		liveFieldsMap.put(id, liveFields);
+	}
+	
+	/**
+	 * Sets the viewer counts of the broadcast to zero
+	 */
+	private void resetViewerCounts(String id) {
+		int hlsViewerCount = hlsViewerCountMap.reset(id);
+		int webRTCViewerCount = webRTCViewerCountMap.reset(id);
+		int rtmpViewerCount = rtmpViewerCountMap.reset(id);
+		liveBroadcastCounters.addViewerCount(id, -hlsViewerCount, -webRTCViewerCount, -rtmpViewerCount);
+	}
+	
+	private boolean removeBroadcast(String id) {
+		boolean result = map.remove(id) != null;
+		if (result) {
+			liveFieldsMap.remove(id);
+			hlsViewerCountMap.reset(id);
+			webRTCViewerCountMap.reset(id);
+			rtmpViewerCountMap.reset(id);
+			broadcastTypeIndex.remove(id);
+			broadcastStatusIndex.remove(id);
+			liveBroadcastCounters.remove(id);
+		}
+		return result;
+	}
+	
+	private List<Broadcast> getBroadcasts(Collection<String> ids) {
+		List<Broadcast> list = new ArrayList<>();
+		for (String id : ids) {
+			Broadcast broadcast = get(id);
+			//it may be deleted after ids are fetched
+			if (broadcast != null) {
+				list.add(broadcast);
+			}
+		}
+		return list;
+	}
 
 
 
@@ -130,43 +513,50 @@ public class MapDBStore extends DataStore {
 	public String save(Broadcast broadcast) {
 
 		String streamId = null;
-		synchronized (this) {
-			if (broadcast != null) {
-				try {
-					if (broadcast.getStreamId() == null) {
-						streamId = RandomStringUtils.randomNumeric(24);
-						broadcast.setStreamId(streamId);
-					}
-					streamId = broadcast.getStreamId();
-
-					String rtmpURL = broadcast.getRtmpURL();
-					if (rtmpURL != null) {
-						rtmpURL += streamId;
-					}
-					broadcast.setRtmpURL(rtmpURL);
-					if(broadcast.getStatus()==null) {
-						broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED);
-					}
-					map.put(streamId, gson.toJson(broadcast));
-					db.commit();
-				} catch (Exception e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-					streamId = null;
+		if (broadcast != null) {
+			if (broadcast.getStreamId() == null) {
+				streamId = RandomStringUtils.randomNumeric(24);
+				broadcast.setStreamId(streamId);
+			}
+			streamId = broadcast.getStreamId();
+			
+			broadcastLock.lockKey(streamId);
+			try {
+				String rtmpURL = broadcast.getRtmpURL();
+				if (rtmpURL != null) {
+					rtmpURL += streamId;
+				}
+				broadcast.setRtmpURL(rtmpURL);
+				if(broadcast.getStatus()==null) {
+					broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED);
 				}
+				putViewerCounts(streamId, broadcast);
+				putBroadcast(streamId, broadcast);
+				commit();
+				broadcastChangeListeners.notifyChanged(streamId);
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				streamId = null;
+			}
+			finally {
+				broadcastLock.unlockKey(broadcast.getStreamId());
 			}
 		}
 
 		return streamId;
 	}
 
+	@Override
+	public void addBroadcastChangeListener(Consumer<String> listener) {
+		broadcastChangeListeners.add(listener);
+	}
+
 	@Override
 	public Broadcast get(String id) {
-		synchronized (this) {
-			if (id != null) {
-				String jsonString = map.get(id);
-				if (jsonString != null) {
-					return gson.fromJson(jsonString, Broadcast.class);
-				}
+		if (id != null) {
+			String jsonString = map.get(id);
+			if (jsonString != null) {
+				return toBroadcast(id, jsonString);
 			}
 		}
 		return null;
@@ -174,12 +564,10 @@ public class MapDBStore extends DataStore {
 
 	@Override
 	public VoD getVoD(String id) {
-		synchronized (this) {
-			if (id != null) {
-				String jsonString = vodMap.get(id);
-				if (jsonString != null) {
-					return gson.fromJson(jsonString, VoD.class);
-				}
+		if (id != null) {
+			String jsonString = vodMap.get(id);
+			if (jsonString != null) {
+				return gson.fromJson(jsonString, VoD.class);
 			}
 		}
 		return null;
@@ -188,49 +576,109 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean updateStatus(String id, String status) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 			if (id != null) {
-				String jsonString = map.get(id);
-				if (jsonString != null) {
-					Broadcast broadcast = gson.fromJson(jsonString, Broadcast.class);
-					broadcast.setStatus(status);
-					if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-						broadcast.setStartTime(System.currentTimeMillis());
-					}
-					else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
-						broadcast.setRtmpViewerCount(0);
-						broadcast.setWebRTCViewerCount(0);
-						broadcast.setHlsViewerCount(0);
-					}
-					
-					String jsonVal = gson.toJson(broadcast);
-					String previousValue = map.replace(id, jsonVal);
-					db.commit();
-					logger.debug("updateStatus replacing id {} having value {} to {}", id, previousValue, jsonVal);
+				BroadcastLiveFields liveFields = liveFieldsMap.get(id);
+				if (liveFields != null) {
+					setStatus(id, liveFields, status);
+					putLiveFields(id, liveFields);
+					commit();
+					broadcastChangeListeners.notifyChanged(id);
+					logger.debug("updateStatus replacing id {} status to {}", id, status);
 					result = true;
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
+	
+	private void setStatus(String id, BroadcastLiveFields liveFields, String status) {
+		liveFields.setStatus(status);
+		if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
+			liveFields.setStartTime(System.currentTimeMillis());
+		}
+		else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
+			resetViewerCounts(id);
+		}
+	}
+	
+	private static void setSourceQualityParameters(BroadcastLiveFields liveFields, String quality, double speed, int pendingPacketQueue) {
+		liveFields.setSpeed(speed);
+		if (quality != null) {
+			liveFields.setQuality(quality);
+		}
+		liveFields.setPendingPacketSize(pendingPacketQueue);
+	}
+	
+	/**
+	 * Applies all updates under their own stream locks and commits them at once
+	 */
+	@Override
+	public int applyBatch(List<BroadcastUpdate> updates) {
+		int updatedCount = 0;
+		List<String> changedIds = new ArrayList<>();
+		boolean writeStats = isWriteStatsToDatastore();
+		for (BroadcastUpdate update : updates) {
+			String id = update.getStreamId();
+			if (id == null || !update.hasUpdate(writeStats)) {
+				continue;
+			}
+			broadcastLock.lockKey(id);
+			try {
+				BroadcastLiveFields liveFields = liveFieldsMap.get(id);
+				if (liveFields != null) {
+					if (update.getStatus() != null) {
+						setStatus(id, liveFields, update.getStatus());
+						changedIds.add(id);
+					}
+					if (writeStats) {
+						addHLSViewerCount(id, update.getHlsViewerDiff());
+						if (update.isSourceQualityUpdated()) {
+							setSourceQualityParameters(liveFields, update.getQuality(), update.getSpeed(), update.getPendingPacketSize());
+						}
+					}
+					putLiveFields(id, liveFields);
+					updatedCount++;
+				}
+			}
+			finally {
+				broadcastLock.unlockKey(id);
+			}
+		}
+		if (updatedCount > 0) {
+			commit(updatedCount);
+		}
+		//listeners are notified after the commit so that a cache reloading the broadcast gets the new value
+		for (String id : changedIds) {
+			broadcastChangeListeners.notifyChanged(id);
+		}
+		return updatedCount;
+	}
 
 	@Override
 	public boolean updateDuration(String id, long duration) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 			if (id != null) {
-				String jsonString = map.get(id);
-				if (jsonString != null) {
-					Broadcast broadcast = gson.fromJson(jsonString, Broadcast.class);
-					broadcast.setDuration(duration);
-					String jsonVal = gson.toJson(broadcast);
-					String previousValue = map.replace(id, jsonVal);
-					db.commit();
+				BroadcastLiveFields liveFields = liveFieldsMap.get(id);
+				if (liveFields != null) {
+					liveFields.setDuration(duration);
+					putLiveFields(id, liveFields);
+					commit();
+					broadcastChangeListeners.notifyChanged(id);
 					result = true;
-					logger.debug("updateStatus replacing id {} having value {} to {}", id, previousValue, jsonVal);
+					logger.debug("updateDuration replacing id {} duration to {}", id, duration);
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 
@@ -238,7 +686,8 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean addEndpoint(String id, Endpoint endpoint) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 			if (id != null && endpoint != null) {
 				String jsonString = map.get(id);
 				if (jsonString != null) {
@@ -250,18 +699,23 @@ public class MapDBStore extends DataStore {
 					endPointList.add(endpoint);
 					broadcast.setEndPointList(endPointList);
 					map.replace(id, gson.toJson(broadcast));
-					db.commit();
+					commit();
+					broadcastChangeListeners.notifyChanged(id);
 					result = true;
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 
 	@Override
 	public boolean removeEndpoint(String id, Endpoint endpoint, boolean checkRTMPUrl) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 
 			if (id != null && endpoint != null) {
 				String jsonString = map.get(id);
@@ -288,12 +742,16 @@ public class MapDBStore extends DataStore {
 						if (result) {
 							broadcast.setEndPointList(endPointList);
 							map.replace(id, gson.toJson(broadcast));
-							db.commit();
+							commit();
+							broadcastChangeListeners.notifyChanged(id);
 						}
 					}
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 
@@ -301,18 +759,23 @@ public class MapDBStore extends DataStore {
 	public boolean removeAllEndpoints(String id) {
 
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 			if (id != null) {
 				String jsonString = map.get(id);
 				if (jsonString != null) {
 					Broadcast broadcast = gson.fromJson(jsonString, Broadcast.class);
 					broadcast.setEndPointList(null);
 					map.replace(id, gson.toJson(broadcast));
-					db.commit();
+					commit();
+					broadcastChangeListeners.notifyChanged(id);
 					result = true;
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 	
@@ -323,62 +786,61 @@ public class MapDBStore extends DataStore {
 	 */
 	@Override
 	public long getBroadcastCount() {
-		synchronized (this) {
-			return map.getSize();
-		}
+		return map.getSize();
 	}
 
 	@Override
 	public long getActiveBroadcastCount() {
-		int activeBroadcastCount = 0;
-		synchronized (this) {
-			Collection<String> values = map.values();
-			for (String broadcastString : values) {
-				Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
-				String status = broadcast.getStatus();
-				if (status != null && status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-					activeBroadcastCount++;
-				}
+		reconcileCountersIfNeeded();
+		return liveBroadcastCounters.getBroadcastingCount();
+	}
+	
+	@Override
+	public long getLocalLiveBroadcastCount(String hostAddress) {
+		reconcileCountersIfNeeded();
+		return liveBroadcastCounters.getLocalLiveBroadcastCount(hostAddress);
+	}
+	
+	private void reconcileCountersIfNeeded() {
+		liveBroadcastCounters.reconcileIfNeeded(counters -> {
+			for (Map.Entry<String, BroadcastLiveFields> entry : liveFieldsMap.entrySet()) {
+				String id = entry.getKey();
+				counters.updateLiveFields(id, entry.getValue().getStatus(), hlsViewerCountMap.get(id), 
+						webRTCViewerCountMap.get(id), rtmpViewerCountMap.get(id));
 			}
-		}
-		return activeBroadcastCount;
+		});
 	}
 
 	@Override
 	public boolean delete(String id) {
 		boolean result = false;
-		synchronized (this) {
-			result = map.remove(id) != null;
+		broadcastLock.lockKey(id);
+		try {
+			result = removeBroadcast(id);
 			if (result) {
-				db.commit();
+				commit();
+				broadcastChangeListeners.notifyChanged(id);
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 
 	@Override
 	public List<Broadcast> getBroadcastList(int offset, int size, String type, String sortBy, String orderBy) {
-		ArrayList<Broadcast> list = new ArrayList<>();
-		synchronized (this) {
-			
-			Collection<String> broadcasts = map.getValues();
+		List<Broadcast> list;
 
-			if(type != null && !type.isEmpty()) {
-				for (String broadcastString : broadcasts) 
-				{
-					Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
-					
-					if (broadcast.getType().equals(type)) {
-						list.add(broadcast);
-					}
-				}
-			}
-			else {
-				for (String broadcastString : broadcasts) 
-				{
-					Broadcast broadcast = gson.fromJson(broadcastString, Broadcast.class);
-					list.add(broadcast);
-				}
+		if(type != null && !type.isEmpty()) {
+			list = getBroadcasts(broadcastTypeIndex.getIds(type));
+		}
+		else {
+			list = new ArrayList<>();
+			for (Map.Entry<String, String> entry : map.entrySet()) 
+			{
+				Broadcast broadcast = toBroadcast(entry.getKey(), entry.getValue());
+				list.add(broadcast);
 			}
 		}
 		return sortAndCropBroadcastList(list, offset, size, sortBy, orderBy);
@@ -390,22 +852,22 @@ public class MapDBStore extends DataStore {
 	@Override
 	public List<VoD> getVodList(int offset, int size, String sortBy, String orderBy, String streamId) {
 		ArrayList<VoD> vods = new ArrayList<>();
-		synchronized (this) {
+		if (streamId != null && !streamId.isEmpty()) 
+		{
+			for (String vodId : vodStreamIdIndex.getIds(streamId)) {
+				VoD vod = getVoD(vodId);
+				if (vod != null) {
+					vods.add(vod);
+				}
+			}
+		}
+		else {
 			Collection<String> values = vodMap.values();
 			int length = values.size();
 			int i = 0;
 			for (String vodString : values) 
 			{
-				VoD vod = gson.fromJson(vodString, VoD.class);
-				if (streamId != null && !streamId.isEmpty()) 
-				{
-					if (vod.getStreamId().equals(streamId)) {
-						vods.add(vod);
-					}
-				}
-				else {
-					vods.add(vod);
-				}
+				vods.add(gson.fromJson(vodString, VoD.class));
 				
 				i++;
 				if (i > length) {
@@ -413,29 +875,48 @@ public class MapDBStore extends DataStore {
 					break;
 				}
 			}
-			return sortAndCropVodList(vods, offset, size, sortBy, orderBy);
 		}
+		return sortAndCropVodList(vods, offset, size, sortBy, orderBy);
+	}
+
+	@Override
+	public CursorPage<Broadcast> getBroadcastListAfter(String cursor, int size, String type) {
+		NavigableSet<String> ids = (type != null && !type.isEmpty()) ? broadcastTypeIndex.getIds(type) : map.navigableKeySet();
+		return CursorPage.of(ids, cursor, size, this::get);
+	}
+	
+	@Override
+	public CursorPage<VoD> getVodListAfter(String cursor, int size, String streamId) {
+		NavigableSet<String> ids = (streamId != null && !streamId.isEmpty()) ? vodStreamIdIndex.getIds(streamId) : vodMap.navigableKeySet();
+		return CursorPage.of(ids, cursor, size, this::getVoD);
+	}
+	
+	@Override
+	public CursorPage<Token> listTokensAfter(String streamId, String cursor, int size) {
+		return CursorPage.of(tokenStreamIdIndex.getIds(streamId), cursor, size, this::getToken);
 	}
 
 	@Override
 	public String addVod(VoD vod) {
 
 		String id = null;
-		synchronized (this) {
-			try {
-				if (vod.getVodId() == null) {
-					vod.setVodId(RandomStringUtils.randomNumeric(24));
-				}
-				id = vod.getVodId();
-				vodMap.put(vod.getVodId(), gson.toJson(vod));
-				db.commit();
-				logger.warn("VoD is saved to DB {} with voID {}", vod.getVodName(), id);
-
-			} catch (Exception e) {
-				logger.error(e.getMessage());
-				id = null;
-			}
-
+		if (vod.getVodId() == null) {
+			vod.setVodId(RandomStringUtils.randomNumeric(24));
+		}
+		vodLock.lockKey(vod.getVodId());
+		try {
+			id = vod.getVodId();
+			vodMap.put(vod.getVodId(), gson.toJson(vod));
+			vodStreamIdIndex.put(vod.getVodId(), vod.getStreamId());
+			commit();
+			logger.warn("VoD is saved to DB {} with voID {}", vod.getVodName(), id);
+
+		} catch (Exception e) {
+			logger.error(e.getMessage());
+			id = null;
+		}
+		finally {
+			vodLock.unlockKey(vod.getVodId());
 		}
 		return id;
 	}
@@ -444,37 +925,45 @@ public class MapDBStore extends DataStore {
 	@Override
 	public List<Broadcast> getExternalStreamsList() {
 
-		List<Broadcast> streamsList = new ArrayList<>();
-
-		synchronized (this) {
-
-			Object[] objectArray = map.getValues().toArray();
-			Broadcast[] broadcastArray = new Broadcast[objectArray.length];
-
+		Set<String> ids = new TreeSet<>(broadcastTypeIndex.getIds(AntMediaApplicationAdapter.IP_CAMERA));
+		ids.addAll(broadcastTypeIndex.getIds(AntMediaApplicationAdapter.STREAM_SOURCE));
 
-			for (int i = 0; i < objectArray.length; i++) {
-
-				broadcastArray[i] = gson.fromJson((String) objectArray[i], Broadcast.class);
-
-			}
-
-			for (int i = 0; i < broadcastArray.length; i++) {
-
-				if (broadcastArray[i].getType().equals(AntMediaApplicationAdapter.IP_CAMERA) || broadcastArray[i].getType().equals(AntMediaApplicationAdapter.STREAM_SOURCE)) {
-
-					streamsList.add(gson.fromJson((String) objectArray[i], Broadcast.class));
-				}
-			}
-		}
-		return streamsList;
+		return getBroadcasts(ids);
 	}
 
 	@Override
 	public void close() {
-		synchronized (this) {
+		StripedMapLock[] locks = {broadcastLock, vodLock, detectionLock, socialEndpointsLock, tokenLock, conferenceRoomLock, playlistLock};
+		for (StripedMapLock lock : locks) {
+			lock.lockAll();
+		}
+		try {
 			available = false;
+			if (groupCommitExecutor != null) {
+				//let the running group commit finish instead of interrupting it in the middle of a commit
+				groupCommitExecutor.shutdown();
+				awaitGroupCommitTermination();
+			}
+			flush();
 			db.close();
 		}
+		finally {
+			for (StripedMapLock lock : locks) {
+				lock.unlockAll();
+			}
+		}
+	}
+
+	private void awaitGroupCommitTermination() {
+		try {
+			if (!groupCommitExecutor.awaitTermination(GROUP_COMMIT_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				logger.warn("Group commit is not finished in {}ms for db:{}", GROUP_COMMIT_TERMINATION_TIMEOUT_MS, dbName);
+			}
+		}
+		catch (InterruptedException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	@Override
@@ -482,20 +971,23 @@ public class MapDBStore extends DataStore {
 
 		boolean result = false;
 
-		synchronized (this) {
+		vodLock.lockKey(id);
+		try {
 			result = vodMap.remove(id) != null;
 			if (result) {
-				db.commit();
+				vodStreamIdIndex.remove(id);
+				commit();
 			}
 		}
+		finally {
+			vodLock.unlockKey(id);
+		}
 		return result;
 	}
 
 	@Override
 	public long getTotalVodNumber() {
-		synchronized (this) {
-			return vodMap.size();
-		}
+		return vodMap.size();
 	}
 
 	@Override
@@ -507,7 +999,8 @@ public class MapDBStore extends DataStore {
 
 		int numberOfSavedFiles = 0;
 
-		synchronized (this) {
+		vodLock.lockAll();
+		try {
 			int i = 0;
 			
 			Collection<String> vodFiles = vodMap.values();
@@ -531,7 +1024,8 @@ public class MapDBStore extends DataStore {
 				if (vod.getType().equals(VoD.USER_VOD)) {
 					result = vodMap.remove(vod.getVodId()) != null;
 					if (result) {
-						db.commit();
+						vodStreamIdIndex.remove(vod.getVodId());
+						commit();
 					}
 					else {
 						logger.error("MapDB VoD is not synchronized. It's likely db files({}) is damaged", dbName);
@@ -571,6 +1065,9 @@ public class MapDBStore extends DataStore {
 				}
 			}
 		}
+		finally {
+			vodLock.unlockAll();
+		}
 
 		return numberOfSavedFiles;
 	}
@@ -579,29 +1076,29 @@ public class MapDBStore extends DataStore {
 	@Override
 	protected boolean updateSourceQualityParametersLocal(String id, String quality, double speed, int pendingPacketQueue) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(id);
+		try {
 			if (id != null) {
-				String jsonString = map.get(id);
-				if (jsonString != null) {
-					Broadcast broadcast = gson.fromJson(jsonString, Broadcast.class);
-					broadcast.setSpeed(speed);
-					if (quality != null) {
-						broadcast.setQuality(quality);
-					}
-					broadcast.setPendingPacketSize(pendingPacketQueue);
-					map.replace(id, gson.toJson(broadcast));
-					db.commit();
+				BroadcastLiveFields liveFields = liveFieldsMap.get(id);
+				if (liveFields != null) {
+					setSourceQualityParameters(liveFields, quality, speed, pendingPacketQueue);
+					putLiveFields(id, liveFields);
+					commit();
 					result = true;
 
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(id);
+		}
 		return result;
 	}
 
 	public SocialEndpointCredentials addSocialEndpointCredentials(SocialEndpointCredentials credentials) {
 		SocialEndpointCredentials addedCredential = null;
-		synchronized (this) {
+		socialEndpointsLock.lockAll();
+		try {
 
 			if (credentials != null && credentials.getAccountName() != null && credentials.getAccessToken() != null
 					&& credentials.getServiceName() != null) 
@@ -611,7 +1108,7 @@ public class MapDBStore extends DataStore {
 					String id = RandomStringUtils.randomAlphanumeric(6);
 					credentials.setId(id);
 					socialEndpointsCredentialsMap.put(id, gson.toJson(credentials));
-					db.commit();
+					commit();
 					addedCredential = credentials;
 				}	
 				else {
@@ -620,7 +1117,7 @@ public class MapDBStore extends DataStore {
 					{
 						//replace the field if id exists
 						socialEndpointsCredentialsMap.put(credentials.getId(), gson.toJson(credentials));
-						db.commit();
+						commit();
 						addedCredential = credentials;
 					}
 					else {
@@ -641,6 +1138,9 @@ public class MapDBStore extends DataStore {
 				}
 			}
 		}
+		finally {
+			socialEndpointsLock.unlockAll();
+		}
 		return addedCredential;
 	}
 
@@ -649,30 +1149,28 @@ public class MapDBStore extends DataStore {
 
 		List<SocialEndpointCredentials> list = new ArrayList<>();
 
-		synchronized (this) {
-			Collection<String> values = socialEndpointsCredentialsMap.values();
-			int t = 0;
-			int itemCount = 0;
-			if (size > MAX_ITEM_IN_ONE_LIST) {
-				size = MAX_ITEM_IN_ONE_LIST;
-			}
-			if (offset < 0) {
-				offset = 0;
-			}
-
-			for (String credentialString : values) {
-				if (t < offset) {
-					t++;
-					continue;
-				}
-				list.add(gson.fromJson(credentialString, SocialEndpointCredentials.class));
-				itemCount++;
+		Collection<String> values = socialEndpointsCredentialsMap.values();
+		int t = 0;
+		int itemCount = 0;
+		if (size > MAX_ITEM_IN_ONE_LIST) {
+			size = MAX_ITEM_IN_ONE_LIST;
+		}
+		if (offset < 0) {
+			offset = 0;
+		}
 
-				if (itemCount >= size) {
-					break;
-				}
+		for (String credentialString : values) {
+			if (t < offset) {
+				t++;
+				continue;
+			}
+			list.add(gson.fromJson(credentialString, SocialEndpointCredentials.class));
+			itemCount++;
 
+			if (itemCount >= size) {
+				break;
 			}
+
 		}
 		return list;
 	}
@@ -680,24 +1178,26 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean removeSocialEndpointCredentials(String id) {
 		boolean result = false;
-		synchronized (this) {
+		socialEndpointsLock.lockKey(id);
+		try {
 			result = socialEndpointsCredentialsMap.remove(id) != null;
 			if (result) {
-				db.commit();
+				commit();
 			}
 		}
+		finally {
+			socialEndpointsLock.unlockKey(id);
+		}
 		return result;
 	}
 
 	@Override
 	public SocialEndpointCredentials getSocialEndpointCredentials(String id) {
 		SocialEndpointCredentials credential = null;
-		synchronized (this) {
-			if (id != null) {
-				String jsonString = socialEndpointsCredentialsMap.get(id);
-				if (jsonString != null) {
-					credential = gson.fromJson(jsonString, SocialEndpointCredentials.class);
-				}
+		if (id != null) {
+			String jsonString = socialEndpointsCredentialsMap.get(id);
+			if (jsonString != null) {
+				credential = gson.fromJson(jsonString, SocialEndpointCredentials.class);
 			}
 		}
 		return credential;
@@ -706,38 +1206,36 @@ public class MapDBStore extends DataStore {
 
 	@Override
 	public long getTotalBroadcastNumber() {
-		synchronized (this) {
-			return map.size();
-		}
+		return map.size();
 	}
 
 
 	public void saveDetection(String id, long timeElapsed, List<TensorFlowObject> detectedObjects) {
-		synchronized (this) {
-			try {
-				if (detectedObjects != null) {
-					for (TensorFlowObject tensorFlowObject : detectedObjects) {
-						tensorFlowObject.setDetectionTime(timeElapsed);
-					}
-					detectionMap.put(id, gson.toJson(detectedObjects));
-					db.commit();
+		detectionLock.lockKey(id);
+		try {
+			if (detectedObjects != null) {
+				for (TensorFlowObject tensorFlowObject : detectedObjects) {
+					tensorFlowObject.setDetectionTime(timeElapsed);
 				}
-			} catch (Exception e) {
-				logger.error(e.getMessage());
+				detectionMap.put(id, gson.toJson(detectedObjects));
+				commit();
 			}
+		} catch (Exception e) {
+			logger.error(e.getMessage());
+		}
+		finally {
+			detectionLock.unlockKey(id);
 		}
 	}
 
 	@Override
 	public List<TensorFlowObject> getDetection(String id) {
 
-		synchronized (this) {
-			if (id != null) {
-				String jsonString = detectionMap.get(id);
-				if (jsonString != null) {
-					Type listType = new TypeToken<ArrayList<TensorFlowObject>>(){}.getType();
-					return gson.fromJson(jsonString, listType);
-				}
+		if (id != null) {
+			String jsonString = detectionMap.get(id);
+			if (jsonString != null) {
+				Type listType = new TypeToken<ArrayList<TensorFlowObject>>(){}.getType();
+				return gson.fromJson(jsonString, listType);
 			}
 		}
 		return null;
@@ -748,30 +1246,28 @@ public class MapDBStore extends DataStore {
 
 		List<TensorFlowObject> list = new ArrayList<>();
 
-		synchronized (this) {
-			Type listType = new TypeToken<ArrayList<TensorFlowObject>>(){}.getType();
-			int offsetCount = 0;
-			int batchCount = 0;
+		Type listType = new TypeToken<ArrayList<TensorFlowObject>>(){}.getType();
+		int offsetCount = 0;
+		int batchCount = 0;
 
-			if (batchSize > MAX_ITEM_IN_ONE_LIST) {
-				batchSize = MAX_ITEM_IN_ONE_LIST;
-			}
+		if (batchSize > MAX_ITEM_IN_ONE_LIST) {
+			batchSize = MAX_ITEM_IN_ONE_LIST;
+		}
 
-			for (Iterator<String> keyIterator =  detectionMap.keyIterator(); keyIterator.hasNext();) {
-				String keyValue = keyIterator.next();
-				if (keyValue.startsWith(idFilter)) 
-				{
-					if (offsetCount < offsetSize) {
-						offsetCount++;
-						continue;
-					}
-					if (batchCount >= batchSize) {
-						break;
-					}
-					List<TensorFlowObject> detectedList = gson.fromJson(detectionMap.get(keyValue), listType);
-					list.addAll(detectedList);
-					batchCount=list.size();
+		for (Iterator<String> keyIterator =  detectionMap.keyIterator(); keyIterator.hasNext();) {
+			String keyValue = keyIterator.next();
+			if (keyValue.startsWith(idFilter)) 
+			{
+				if (offsetCount < offsetSize) {
+					offsetCount++;
+					continue;
+				}
+				if (batchCount >= batchSize) {
+					break;
 				}
+				List<TensorFlowObject> detectedList = gson.fromJson(detectionMap.get(keyValue), listType);
+				list.addAll(detectedList);
+				batchCount=list.size();
 			}
 		}
 		return list;
@@ -784,15 +1280,12 @@ public class MapDBStore extends DataStore {
 
 		Type listType = new TypeToken<ArrayList<TensorFlowObject>>(){}.getType();
 
-		synchronized (this) {
-
-			for (Iterator<String> keyIterator =  detectionMap.keyIterator(); keyIterator.hasNext();) {
-				String keyValue = keyIterator.next();
-				if (keyValue.startsWith(id)) 
-				{
-					List<TensorFlowObject> detectedList = gson.fromJson(detectionMap.get(keyValue), listType);
-					list.addAll(detectedList);
-				}
+		for (Iterator<String> keyIterator =  detectionMap.keyIterator(); keyIterator.hasNext();) {
+			String keyValue = keyIterator.next();
+			if (keyValue.startsWith(id)) 
+			{
+				List<TensorFlowObject> detectedList = gson.fromJson(detectionMap.get(keyValue), listType);
+				list.addAll(detectedList);
 			}
 		}
 		return list.size();
@@ -808,22 +1301,25 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean updateBroadcastFields(String streamId, Broadcast broadcast) {
 		boolean result = false;
-		synchronized (this) {
-			try {
-				logger.debug("inside of editStreamSourceInfo {}", broadcast.getStreamId());
-				Broadcast oldBroadcast = get(streamId);
-				if (oldBroadcast != null) 
-				{
+		broadcastLock.lockKey(streamId);
+		try {
+			logger.debug("inside of editStreamSourceInfo {}", broadcast.getStreamId());
+			Broadcast oldBroadcast = get(streamId);
+			if (oldBroadcast != null) 
+			{
 
-					updateStreamInfo(oldBroadcast, broadcast);
-					map.replace(streamId, gson.toJson(oldBroadcast));
+				updateStreamInfo(oldBroadcast, broadcast);
+				putBroadcast(streamId, oldBroadcast);
 
-					db.commit();
-					result = true;
-				}
-			} catch (Exception e) {
-				result = false;
+				commit();
+				broadcastChangeListeners.notifyChanged(streamId);
+				result = true;
 			}
+		} catch (Exception e) {
+			result = false;
+		}
+		finally {
+			broadcastLock.unlockKey(streamId);
 		}
 
 		logger.debug("result inside edit camera:{} ", result);
@@ -831,74 +1327,65 @@ public class MapDBStore extends DataStore {
 	}
 
 	@Override
-	protected synchronized boolean updateHLSViewerCountLocal(String streamId, int diffCount) {
+	protected boolean updateHLSViewerCountLocal(String streamId, int diffCount) {
 		boolean result = false;
-		synchronized (this) {
-			
-			if (streamId != null) {
-				Broadcast broadcast = get(streamId);
-				if (broadcast != null) {
-					int hlsViewerCount = broadcast.getHlsViewerCount();
-					hlsViewerCount += diffCount;
-					broadcast.setHlsViewerCount(hlsViewerCount);
-					map.replace(streamId, gson.toJson(broadcast));
-					db.commit();
-					result = true;
-				}
-			}
+		if (streamId != null && liveFieldsMap.containsKey(streamId)) {
+			addHLSViewerCount(streamId, diffCount);
+			removeViewerCountsIfDeleted(streamId);
+			commit();
+			result = true;
 		}
 		return result;
 	}
+	
+	private void addHLSViewerCount(String streamId, int diffCount) {
+		if (diffCount != 0 && hlsViewerCountMap.add(streamId, diffCount, false)) {
+			liveBroadcastCounters.addViewerCount(streamId, diffCount, 0, 0);
+		}
+	}
 
 	@Override
-	protected synchronized boolean updateWebRTCViewerCountLocal(String streamId, boolean increment) {
+	protected boolean updateWebRTCViewerCountLocal(String streamId, boolean increment) {
 		boolean result = false;
-		synchronized (this) {
-			if (streamId != null) {
-				Broadcast broadcast = get(streamId);
-				if (broadcast != null) {
-					int webRTCViewerCount = broadcast.getWebRTCViewerCount();
-					if (increment) {
-						webRTCViewerCount++;
-					}
-					else {
-						webRTCViewerCount--;
-					}
-					if(webRTCViewerCount >= 0) {
-						broadcast.setWebRTCViewerCount(webRTCViewerCount);
-						map.replace(streamId, gson.toJson(broadcast));
-						result = true;
-					}
-				}
+		if (streamId != null && liveFieldsMap.containsKey(streamId)) {
+			int diff = increment ? 1 : -1;
+			if (webRTCViewerCountMap.add(streamId, diff, true)) {
+				liveBroadcastCounters.addViewerCount(streamId, 0, diff, 0);
+				removeViewerCountsIfDeleted(streamId);
+				commit();
+				result = true;
 			}
 		}
 		return result;
 	}
 
 	@Override
-	protected synchronized boolean updateRtmpViewerCountLocal(String streamId, boolean increment) {
+	protected boolean updateRtmpViewerCountLocal(String streamId, boolean increment) {
 		boolean result = false;
-		synchronized (this) {
-			if (streamId != null) {
-				Broadcast broadcast = get(streamId);
-				if (broadcast != null) {
-					int rtmpViewerCount = broadcast.getRtmpViewerCount();
-					if (increment) {
-						rtmpViewerCount++;
-					}
-					else { 
-						rtmpViewerCount--;
-					}
-					if(rtmpViewerCount >= 0) {
-						broadcast.setRtmpViewerCount(rtmpViewerCount);
-						map.replace(streamId, gson.toJson(broadcast));
-						result = true;
-					}
-				}
+		if (streamId != null && liveFieldsMap.containsKey(streamId)) {
+			int diff = increment ? 1 : -1;
+			if (rtmpViewerCountMap.add(streamId, diff, true)) {
+				liveBroadcastCounters.addViewerCount(streamId, 0, 0, diff);
+				removeViewerCountsIfDeleted(streamId);
+				commit();
+				result = true;
 			}
 		}
 		return result;
 	}
+	
+	/**
+	 * Viewer updates do not lock the broadcast. If broadcast is deleted concurrently, 
+	 * remove the count that may be written after the deletion
+	 */
+	private void removeViewerCountsIfDeleted(String streamId) {
+		if (!liveFieldsMap.containsKey(streamId)) {
+			hlsViewerCountMap.reset(streamId);
+			webRTCViewerCountMap.reset(streamId);
+			rtmpViewerCountMap.reset(streamId);
+			liveBroadcastCounters.remove(streamId);
+		}
+	}
 
 	@Override
 	public void addStreamInfoList(List<StreamInfo> streamInfoList) {
@@ -917,20 +1404,25 @@ public class MapDBStore extends DataStore {
 	public boolean saveToken(Token token) {
 		boolean result = false;
 
-		synchronized (this) {
+		tokenLock.lockKey(token.getTokenId());
+		try {
 
 			if(token.getStreamId() != null && token.getTokenId() != null) {
 
 
 				try {
 					tokenMap.put(token.getTokenId(), gson.toJson(token));
-					db.commit();
+					tokenStreamIdIndex.put(token.getTokenId(), token.getStreamId());
+					commit();
 					result = true;
 				} catch (Exception e) {
 					logger.error(ExceptionUtils.getStackTrace(e));
 				}
 			}
 		}
+		finally {
+			tokenLock.unlockKey(token.getTokenId());
+		}
 
 		return result;
 	}
@@ -939,7 +1431,8 @@ public class MapDBStore extends DataStore {
 	public Token validateToken(Token token) {
 		Token fetchedToken = null;
 
-		synchronized (this) {
+		tokenLock.lockKey(token.getTokenId());
+		try {
 			if (token.getTokenId() != null) {
 				String jsonToken = tokenMap.get(token.getTokenId());
 				if (jsonToken != null) {
@@ -953,7 +1446,8 @@ public class MapDBStore extends DataStore {
 
 								boolean result = tokenMap.remove(token.getTokenId()) != null;
 								if (result) {
-									db.commit();
+									tokenStreamIdIndex.remove(token.getTokenId());
+									commit();
 								}
 							}
 							else{
@@ -968,6 +1462,9 @@ public class MapDBStore extends DataStore {
 				}
 			}
 		}
+		finally {
+			tokenLock.unlockKey(token.getTokenId());
+		}
 
 		return fetchedToken;
 	}
@@ -976,23 +1473,24 @@ public class MapDBStore extends DataStore {
 	public boolean revokeTokens(String streamId) {
 		boolean result = false;
 
-		synchronized (this) {
-			Object[] objectArray = tokenMap.getValues().toArray();
-			Token[] tokenArray = new Token[objectArray.length];
+		tokenLock.lockAll();
+		try {
+			//copy ids because index is updated while removing
+			List<String> tokenIds = new ArrayList<>(tokenStreamIdIndex.getIds(streamId));
 
-			for (int i = 0; i < objectArray.length; i++) {
-				tokenArray[i] = gson.fromJson((String) objectArray[i], Token.class);
-			}
-
-			for (int i = 0; i < tokenArray.length; i++) {
-				if (tokenArray[i].getStreamId().equals(streamId)) {
-					result = tokenMap.remove(tokenArray[i].getTokenId()) != null;
-					if(!result) {
-						break;
-					}
+			for (String tokenId : tokenIds) {
+				result = tokenMap.remove(tokenId) != null;
+				if(!result) {
+					break;
 				}
-				db.commit();
+				tokenStreamIdIndex.remove(tokenId);
 			}
+			if (!tokenIds.isEmpty()) {
+				commit();
+			}
+		}
+		finally {
+			tokenLock.unlockAll();
 		}
 		return result;
 	}
@@ -1000,53 +1498,41 @@ public class MapDBStore extends DataStore {
 	@Override
 	public List<Token> listAllTokens(String streamId, int offset, int size) {
 
-		List<Token> list = new ArrayList<>();
 		List<Token> listToken = new ArrayList<>();
 
-		synchronized (this) {
-			Collection<String> values = tokenMap.values();
-			int t = 0;
-			int itemCount = 0;
-			if (size > MAX_ITEM_IN_ONE_LIST) {
-				size = MAX_ITEM_IN_ONE_LIST;
-			}
-			if (offset < 0) {
-				offset = 0;
-			}
-
-			Iterator<String> iterator = values.iterator();
+		int t = 0;
+		int itemCount = 0;
+		if (size > MAX_ITEM_IN_ONE_LIST) {
+			size = MAX_ITEM_IN_ONE_LIST;
+		}
+		if (offset < 0) {
+			offset = 0;
+		}
 
-			while(iterator.hasNext()) {
-				Token token = gson.fromJson(iterator.next(), Token.class);
+		Iterator<String> iterator = tokenStreamIdIndex.getIds(streamId).iterator();
 
-				if(token.getStreamId().equals(streamId)) {
-					list.add(token);
-				}
+		while(itemCount < size && iterator.hasNext()) {
+			String tokenId = iterator.next();
+			if (t < offset) {
+				t++;
 			}
-
-			Iterator<Token> listIterator = list.iterator();
-
-			while(itemCount < size && listIterator.hasNext()) {
-				if (t < offset) {
-					t++;
-					listIterator.next();
-				}
-				else {
-
-					listToken.add(listIterator.next());
+			else {
+				Token token = getToken(tokenId);
+				if (token != null) {
+					listToken.add(token);
 					itemCount++;
-
 				}
 			}
-
 		}
+
 		return listToken;
 	}
 
 	@Override
 	public boolean setMp4Muxing(String streamId, int enabled) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(streamId);
+		try {
 			if (streamId != null) {
 				String jsonString = map.get(streamId);
 				if (jsonString != null && (enabled == MuxAdaptor.RECORDING_ENABLED_FOR_STREAM || enabled == MuxAdaptor.RECORDING_NO_SET_FOR_STREAM || enabled == MuxAdaptor.RECORDING_DISABLED_FOR_STREAM)) {			
@@ -1055,18 +1541,23 @@ public class MapDBStore extends DataStore {
 					broadcast.setMp4Enabled(enabled);
 					map.replace(streamId, gson.toJson(broadcast));
 
-					db.commit();
+					commit();
+					broadcastChangeListeners.notifyChanged(streamId);
 					result = true;
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(streamId);
+		}
 		return result;
 	}
 
 	@Override
 	public boolean setWebMMuxing(String streamId, int enabled) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(streamId);
+		try {
 			if (streamId != null) {
 				String jsonString = map.get(streamId);
 				if (jsonString != null && (enabled == MuxAdaptor.RECORDING_ENABLED_FOR_STREAM || enabled == MuxAdaptor.RECORDING_NO_SET_FOR_STREAM || enabled == MuxAdaptor.RECORDING_DISABLED_FOR_STREAM)) {			
@@ -1075,11 +1566,15 @@ public class MapDBStore extends DataStore {
 					broadcast.setWebMEnabled(enabled);
 					map.replace(streamId, gson.toJson(broadcast));
 
-					db.commit();
+					commit();
+					broadcastChangeListeners.notifyChanged(streamId);
 					result = true;
 				}
 			}
 		}
+		finally {
+			broadcastLock.unlockKey(streamId);
+		}
 		return result;
 	}
 	
@@ -1092,58 +1587,67 @@ public class MapDBStore extends DataStore {
 
 	@Override
 	public boolean createConferenceRoom(ConferenceRoom room) {
-		synchronized (this) {
-			boolean result = false;
+		boolean result = false;
 
-			if (room != null && room.getRoomId() != null) {
+		if (room != null && room.getRoomId() != null) {
+			conferenceRoomLock.lockKey(room.getRoomId());
+			try {
 				conferenceRoomMap.put(room.getRoomId(), gson.toJson(room));
-				db.commit();
+				commit();
 				result = true;
 			}
-
-			return result;
+			finally {
+				conferenceRoomLock.unlockKey(room.getRoomId());
+			}
 		}
+
+		return result;
 	}
 
 	@Override
 	public boolean editConferenceRoom(String roomId, ConferenceRoom room) {
-		synchronized (this) {
+		conferenceRoomLock.lockKey(roomId);
+		try {
 			boolean result = false;
 
 			if (roomId != null && room != null && room.getRoomId() != null) {
 				result = conferenceRoomMap.replace(roomId, gson.toJson(room)) != null;
 				if (result) {
-					db.commit();
+					commit();
 				}
 			}
 			return result;
 		}
+		finally {
+			conferenceRoomLock.unlockKey(roomId);
+		}
 	}
 
 	@Override
 	public boolean deleteConferenceRoom(String roomId) {
-		synchronized (this) 
-		{		
+		conferenceRoomLock.lockKey(roomId);
+		try {
 			boolean result = false;
 
 			if (roomId != null && !roomId.isEmpty()) {
 				result = conferenceRoomMap.remove(roomId) != null;
 				if (result) {
-					db.commit();
+					commit();
 				}
 			}
 			return result;
 		}
+		finally {
+			conferenceRoomLock.unlockKey(roomId);
+		}
 	}
 
 	@Override
 	public ConferenceRoom getConferenceRoom(String roomId) {
-		synchronized (this) {
-			if (roomId != null) {
-				String jsonString = conferenceRoomMap.get(roomId);
-				if (jsonString != null) {
-					return gson.fromJson(jsonString, ConferenceRoom.class);
-				}
+		if (roomId != null) {
+			String jsonString = conferenceRoomMap.get(roomId);
+			if (jsonString != null) {
+				return gson.fromJson(jsonString, ConferenceRoom.class);
 			}
 		}
 		return null;
@@ -1154,24 +1658,27 @@ public class MapDBStore extends DataStore {
 
 		boolean result = false;
 
-		synchronized (this) {
+		tokenLock.lockKey(tokenId);
+		try {
 			result = tokenMap.remove(tokenId) != null;
 			if (result) {
-				db.commit();
+				tokenStreamIdIndex.remove(tokenId);
+				commit();
 			}
 		}
+		finally {
+			tokenLock.unlockKey(tokenId);
+		}
 		return result;
 	}
 
 	@Override
 	public Token getToken(String tokenId) {
 		Token token = null;
-		synchronized (this) {
-			if (tokenId != null) {
-				String jsonString = tokenMap.get(tokenId);
-				if (jsonString != null) {
-					token = gson.fromJson(jsonString, Token.class);
-				}
+		if (tokenId != null) {
+			String jsonString = tokenMap.get(tokenId);
+			if (jsonString != null) {
+				token = gson.fromJson(jsonString, Token.class);
 			}
 		}
 		return token;
@@ -1199,7 +1706,8 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean addSubTrack(String mainTrackId, String subTrackId) {
 		boolean result = false;
-		synchronized (this) {
+		broadcastLock.lockKey(mainTrackId);
+		try {
 			String json = map.get(mainTrackId);
 			Broadcast mainTrack = gson.fromJson(json, Broadcast.class);
 			List<String> subTracks = mainTrack.getSubTrackStreamIds();
@@ -1209,9 +1717,13 @@ public class MapDBStore extends DataStore {
 			subTracks.add(subTrackId);
 			mainTrack.setSubTrackStreamIds(subTracks);
 			map.replace(mainTrackId, gson.toJson(mainTrack));
-			db.commit();
+			commit();
+			broadcastChangeListeners.notifyChanged(mainTrackId);
 			result = true;
 		}
+		finally {
+			broadcastLock.unlockKey(mainTrackId);
+		}
 
 		return result;
 	}
@@ -1219,29 +1731,31 @@ public class MapDBStore extends DataStore {
 	@Override
 	public boolean createPlaylist(Playlist playlist) {
 		
-		synchronized (this) {
-			boolean result = false;
+		boolean result = false;
 
-			if (playlist != null && playlist.getPlaylistId() != null) {
+		if (playlist != null && playlist.getPlaylistId() != null) {
+			playlistLock.lockKey(playlist.getPlaylistId());
+			try {
 				playlistMap.put(playlist.getPlaylistId(), gson.toJson(playlist));
-				db.commit();
+				commit();
 				result = true;
 			}
-
-			return result;
+			finally {
+				playlistLock.unlockKey(playlist.getPlaylistId());
+			}
 		}
+
+		return result;
 	}
 	
 	@Override
 	public Playlist getPlaylist(String playlistId) {
 
 		Playlist playlist = null;
-		synchronized (this) {
-			if (playlistId != null) {
-				String jsonString = playlistMap.get(playlistId);
-				if (jsonString != null) {
-					playlist = gson.fromJson(jsonString, Playlist.class);
-				}
+		if (playlistId != null) {
+			String jsonString = playlistMap.get(playlistId);
+			if (jsonString != null) {
+				playlist = gson.fromJson(jsonString, Playlist.class);
 			}
 		}
 		return playlist;
@@ -1249,50 +1763,57 @@ public class MapDBStore extends DataStore {
 	
 	@Override
 	public boolean deletePlaylist(String playlistId) {
-		synchronized (this) {
+		playlistLock.lockKey(playlistId);
+		try {
 			return playlistMap.remove(playlistId) != null;
 		}
+		finally {
+			playlistLock.unlockKey(playlistId);
+		}
 	}
 	
 	@Override
 	public boolean editPlaylist(String playlistId, Playlist playlist) {
-		synchronized (this) {
+		playlistLock.lockKey(playlistId);
+		try {
 			boolean result = false;
 
 			if (playlist != null && playlist.getPlaylistId() != null) {
 				playlistMap.replace(playlist.getPlaylistId(), gson.toJson(playlist));
-				db.commit();
+				commit();
 				result = true;
 			}
 			return result;
 		}
+		finally {
+			playlistLock.unlockKey(playlistId);
+		}
 	}
 
 	@Override
 	public int resetBroadcasts(String hostAddress) 
 	{
-		synchronized (this) {
+		broadcastLock.lockAll();
+		try {
 			
-			Collection<String> broadcastsRawJSON = map.values();
+			Collection<Map.Entry<String, String>> broadcastsRawJSON = map.entrySet();
 			int size = broadcastsRawJSON.size();
 			int updateOperations = 0;
 			int zombieStreamCount = 0;
 			int i = 0;
-			for (String broadcastRaw : broadcastsRawJSON) {
+			for (Map.Entry<String, String> entry : broadcastsRawJSON) {
 				i++;
-				if (broadcastRaw != null) {
-					Broadcast broadcast = gson.fromJson(broadcastRaw, Broadcast.class);
+				if (entry.getValue() != null) {
+					Broadcast broadcast = toBroadcast(entry.getKey(), entry.getValue());
 					if (broadcast.isZombi()) {
 						zombieStreamCount++;
-						map.remove(broadcast.getStreamId());
+						removeBroadcast(entry.getKey());
 					}
 					else {
 						updateOperations++;
-						broadcast.setHlsViewerCount(0);
-						broadcast.setWebRTCViewerCount(0);
-						broadcast.setRtmpViewerCount(0);
 						broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED);
-						map.put(broadcast.getStreamId(), gson.toJson(broadcast));
+						resetViewerCounts(entry.getKey());
+						putLiveFields(entry.getKey(), BroadcastLiveFields.of(broadcast));
 					}
 				}
 				
@@ -1303,27 +1824,30 @@ public class MapDBStore extends DataStore {
 			}
 			logger.info("Reset broadcasts result in deleting {} zombi streams and {} update operations", zombieStreamCount, updateOperations );
 			
-			db.commit();
+			commit();
+			broadcastChangeListeners.notifyChanged(null);
 			return updateOperations + zombieStreamCount;
 		}
+		finally {
+			broadcastLock.unlockAll();
+		}
 	}
 
 
 
 	@Override
 	public int getTotalWebRTCViewersCount() {
-		long now = System.currentTimeMillis();
-		if(now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
-			int total = 0;
-			synchronized (this) {
-				for (String json : map.getValues()) {
-					Broadcast broadcast = gson.fromJson(json, Broadcast.class);
-					total += broadcast.getWebRTCViewerCount();
-				}
-			}
-			totalWebRTCViewerCount = total;
-			totalWebRTCViewerCountLastUpdateTime = now;
-		}  
-		return totalWebRTCViewerCount;
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalWebRTCViewerCount();
+	}
+	
+	public int getTotalHLSViewersCount() {
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalHLSViewerCount();
+	}
+	
+	public int getTotalRTMPViewersCount() {
+		reconcileCountersIfNeeded();
+		return (int) liveBroadcastCounters.getTotalRTMPViewerCount();
 	}
-}
\ No newline at end of file
+}
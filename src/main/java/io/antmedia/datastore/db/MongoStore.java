@@ -3,8 +3,9 @@ package io.antmedia.datastore.db;
 import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
@@ -14,15 +15,16 @@ import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import com.mongodb.WriteResult;
 
 import dev.morphia.Datastore;
-import dev.morphia.Key;
+import dev.morphia.FindAndModifyOptions;
 import dev.morphia.Morphia;
-import dev.morphia.aggregation.Group;
 import dev.morphia.query.Criteria;
 import dev.morphia.query.FindOptions;
 import dev.morphia.query.Query;
@@ -42,10 +44,11 @@ import io.antmedia.datastore.db.types.Token;
 import io.antmedia.datastore.db.types.VoD;
 import io.antmedia.muxer.MuxAdaptor;
 
-public class MongoStore extends DataStore {
+public class MongoStore extends DataStore implements ICursorPaginationStore, IBatchUpdateStore, IBroadcastChangeNotifier {
 
 	private static final String TOKEN_ID = "tokenId";
 	private static final String STREAM_ID = "streamId";
+	private static final String VOD_ID = "vodId";
 	private Morphia morphia;
 	private Datastore datastore;
 	private Datastore vodDatastore;
@@ -67,6 +70,17 @@ public class MongoStore extends DataStore {
 	private static final String HLS_VIEWER_COUNT = "hlsViewerCount";
 	private static final String WEBRTC_VIEWER_COUNT = "webRTCViewerCount";
 	
+	/**
+	 * Counters are reconciled with the db as frequent as the total webrtc viewer count was cached
+	 * because other nodes in the cluster also update the broadcasts
+	 */
+	private LiveBroadcastCounters liveBroadcastCounters = new LiveBroadcastCounters(TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME);
+	
+	/**
+	 * Notified when broadcasts are changed by this node except viewer count and source quality updates
+	 */
+	private BroadcastChangeListeners broadcastChangeListeners = new BroadcastChangeListeners();
+	
 	public MongoStore(String host, String username, String password, String dbName) {
 		morphia = new Morphia();
 		morphia.mapPackage("io.antmedia.datastore.db.types");
@@ -96,6 +110,8 @@ public class MongoStore extends DataStore {
 		detectionMap.ensureIndexes();
 		conferenceRoomDatastore.ensureIndexes();
 		
+		liveBroadcastCounters.reconcile(this::loadCounters);
+		
 		available = true;
 	}
 	
@@ -140,9 +156,9 @@ public class MongoStore extends DataStore {
 				broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED);
 			}
 
-			synchronized(this) {
-				Key<Broadcast> key = datastore.save(broadcast);
-			}
+			datastore.save(broadcast);
+			liveBroadcastCounters.update(broadcast);
+			broadcastChangeListeners.notifyChanged(streamId);
 			return streamId;
 		} catch (Exception e) {
 			logger.error(ExceptionUtils.getStackTrace(e));
@@ -150,6 +166,11 @@ public class MongoStore extends DataStore {
 		return null;
 	}
 
+	@Override
+	public void addBroadcastChangeListener(Consumer<String> listener) {
+		broadcastChangeListeners.add(listener);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -157,24 +178,20 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public Broadcast get(String id) {
-		synchronized(this) {
-			try {
-				return datastore.find(Broadcast.class).field(STREAM_ID).equal(id).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return datastore.find(Broadcast.class).field(STREAM_ID).equal(id).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
 
 	@Override
 	public VoD getVoD(String id) {
-		synchronized(this) {
-			try {
-				return vodDatastore.find(VoD.class).field("vodId").equal(id).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return vodDatastore.find(VoD.class).field(VOD_ID).equal(id).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
@@ -187,30 +204,114 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public boolean updateStatus(String id, String status) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
 
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(STATUS, status);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(STATUS, status);
 
-				if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-					ops.set(START_TIME, System.currentTimeMillis());
-				}
-				else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
-					ops.set(WEBRTC_VIEWER_COUNT, 0);
-					ops.set(HLS_VIEWER_COUNT, 0);
-					ops.set(RTMP_VIEWER_COUNT, 0);
-				}
-				
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
+			if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
+				ops.set(START_TIME, System.currentTimeMillis());
+			}
+			else if(status.equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
+				ops.set(WEBRTC_VIEWER_COUNT, 0);
+				ops.set(HLS_VIEWER_COUNT, 0);
+				ops.set(RTMP_VIEWER_COUNT, 0);
 			}
+			
+			Broadcast updatedBroadcast = datastore.findAndModify(query, ops);
+			liveBroadcastCounters.update(updatedBroadcast);
+			broadcastChangeListeners.notifyChanged(id);
+			return updatedBroadcast != null;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 
 	}
+	
+	/**
+	 * Sends all updates to the db in a single unordered bulk write. Counters are updated 
+	 * by reading the live fields of the updated broadcasts in a single query afterwards
+	 */
+	@Override
+	public int applyBatch(List<BroadcastUpdate> updates) {
+		try {
+			boolean writeStats = isWriteStatsToDatastore();
+			BulkWriteOperation bulkWrite = datastore.getCollection(Broadcast.class).initializeUnorderedBulkOperation();
+			List<String> counterStreamIds = new ArrayList<>();
+			List<String> statusStreamIds = new ArrayList<>();
+			int requestCount = 0;
+			for (BroadcastUpdate update : updates) {
+				if (update.getStreamId() == null || !update.hasUpdate(writeStats)) {
+					continue;
+				}
+				BasicDBObject set = new BasicDBObject();
+				BasicDBObject inc = new BasicDBObject();
+				if (update.getStatus() != null) {
+					set.append(STATUS, update.getStatus());
+					if (update.getStatus().equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
+						set.append(START_TIME, System.currentTimeMillis());
+					}
+					else if (update.getStatus().equals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)) {
+						set.append(WEBRTC_VIEWER_COUNT, 0).append(HLS_VIEWER_COUNT, 0).append(RTMP_VIEWER_COUNT, 0);
+					}
+				}
+				if (writeStats) {
+					if (set.containsField(HLS_VIEWER_COUNT)) {
+						//viewer count is reset by the status, field cannot be both set and incremented
+						set.put(HLS_VIEWER_COUNT, update.getHlsViewerDiff());
+					}
+					else if (update.getHlsViewerDiff() != 0) {
+						inc.append(HLS_VIEWER_COUNT, update.getHlsViewerDiff());
+					}
+					if (update.isSourceQualityUpdated()) {
+						set.append("speed", update.getSpeed()).append("pendingPacketSize", update.getPendingPacketSize());
+						if (update.getQuality() != null) {
+							set.append("quality", update.getQuality());
+						}
+					}
+				}
+				BasicDBObject operations = new BasicDBObject();
+				if (!set.isEmpty()) {
+					operations.append("$set", set);
+				}
+				if (!inc.isEmpty()) {
+					operations.append("$inc", inc);
+				}
+				if (operations.isEmpty()) {
+					continue;
+				}
+				bulkWrite.find(new BasicDBObject(STREAM_ID, update.getStreamId())).updateOne(operations);
+				requestCount++;
+				if (update.getStatus() != null || inc.containsField(HLS_VIEWER_COUNT)) {
+					counterStreamIds.add(update.getStreamId());
+				}
+				if (update.getStatus() != null) {
+					statusStreamIds.add(update.getStreamId());
+				}
+			}
+			if (requestCount == 0) {
+				return 0;
+			}
+			BulkWriteResult result = bulkWrite.execute();
+			for (String streamId : statusStreamIds) {
+				broadcastChangeListeners.notifyChanged(streamId);
+			}
+			
+			if (!counterStreamIds.isEmpty()) {
+				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).in(counterStreamIds)
+						.project(STREAM_ID, true).project(STATUS, true).project(ORIGIN_ADDRESS, true)
+						.project(HLS_VIEWER_COUNT, true).project(WEBRTC_VIEWER_COUNT, true).project(RTMP_VIEWER_COUNT, true);
+				for (Broadcast broadcast : query.find().toList()) {
+					liveBroadcastCounters.update(broadcast);
+				}
+			}
+			return result.getMatchedCount();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		return 0;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -220,18 +321,17 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public boolean updateDuration(String id, long duration) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
 
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(DURATION,
-						duration);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(DURATION,
+					duration);
 
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+			UpdateResults update = datastore.update(query, ops);
+			broadcastChangeListeners.notifyChanged(id);
+			return update.getUpdatedCount() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
@@ -246,19 +346,18 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public boolean addEndpoint(String id, Endpoint endpoint) {
-		synchronized(this) {
-			if (id != null && endpoint != null) {
-				try {
-					Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
-
-					UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).push("endPointList",
-							endpoint);
-
-					UpdateResults update = datastore.update(query, ops);
-					return update.getUpdatedCount() == 1;
-				} catch (Exception e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-				}
+		if (id != null && endpoint != null) {
+			try {
+				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+
+				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).push("endPointList",
+						endpoint);
+
+				UpdateResults update = datastore.update(query, ops);
+				broadcastChangeListeners.notifyChanged(id);
+				return update.getUpdatedCount() == 1;
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
 			}
 		}
 		return false;
@@ -267,15 +366,14 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean removeEndpoint(String id, Endpoint endpoint, boolean checkRTMPUrl) {
 		boolean result = false;
-		synchronized(this) {
-			if (id != null && endpoint != null) {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class)
+		if (id != null && endpoint != null) {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class)
 
-						.removeAll("endPointList", endpoint);
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			}
+					.removeAll("endPointList", endpoint);
+			UpdateResults update = datastore.update(query, ops);
+			broadcastChangeListeners.notifyChanged(id);
+			return update.getUpdatedCount() == 1;
 		}
 		return result;
 	}
@@ -283,13 +381,12 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean removeAllEndpoints(String id) {
 		boolean result = false;
-		synchronized(this) {
-			if (id != null) {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).unset("endPointList");
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			}
+		if (id != null) {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).unset("endPointList");
+			UpdateResults update = datastore.update(query, ops);
+			broadcastChangeListeners.notifyChanged(id);
+			return update.getUpdatedCount() == 1;
 		}
 		return result;
 	}
@@ -301,9 +398,7 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public long getBroadcastCount() {
-		synchronized(this) {
-			return datastore.createQuery(Broadcast.class).count();
-		}
+		return datastore.createQuery(Broadcast.class).count();
 	}
 
 
@@ -314,43 +409,91 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public boolean delete(String id) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
-				WriteResult delete = datastore.delete(query);
-				return delete.getN() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+			WriteResult delete = datastore.delete(query);
+			liveBroadcastCounters.remove(id);
+			broadcastChangeListeners.notifyChanged(id);
+			return delete.getN() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 
 	@Override
 	public List<Broadcast> getBroadcastList(int offset, int size, String type, String sortBy, String orderBy) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.find(Broadcast.class);
-			
-			if (size > MAX_ITEM_IN_ONE_LIST) {
-				size = MAX_ITEM_IN_ONE_LIST;
-			}
-			
-			if(sortBy != null && orderBy != null && !sortBy.isEmpty() && !orderBy.isEmpty()) {
-				query = query.order(orderBy.equals("desc") ? Sort.descending(sortBy) : Sort.ascending(sortBy));
-			}
+		try {
+			Query<Broadcast> query = datastore.find(Broadcast.class);
+		
+		if (size > MAX_ITEM_IN_ONE_LIST) {
+			size = MAX_ITEM_IN_ONE_LIST;
+		}
+		
+		if(sortBy != null && orderBy != null && !sortBy.isEmpty() && !orderBy.isEmpty()) {
+			query = query.order(orderBy.equals("desc") ? Sort.descending(sortBy) : Sort.ascending(sortBy));
+		}
 
-			if(type != null && !type.isEmpty()) {
-				return query.field("type").equal(type).find(new FindOptions().skip(offset).limit(size)).toList();
-			}
-			else {
-				return query.find(new FindOptions().skip(offset).limit(size)).toList();
+		if(type != null && !type.isEmpty()) {
+			return query.field("type").equal(type).find(new FindOptions().skip(offset).limit(size)).toList();
+		}
+		else {
+			return query.find(new FindOptions().skip(offset).limit(size)).toList();
+		}
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		return null;
+	}
+
+	@Override
+	public CursorPage<Broadcast> getBroadcastListAfter(String cursor, int size, String type) {
+		Query<Broadcast> query = datastore.createQuery(Broadcast.class);
+		if (type != null && !type.isEmpty()) {
+			query.field("type").equal(type);
+		}
+		return getPageAfter(query, STREAM_ID, cursor, size, Broadcast::getStreamId);
+	}
+	
+	@Override
+	public CursorPage<VoD> getVodListAfter(String cursor, int size, String streamId) {
+		Query<VoD> query = vodDatastore.createQuery(VoD.class);
+		if (streamId != null && !streamId.isEmpty()) {
+			query.field(STREAM_ID).equal(streamId);
+		}
+		return getPageAfter(query, VOD_ID, cursor, size, VoD::getVodId);
+	}
+	
+	@Override
+	public CursorPage<Token> listTokensAfter(String streamId, String cursor, int size) {
+		Query<Token> query = tokenDatastore.createQuery(Token.class).field(STREAM_ID).equal(streamId);
+		return getPageAfter(query, TOKEN_ID, cursor, size, Token::getTokenId);
+	}
+	
+	/**
+	 * Fetches the records whose id field is greater than the cursor in ascending order.
+	 * One more record is fetched to decide whether there is a next page
+	 */
+	private <T> CursorPage<T> getPageAfter(Query<T> query, String idField, String cursor, int size, Function<T, String> idGetter) {
+		size = CursorPage.getPageSize(size);
+		List<T> list = new ArrayList<>();
+		String nextCursor = null;
+		if (size > 0) {
+			try {
+				if (cursor != null) {
+					query.field(idField).greaterThan(cursor);
+				}
+				list = query.order(Sort.ascending(idField)).find(new FindOptions().limit(size + 1)).toList();
+				if (list.size() > size) {
+					list = new ArrayList<>(list.subList(0, size));
+					nextCursor = idGetter.apply(list.get(size - 1));
+				}
 			}
-			} catch (Exception e) {
+			catch (Exception e) {
 				logger.error(ExceptionUtils.getStackTrace(e));
 			}
 		}
-		return null;
+		return new CursorPage<>(list, nextCursor);
 	}
 
 	public Datastore getDataStore() {
@@ -362,44 +505,40 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public List<Broadcast> getExternalStreamsList() {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class);
-				query.and(
-						query.or(
-								query.criteria("type").equal(AntMediaApplicationAdapter.IP_CAMERA),
-								query.criteria("type").equal(AntMediaApplicationAdapter.STREAM_SOURCE)
-								), 
-						query.and(
-								query.criteria(STATUS).notEqual(AntMediaApplicationAdapter.BROADCAST_STATUS_PREPARING),
-								query.criteria(STATUS).notEqual(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)
-								)
-						);
-				
-				List<Broadcast> streamList = query.find().toList();
-				
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(STATUS, AntMediaApplicationAdapter.BROADCAST_STATUS_PREPARING);
-				UpdateResults update = datastore.update(query, ops);
-				int updatedCount = update.getUpdatedCount();
-				if(updatedCount != streamList.size()) {
-					logger.error("Only {} stream status updated out of {}", updatedCount, streamList.size());
-				}
-						
-				return streamList;
-			} catch (Exception e) {
-
-				logger.error(ExceptionUtils.getStackTrace(e));
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class);
+			query.and(
+					query.or(
+							query.criteria("type").equal(AntMediaApplicationAdapter.IP_CAMERA),
+							query.criteria("type").equal(AntMediaApplicationAdapter.STREAM_SOURCE)
+							), 
+					query.and(
+							query.criteria(STATUS).notEqual(AntMediaApplicationAdapter.BROADCAST_STATUS_PREPARING),
+							query.criteria(STATUS).notEqual(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)
+							)
+					);
+			
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(STATUS, AntMediaApplicationAdapter.BROADCAST_STATUS_PREPARING);
+			FindAndModifyOptions options = new FindAndModifyOptions().returnNew(false);
+			
+			//each stream is claimed atomically so that concurrent callers do not get the same stream
+			List<Broadcast> streamList = new ArrayList<>();
+			Broadcast stream;
+			while ((stream = datastore.findAndModify(query, ops, options)) != null) {
+				streamList.add(stream);
 			}
+			return streamList;
+		} catch (Exception e) {
+
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
 
 	@Override
 	public void close() {
-		synchronized(this) {
-			available = false;
-			datastore.getMongo().close();
-		}
+		available = false;
+		datastore.getMongo().close();
 	}
 
 	@Override
@@ -407,20 +546,18 @@ public class MongoStore extends DataStore {
 
 		String id = null;
 		boolean result = false;
-		synchronized(this) {
-			try {	
-				if (vod.getVodId() == null) {
-					vod.setVodId(RandomStringUtils.randomAlphanumeric(12) + System.currentTimeMillis());
-				}
-				vodDatastore.save(vod);
-				result = true;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
+		try {	
+			if (vod.getVodId() == null) {
+				vod.setVodId(RandomStringUtils.randomAlphanumeric(12) + System.currentTimeMillis());
 			}
+			vodDatastore.save(vod);
+			result = true;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
 
-			if(result) {
-				id = vod.getVodId();
-			}
+		if(result) {
+			id = vod.getVodId();
 		}
 		return id;
 
@@ -428,38 +565,34 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public List<VoD> getVodList(int offset, int size, String sortBy, String orderBy, String filterStreamId) {
-		synchronized(this) {
-			Query<VoD> query = vodDatastore.find(VoD.class);
-			
-			if (filterStreamId != null && !filterStreamId.isEmpty()) {
-				query = query.field(STREAM_ID).equal(filterStreamId);
+		Query<VoD> query = vodDatastore.find(VoD.class);
+		
+		if (filterStreamId != null && !filterStreamId.isEmpty()) {
+			query = query.field(STREAM_ID).equal(filterStreamId);
+		}
+		
+		if(sortBy != null && orderBy != null && !sortBy.isEmpty() && !orderBy.isEmpty()) {
+			String sortString = orderBy.contentEquals("desc") ? "-" : "";
+			if(sortBy.contentEquals("name")) {
+				sortString += "vodName";
 			}
-			
-			if(sortBy != null && orderBy != null && !sortBy.isEmpty() && !orderBy.isEmpty()) {
-				String sortString = orderBy.contentEquals("desc") ? "-" : "";
-				if(sortBy.contentEquals("name")) {
-					sortString += "vodName";
-				}
-				else if(sortBy.contentEquals("date")) {
-					sortString += CREATION_DATE;
-				}
-				query = query.order(sortString);
+			else if(sortBy.contentEquals("date")) {
+				sortString += CREATION_DATE;
 			}
-			return query.find(new FindOptions().skip(offset).limit(size)).toList();
+			query = query.order(sortString);
 		}
+		return query.find(new FindOptions().skip(offset).limit(size)).toList();
 	}
 
 
 	@Override
 	public boolean deleteVod(String id) {
-		synchronized(this) {
-			try {
-				Query<VoD> query = vodDatastore.createQuery(VoD.class).field("vodId").equal(id);
-				WriteResult delete = vodDatastore.delete(query);
-				return delete.getN() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<VoD> query = vodDatastore.createQuery(VoD.class).field(VOD_ID).equal(id);
+			WriteResult delete = vodDatastore.delete(query);
+			return delete.getN() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
@@ -468,9 +601,7 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public long getTotalVodNumber() {
-		synchronized(this) {
-			return vodDatastore.createQuery(VoD.class).count();
-		}
+		return vodDatastore.createQuery(VoD.class).count();
 	}
 
 	@Override
@@ -481,43 +612,41 @@ public class MongoStore extends DataStore {
 		}
 
 		int numberOfSavedFiles = 0;
-		synchronized(this) {
-			try {
-				Query<VoD> query = vodDatastore.createQuery(VoD.class).field("type").equal("userVod");
-				WriteResult delete = vodDatastore.delete(query);
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<VoD> query = vodDatastore.createQuery(VoD.class).field("type").equal("userVod");
+			WriteResult delete = vodDatastore.delete(query);
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
 
-			File[] listOfFiles = userfile.listFiles();
+		File[] listOfFiles = userfile.listFiles();
 
-			if (listOfFiles != null) {
+		if (listOfFiles != null) {
 
-				for (File file : listOfFiles) {
+			for (File file : listOfFiles) {
 
-					String fileExtension = FilenameUtils.getExtension(file.getName());
+				String fileExtension = FilenameUtils.getExtension(file.getName());
 
-					if (file.isFile() &&
-							("mp4".equals(fileExtension) || "flv".equals(fileExtension) || "mkv".equals(fileExtension))) {
+				if (file.isFile() &&
+						("mp4".equals(fileExtension) || "flv".equals(fileExtension) || "mkv".equals(fileExtension))) {
 
-						long fileSize = file.length();
-						long unixTime = System.currentTimeMillis();
+					long fileSize = file.length();
+					long unixTime = System.currentTimeMillis();
 
 
-						String filePath=file.getPath();
+					String filePath=file.getPath();
 
-						String[] subDirs = filePath.split(Pattern.quote(File.separator));
+					String[] subDirs = filePath.split(Pattern.quote(File.separator));
 
-						Integer pathLength=Integer.valueOf(subDirs.length);
+					Integer pathLength=Integer.valueOf(subDirs.length);
 
-						String relativePath = "streams/"+subDirs[pathLength-2]+'/'+subDirs[pathLength-1];
-						String vodId = RandomStringUtils.randomNumeric(24);
-						VoD newVod = new VoD("vodFile", "vodFile", relativePath, file.getName(), unixTime, 0, fileSize,
-								VoD.USER_VOD,vodId);
+					String relativePath = "streams/"+subDirs[pathLength-2]+'/'+subDirs[pathLength-1];
+					String vodId = RandomStringUtils.randomNumeric(24);
+					VoD newVod = new VoD("vodFile", "vodFile", relativePath, file.getName(), unixTime, 0, fileSize,
+							VoD.USER_VOD,vodId);
 
-						addVod(newVod);
-						numberOfSavedFiles++;
-					}
+					addVod(newVod);
+					numberOfSavedFiles++;
 				}
 			}
 		}
@@ -530,20 +659,18 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public boolean updateSourceQualityParametersLocal(String id, String quality, double speed, int pendingPacketQueue) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class)
-						.set("speed", speed).set("pendingPacketSize", pendingPacketQueue);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(id);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class)
+					.set("speed", speed).set("pendingPacketSize", pendingPacketQueue);
 
-				if (quality != null) {
-					ops.set("quality", quality);
-				}
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
+			if (quality != null) {
+				ops.set("quality", quality);
 			}
+			UpdateResults update = datastore.update(query, ops);
+			return update.getUpdatedCount() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
@@ -551,50 +678,48 @@ public class MongoStore extends DataStore {
 
 	public SocialEndpointCredentials addSocialEndpointCredentials(SocialEndpointCredentials credentials) {
 		SocialEndpointCredentials addedCredential = null;
-		synchronized(this) {
-			if (credentials != null && credentials.getAccountName() != null && credentials.getAccessToken() != null
-					&& credentials.getServiceName() != null) 
-			{
-				if (credentials.getId() == null) {
-					//create new id if id is not set
-					//String id = RandomStringUtils.randomAlphanumeric(6);
-					//credentials.setId(id);
-					endpointCredentialsDS.save(credentials);
-					addedCredential = credentials;
-				}
-				else {
-					SocialEndpointCredentials endpointCredentials = getSocialEndpointCredentials(credentials.getId());
-					if (endpointCredentials != null) {
-						UpdateOperations<SocialEndpointCredentials> ops = endpointCredentialsDS
-								.createUpdateOperations(SocialEndpointCredentials.class)
-								.set("accessToken", credentials.getAccessToken());
-						if (credentials.getAccountId() != null) {
-							ops.set("accountId", credentials.getAccountId());
-						}
-						if (credentials.getAccountName() != null) {
-							ops.set("accountName", credentials.getAccountName());
-						}
-						if (credentials.getAccountType() != null) {
-							ops.set("accountType", credentials.getAccountType());
-						}
-						if (credentials.getAuthTimeInMilliseconds() != null) {
-							ops.set("authTimeInMilliseconds", credentials.getAuthTimeInMilliseconds());
-						}
-						if (credentials.getExpireTimeInSeconds() != null) {
-							ops.set("expireTimeInSeconds", credentials.getExpireTimeInSeconds());
-						}
-						if (credentials.getRefreshToken() != null) {
-							ops.set("refreshToken", credentials.getRefreshToken());
-						}
-						if (credentials.getTokenType() != null) {
-							ops.set("tokenType", credentials.getTokenType());
-						}
+		if (credentials != null && credentials.getAccountName() != null && credentials.getAccessToken() != null
+				&& credentials.getServiceName() != null) 
+		{
+			if (credentials.getId() == null) {
+				//create new id if id is not set
+				//String id = RandomStringUtils.randomAlphanumeric(6);
+				//credentials.setId(id);
+				endpointCredentialsDS.save(credentials);
+				addedCredential = credentials;
+			}
+			else {
+				SocialEndpointCredentials endpointCredentials = getSocialEndpointCredentials(credentials.getId());
+				if (endpointCredentials != null) {
+					UpdateOperations<SocialEndpointCredentials> ops = endpointCredentialsDS
+							.createUpdateOperations(SocialEndpointCredentials.class)
+							.set("accessToken", credentials.getAccessToken());
+					if (credentials.getAccountId() != null) {
+						ops.set("accountId", credentials.getAccountId());
+					}
+					if (credentials.getAccountName() != null) {
+						ops.set("accountName", credentials.getAccountName());
+					}
+					if (credentials.getAccountType() != null) {
+						ops.set("accountType", credentials.getAccountType());
+					}
+					if (credentials.getAuthTimeInMilliseconds() != null) {
+						ops.set("authTimeInMilliseconds", credentials.getAuthTimeInMilliseconds());
+					}
+					if (credentials.getExpireTimeInSeconds() != null) {
+						ops.set("expireTimeInSeconds", credentials.getExpireTimeInSeconds());
+					}
+					if (credentials.getRefreshToken() != null) {
+						ops.set("refreshToken", credentials.getRefreshToken());
+					}
+					if (credentials.getTokenType() != null) {
+						ops.set("tokenType", credentials.getTokenType());
+					}
 
 
 
-						UpdateResults update = endpointCredentialsDS.update(endpointCredentials, ops);
-						addedCredential = credentials;
-					}
+					UpdateResults update = endpointCredentialsDS.update(endpointCredentials, ops);
+					addedCredential = credentials;
 				}
 			}
 		}
@@ -603,35 +728,29 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public List<SocialEndpointCredentials> getSocialEndpoints(int offset, int size) {
-		synchronized(this) {
-			return endpointCredentialsDS.find(SocialEndpointCredentials.class).find(new FindOptions().skip(offset).limit(size)).toList();
-		}
+		return endpointCredentialsDS.find(SocialEndpointCredentials.class).find(new FindOptions().skip(offset).limit(size)).toList();
 	}
 
 	@Override
 	public boolean removeSocialEndpointCredentials(String id) {
-		synchronized(this) {
-			try {
-				Query<SocialEndpointCredentials> query = endpointCredentialsDS
-						.createQuery(SocialEndpointCredentials.class)
-						.field("id").equal(new ObjectId(id));
-				WriteResult delete = endpointCredentialsDS.delete(query);
-				return delete.getN() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<SocialEndpointCredentials> query = endpointCredentialsDS
+					.createQuery(SocialEndpointCredentials.class)
+					.field("id").equal(new ObjectId(id));
+			WriteResult delete = endpointCredentialsDS.delete(query);
+			return delete.getN() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 
 	@Override
 	public SocialEndpointCredentials getSocialEndpointCredentials(String id) {
-		synchronized(this) {
-			try {
-				return endpointCredentialsDS.createQuery(SocialEndpointCredentials.class).field("id").equal(new ObjectId(id)).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return endpointCredentialsDS.createQuery(SocialEndpointCredentials.class).field("id").equal(new ObjectId(id)).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
@@ -646,9 +765,7 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public long getTotalBroadcastNumber() {
-		synchronized(this) {
-			return datastore.createQuery(Broadcast.class).count();
-		}
+		return datastore.createQuery(Broadcast.class).count();
 	}
 
 	public Datastore getVodDatastore() {
@@ -661,55 +778,59 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public long getActiveBroadcastCount() {
-		synchronized(this) {
-			return datastore.find(Broadcast.class).filter(STATUS, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING).count();
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+		return liveBroadcastCounters.getBroadcastingCount();
+	}
+	
+	/**
+	 * Loads the broadcasting streams to the counters. Viewer counts of the other streams are zero
+	 */
+	private void loadCounters(LiveBroadcastCounters counters) {
+		Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STATUS).equal(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)
+				.project(STREAM_ID, true).project(STATUS, true).project(ORIGIN_ADDRESS, true)
+				.project(HLS_VIEWER_COUNT, true).project(WEBRTC_VIEWER_COUNT, true).project(RTMP_VIEWER_COUNT, true);
+		
+		for (Broadcast broadcast : query.find().toList()) {
+			counters.update(broadcast);
 		}
 	}
 
 	public void saveDetection(String id, long timeElapsed, List<TensorFlowObject> detectedObjects) {
-		synchronized(this) {
-			if (detectedObjects != null) {
-				for (TensorFlowObject tensorFlowObject : detectedObjects) {
-					tensorFlowObject.setDetectionTime(timeElapsed);
-					tensorFlowObject.setImageId(id);
-					detectionMap.save(tensorFlowObject);
-				}
+		if (detectedObjects != null) {
+			for (TensorFlowObject tensorFlowObject : detectedObjects) {
+				tensorFlowObject.setDetectionTime(timeElapsed);
+				tensorFlowObject.setImageId(id);
+				detectionMap.save(tensorFlowObject);
 			}
 		}
 	}
 
 	@Override
 	public List<TensorFlowObject> getDetectionList(String idFilter, int offsetSize, int batchSize) {
-		synchronized(this) {
-			try {
-				if (batchSize > MAX_ITEM_IN_ONE_LIST) {
-					batchSize = MAX_ITEM_IN_ONE_LIST;
-				}
-				return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).startsWith(idFilter).find(new FindOptions().skip(offsetSize).limit(batchSize)).toList();
-			} catch (Exception e) {
-				logger.error(e.getMessage());
+		try {
+			if (batchSize > MAX_ITEM_IN_ONE_LIST) {
+				batchSize = MAX_ITEM_IN_ONE_LIST;
 			}
+			return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).startsWith(idFilter).find(new FindOptions().skip(offsetSize).limit(batchSize)).toList();
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return null;	
 	}
 
 	@Override
 	public List<TensorFlowObject> getDetection(String id) {
-		synchronized(this) {
-			try {
-				return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).equal(id).find().toList();
-			} catch (Exception e) {
-				logger.error(e.getMessage());
-			}
+		try {
+			return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).equal(id).find().toList();
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return null;	
 	}
 
 	@Override
 	public long getObjectDetectedTotal(String id) {
-		synchronized(this) {
-			return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).equal(id).count();
-		}
+		return detectionMap.find(TensorFlowObject.class).field(IMAGE_ID).equal(id).count();
 	}
 
 
@@ -717,66 +838,66 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean updateBroadcastFields(String streamId, Broadcast broadcast) {
 		boolean result = false;
-		synchronized(this) {
-			try {
-				logger.warn("result inside edit camera: {}" , result);
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
+		try {
+			logger.warn("result inside edit camera: {}" , result);
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
 
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
-				if (broadcast.getName() != null) {
-					ops.set("name", broadcast.getName());
-				}
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
+			if (broadcast.getName() != null) {
+				ops.set("name", broadcast.getName());
+			}
 
-				if (broadcast.getDescription() != null) {
-					ops.set("description", broadcast.getDescription());
-				}
+			if (broadcast.getDescription() != null) {
+				ops.set("description", broadcast.getDescription());
+			}
 
-				if (broadcast.getUsername() != null) {
-					ops.set("username", broadcast.getUsername());
-				}
+			if (broadcast.getUsername() != null) {
+				ops.set("username", broadcast.getUsername());
+			}
 
-				if (broadcast.getPassword() != null) {
-					ops.set("password", broadcast.getPassword());
-				}
+			if (broadcast.getPassword() != null) {
+				ops.set("password", broadcast.getPassword());
+			}
 
-				if (broadcast.getIpAddr() != null) {
-					ops.set("ipAddr", broadcast.getIpAddr());
-				}
+			if (broadcast.getIpAddr() != null) {
+				ops.set("ipAddr", broadcast.getIpAddr());
+			}
 
-				if ( broadcast.getStreamUrl() != null) {
-					ops.set("streamUrl", broadcast.getStreamUrl());
-				}
-				
-				if (broadcast.getLatitude() != null) {
-					ops.set("latitude", broadcast.getLatitude());
-				}
-				
-				if (broadcast.getLongitude() != null) {
-					ops.set("longitude", broadcast.getLongitude());
-				}
-				
-				if (broadcast.getAltitude() != null) {
-					ops.set("altitude", broadcast.getAltitude());
-				}
-				
-				if (broadcast.getMainTrackStreamId() != null) {
-					ops.set("mainTrackStreamId", broadcast.getMainTrackStreamId());
-				}
-				
-				prepareFields(broadcast, ops);
-				
-				
-				ops.set("receivedBytes", broadcast.getReceivedBytes());
-				ops.set("bitrate", broadcast.getBitrate());
-				ops.set("userAgent", broadcast.getUserAgent());
-				ops.set("webRTCViewerLimit", broadcast.getWebRTCViewerLimit());
-				ops.set("hlsViewerLimit", broadcast.getHlsViewerLimit());
-				
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(e.getMessage());
+			if ( broadcast.getStreamUrl() != null) {
+				ops.set("streamUrl", broadcast.getStreamUrl());
+			}
+			
+			if (broadcast.getLatitude() != null) {
+				ops.set("latitude", broadcast.getLatitude());
 			}
+			
+			if (broadcast.getLongitude() != null) {
+				ops.set("longitude", broadcast.getLongitude());
+			}
+			
+			if (broadcast.getAltitude() != null) {
+				ops.set("altitude", broadcast.getAltitude());
+			}
+			
+			if (broadcast.getMainTrackStreamId() != null) {
+				ops.set("mainTrackStreamId", broadcast.getMainTrackStreamId());
+			}
+			
+			prepareFields(broadcast, ops);
+			
+			
+			ops.set("receivedBytes", broadcast.getReceivedBytes());
+			ops.set("bitrate", broadcast.getBitrate());
+			ops.set("userAgent", broadcast.getUserAgent());
+			ops.set("webRTCViewerLimit", broadcast.getWebRTCViewerLimit());
+			ops.set("hlsViewerLimit", broadcast.getHlsViewerLimit());
+			
+			Broadcast updatedBroadcast = datastore.findAndModify(query, ops);
+			liveBroadcastCounters.update(updatedBroadcast);
+			broadcastChangeListeners.notifyChanged(streamId);
+			return updatedBroadcast != null;
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return false;
 	}
@@ -809,16 +930,18 @@ public class MongoStore extends DataStore {
 	 */
 	@Override
 	public boolean updateHLSViewerCountLocal(String streamId, int diffCount) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).inc(HLS_VIEWER_COUNT, diffCount);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).inc(HLS_VIEWER_COUNT, diffCount);
 
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(e.getMessage());
+			UpdateResults update = datastore.update(query, ops);
+			boolean result = update.getUpdatedCount() == 1;
+			if (result) {
+				liveBroadcastCounters.addViewerCount(streamId, diffCount, 0, 0);
 			}
+			return result;
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return false;
 	}
@@ -837,28 +960,36 @@ public class MongoStore extends DataStore {
 	}
 
 	private boolean updateViewerField(String streamId, boolean increment, String fieldName) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
-				
-				if(!increment) {
-					query = query.filter(fieldName+" >",0);
-				}
-				
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
-				String field = fieldName;
-				if (increment) {
-					ops.inc(field);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
+			
+			if(!increment) {
+				query = query.filter(fieldName+" >",0);
+			}
+			
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
+			String field = fieldName;
+			if (increment) {
+				ops.inc(field);
+			}
+			else {
+				ops.dec(field);
+			}
+
+			UpdateResults update = datastore.update(query, ops);
+			boolean result = update.getUpdatedCount() == 1;
+			if (result) {
+				int diff = increment ? 1 : -1;
+				if (WEBRTC_VIEWER_COUNT.equals(fieldName)) {
+					liveBroadcastCounters.addViewerCount(streamId, 0, diff, 0);
 				}
-				else {
-					ops.dec(field);
+				else if (RTMP_VIEWER_COUNT.equals(fieldName)) {
+					liveBroadcastCounters.addViewerCount(streamId, 0, 0, diff);
 				}
-
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(e.getMessage());
 			}
+			return result;
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return false;
 	}
@@ -866,97 +997,87 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public void saveStreamInfo(StreamInfo streamInfo) {
-		synchronized(this) {
-			Query<StreamInfo> query = datastore.createQuery(StreamInfo.class);
-			
-			List<Criteria> criteriaList = new ArrayList<>();
-			if (streamInfo.getVideoPort() != 0) {
-				criteriaList.add(query.criteria("videoPort").equal(streamInfo.getVideoPort()));
-				criteriaList.add(query.criteria("audioPort").equal(streamInfo.getVideoPort()));
-				criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getVideoPort()));
-			}
-			if (streamInfo.getAudioPort() != 0) {
-				criteriaList.add(query.criteria("videoPort").equal(streamInfo.getAudioPort()));
-				criteriaList.add(query.criteria("audioPort").equal(streamInfo.getAudioPort()));
-				criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getAudioPort()));
-			}
-			
-			if (streamInfo.getDataChannelPort() != 0) {
-				criteriaList.add(query.criteria("videoPort").equal(streamInfo.getDataChannelPort()));
-				criteriaList.add(query.criteria("audioPort").equal(streamInfo.getDataChannelPort()));
-				criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getDataChannelPort()));
-			}
-			
-			Criteria[] criteriaArray = new Criteria[criteriaList.size()];
-			criteriaList.toArray(criteriaArray);
-			if (criteriaArray.length > 0) {
-				query.and(
-						query.criteria("host").equal(streamInfo.getHost()),
-						query.or(
-								criteriaArray
-								)
-						);
-			}
-			else {
-				query.and(
-						query.criteria("host").equal(streamInfo.getHost())
-						);
-			}
-			
-			long count = query.count();
-			if(count > 0) {
-				logger.error("{} port duplications are detected for host: {}, video port: {}, audio port:{}",
-						count, streamInfo.getHost(), streamInfo.getVideoPort(), streamInfo.getAudioPort());
+		Query<StreamInfo> query = datastore.createQuery(StreamInfo.class);
+		
+		List<Criteria> criteriaList = new ArrayList<>();
+		if (streamInfo.getVideoPort() != 0) {
+			criteriaList.add(query.criteria("videoPort").equal(streamInfo.getVideoPort()));
+			criteriaList.add(query.criteria("audioPort").equal(streamInfo.getVideoPort()));
+			criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getVideoPort()));
+		}
+		if (streamInfo.getAudioPort() != 0) {
+			criteriaList.add(query.criteria("videoPort").equal(streamInfo.getAudioPort()));
+			criteriaList.add(query.criteria("audioPort").equal(streamInfo.getAudioPort()));
+			criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getAudioPort()));
+		}
+		
+		if (streamInfo.getDataChannelPort() != 0) {
+			criteriaList.add(query.criteria("videoPort").equal(streamInfo.getDataChannelPort()));
+			criteriaList.add(query.criteria("audioPort").equal(streamInfo.getDataChannelPort()));
+			criteriaList.add(query.criteria("dataChannelPort").equal(streamInfo.getDataChannelPort()));
+		}
+		
+		Criteria[] criteriaArray = new Criteria[criteriaList.size()];
+		criteriaList.toArray(criteriaArray);
+		if (criteriaArray.length > 0) {
+			query.and(
+					query.criteria("host").equal(streamInfo.getHost()),
+					query.or(
+							criteriaArray
+							)
+					);
+		}
+		else {
+			query.and(
+					query.criteria("host").equal(streamInfo.getHost())
+					);
+		}
+		
+		long count = query.count();
+		if(count > 0) {
+			logger.error("{} port duplications are detected for host: {}, video port: {}, audio port:{}",
+					count, streamInfo.getHost(), streamInfo.getVideoPort(), streamInfo.getAudioPort());
 
-				WriteResult res = datastore.delete(query);
-				if(res.getN() != count) {
-					logger.error("Only {} stream info were deleted out of {} having duplicated port.", res.getN(), count);
-				}
+			WriteResult res = datastore.delete(query);
+			if(res.getN() != count) {
+				logger.error("Only {} stream info were deleted out of {} having duplicated port.", res.getN(), count);
 			}
-			datastore.save(streamInfo);
 		}
+		datastore.save(streamInfo);
 	}
 
 	@Override
 	public void addStreamInfoList(List<StreamInfo> streamInfoList) {
-		synchronized(this) {
-			for (StreamInfo streamInfo : streamInfoList) {
-				datastore.save(streamInfo);
-			}
+		for (StreamInfo streamInfo : streamInfoList) {
+			datastore.save(streamInfo);
 		}
 	}
 
 	public List<StreamInfo> getStreamInfoList(String streamId) {
-		synchronized(this) {
-			return datastore.find(StreamInfo.class).field(STREAM_ID).equal(streamId).find().toList();
-		}
+		return datastore.find(StreamInfo.class).field(STREAM_ID).equal(streamId).find().toList();
 	}
 
 	public void clearStreamInfoList(String streamId) {
-		synchronized(this) {
-			Query<StreamInfo> query = datastore.createQuery(StreamInfo.class).field(STREAM_ID).equal(streamId);
-			long count = query.count();
-			WriteResult res = datastore.delete(query);
+		Query<StreamInfo> query = datastore.createQuery(StreamInfo.class).field(STREAM_ID).equal(streamId);
+		long count = query.count();
+		WriteResult res = datastore.delete(query);
 
-			if(res.getN() != count) {
-				logger.error("{} StreamInfo were deleted out of {} for stream {}",res.getN(), count, streamId);
-			}
+		if(res.getN() != count) {
+			logger.error("{} StreamInfo were deleted out of {} for stream {}",res.getN(), count, streamId);
 		}
 	}
 
 	@Override
 	public boolean saveToken(Token token) {
 		boolean result = false;
-		synchronized(this) {
-			if(token.getStreamId() != null && token.getTokenId() != null) {
+		if(token.getStreamId() != null && token.getTokenId() != null) {
 
-				try {
-					tokenDatastore.save(token);
-					result = true;
+			try {
+				tokenDatastore.save(token);
+				result = true;
 
-				} catch (Exception e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-				}
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
 			}
 		}
 
@@ -966,28 +1087,22 @@ public class MongoStore extends DataStore {
 	@Override
 	public Token validateToken(Token token) {
 		Token fetchedToken = null;
-		synchronized(this) {
-			if (token.getTokenId() != null) {
-				fetchedToken = tokenDatastore.find(Token.class).field(TOKEN_ID).equal(token.getTokenId()).first();
-				if (fetchedToken != null 
-						&& fetchedToken.getType().equals(token.getType())
-						&& Instant.now().getEpochSecond() < fetchedToken.getExpireDate()) {
-					if(token.getRoomId() == null || token.getRoomId().isEmpty()) {
-
-						if(fetchedToken.getStreamId().equals(token.getStreamId())) {	
-							Query<Token> query = tokenDatastore.createQuery(Token.class).field(TOKEN_ID).equal(token.getTokenId());
-							tokenDatastore.delete(query);
-						}
-						else {
-							fetchedToken = null;
-						}
-
-					}
-					return fetchedToken;
-
-				}else {
-					fetchedToken = null;
+		if (token.getTokenId() != null && token.getType() != null) {
+			try {
+				Query<Token> query = tokenDatastore.createQuery(Token.class).field(TOKEN_ID).equal(token.getTokenId())
+						.field("type").equal(token.getType())
+						.field("expireDate").greaterThan(Instant.now().getEpochSecond());
+				
+				if(token.getRoomId() == null || token.getRoomId().isEmpty()) {
+					//token is used once. Find and delete is atomic so that it's not validated by concurrent requests
+					query.field(STREAM_ID).equal(token.getStreamId());
+					fetchedToken = tokenDatastore.findAndDelete(query);
 				}
+				else {
+					fetchedToken = query.first();
+				}
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
 			}
 		}
 		return fetchedToken;
@@ -995,19 +1110,15 @@ public class MongoStore extends DataStore {
 
 	@Override
 	public boolean revokeTokens(String streamId) {
-		synchronized(this) {
-			Query<Token> query = tokenDatastore.createQuery(Token.class).field(STREAM_ID).equal(streamId);
-			WriteResult delete = tokenDatastore.delete(query);
+		Query<Token> query = tokenDatastore.createQuery(Token.class).field(STREAM_ID).equal(streamId);
+		WriteResult delete = tokenDatastore.delete(query);
 
-			return delete.getN() >= 1;
-		}
+		return delete.getN() >= 1;
 	}
 
 	@Override
 	public List<Token> listAllTokens(String streamId, int offset, int size) {
-		synchronized(this) {
-			return 	tokenDatastore.find(Token.class).field(STREAM_ID).equal(streamId).asList(new FindOptions() .skip(offset).limit(size));
-		}
+		return 	tokenDatastore.find(Token.class).field(STREAM_ID).equal(streamId).asList(new FindOptions() .skip(offset).limit(size));
 	}
 
 	@Override
@@ -1021,17 +1132,16 @@ public class MongoStore extends DataStore {
 	}
 	
 	private boolean setRecordMuxing(String streamId, int enabled, String field) {
-		synchronized(this) {
-			try {
-				if (streamId != null && (enabled == MuxAdaptor.RECORDING_ENABLED_FOR_STREAM || enabled == MuxAdaptor.RECORDING_NO_SET_FOR_STREAM || enabled == MuxAdaptor.RECORDING_DISABLED_FOR_STREAM)) {
-					Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
-					UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(field, enabled);
-					UpdateResults update = datastore.update(query, ops);
-					return update.getUpdatedCount() == 1;
-				}
-			} catch (Exception e) {
-				logger.error(e.getMessage());
+		try {
+			if (streamId != null && (enabled == MuxAdaptor.RECORDING_ENABLED_FOR_STREAM || enabled == MuxAdaptor.RECORDING_NO_SET_FOR_STREAM || enabled == MuxAdaptor.RECORDING_DISABLED_FOR_STREAM)) {
+				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(streamId);
+				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).set(field, enabled);
+				UpdateResults update = datastore.update(query, ops);
+				broadcastChangeListeners.notifyChanged(streamId);
+				return update.getUpdatedCount() == 1;
 			}
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return false;
 
@@ -1040,16 +1150,14 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean createConferenceRoom(ConferenceRoom room) {
 		boolean result = false;
-		synchronized(this) {
-			if(room != null && room.getRoomId() != null) {
+		if(room != null && room.getRoomId() != null) {
 
-				try {
-					conferenceRoomDatastore.save(room);
-					result = true;
+			try {
+				conferenceRoomDatastore.save(room);
+				result = true;
 
-				} catch (Exception e) {
-					logger.error(ExceptionUtils.getStackTrace(e));
-				}
+			} catch (Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
 			}
 		}
 		return result;
@@ -1058,45 +1166,39 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean editConferenceRoom(String roomId, ConferenceRoom room) {
 		boolean result = false;
-		synchronized(this) {
-			try {
-				Query<ConferenceRoom> query = conferenceRoomDatastore.createQuery(ConferenceRoom.class).field("roomId").equal(roomId);
+		try {
+			Query<ConferenceRoom> query = conferenceRoomDatastore.createQuery(ConferenceRoom.class).field("roomId").equal(roomId);
 
-				UpdateOperations<ConferenceRoom> ops = conferenceRoomDatastore.createUpdateOperations(ConferenceRoom.class).set("roomId", room.getRoomId())
-						.set("startDate", room.getStartDate()).set("endDate", room.getEndDate())
-						.set("roomStreamList", room.getRoomStreamList());
+			UpdateOperations<ConferenceRoom> ops = conferenceRoomDatastore.createUpdateOperations(ConferenceRoom.class).set("roomId", room.getRoomId())
+					.set("startDate", room.getStartDate()).set("endDate", room.getEndDate())
+					.set("roomStreamList", room.getRoomStreamList());
 
-				UpdateResults update = conferenceRoomDatastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(e.getMessage());
-			}
+			UpdateResults update = conferenceRoomDatastore.update(query, ops);
+			return update.getUpdatedCount() == 1;
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return result;
 	}
 
 	@Override
 	public boolean deleteConferenceRoom(String roomId) {
-		synchronized(this) {
-			try {
-				Query<ConferenceRoom> query = conferenceRoomDatastore.createQuery(ConferenceRoom.class).field("roomId").equal(roomId);
-				WriteResult delete = conferenceRoomDatastore.delete(query);
-				return delete.getN() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<ConferenceRoom> query = conferenceRoomDatastore.createQuery(ConferenceRoom.class).field("roomId").equal(roomId);
+			WriteResult delete = conferenceRoomDatastore.delete(query);
+			return delete.getN() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 
 	@Override
 	public ConferenceRoom getConferenceRoom(String roomId) {
-		synchronized(this) {
-			try {
-				return conferenceRoomDatastore.find(ConferenceRoom.class).field("roomId").equal(roomId).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return conferenceRoomDatastore.find(ConferenceRoom.class).field("roomId").equal(roomId).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
@@ -1104,14 +1206,12 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean deleteToken(String tokenId) {
 		boolean result = false;
-		synchronized(this) {
-			try {
-				Query<Token> query = tokenDatastore.createQuery(Token.class).field(TOKEN_ID).equal(tokenId);
-				WriteResult delete = tokenDatastore.delete(query);
-				result = delete.getN() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<Token> query = tokenDatastore.createQuery(Token.class).field(TOKEN_ID).equal(tokenId);
+			WriteResult delete = tokenDatastore.delete(query);
+			result = delete.getN() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return result;
 	}
@@ -1120,84 +1220,66 @@ public class MongoStore extends DataStore {
 	public Token getToken(String tokenId) {
 		Token token = null;
 
-		synchronized(this) {
-			try {
-				token =  tokenDatastore.find(Token.class).field(TOKEN_ID).equal(tokenId).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			token =  tokenDatastore.find(Token.class).field(TOKEN_ID).equal(tokenId).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return token;
 	}
 	
 	@Override
 	public long getLocalLiveBroadcastCount(String hostAddress) {
-		synchronized(this) {
-			Query<Broadcast> query = datastore.createQuery(Broadcast.class);
-			query.and(
-					query.or(
-							query.criteria(ORIGIN_ADDRESS).doesNotExist(), //check for non cluster mode
-							query.criteria(ORIGIN_ADDRESS).equal(hostAddress)
-							),
-					query.criteria(STATUS).equal(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)
-					);
-			return query.count();
-		}
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+		return liveBroadcastCounters.getLocalLiveBroadcastCount(hostAddress);
 	}
 
 	@Override
 	public boolean createP2PConnection(P2PConnection conn) {
-		synchronized(this) {
-			try {
-				datastore.save(conn);
-				return true;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			datastore.save(conn);
+			return true;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 
 	@Override
 	public boolean deleteP2PConnection(String streamId) {
-		synchronized(this) {
-			try {
-				Query<P2PConnection> query = datastore.createQuery(P2PConnection.class).field(STREAM_ID).equal(streamId);
-				WriteResult delete = datastore.delete(query);
-				return (delete.getN() == 1);
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<P2PConnection> query = datastore.createQuery(P2PConnection.class).field(STREAM_ID).equal(streamId);
+			WriteResult delete = datastore.delete(query);
+			return (delete.getN() == 1);
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 	
 	@Override
 	public P2PConnection getP2PConnection(String streamId) {
-		synchronized(this) {
-			try {
-				return datastore.find(P2PConnection.class).field(STREAM_ID).equal(streamId).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return datastore.find(P2PConnection.class).field(STREAM_ID).equal(streamId).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
 
 	@Override
 	public boolean addSubTrack(String mainTrackId, String subTrackId) {
-		synchronized(this) {
-			try {
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(mainTrackId);
+		try {
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class).field(STREAM_ID).equal(mainTrackId);
 
-				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).push("subTrackStreamIds",
-						subTrackId);
+			UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class).push("subTrackStreamIds",
+					subTrackId);
 
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+			UpdateResults update = datastore.update(query, ops);
+			broadcastChangeListeners.notifyChanged(mainTrackId);
+			return update.getUpdatedCount() == 1;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
@@ -1205,39 +1287,33 @@ public class MongoStore extends DataStore {
 	
 	@Override
 	public boolean createPlaylist(Playlist playlist) {
-		synchronized(this) {
-			try {
-				datastore.save(playlist);
-				return true;
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			datastore.save(playlist);
+			return true;
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
 
 	@Override
 	public Playlist getPlaylist(String playlistId) {
-		synchronized(this) {
-			try {
-				return datastore.find(Playlist.class).field(PLAYLIST_ID).equal(playlistId).first();
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			return datastore.find(Playlist.class).field(PLAYLIST_ID).equal(playlistId).first();
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return null;
 	}
 
 	@Override
 	public boolean deletePlaylist(String playlistId) {
-		synchronized(this) {
-			try {
-				Query<Playlist> query = datastore.createQuery(Playlist.class).field(PLAYLIST_ID).equal(playlistId);
-				WriteResult delete = datastore.delete(query);
-				return (delete.getN() == 1);
-			} catch (Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-			}
+		try {
+			Query<Playlist> query = datastore.createQuery(Playlist.class).field(PLAYLIST_ID).equal(playlistId);
+			WriteResult delete = datastore.delete(query);
+			return (delete.getN() == 1);
+		} catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
 		}
 		return false;
 	}
@@ -1245,20 +1321,18 @@ public class MongoStore extends DataStore {
 	@Override
 	public boolean editPlaylist(String playlistId, Playlist playlist) {
 		boolean result = false;
-		synchronized(this) {
-			try {
-				Query<Playlist> query = datastore.createQuery(Playlist.class).field(PLAYLIST_ID).equal(playlist.getPlaylistId());
+		try {
+			Query<Playlist> query = datastore.createQuery(Playlist.class).field(PLAYLIST_ID).equal(playlist.getPlaylistId());
 
-				UpdateOperations<Playlist> ops = datastore.createUpdateOperations(Playlist.class).set(PLAYLIST_ID, playlist.getPlaylistId())
-						.set("playlistName", playlist.getPlaylistName()).set("playlistStatus", playlist.getPlaylistStatus())
-						.set(CREATION_DATE, playlist.getCreationDate()).set(DURATION, playlist.getDuration())
-						.set("broadcastItemList", playlist.getBroadcastItemList());
+			UpdateOperations<Playlist> ops = datastore.createUpdateOperations(Playlist.class).set(PLAYLIST_ID, playlist.getPlaylistId())
+					.set("playlistName", playlist.getPlaylistName()).set("playlistStatus", playlist.getPlaylistStatus())
+					.set(CREATION_DATE, playlist.getCreationDate()).set(DURATION, playlist.getDuration())
+					.set("broadcastItemList", playlist.getBroadcastItemList());
 
-				UpdateResults update = datastore.update(query, ops);
-				return update.getUpdatedCount() == 1;
-			} catch (Exception e) {
-				logger.error(e.getMessage());
-			}
+			UpdateResults update = datastore.update(query, ops);
+			return update.getUpdatedCount() == 1;
+		} catch (Exception e) {
+			logger.error(e.getMessage());
 		}
 		return result;
 	}
@@ -1267,115 +1341,97 @@ public class MongoStore extends DataStore {
 	public int resetBroadcasts(String hostAddress) 
 	{
 		int totalOperationCount = 0;
-		synchronized(this) {
+		{
+			//delete zombi streams that are belong to origin address
+			Query<Broadcast> query = datastore.createQuery(Broadcast.class);
+			query.and(
+					query.or(
+							query.criteria(ORIGIN_ADDRESS).doesNotExist(), //check for non cluster mode
+							query.criteria(ORIGIN_ADDRESS).equal(hostAddress)
+							),
+					query.criteria("zombi").equal(true)
+					);
+			long count = query.count();
+			
+			if(count > 0) 
 			{
-				//delete zombi streams that are belong to origin address
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class);
-				query.and(
-						query.or(
-								query.criteria(ORIGIN_ADDRESS).doesNotExist(), //check for non cluster mode
-								query.criteria(ORIGIN_ADDRESS).equal(hostAddress)
-								),
-						query.criteria("zombi").equal(true)
-						);
-				long count = query.count();
-				
-				if(count > 0) 
-				{
-					logger.error("There are {} streams for {} at start. They are deleted now.", count, hostAddress);
-	
-					WriteResult res = datastore.delete(query);
-					if(res.getN() != count) {
-						logger.error("Only {} streams were deleted out of {} streams.", res.getN(), count);
-					}
-					totalOperationCount += res.getN();
+				logger.error("There are {} streams for {} at start. They are deleted now.", count, hostAddress);
+
+				WriteResult res = datastore.delete(query);
+				if(res.getN() != count) {
+					logger.error("Only {} streams were deleted out of {} streams.", res.getN(), count);
 				}
+				totalOperationCount += res.getN();
 			}
+		}
+		
+		{
+			//reset the broadcasts viewer numbers
+			Query<Broadcast> queryUpdateStatus = datastore.createQuery(Broadcast.class);
+			queryUpdateStatus.or(queryUpdateStatus.criteria(ORIGIN_ADDRESS).equal(hostAddress),
+					queryUpdateStatus.criteria(ORIGIN_ADDRESS).doesNotExist());
 			
+			long broadcastCount = queryUpdateStatus.count();
+
+			if (broadcastCount > 0) 
 			{
-				//reset the broadcasts viewer numbers
-				Query<Broadcast> queryUpdateStatus = datastore.createQuery(Broadcast.class);
-				queryUpdateStatus.or(queryUpdateStatus.criteria(ORIGIN_ADDRESS).equal(hostAddress),
-						queryUpdateStatus.criteria(ORIGIN_ADDRESS).doesNotExist());
+				UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
+				ops.set(WEBRTC_VIEWER_COUNT, 0);
+				ops.set(HLS_VIEWER_COUNT, 0);
+				ops.set(RTMP_VIEWER_COUNT, 0);
+				ops.set(STATUS, AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED);
 				
-				long broadcastCount = queryUpdateStatus.count();
-	
-				if (broadcastCount > 0) 
+				UpdateResults update = datastore.update(queryUpdateStatus, ops);
+				
+				if (update.getUpdatedCount() == broadcastCount) 
 				{
-					UpdateOperations<Broadcast> ops = datastore.createUpdateOperations(Broadcast.class);
-					ops.set(WEBRTC_VIEWER_COUNT, 0);
-					ops.set(HLS_VIEWER_COUNT, 0);
-					ops.set(RTMP_VIEWER_COUNT, 0);
-					ops.set(STATUS, AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED);
-					
-					UpdateResults update = datastore.update(queryUpdateStatus, ops);
-					
-					if (update.getUpdatedCount() == broadcastCount) 
-					{
-						logger.info("{} of Broadcasts are reset. ", broadcastCount);
-					}
-					else 
-					{
-						logger.error("Broadcast reset count is not correct. {} stream info were updated out of {} streams.", update.getUpdatedCount(), broadcastCount);
-					}
-					
-					totalOperationCount += update.getUpdatedCount();
+					logger.info("{} of Broadcasts are reset. ", broadcastCount);
+				}
+				else 
+				{
+					logger.error("Broadcast reset count is not correct. {} stream info were updated out of {} streams.", update.getUpdatedCount(), broadcastCount);
 				}
 				
+				totalOperationCount += update.getUpdatedCount();
 			}
 			
+		}
+		
+		{
+			//delete streaminfo 
+			Query<StreamInfo> querySI = datastore.createQuery(StreamInfo.class).field("host").equal(hostAddress);
+			long count = querySI.count();
+			if(count > 0) 
 			{
-				//delete streaminfo 
-				Query<StreamInfo> querySI = datastore.createQuery(StreamInfo.class).field("host").equal(hostAddress);
-				long count = querySI.count();
-				if(count > 0) 
-				{
-					logger.error("There are {} stream info adressing {} at start. They are deleted now.", count, hostAddress);
-					WriteResult res = datastore.delete(querySI);
-					if(res.getN() != count) {
-						logger.error("Only {} stream info were deleted out of {} streams.", res.getN(), count);
-					}
-					totalOperationCount += res.getN();
+				logger.error("There are {} stream info adressing {} at start. They are deleted now.", count, hostAddress);
+				WriteResult res = datastore.delete(querySI);
+				if(res.getN() != count) {
+					logger.error("Only {} stream info were deleted out of {} streams.", res.getN(), count);
 				}
+				totalOperationCount += res.getN();
 			}
-			
 		}
 		
+		
+		liveBroadcastCounters.reconcile(this::loadCounters);
+		broadcastChangeListeners.notifyChanged(null);
+		
 		return totalOperationCount;
 	}
 	
-	static class Summation {
-		private int total;
-		public int getTotal() {
-			return total;
-		}
-		public void setTotal(int total) {
-			this.total = total;
-		}
-	}
-
 	@Override
 	public int getTotalWebRTCViewersCount() {
-		long now = System.currentTimeMillis();
-		if(now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
-			synchronized(this) {
-				int total = 0;
-				Query<Broadcast> query = datastore.createQuery(Broadcast.class);
-				query.field(STATUS).equal(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
-
-				Iterator<Summation> result = datastore.createAggregation(Broadcast.class)
-						.match(query)
-						.group("AllBroadcasts", Group.grouping("total", Group.sum(WEBRTC_VIEWER_COUNT)))
-						.aggregate(Summation.class, AggregationOptions.builder().build());
-
-				if(result.hasNext()) {
-					total = ((Summation) result.next()).getTotal();
-				}
-				
-				totalWebRTCViewerCount = total;
-				totalWebRTCViewerCountLastUpdateTime = now;
-			}
-		}
-		return totalWebRTCViewerCount;
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+		return (int) liveBroadcastCounters.getTotalWebRTCViewerCount();
+	}
+	
+	public int getTotalHLSViewersCount() {
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+		return (int) liveBroadcastCounters.getTotalHLSViewerCount();
+	}
+	
+	public int getTotalRTMPViewersCount() {
+		liveBroadcastCounters.reconcileIfNeeded(this::loadCounters);
+		return (int) liveBroadcastCounters.getTotalRTMPViewerCount();
 	}
 }
@@ -0,0 +1,84 @@
+package io.antmedia.datastore.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory index from a field value to the ids of the records having that value.
+ *
+ * MapDBStore keeps its records as json so filtering by a field requires parsing every record.
+ * This index lets such queries visit only the matching records. It is not persisted,
+ * it's rebuilt when the db is opened and kept up to date on every mutation.
+ *
+ * Mutations on the same id should be serialized by the caller. Ids of a value are kept in
+ * sorted order so that results are in the same order as the keys of the BTreeMap.
+ */
+public class SecondaryIndex {
+
+	private final Map<String, NavigableSet<String>> valueToIds = new ConcurrentHashMap<>();
+
+	private final Map<String, String> idToValue = new ConcurrentHashMap<>();
+
+	/**
+	 * Sets the indexed value of the id. Previous value of the id, if any, is replaced
+	 * @param id
+	 * @param value null removes the id from the index
+	 */
+	public void put(String id, String value) {
+		if (id == null) {
+			return;
+		}
+		String oldValue = value != null ? idToValue.put(id, value) : idToValue.remove(id);
+		if (oldValue != null && !oldValue.equals(value)) {
+			removeFromValue(oldValue, id);
+		}
+		if (value != null) {
+			valueToIds.compute(value, (key, ids) -> {
+				if (ids == null) {
+					ids = new ConcurrentSkipListSet<>();
+				}
+				ids.add(id);
+				return ids;
+			});
+		}
+	}
+
+	public void remove(String id) {
+		put(id, null);
+	}
+
+	private void removeFromValue(String value, String id) {
+		valueToIds.computeIfPresent(value, (key, ids) -> {
+			ids.remove(id);
+			return ids.isEmpty() ? null : ids;
+		});
+	}
+
+	/**
+	 * @param value
+	 * @return read-only sorted view of the ids having the value
+	 */
+	public NavigableSet<String> getIds(String value) {
+		NavigableSet<String> ids = value != null ? valueToIds.get(value) : null;
+		if (ids == null) {
+			return Collections.emptyNavigableSet();
+		}
+		return Collections.unmodifiableNavigableSet(ids);
+	}
+
+	public String getValue(String id) {
+		return id != null ? idToValue.get(id) : null;
+	}
+
+	public int count(String value) {
+		return getIds(value).size();
+	}
+
+	public void clear() {
+		valueToIds.clear();
+		idToValue.clear();
+	}
+}
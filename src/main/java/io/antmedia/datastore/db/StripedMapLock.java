@@ -0,0 +1,68 @@
+package io.antmedia.datastore.db;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lock of a single map in {@link MapDBStore}.
+ *
+ * Mutations on a single key lock only the stripe of that key so that mutations on different keys
+ * and mutations on different maps run in parallel. Mutations touching many keys lock the whole map.
+ * Reads do not use this lock at all because MapDB maps are already thread safe.
+ */
+public class StripedMapLock {
+
+	public static final int DEFAULT_STRIPE_COUNT = 64;
+
+	private final ReentrantReadWriteLock mapLock = new ReentrantReadWriteLock();
+
+	private final ReentrantLock[] stripes;
+
+	public StripedMapLock() {
+		this(DEFAULT_STRIPE_COUNT);
+	}
+
+	public StripedMapLock(int stripeCount) {
+		stripes = new ReentrantLock[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+	}
+
+	private ReentrantLock getStripe(String key) {
+		int hash = key != null ? key.hashCode() : 0;
+		//spread the hash bits as HashMap does
+		hash ^= (hash >>> 16);
+		return stripes[(hash & 0x7fffffff) % stripes.length];
+	}
+
+	/**
+	 * Locks the key for a single key mutation. Mutations on other keys are not blocked
+	 * @param key
+	 */
+	public void lockKey(String key) {
+		mapLock.readLock().lock();
+		getStripe(key).lock();
+	}
+
+	public void unlockKey(String key) {
+		getStripe(key).unlock();
+		mapLock.readLock().unlock();
+	}
+
+	/**
+	 * Locks the whole map for mutations touching many keys.
+	 * Single key locks can be acquired by the same thread while holding this lock
+	 */
+	public void lockAll() {
+		mapLock.writeLock().lock();
+	}
+
+	public void unlockAll() {
+		mapLock.writeLock().unlock();
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+}
@@ -0,0 +1,78 @@
+package io.antmedia.datastore.db;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Viewer counts of the streams keyed by stream id.
+ *
+ * Counts are updated with compare-and-set operations of the underlying map so that
+ * concurrent viewer updates neither lock the stream nor read and write its other fields.
+ * Zero counts are not kept in the map.
+ */
+public class ViewerCountMap {
+
+	private final ConcurrentMap<String, Integer> map;
+
+	public ViewerCountMap(ConcurrentMap<String, Integer> map) {
+		this.map = map;
+	}
+
+	public int get(String id) {
+		Integer count = map.get(id);
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * Adds the difference to the count atomically
+	 * @param id
+	 * @param diff
+	 * @param floorAtZero if true, difference is not applied when count becomes negative
+	 * @return true if difference is applied
+	 */
+	public boolean add(String id, int diff, boolean floorAtZero) {
+		if (diff == 0) {
+			return true;
+		}
+		while (true) {
+			Integer count = map.get(id);
+			int newCount = (count != null ? count : 0) + diff;
+			if (floorAtZero && newCount < 0) {
+				return false;
+			}
+			if (compareAndSet(id, count, newCount)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean compareAndSet(String id, Integer expected, int newCount) {
+		if (expected == null) {
+			return newCount == 0 || map.putIfAbsent(id, newCount) == null;
+		}
+		if (newCount == 0) {
+			return map.remove(id, expected);
+		}
+		return map.replace(id, expected, newCount);
+	}
+
+	/**
+	 * Sets the count
+	 * @return previous count
+	 */
+	public int set(String id, int count) {
+		Integer previous = count != 0 ? map.put(id, count) : map.remove(id);
+		return previous != null ? previous : 0;
+	}
+
+	/**
+	 * Sets the count to zero
+	 * @return previous count
+	 */
+	public int reset(String id) {
+		return set(id, 0);
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+}
@@ -2,11 +2,15 @@ package io.antmedia.filter;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 
 import org.apache.catalina.util.NetMask;
 import org.slf4j.Logger;
@@ -25,6 +29,15 @@ public abstract class AbstractFilter implements Filter{
 	protected static Logger logger = LoggerFactory.getLogger(AbstractFilter.class);
 	protected FilterConfig config;
 
+	public static final String VIEWER_ID_ATTRIBUTE = "io.antmedia.viewerId";
+	public static final String PLAYER_ID_PARAM = "playerId";
+	private static final int MAX_PLAYER_ID_LENGTH = 64;
+
+	/**
+	 * Matcher of the last checked CIDR list. It's compiled again if the list changes
+	 */
+	private volatile CIDRMatcher cidrMatcher;
+
 	@Override
 	public void init(FilterConfig filterConfig) throws ServletException {
 		this.config = filterConfig;
@@ -50,6 +63,67 @@ public abstract class AbstractFilter implements Filter{
 		return serverSettings;
 	}
 
+	/**
+	 * Returns the id of the viewer according to the viewer id mode in the server settings. 
+	 * Id is kept in the request so that it's calculated once for the filters of the request
+	 * @param request
+	 * @return
+	 */
+	public String getViewerId(HttpServletRequest request) 
+	{
+		String viewerId = (String) request.getAttribute(VIEWER_ID_ATTRIBUTE);
+		if (viewerId == null) 
+		{
+			ServerSettings serverSettings = getServerSetting();
+			String mode = serverSettings != null ? serverSettings.getViewerIdMode() : ServerSettings.VIEWER_ID_MODE_SESSION;
+
+			if (ServerSettings.VIEWER_ID_MODE_PLAYER_ID.equals(mode)) {
+				viewerId = getPlayerId(request);
+			}
+			if (viewerId == null) {
+				if (mode == null || ServerSettings.VIEWER_ID_MODE_SESSION.equals(mode)) {
+					viewerId = request.getSession().getId();
+				}
+				else {
+					viewerId = getClientHash(request);
+				}
+			}
+			request.setAttribute(VIEWER_ID_ATTRIBUTE, viewerId);
+		}
+		return viewerId;
+	}
+
+	private static String getPlayerId(HttpServletRequest request) {
+		String playerId = request.getParameter(PLAYER_ID_PARAM);
+		if (playerId != null && !playerId.isEmpty() && playerId.length() <= MAX_PLAYER_ID_LENGTH) {
+			return playerId.replaceAll("[\n|\r|\t]", "_");
+		}
+		return null;
+	}
+
+	/**
+	 * @return hash of the client IP and user agent
+	 */
+	public static String getClientHash(HttpServletRequest request) {
+		String client = request.getRemoteAddr() + "|" + request.getHeader("User-Agent");
+		return UUID.nameUUIDFromBytes(client.getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	/**
+	 * Checks the address with the compiled matcher of the comma separated CIDR list
+	 * @param allowedCIDRs
+	 * @param remoteIPAdrress
+	 * @return
+	 */
+	public boolean checkCIDRList(String allowedCIDRs, final String remoteIPAdrress) {
+		CIDRMatcher matcher = cidrMatcher;
+		if (matcher == null || !Objects.equals(matcher.getCidrList(), allowedCIDRs)) {
+			matcher = CIDRMatcher.compile(allowedCIDRs);
+			cidrMatcher = matcher;
+		}
+		return matcher.matches(remoteIPAdrress);
+	}
+
 	public boolean checkCIDRList(List<NetMask> allowedCIDRList, final String remoteIPAdrress) {
 		try {
 			InetAddress addr = InetAddress.getByName(remoteIPAdrress);
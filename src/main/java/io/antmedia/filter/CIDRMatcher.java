@@ -0,0 +1,235 @@
+package io.antmedia.filter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable matcher of a comma separated CIDR list such as "127.0.0.1/8,10.10.0.0/16,::1/128".
+ *
+ * Prefixes are compiled into binary tries, one for IPv4 and one for IPv6, so that checking an address
+ * visits at most one node per bit of the longest matching prefix. Addresses are parsed as literals
+ * and hostnames are never resolved. Decisions are cached per address.
+ *
+ * A new matcher should be compiled when the CIDR list changes.
+ */
+public class CIDRMatcher {
+
+	protected static Logger logger = LoggerFactory.getLogger(CIDRMatcher.class);
+
+	private static final int MAX_CACHED_DECISION_COUNT = 10000;
+
+	/**
+	 * Binary trie with the nodes kept in arrays. Node 0 is the root and child index 0 means no child
+	 */
+	private static class PrefixTrie {
+		private int[] zeroChildren = new int[16];
+		private int[] oneChildren = new int[16];
+		private boolean[] terminal = new boolean[16];
+		private int nodeCount = 1;
+
+		void add(byte[] address, int prefixLength) {
+			int node = 0;
+			for (int bit = 0; bit < prefixLength && !terminal[node]; bit++) {
+				boolean one = isBitSet(address, bit);
+				int child = one ? oneChildren[node] : zeroChildren[node];
+				if (child == 0) {
+					//arrays may be grown in newNode so they are read after it
+					child = newNode();
+					(one ? oneChildren : zeroChildren)[node] = child;
+				}
+				node = child;
+			}
+			terminal[node] = true;
+		}
+
+		private int newNode() {
+			if (nodeCount == terminal.length) {
+				int capacity = nodeCount * 2;
+				zeroChildren = Arrays.copyOf(zeroChildren, capacity);
+				oneChildren = Arrays.copyOf(oneChildren, capacity);
+				terminal = Arrays.copyOf(terminal, capacity);
+			}
+			return nodeCount++;
+		}
+
+		boolean matches(byte[] address) {
+			int node = 0;
+			int bitCount = address.length * 8;
+			for (int bit = 0; bit < bitCount; bit++) {
+				if (terminal[node]) {
+					return true;
+				}
+				node = isBitSet(address, bit) ? oneChildren[node] : zeroChildren[node];
+				if (node == 0) {
+					return false;
+				}
+			}
+			return terminal[node];
+		}
+
+		private static boolean isBitSet(byte[] address, int bit) {
+			return (address[bit >> 3] & (0x80 >> (bit & 7))) != 0;
+		}
+	}
+
+	private final String cidrList;
+
+	private final PrefixTrie ipv4Trie = new PrefixTrie();
+
+	private final PrefixTrie ipv6Trie = new PrefixTrie();
+
+	private final Map<String, Boolean> decisionCache = new ConcurrentHashMap<>();
+
+	private int prefixCount = 0;
+
+	private CIDRMatcher(String cidrList) {
+		this.cidrList = cidrList;
+	}
+
+	/**
+	 * Compiles the comma separated CIDR list. Invalid entries are logged and skipped
+	 * @param cidrList
+	 * @return
+	 */
+	public static CIDRMatcher compile(String cidrList) {
+		CIDRMatcher matcher = new CIDRMatcher(cidrList);
+		if (cidrList != null && !cidrList.isEmpty()) {
+			for (String cidr : cidrList.split("\\s*,\\s*")) {
+				if (!cidr.isEmpty() && !matcher.add(cidr.trim())) {
+					logger.warn("Invalid CIDR {} is skipped", cidr);
+				}
+			}
+		}
+		return matcher;
+	}
+
+	private boolean add(String cidr) {
+		int slashIndex = cidr.indexOf('/');
+		String address = slashIndex != -1 ? cidr.substring(0, slashIndex) : cidr;
+		byte[] addressBytes = parseAddress(address);
+		if (addressBytes == null) {
+			return false;
+		}
+
+		int prefixLength = addressBytes.length * 8;
+		if (slashIndex != -1) {
+			try {
+				prefixLength = Integer.parseInt(cidr.substring(slashIndex + 1));
+			}
+			catch (NumberFormatException e) {
+				return false;
+			}
+			if (prefixLength < 0 || prefixLength > addressBytes.length * 8) {
+				return false;
+			}
+		}
+
+		(addressBytes.length == 4 ? ipv4Trie : ipv6Trie).add(addressBytes, prefixLength);
+		prefixCount++;
+		return true;
+	}
+
+	/**
+	 * @param remoteAddress literal IPv4 or IPv6 address
+	 * @return true if address is in one of the CIDRs
+	 */
+	public boolean matches(String remoteAddress) {
+		if (remoteAddress == null || prefixCount == 0) {
+			return false;
+		}
+
+		Boolean decision = decisionCache.get(remoteAddress);
+		if (decision == null) {
+			byte[] addressBytes = parseAddress(remoteAddress);
+			decision = addressBytes != null && (addressBytes.length == 4 ? ipv4Trie : ipv6Trie).matches(addressBytes);
+
+			if (decisionCache.size() >= MAX_CACHED_DECISION_COUNT) {
+				decisionCache.clear();
+			}
+			decisionCache.put(remoteAddress, decision);
+		}
+		return decision;
+	}
+
+	/**
+	 * Parses the literal address. Hostnames are not resolved
+	 * @param address
+	 * @return 4 bytes for IPv4, 16 bytes for IPv6 or null if it's not a valid literal address
+	 */
+	static byte[] parseAddress(String address) {
+		if (address.indexOf(':') != -1) {
+			return parseIPv6Address(address);
+		}
+		return parseIPv4Address(address);
+	}
+
+	private static byte[] parseIPv4Address(String address) {
+		byte[] bytes = new byte[4];
+		int octetIndex = 0;
+		int value = 0;
+		int digitCount = 0;
+		for (int i = 0; i <= address.length(); i++) {
+			char c = i < address.length() ? address.charAt(i) : '.';
+			if (c == '.') {
+				if (digitCount == 0 || octetIndex == 4) {
+					return null;
+				}
+				bytes[octetIndex++] = (byte) value;
+				value = 0;
+				digitCount = 0;
+			}
+			else if (c >= '0' && c <= '9' && digitCount < 3) {
+				value = value * 10 + (c - '0');
+				digitCount++;
+				if (value > 255) {
+					return null;
+				}
+			}
+			else {
+				return null;
+			}
+		}
+		return octetIndex == 4 ? bytes : null;
+	}
+
+	private static byte[] parseIPv6Address(String address) {
+		//zone index is not part of the address
+		int zoneIndex = address.indexOf('%');
+		if (zoneIndex != -1) {
+			address = address.substring(0, zoneIndex);
+		}
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			if (!(c == ':' || c == '.' || Character.digit(c, 16) != -1)) {
+				//it's not a literal so it's not resolved
+				return null;
+			}
+		}
+		try {
+			//literal addresses are parsed without name service lookup
+			return InetAddress.getByName(address).getAddress();
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the CIDR list that this matcher is compiled from
+	 */
+	public String getCidrList() {
+		return cidrList;
+	}
+
+	/**
+	 * @return number of the valid CIDRs
+	 */
+	public int getPrefixCount() {
+		return prefixCount;
+	}
+}
@@ -13,8 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 
-import io.antmedia.datastore.db.DataStoreFactory;
-import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.statistic.HlsViewerStats;
 import io.antmedia.statistic.IStreamStats;
 
@@ -35,27 +33,34 @@ public class HlsStatisticsFilter extends AbstractFilter {
 		String method = httpRequest.getMethod();
 		if ("GET".equals(method)) {
 			//only accept GET methods
-			String sessionId = httpRequest.getSession().getId();
+			String sessionId = getViewerId(httpRequest);
 
-			String streamId = TokenFilterManager.getStreamId(httpRequest.getRequestURI());
-			Broadcast broadcast = getBroadcast(streamId);
-			if(broadcast != null 
-					&& broadcast.getHlsViewerLimit() != -1
-					&& broadcast.getHlsViewerCount() >= broadcast.getHlsViewerLimit()) {
+			String streamId = TokenFilterManager.getStreamId(httpRequest);
+			IStreamStats stats = getStreamStats();
+			if (streamId != null && stats != null && !stats.admitViewer(streamId, sessionId)) {
 				((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN, "Viewer Limit Reached");
 				return;
 			}
 		
-			chain.doFilter(request, response);
-
-			int status = ((HttpServletResponse) response).getStatus();
-
-			if (HttpServletResponse.SC_OK <= status && status <= HttpServletResponse.SC_BAD_REQUEST && streamId != null) 
-			{				
-				logger.debug("req ip {} session id {} stream id {} status {}", request.getRemoteHost(), sessionId, streamId, status);
-				IStreamStats stats = getStreamStats();
-				if (stats != null) {
-					stats.registerNewViewer(streamId, sessionId);
+			boolean registered = false;
+			try {
+				chain.doFilter(request, response);
+
+				int status = ((HttpServletResponse) response).getStatus();
+
+				if (HttpServletResponse.SC_OK <= status && status <= HttpServletResponse.SC_BAD_REQUEST && streamId != null) 
+				{				
+					logger.debug("req ip {} session id {} stream id {} status {}", request.getRemoteHost(), sessionId, streamId, status);
+					if (stats != null) {
+						stats.registerNewViewer(streamId, sessionId);
+						registered = true;
+					}
+				}
+			}
+			finally {
+				//failed requests do not keep the place of the admitted viewer
+				if (!registered && streamId != null && stats != null) {
+					stats.releaseViewer(streamId, sessionId);
 				}
 			}
 		}
@@ -75,16 +80,5 @@ public class HlsStatisticsFilter extends AbstractFilter {
 		}
 		return streamStats;
 	}
-	
-	public Broadcast getBroadcast(String streamId) {
-		Broadcast broadcast = null;	
-		ApplicationContext context = getAppContext();
-		if (context != null) 
-		{
-			DataStoreFactory dsf = (DataStoreFactory)context.getBean(DataStoreFactory.BEAN_NAME);
-			broadcast = dsf.getDataStore().get(streamId);
-		}
-		return broadcast;
-	}
 
 }
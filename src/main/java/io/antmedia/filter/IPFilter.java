@@ -41,7 +41,7 @@ public class IPFilter extends AbstractFilter {
 	public boolean isAllowed(final String remoteIPAdrress) {
 		AppSettings appSettings = getAppSettings();
 		if (appSettings != null) {
-			return checkCIDRList(appSettings.getAllowedCIDRList(),remoteIPAdrress);
+			return checkCIDRList(appSettings.getRemoteAllowedCIDR(),remoteIPAdrress);
 		}
 		// Deny this request
 		return false;
@@ -31,7 +31,7 @@ public class IPFilterDashboard extends AbstractFilter{
 	public boolean isAllowedDashboard(final String remoteIPAdrress){
 		ServerSettings serverSettings = getServerSetting();
 		if (serverSettings != null){
-			return checkCIDRList(serverSettings.getAllowedCIDRList(),remoteIPAdrress);
+			return checkCIDRList(serverSettings.getAllowedDashboardCIDR(),remoteIPAdrress);
 		}
 		// Deny this request
 		return false;
@@ -16,12 +16,15 @@ import org.springframework.web.context.ConfigurableWebApplicationContext;
 
 import io.antmedia.AppSettings;
 import io.antmedia.datastore.db.types.Token;
-import io.antmedia.muxer.MuxAdaptor;
 import io.antmedia.security.ITokenService;
 
 public class TokenFilterManager extends AbstractFilter   {
 
 	private static final String REPLACE_CHARS_REGEX = "[\n|\r|\t]";
+	public static final String STREAM_ID_ATTRIBUTE = "io.antmedia.streamId";
+	private static final String M3U8_EXTENSION = ".m3u8";
+	private static final String MP4_EXTENSION = ".mp4";
+	private static final String MPD_EXTENSION = ".mpd";
 	protected static Logger logger = LoggerFactory.getLogger(TokenFilterManager.class);
 	private ITokenService tokenService;
 
@@ -39,8 +42,8 @@ public class TokenFilterManager extends AbstractFilter   {
 			tokenId = tokenId.replaceAll(REPLACE_CHARS_REGEX, "_");
 		}
 		 
-		String sessionId = httpRequest.getSession().getId();
-		String streamId = getStreamId(httpRequest.getRequestURI());
+		String sessionId = getViewerId(httpRequest);
+		String streamId = getStreamId(httpRequest);
 		
 		String clientIP = httpRequest.getRemoteAddr().replaceAll(REPLACE_CHARS_REGEX, "_");
 
@@ -136,45 +139,66 @@ public class TokenFilterManager extends AbstractFilter   {
 		this.tokenService = tokenService;
 	}
 
-	public static String getStreamId(String requestURI) {
-		
-		requestURI = requestURI.replaceAll(REPLACE_CHARS_REGEX, "_");
-		
-		int endIndex;
-		int startIndex = requestURI.lastIndexOf('/');
-
-		if(requestURI.contains("_")) {
-			//if multiple files with same id requested such as : 541211332342978513714151_480p_1.mp4 
-			return requestURI.split("_")[0].substring(startIndex+1);
+	/**
+	 * Returns the stream id of the request. Stream id is kept in the request so that 
+	 * it's parsed once for the filters of the request
+	 * @param request
+	 * @return stream id or null if request is not for a stream file
+	 */
+	public static String getStreamId(HttpServletRequest request) {
+		String streamId = (String) request.getAttribute(STREAM_ID_ATTRIBUTE);
+		if (streamId == null) {
+			streamId = getStreamId(request.getRequestURI());
+			if (streamId != null) {
+				request.setAttribute(STREAM_ID_ATTRIBUTE, streamId);
+			}
 		}
+		return streamId;
+	}
 
-		//if mp4 file requested
-		endIndex = requestURI.lastIndexOf(".mp4");
-		if (endIndex != -1) {
-			return requestURI.substring(startIndex+1, endIndex);
+	/**
+	 * Parses the stream id from the file name in the URI without regular expressions. 
+	 * 
+	 * If file name has an underscore such as 541211332342978513714151_480p_1.mp4, streamId_adaptive.m3u8 or 
+	 * streamId_240p.m3u8, stream id is the part before the first underscore. 
+	 * Otherwise stream id is the file name without .m3u8, .mp4 or .mpd extension.
+	 * 
+	 * @param requestURI
+	 * @return stream id or null if URI is not for a stream file
+	 */
+	public static String getStreamId(String requestURI) {
+		if (requestURI == null) {
+			return null;
 		}
 
-		//if request is adaptive file ( ending with _adaptive.m3u8)
-		endIndex = requestURI.lastIndexOf(MuxAdaptor.ADAPTIVE_SUFFIX + ".m3u8");
-		if (endIndex != -1) {
-			return requestURI.substring(startIndex+1, endIndex);
-		}
+		int startIndex = requestURI.lastIndexOf('/') + 1;
+		int length = requestURI.length();
+		int extensionIndex = -1;
 
-		//if specific bitrate is requested
-		String regex = "_[0-9]+p\\.m3u8$";  // matches ending with _[resolution]p.m3u8
-		if (requestURI.matches(regex)) {
-			endIndex = requestURI.lastIndexOf('_'); //because file format is [NAME]_[RESOLUTION]p.m3u8
-			return requestURI.substring(startIndex+1, endIndex);
+		for (int i = startIndex; i < length; i++) {
+			char c = requestURI.charAt(i);
+			if (c == '_' || c == '\n' || c == '\r' || c == '\t' || c == '|') {
+				//if multiple files with same id requested
+				return requestURI.substring(startIndex, i);
+			}
+			if (c == '.') {
+				extensionIndex = i;
+			}
 		}
 
-		//if just the m3u8 file
-		endIndex = requestURI.lastIndexOf(".m3u8");
-		if (endIndex != -1) {
-			return requestURI.substring(startIndex+1, endIndex);
+		if (extensionIndex != -1 && (hasExtension(requestURI, extensionIndex, M3U8_EXTENSION)
+				|| hasExtension(requestURI, extensionIndex, MP4_EXTENSION)
+				|| hasExtension(requestURI, extensionIndex, MPD_EXTENSION))) 
+		{
+			return requestURI.substring(startIndex, extensionIndex);
 		}
 
-
 		return null;
 	}
 
+	private static boolean hasExtension(String requestURI, int extensionIndex, String extension) {
+		return requestURI.length() - extensionIndex == extension.length() 
+				&& requestURI.startsWith(extension, extensionIndex);
+	}
+
 }
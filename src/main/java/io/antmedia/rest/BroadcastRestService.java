@@ -22,6 +22,8 @@ import io.antmedia.RecordType;
 import io.antmedia.StreamIdValidator;
 import io.antmedia.cluster.IClusterNotifier;
 import io.antmedia.cluster.IStreamInfo;
+import io.antmedia.datastore.db.CursorPage;
+import io.antmedia.datastore.db.ICursorPaginationStore;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.ConferenceRoom;
 import io.antmedia.datastore.db.types.Endpoint;
@@ -248,6 +250,24 @@ public class BroadcastRestService extends RestServiceBase{
 			) {
 		return getDataStore().getBroadcastList(offset, size, typeBy, sortBy, orderBy);
 	}
+	
+	@ApiOperation(value = "Gets the broadcast list from database with cursor based pagination. Broadcasts are in ascending order of their ids. "
+			+ "Use it instead of offset based list to page through large number of broadcasts", notes = "", response = CursorPage.class)
+	@ApiResponses(value = { @ApiResponse(code = 200, message = "Returns the broadcasts and the cursor of the next page. Next cursor is null in the last page", response=CursorPage.class), 
+			@ApiResponse(code = 501, message = "If data store does not support cursor based pagination", response=Result.class)})
+	@GET
+	@Path("/list")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getBroadcastListAfter(@ApiParam(value = "Next cursor of the previous page. Don't set it for the first page", required = false) @QueryParam("after") String after,
+			@ApiParam(value = "Number of items that will be fetched", required = true) @QueryParam("size") int size,
+			@ApiParam(value = "type of the stream. Possible values are \"liveStream\", \"ipCamera\", \"streamSource\", \"VoD\"", required = false) @QueryParam("type_by") String typeBy) 
+	{
+		ICursorPaginationStore store = getCursorPaginationStore();
+		if (store == null) {
+			return Response.status(Status.NOT_IMPLEMENTED).entity(new Result(false, "Data store does not support cursor based pagination")).build();
+		}
+		return Response.status(Status.OK).entity(store.getBroadcastListAfter(after, size, typeBy)).build();
+	}
 
 
 	@ApiOperation(value = "Updates the Broadcast objects fields if it's not null." + 
@@ -579,6 +599,23 @@ public class BroadcastRestService extends RestServiceBase{
 		}
 		return tokens;
 	}
+	
+	@ApiOperation(value = "Get the tokens of requested stream with cursor based pagination. Tokens are in ascending order of their ids", notes = "", response = CursorPage.class)
+	@ApiResponses(value = { @ApiResponse(code = 200, message = "Returns the tokens and the cursor of the next page. Next cursor is null in the last page", response=CursorPage.class), 
+			@ApiResponse(code = 501, message = "If data store does not support cursor based pagination", response=Result.class)})
+	@GET
+	@Path("/{id}/tokens/list")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response listTokensAfter(@ApiParam(value = "the id of the stream", required = true) @PathParam("id") String streamId,
+			@ApiParam(value = "Next cursor of the previous page. Don't set it for the first page", required = false) @QueryParam("after") String after,
+			@ApiParam(value = "size of the return list (max:50 )", required = true) @QueryParam("size") int size) 
+	{
+		ICursorPaginationStore store = getCursorPaginationStore();
+		if (store == null) {
+			return Response.status(Status.NOT_IMPLEMENTED).entity(new Result(false, "Data store does not support cursor based pagination")).build();
+		}
+		return Response.status(Status.OK).entity(store.listTokensAfter(streamId, after, size)).build();
+	}
 
 	@ApiOperation(value = "Get the broadcast live statistics total RTMP watcher count, total HLS watcher count, total WebRTC watcher count", notes = "", response = BroadcastStatistics.class)
 	@GET
@@ -14,6 +14,7 @@ import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
@@ -44,6 +45,7 @@ import io.antmedia.IApplicationAdaptorFactory;
 import io.antmedia.RecordType;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
+import io.antmedia.datastore.db.ICursorPaginationStore;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.ConferenceRoom;
 import io.antmedia.datastore.db.types.Endpoint;
@@ -71,6 +73,7 @@ import io.antmedia.statistic.IStatsCollector;
 import io.antmedia.storage.StorageClient;
 import io.antmedia.storage.StorageClient.FileType;
 import io.antmedia.streamsource.StreamFetcher;
+import io.antmedia.webrtc.adaptor.RTMPAdaptor;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
@@ -238,6 +241,17 @@ public abstract class RestServiceBase {
 	public void setDataStore(DataStore dataStore) {
 		this.dbStore = dataStore;
 	}
+	
+	/**
+	 * @return data store if it supports cursor based pagination, null otherwise
+	 */
+	public ICursorPaginationStore getCursorPaginationStore() {
+		DataStore dataStore = getDataStore();
+		if (dataStore instanceof ICursorPaginationStore) {
+			return (ICursorPaginationStore) dataStore;
+		}
+		return null;
+	}
 
 	public DataStoreFactory getDataStoreFactory() {
 		if(dataStoreFactory == null) {
@@ -1114,9 +1128,20 @@ public abstract class RestServiceBase {
 
 		IWebRTCAdaptor webRTCAdaptor = getWebRTCAdaptor();
 
-		if (webRTCAdaptor != null) 
+		Collection<WebRTCClientStats> webRTCClientStats = null;
+		if (webRTCAdaptor != null) {
+			webRTCClientStats = webRTCAdaptor.getWebRTCClientStats(streamId);
+		}
+		else if (getApplication() != null) {
+			//stream may be ingested in community edition
+			RTMPAdaptor rtmpAdaptor = getApplication().getRTMPAdaptor(streamId);
+			if (rtmpAdaptor != null) {
+				webRTCClientStats = Arrays.asList(rtmpAdaptor.getWebRTCClientStats());
+			}
+		}
+
+		if (webRTCClientStats != null) 
 		{
-			Collection<WebRTCClientStats> webRTCClientStats = webRTCAdaptor.getWebRTCClientStats(streamId);
 
 			int t = 0;
 			int itemCount = 0;
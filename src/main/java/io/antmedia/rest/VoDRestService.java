@@ -12,16 +12,22 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 
 import org.glassfish.jersey.media.multipart.FormDataParam;
 import org.springframework.stereotype.Component;
 
+import io.antmedia.datastore.db.CursorPage;
+import io.antmedia.datastore.db.ICursorPaginationStore;
 import io.antmedia.datastore.db.types.VoD;
 import io.antmedia.rest.BroadcastRestService.SimpleStat;
 import io.antmedia.rest.model.Result;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
 import io.swagger.annotations.Contact;
 import io.swagger.annotations.ExternalDocs;
 import io.swagger.annotations.Info;
@@ -79,6 +85,23 @@ public class VoDRestService extends RestServiceBase{
 		return getDataStore().getVodList(offset, size, sortBy, orderBy, streamId);
 	}
 	
+	@ApiOperation(value = "Get the VoD list from database with cursor based pagination. VoDs are in ascending order of their ids", response = CursorPage.class)
+	@ApiResponses(value = { @ApiResponse(code = 200, message = "Returns the VoDs and the cursor of the next page. Next cursor is null in the last page", response=CursorPage.class), 
+			@ApiResponse(code = 501, message = "If data store does not support cursor based pagination", response=Result.class)})
+	@GET
+	@Path("/list")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getVodListAfter(@ApiParam(value = "Next cursor of the previous page. Don't set it for the first page", required = false) @QueryParam("after") String after,
+			@ApiParam(value = "Number of items that will be fetched", required = true) @QueryParam("size") int size,
+			@ApiParam(value = "Id of the stream to filter the results by stream id", required = false) @QueryParam("streamId") String streamId) 
+	{
+		ICursorPaginationStore store = getCursorPaginationStore();
+		if (store == null) {
+			return Response.status(Status.NOT_IMPLEMENTED).entity(new Result(false, "Data store does not support cursor based pagination")).build();
+		}
+		return Response.status(Status.OK).entity(store.getVodListAfter(after, size, streamId)).build();
+	}
+	
 	@ApiOperation(value = "Get the total number of VoDs", response = Long.class)
 	@GET
 	@Path("/count")
@@ -35,6 +35,12 @@ public class WebRTCClientStats {
 	@ApiModelProperty(value = "Audio sent low level stats")
 	private WebRTCAudioSendStats audioSentStats;
 
+	@ApiModelProperty(value = "Number of video frames dropped because encoder falls behind")
+	private long droppedVideoFrameCount;
+
+	@ApiModelProperty(value = "Number of video frames waiting to be encoded")
+	private int encoderQueueDepth;
+
 	public WebRTCClientStats(int measuredBitrate, int sendBitrate, double videoFrameSendPeriod, double audioFrameSendPeriod, 
 			long videoPacketCount, long audioPacketCount, int clientId) {
 		this.measuredBitrate = measuredBitrate;
@@ -117,5 +123,21 @@ public class WebRTCClientStats {
 	public void setVideoSentStats(WebRTCVideoSendStats videoSentStats) {
 		this.videoSentStats = videoSentStats;
 	}
+
+	public long getDroppedVideoFrameCount() {
+		return droppedVideoFrameCount;
+	}
+
+	public void setDroppedVideoFrameCount(long droppedVideoFrameCount) {
+		this.droppedVideoFrameCount = droppedVideoFrameCount;
+	}
+
+	public int getEncoderQueueDepth() {
+		return encoderQueueDepth;
+	}
+
+	public void setEncoderQueueDepth(int encoderQueueDepth) {
+		this.encoderQueueDepth = encoderQueueDepth;
+	}
 	
 }
@@ -2,6 +2,7 @@ package io.antmedia.security;
 
 import java.util.Map;
 
+import org.red5.server.api.IConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IStreamPublishSecurity;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+import io.antmedia.datastore.db.BroadcastCache;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
@@ -33,14 +35,18 @@ public class AcceptOnlyStreamsInDataStore implements IStreamPublishSecurity  {
 		
 		boolean result = false;
 		if (enabled) {
-			Broadcast broadcast = getDatastore().get(name);
+			Broadcast broadcast = BroadcastCache.getBroadcast(dataStoreFactory, getDatastore(), name);
 			if (broadcast != null) 
 			{
 				result = true;
 			}
 			else {
 				logger.info("No stream in data store not allowing the stream {}", name);
-				Red5.getConnectionLocal().close();
+				//there is no connection if the stream is not published over RTMP
+				IConnection connection = Red5.getConnectionLocal();
+				if (connection != null) {
+					connection.close();
+				}
 			}
 		}
 		else {
@@ -10,6 +10,7 @@ import org.red5.server.api.stream.IStreamPublishSecurity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.antmedia.datastore.db.BroadcastCache;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
@@ -27,7 +28,7 @@ public class ExpireStreamPublishSecurity implements IStreamPublishSecurity {
 
 		boolean result = false;
 
-		Broadcast broadcast = getDatastore().get(name);
+		Broadcast broadcast = BroadcastCache.getBroadcast(dataStoreFactory, getDatastore(), name);
 		if (broadcast != null) 
 		{
 			int expireDurationMS = broadcast.getExpireDurationMS();
@@ -39,6 +39,48 @@ public class ServerSettings implements ApplicationContextAware {
 
 	private static final String SETTINGS_NODE_GROUP = "nodeGroup";
 
+	private static final String SETTINGS_STREAM_FETCHER_POOL_SIZE = "server.streamFetcherPoolSize";
+
+	private static final String SETTINGS_VOD_READ_AHEAD_MS = "server.vodReadAheadMs";
+
+	private static final String SETTINGS_WEBHOOK_THREAD_COUNT = "server.webhookThreadCount";
+
+	private static final String SETTINGS_WEBHOOK_QUEUE_SIZE = "server.webhookQueueSize";
+
+	private static final String SETTINGS_WEBHOOK_MAX_CONCURRENCY_PER_URL = "server.webhookMaxConcurrencyPerUrl";
+
+	private static final String SETTINGS_WEBHOOK_RETRY_COUNT = "server.webhookRetryCount";
+
+	private static final String SETTINGS_WEBHOOK_BATCH_SIZE = "server.webhookBatchSize";
+
+	private static final String SETTINGS_VIEWER_ID_MODE = "server.viewerIdMode";
+
+	private static final String SETTINGS_WEBRTC_DIRECT_INGEST = "server.webRTCDirectIngest";
+
+	private static final String SETTINGS_WEBRTC_ENCODER_POOL_SIZE = "server.webRTCEncoderPoolSize";
+
+	private static final String SETTINGS_WEBRTC_ENCODER_QUEUE_SIZE = "server.webRTCEncoderQueueSize";
+
+	private static final String SETTINGS_WEBSOCKET_SEND_QUEUE_SIZE = "server.webSocketSendQueueSize";
+
+	private static final String SETTINGS_WEBSOCKET_SEND_TIMEOUT_MS = "server.webSocketSendTimeoutMs";
+
+	/**
+	 * Viewers are identified with the http session. A session is created for each viewer
+	 */
+	public static final String VIEWER_ID_MODE_SESSION = "session";
+
+	/**
+	 * Viewers are identified with the hash of the client IP and user agent. No session is created
+	 */
+	public static final String VIEWER_ID_MODE_CLIENT_HASH = "clientHash";
+
+	/**
+	 * Viewers are identified with the playerId query parameter that the player sends with each request. 
+	 * Client hash is used if it's not sent. No session is created
+	 */
+	public static final String VIEWER_ID_MODE_PLAYER_ID = "playerId";
+
 	
 	public static final String LOG_LEVEL_ALL = "ALL";
 	public static final String LOG_LEVEL_TRACE = "TRACE";
@@ -98,6 +140,97 @@ public class ServerSettings implements ApplicationContextAware {
 	@Value( "${"+SETTINGS_NODE_GROUP+":"+DEFAULT_NODE_GROUP+"}" )
 	private String nodeGroup = DEFAULT_NODE_GROUP;
 
+	/**
+	 * Number of threads that run all stream fetchers of the server. 
+	 * If it's zero, each stream fetcher has its own thread. 
+	 * Network sources like rtsp and rtmp always have their own threads because their reads block
+	 */
+	@Value( "${"+SETTINGS_STREAM_FETCHER_POOL_SIZE+":0}" )
+	private int streamFetcherPoolSize;
+
+	/**
+	 * VoD files pulled as live streams are sent in real time. Packets whose time comes in this duration are 
+	 * written together so that the fetcher wakes up once in this period instead of once per packet. 
+	 * It's in milliseconds and packets are sent at most this much earlier than their time. 
+	 * If it's zero, each packet is sent exactly at its time
+	 */
+	@Value( "${"+SETTINGS_VOD_READ_AHEAD_MS+":0}" )
+	private int vodReadAheadMs;
+
+	/**
+	 * Number of threads that send the webhooks of an application
+	 */
+	@Value( "${"+SETTINGS_WEBHOOK_THREAD_COUNT+":4}" )
+	private int webhookThreadCount = 4;
+
+	/**
+	 * Maximum number of the webhook events waiting to be sent in an application. 
+	 * New events are dropped if it's full
+	 */
+	@Value( "${"+SETTINGS_WEBHOOK_QUEUE_SIZE+":10000}" )
+	private int webhookQueueSize = 10000;
+
+	/**
+	 * Maximum number of the requests sent to a webhook URL at the same time
+	 */
+	@Value( "${"+SETTINGS_WEBHOOK_MAX_CONCURRENCY_PER_URL+":2}" )
+	private int webhookMaxConcurrencyPerUrl = 2;
+
+	/**
+	 * Number of retries if a webhook cannot be sent because of a connection error or a server error response
+	 */
+	@Value( "${"+SETTINGS_WEBHOOK_RETRY_COUNT+":3}" )
+	private int webhookRetryCount = 3;
+
+	/**
+	 * Maximum number of the webhook events sent in a request. If it's more than 1, events waiting for the same URL
+	 * are sent together as a JSON array. Otherwise each event is sent as form parameters
+	 */
+	@Value( "${"+SETTINGS_WEBHOOK_BATCH_SIZE+":1}" )
+	private int webhookBatchSize = 1;
+
+	/**
+	 * The way HLS viewers are identified in viewer statistics and token checks. 
+	 * It's one of session, clientHash or playerId. Modes other than session don't create http sessions
+	 */
+	@Value( "${"+SETTINGS_VIEWER_ID_MODE+":"+VIEWER_ID_MODE_SESSION+"}" )
+	private String viewerIdMode = VIEWER_ID_MODE_SESSION;
+
+	/**
+	 * If it's true, WebRTC streams ingested in community edition are encoded and written to the muxers 
+	 * in the server process. Otherwise they are encoded to FLV and published to the server over RTMP
+	 */
+	@Value( "${"+SETTINGS_WEBRTC_DIRECT_INGEST+":false}" )
+	private boolean webRTCDirectIngest = false;
+
+	/**
+	 * Number of threads shared by the WebRTC streams ingested in community edition for encoding. 
+	 * The same number of threads is used for signalling. If it's zero, each stream has its own threads
+	 */
+	@Value( "${"+SETTINGS_WEBRTC_ENCODER_POOL_SIZE+":0}" )
+	private int webRTCEncoderPoolSize;
+
+	/**
+	 * Maximum number of the decoded video frames waiting to be encoded for a WebRTC stream ingested in community edition. 
+	 * If encoding falls behind and the queue is full, the oldest frames are dropped
+	 */
+	@Value( "${"+SETTINGS_WEBRTC_ENCODER_QUEUE_SIZE+":10}" )
+	private int webRTCEncoderQueueSize = 10;
+
+	/**
+	 * Maximum number of the messages waiting to be sent to a websocket client. 
+	 * If the client does not read the messages and the queue is full, the websocket session is closed
+	 */
+	@Value( "${"+SETTINGS_WEBSOCKET_SEND_QUEUE_SIZE+":1000}" )
+	private int webSocketSendQueueSize = 1000;
+
+	/**
+	 * Timeout in milliseconds for sending a message to a websocket client. 
+	 * If a message cannot be sent in this duration, the websocket session is closed
+	 */
+	@Value( "${"+SETTINGS_WEBSOCKET_SEND_TIMEOUT_MS+":10000}" )
+	private long webSocketSendTimeoutMs = 10000;
+
 	private Logging.Severity webrtcLogLevel = Logging.Severity.LS_WARNING;
 
 	public boolean isBuildForMarket() {
@@ -310,6 +443,110 @@ public class ServerSettings implements ApplicationContextAware {
 		return webrtcLogLevel;
 	}
 
+	public int getStreamFetcherPoolSize() {
+		return streamFetcherPoolSize;
+	}
+
+	public void setStreamFetcherPoolSize(int streamFetcherPoolSize) {
+		this.streamFetcherPoolSize = streamFetcherPoolSize;
+	}
+
+	public int getVodReadAheadMs() {
+		return vodReadAheadMs;
+	}
+
+	public void setVodReadAheadMs(int vodReadAheadMs) {
+		this.vodReadAheadMs = vodReadAheadMs;
+	}
+
+	public int getWebhookThreadCount() {
+		return webhookThreadCount;
+	}
+
+	public void setWebhookThreadCount(int webhookThreadCount) {
+		this.webhookThreadCount = webhookThreadCount;
+	}
+
+	public int getWebhookQueueSize() {
+		return webhookQueueSize;
+	}
+
+	public void setWebhookQueueSize(int webhookQueueSize) {
+		this.webhookQueueSize = webhookQueueSize;
+	}
+
+	public int getWebhookMaxConcurrencyPerUrl() {
+		return webhookMaxConcurrencyPerUrl;
+	}
+
+	public void setWebhookMaxConcurrencyPerUrl(int webhookMaxConcurrencyPerUrl) {
+		this.webhookMaxConcurrencyPerUrl = webhookMaxConcurrencyPerUrl;
+	}
+
+	public int getWebhookRetryCount() {
+		return webhookRetryCount;
+	}
+
+	public void setWebhookRetryCount(int webhookRetryCount) {
+		this.webhookRetryCount = webhookRetryCount;
+	}
+
+	public int getWebhookBatchSize() {
+		return webhookBatchSize;
+	}
+
+	public void setWebhookBatchSize(int webhookBatchSize) {
+		this.webhookBatchSize = webhookBatchSize;
+	}
+
+	public String getViewerIdMode() {
+		return viewerIdMode;
+	}
+
+	public void setViewerIdMode(String viewerIdMode) {
+		this.viewerIdMode = viewerIdMode;
+	}
+
+	public boolean isWebRTCDirectIngest() {
+		return webRTCDirectIngest;
+	}
+
+	public void setWebRTCDirectIngest(boolean webRTCDirectIngest) {
+		this.webRTCDirectIngest = webRTCDirectIngest;
+	}
+
+	public int getWebRTCEncoderPoolSize() {
+		return webRTCEncoderPoolSize;
+	}
+
+	public void setWebRTCEncoderPoolSize(int webRTCEncoderPoolSize) {
+		this.webRTCEncoderPoolSize = webRTCEncoderPoolSize;
+	}
+
+	public int getWebRTCEncoderQueueSize() {
+		return webRTCEncoderQueueSize;
+	}
+
+	public void setWebRTCEncoderQueueSize(int webRTCEncoderQueueSize) {
+		this.webRTCEncoderQueueSize = webRTCEncoderQueueSize;
+	}
+
+	public int getWebSocketSendQueueSize() {
+		return webSocketSendQueueSize;
+	}
+
+	public void setWebSocketSendQueueSize(int webSocketSendQueueSize) {
+		this.webSocketSendQueueSize = webSocketSendQueueSize;
+	}
+
+	public long getWebSocketSendTimeoutMs() {
+		return webSocketSendTimeoutMs;
+	}
+
+	public void setWebSocketSendTimeoutMs(long webSocketSendTimeoutMs) {
+		this.webSocketSendTimeoutMs = webSocketSendTimeoutMs;
+	}
+
 	public String getNodeGroup() {
 		return nodeGroup;
 	}
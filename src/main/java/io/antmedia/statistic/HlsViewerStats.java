@@ -1,9 +1,15 @@
 package io.antmedia.statistic;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +19,11 @@ import org.springframework.context.ApplicationContextAware;
 
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
+import io.antmedia.datastore.db.BroadcastCache;
+import io.antmedia.datastore.db.BroadcastUpdate;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
+import io.antmedia.datastore.db.IBroadcastChangeNotifier;
 import io.antmedia.datastore.db.IDataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.muxer.IAntMediaStreamHandler;
@@ -38,11 +47,63 @@ public class HlsViewerStats implements IStreamStats, ApplicationContextAware{
 	 */
 	private int timePeriodMS = DEFAULT_TIME_PERIOD_FOR_VIEWER_COUNT;
 
-	Map<String, Map<String, Long>> streamsViewerMap = new ConcurrentHashMap<>();
+	/**
+	 * Viewers of a stream. Viewers are registered without a global lock. 
+	 * 
+	 * Each viewer is also put into the time bucket of its last request so that expired viewers are found 
+	 * by visiting only the expired buckets instead of iterating all viewers. A viewer may be in more than one bucket
+	 * and it's removed only if its last request time is expired.
+	 */
+	static class StreamViewers {
 
-	Map<String, Integer> increaseCounterMap = new ConcurrentHashMap<>();
-	
-	private Object lock = new Object();
+		final Map<String, Viewer> viewers = new ConcurrentHashMap<>();
+
+		/**
+		 * Buckets of viewer ids, key is the last request time divided by {@link #BUCKET_DURATION_MS}
+		 */
+		final ConcurrentNavigableMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<>();
+
+		/**
+		 * New viewers that are admitted to the limited stream but their requests are not completed yet. 
+		 * They are counted in the limit so that concurrent new viewers cannot exceed it
+		 */
+		final Set<String> reservedViewers = ConcurrentHashMap.newKeySet();
+
+		/**
+		 * Number of the new viewers since the last data store update
+		 */
+		final AtomicInteger increaseCounter = new AtomicInteger();
+
+		/**
+		 * HLS viewer limit of the broadcast. It's loaded when it's needed and refreshed when the broadcast changes
+		 */
+		volatile int viewerLimit = LIMIT_NOT_LOADED;
+
+		void addToBucket(String viewerId, long bucket) {
+			buckets.computeIfAbsent(bucket, k -> ConcurrentHashMap.newKeySet()).add(viewerId);
+		}
+	}
+
+	static class Viewer {
+		volatile long lastRequestTimeMs;
+		volatile long bucket;
+
+		Viewer(long lastRequestTimeMs, long bucket) {
+			this.lastRequestTimeMs = lastRequestTimeMs;
+			this.bucket = bucket;
+		}
+	}
+
+	/**
+	 * Duration of the time buckets that keep the viewers
+	 */
+	public static final long BUCKET_DURATION_MS = 1000;
+
+	private static final int LIMIT_NOT_LOADED = Integer.MIN_VALUE;
+
+	private static final int NO_LIMIT = -1;
+
+	Map<String, StreamViewers> streamsViewerMap = new ConcurrentHashMap<>();
 
 	/**
 	 * Time out value in milliseconds, it is regarded as user is not watching stream 
@@ -53,52 +114,101 @@ public class HlsViewerStats implements IStreamStats, ApplicationContextAware{
 	@Override
 	public void registerNewViewer(String streamId, String sessionId) 
 	{
-		//do not block the thread, run in vertx event queue 
-		vertx.runOnContext(h -> {
-			
-			synchronized (lock) {
-				//synchronize with database update calculations, because some odd cases may happen
-				
-				Map<String, Long> viewerMap = streamsViewerMap.get(streamId);
-				if (viewerMap == null) {
-					viewerMap = new ConcurrentHashMap<>();
-				}
-				if (!viewerMap.containsKey(sessionId)) 
-				{
-					int streamIncrementCounter = getIncreaseCounterMap(streamId);
-					streamIncrementCounter++;
-					increaseCounterMap.put(streamId, streamIncrementCounter);
-					
-				}
-				viewerMap.put(sessionId, System.currentTimeMillis());
-				streamsViewerMap.put(streamId, viewerMap);	
+		StreamViewers streamViewers = streamsViewerMap.computeIfAbsent(streamId, k -> new StreamViewers());
+		register(streamViewers, sessionId);
+		//viewer is registered before its reservation is removed so that the place is not given to another viewer
+		streamViewers.reservedViewers.remove(sessionId);
+	}
+
+	/**
+	 * Checks the HLS viewer limit of the stream with the live viewers in memory. 
+	 * Viewers that are already watching are always admitted. A new viewer is admitted and reserves a place 
+	 * if the number of viewers and reservations is below the limit so that concurrent new viewers cannot exceed the limit.
+	 * The viewer is registered only if its request succeeds
+	 */
+	@Override
+	public boolean admitViewer(String streamId, String sessionId) 
+	{
+		StreamViewers streamViewers = streamsViewerMap.computeIfAbsent(streamId, k -> new StreamViewers());
+
+		int viewerLimit = streamViewers.viewerLimit;
+		if (viewerLimit == LIMIT_NOT_LOADED) {
+			Broadcast broadcast = BroadcastCache.getBroadcast(getDataStoreFactory(), getDataStore(), streamId);
+			viewerLimit = broadcast != null ? broadcast.getHlsViewerLimit() : NO_LIMIT;
+			streamViewers.viewerLimit = viewerLimit;
+		}
+
+		if (viewerLimit == NO_LIMIT || streamViewers.viewers.containsKey(sessionId)) {
+			return true;
+		}
+
+		//only new viewers of the limited streams are synchronized
+		synchronized (streamViewers) {
+			if (streamViewers.viewers.containsKey(sessionId) || streamViewers.reservedViewers.contains(sessionId)) {
+				return true;
 			}
-			
-		});
-		
+			if (streamViewers.viewers.size() + streamViewers.reservedViewers.size() >= viewerLimit) {
+				return false;
+			}
+			streamViewers.reservedViewers.add(sessionId);
+		}
+		return true;
+	}
+
+	@Override
+	public void releaseViewer(String streamId, String sessionId) 
+	{
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
+		if (streamViewers != null) {
+			streamViewers.reservedViewers.remove(sessionId);
+		}
+	}
+
+	private static void register(StreamViewers streamViewers, String sessionId) 
+	{
+		long now = System.currentTimeMillis();
+		long bucket = now / BUCKET_DURATION_MS;
+
+		Viewer viewer = streamViewers.viewers.get(sessionId);
+		if (viewer == null) 
+		{
+			Viewer newViewer = new Viewer(now, bucket);
+			viewer = streamViewers.viewers.putIfAbsent(sessionId, newViewer);
+			if (viewer == null) {
+				streamViewers.increaseCounter.incrementAndGet();
+				streamViewers.addToBucket(sessionId, bucket);
+				return;
+			}
+		}
+
+		viewer.lastRequestTimeMs = now;
+		if (viewer.bucket != bucket) {
+			viewer.bucket = bucket;
+			streamViewers.addToBucket(sessionId, bucket);
+		}
 	}
 	
 	public int getIncreaseCounterMap(String streamId) 
 	{
-		Integer increaseCounter = increaseCounterMap.get(streamId);
-		return increaseCounter != null ? increaseCounter : 0;
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
+		return streamViewers != null ? streamViewers.increaseCounter.get() : 0;
 	}
 
 	@Override
 	public int getViewerCount(String streamId) {
-		Map<String, Long> viewerMap = streamsViewerMap.get(streamId);
+		StreamViewers streamViewers = streamsViewerMap.get(streamId);
 		int viewerCount = 0;
-		if (viewerMap != null) 
+		if (streamViewers != null) 
 		{
-			viewerCount = viewerMap.size();
+			viewerCount = streamViewers.viewers.size();
 		}
 		return viewerCount;
 	}
 	
 	public int getTotalViewerCount() {
 		int viewerCount = 0;
-		for (Map<String, Long> map : streamsViewerMap.values()) {
-			viewerCount += map.size();
+		for (StreamViewers streamViewers : streamsViewerMap.values()) {
+			viewerCount += streamViewers.viewers.size();
 		}
 		return viewerCount;
 	}
@@ -117,79 +227,96 @@ public class HlsViewerStats implements IStreamStats, ApplicationContextAware{
 		timeoutMS = getTimeoutMSFromSettings(settings, timeoutMS);
 		
 		
-		vertx.setPeriodic(DEFAULT_TIME_PERIOD_FOR_VIEWER_COUNT, yt-> 
+		vertx.setPeriodic(DEFAULT_TIME_PERIOD_FOR_VIEWER_COUNT, yt-> updateViewerCounts());
+	}
+
+	/**
+	 * Removes the expired viewers and writes the viewer count changes of the broadcasting streams 
+	 * to the data store at once
+	 */
+	public void updateViewerCounts() 
+	{
+		long now = System.currentTimeMillis();
+		long expireTimeMs = now - getTimeoutMS();
+
+		//buckets before this one only have the requests older than expire time
+		long firstActiveBucket = expireTimeMs / BUCKET_DURATION_MS;
+
+		List<BroadcastUpdate> viewerCountUpdates = new ArrayList<>();
+
+		Iterator<Entry<String, StreamViewers>> streamIterator = streamsViewerMap.entrySet().iterator();
+		while (streamIterator.hasNext()) 
 		{
-			synchronized (lock) {
-				
-				Iterator<Entry<String, Map<String, Long>>> streamIterator = streamsViewerMap.entrySet().iterator();
-				
-				Iterator<Entry<String, Long>> viewerIterator;
-				Entry<String, Map<String, Long>> streamViewerEntry;
-				Map<String, Long> viewerMapEntry;
-				
-				long now = System.currentTimeMillis();
-				
-				while (streamIterator.hasNext()) 
-				{
-					streamViewerEntry = streamIterator.next();
-					
-					String streamId = streamViewerEntry.getKey();
-					Broadcast broadcast = getDataStore().get(streamId);
-					
-					boolean isBroadcasting = false;
-					
-					// Check if it's deleted.
-					// This case for the deleted streams(zombi streams)
-					if(broadcast != null) {
-					
-						int numberOfDecrement = 0;
-						
-						viewerMapEntry = streamViewerEntry.getValue();
-						viewerIterator = viewerMapEntry.entrySet().iterator();
-					
-						while (viewerIterator.hasNext()) 
-						{
-							Entry<String, Long> viewer = viewerIterator.next();
-	
-							if (viewer.getValue() < (now - getTimeoutMS())) 
-							{
-								// regard it as not a viewer
-								viewerIterator.remove();
-								numberOfDecrement++;
-							}
-						}
-						
-						if(broadcast.getStatus().equals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)) {
-							isBroadcasting = true;
-						}
-					
-						numberOfDecrement = -1 * numberOfDecrement;
-	
-						int numberOfIncrement = getIncreaseCounterMap(streamId);
-						if((numberOfIncrement != 0 || numberOfDecrement != 0) && isBroadcasting) {
-							
-							int hlsDiffCount = numberOfIncrement + numberOfDecrement;
-	
-							logger.info("Update HLS viewer in stream ID:{} increment count:{} decrement count:{} diff:{}", streamId, numberOfIncrement, numberOfDecrement, hlsDiffCount);
-	
-							getDataStore().updateHLSViewerCount(streamViewerEntry.getKey(), hlsDiffCount);
-							increaseCounterMap.put(streamId, 0);
-						}
-					}
-					if (!isBroadcasting) {
-						streamIterator.remove();
-						increaseCounterMap.remove(streamId);
+			Entry<String, StreamViewers> streamViewerEntry = streamIterator.next();
+
+			String streamId = streamViewerEntry.getKey();
+			StreamViewers streamViewers = streamViewerEntry.getValue();
+			Broadcast broadcast = BroadcastCache.getBroadcast(getDataStoreFactory(), getDataStore(), streamId);
+
+			boolean isBroadcasting = false;
+
+			// Check if it's deleted.
+			// This case for the deleted streams(zombi streams)
+			if(broadcast != null) {
+
+				int numberOfDecrement = removeExpiredViewers(streamViewers, firstActiveBucket, expireTimeMs);
+				streamViewers.viewerLimit = broadcast.getHlsViewerLimit();
+
+				if(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING.equals(broadcast.getStatus())) {
+					isBroadcasting = true;
+				}
+
+				numberOfDecrement = -1 * numberOfDecrement;
+
+				if (isBroadcasting) {
+					int numberOfIncrement = streamViewers.increaseCounter.getAndSet(0);
+					if (numberOfIncrement != 0 || numberOfDecrement != 0) {
+
+						int hlsDiffCount = numberOfIncrement + numberOfDecrement;
+
+						logger.info("Update HLS viewer in stream ID:{} increment count:{} decrement count:{} diff:{}", streamId, numberOfIncrement, numberOfDecrement, hlsDiffCount);
+
+						viewerCountUpdates.add(BroadcastUpdate.hlsViewerCount(streamId, hlsDiffCount));
 					}
 				}
 			}
-		});	
+			if (!isBroadcasting) {
+				streamIterator.remove();
+			}
+		}
+
+		BroadcastUpdate.applyAll(getDataStore(), viewerCountUpdates);
+	}
+
+	/**
+	 * Removes the viewers in the expired buckets if their last request is also expired
+	 * @return number of the removed viewers
+	 */
+	private static int removeExpiredViewers(StreamViewers streamViewers, long firstActiveBucket, long expireTimeMs) 
+	{
+		int numberOfDecrement = 0;
+		Iterator<Set<String>> bucketIterator = streamViewers.buckets.headMap(firstActiveBucket).values().iterator();
+		while (bucketIterator.hasNext()) 
+		{
+			for (String viewerId : bucketIterator.next()) 
+			{
+				Viewer viewer = streamViewers.viewers.get(viewerId);
+				// viewer is in a newer bucket as well if it has a newer request
+				if (viewer != null && viewer.lastRequestTimeMs < expireTimeMs 
+						&& streamViewers.viewers.remove(viewerId, viewer)) 
+				{
+					// regard it as not a viewer
+					numberOfDecrement++;
+				}
+			}
+			bucketIterator.remove();
+		}
+		return numberOfDecrement;
 	}
 	
 	public void resetHLSViewerMap(String streamID) {	
 		
-		if(streamsViewerMap.get(streamID) != null) {
-			streamsViewerMap.get(streamID).clear();
-			streamsViewerMap.remove(streamID);
+		if(streamsViewerMap.remove(streamID) != null) {
 			logger.info("Reset HLS Stream ID: {} removed successfully", streamID);			
 		}
 		else {
@@ -222,15 +349,40 @@ public class HlsViewerStats implements IStreamStats, ApplicationContextAware{
 		return timeoutMS;
 	}
 
+	public void setTimeoutMS(int timeoutMS) {
+		this.timeoutMS = timeoutMS;
+	}
+
 	public DataStore getDataStore() {
 		if (dataStore == null) {
-			dataStore = getDataStoreFactory().getDataStore();
+			setDataStore(getDataStoreFactory().getDataStore());
 		}
 		return dataStore;
 	}
 	
 	public void setDataStore(DataStore dataStore) {
 		this.dataStore = dataStore;
+		if (dataStore instanceof IBroadcastChangeNotifier) {
+			((IBroadcastChangeNotifier) dataStore).addBroadcastChangeListener(this::broadcastChanged);
+		}
+	}
+
+	/**
+	 * Viewer limits of the changed broadcast are loaded again when they're needed
+	 * @param streamId id of the changed broadcast or null if many broadcasts are changed
+	 */
+	private void broadcastChanged(String streamId) {
+		if (streamId == null) {
+			for (StreamViewers streamViewers : streamsViewerMap.values()) {
+				streamViewers.viewerLimit = LIMIT_NOT_LOADED;
+			}
+		}
+		else {
+			StreamViewers streamViewers = streamsViewerMap.get(streamId);
+			if (streamViewers != null) {
+				streamViewers.viewerLimit = LIMIT_NOT_LOADED;
+			}
+		}
 	}
 	
 	
@@ -17,6 +17,23 @@ public interface IStreamStats {
 	 */
 	int getViewerCount(String streamId);
 	
+	/**
+	 * Checks if the viewer can watch the stream according to the viewer limit of the stream. 
+	 * A new viewer of a limited stream reserves a place. The reservation is committed with {@link #registerNewViewer(String, String)}
+	 * if the request succeeds or it should be removed with {@link #releaseViewer(String, String)}
+	 * @param streamId
+	 * @param sessionId
+	 * @return false if viewer limit is reached and viewer is not already watching
+	 */
+	boolean admitViewer(String streamId, String sessionId);
+
+	/**
+	 * Removes the reservation of the viewer if request of the admitted viewer fails
+	 * @param streamId
+	 * @param sessionId
+	 */
+	void releaseViewer(String streamId, String sessionId);
+	
 
 
 }
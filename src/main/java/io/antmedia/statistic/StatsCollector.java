@@ -40,10 +40,13 @@ import com.google.gson.JsonObject;
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.IApplicationAdaptorFactory;
 import io.antmedia.SystemUtils;
+import io.antmedia.datastore.db.DataStore;
+import io.antmedia.datastore.db.MapDBStore;
 import io.antmedia.muxer.IAntMediaStreamHandler;
 import io.antmedia.rest.WebRTCClientStats;
 import io.antmedia.settings.ServerSettings;
 import io.antmedia.statistic.GPUUtils.MemoryStatus;
+import io.antmedia.webrtc.adaptor.RTMPAdaptorPool;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.antmedia.websocket.WebSocketCommunityHandler;
 import io.vertx.core.Vertx;
@@ -243,6 +246,32 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 	private static final String VERTX_WORKER_THREAD_QUEUE_SIZE = "vertx-worker-thread-queue-size";
 	
 	private static final String WEBRTC_VERTX_WORKER_THREAD_QUEUE_SIZE = "webrtc-vertx-worker-thread-queue-size";
+
+	public static final String WEBRTC_ADAPTOR_POOL = "webrtc-adaptor-pool";
+
+	public static final String POOL_SIZE = "pool-size";
+
+	public static final String POOL_ACTIVE_EXECUTOR_COUNT = "active-executor-count";
+
+	public static final String POOL_EXECUTED_TASK_COUNT = "executed-task-count";
+
+	public static final String POOL_AVERAGE_WAIT_TIME_MS = "average-wait-time-ms";
+
+	public static final String POOL_MAX_WAIT_TIME_MS = "max-wait-time-ms";
+
+	public static final String MAPDB_GROUP_COMMIT = "mapdb-group-commit";
+
+	public static final String COMMIT_COUNT = "commit-count";
+
+	public static final String PENDING_COMMIT_COUNT = "pending-commit-count";
+
+	public static final String AVERAGE_COMMIT_TIME_MS = "average-commit-time-ms";
+
+	public static final String MAX_COMMIT_TIME_MS = "max-commit-time-ms";
+
+	public static final String AVERAGE_COMMIT_BATCH_SIZE = "average-commit-batch-size";
+
+	public static final String MAX_COMMIT_BATCH_SIZE = "max-commit-batch-size";
 	
 	
 	private Producer<Long,String> kafkaProducer = null;
@@ -554,6 +583,38 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 	}
 
 
+	/**
+	 * Returns the thread and task metrics of the shared threads of the WebRTC streams ingested in community edition
+	 * @param pool
+	 * @return
+	 */
+	public static JsonObject getWebRTCAdaptorPoolInfoJSObject(RTMPAdaptorPool pool) {
+		JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty(POOL_SIZE, pool.getPoolSize());
+		jsonObject.addProperty(THREAD_COUNT, pool.getThreadCount());
+		jsonObject.addProperty(POOL_ACTIVE_EXECUTOR_COUNT, pool.getActiveExecutorCount());
+		jsonObject.addProperty(POOL_EXECUTED_TASK_COUNT, pool.getExecutedTaskCount());
+		jsonObject.addProperty(POOL_AVERAGE_WAIT_TIME_MS, pool.getAverageWaitTimeMs());
+		jsonObject.addProperty(POOL_MAX_WAIT_TIME_MS, pool.getMaxWaitTimeMs());
+		return jsonObject;
+	}
+
+	/**
+	 * Returns the commit metrics of the MapDB data store in group commit mode
+	 * @param dataStore
+	 * @return
+	 */
+	public static JsonObject getMapDBGroupCommitInfoJSObject(MapDBStore dataStore) {
+		JsonObject jsonObject = new JsonObject();
+		jsonObject.addProperty(COMMIT_COUNT, dataStore.getCommitCount());
+		jsonObject.addProperty(PENDING_COMMIT_COUNT, dataStore.getPendingCommitCount());
+		jsonObject.addProperty(AVERAGE_COMMIT_TIME_MS, dataStore.getAverageCommitTimeMs());
+		jsonObject.addProperty(MAX_COMMIT_TIME_MS, dataStore.getMaxCommitTimeMs());
+		jsonObject.addProperty(AVERAGE_COMMIT_BATCH_SIZE, dataStore.getAverageCommitBatchSize());
+		jsonObject.addProperty(MAX_COMMIT_BATCH_SIZE, dataStore.getMaxCommitBatchSize());
+		return jsonObject;
+	}
+
 	/**
 	 * Returns server uptime and startime in milliseconds
 	 * @return
@@ -587,6 +648,7 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 		int encodersBlocked = 0;
 		int encodersNotOpened = 0;
 		int publishTimeoutError = 0;
+		JsonObject groupCommitInfo = new JsonObject();
 		if (scopes != null) {
 			for (Iterator<IScope> iterator = scopes.iterator(); iterator.hasNext();) { 
 				IScope scope = iterator.next();
@@ -603,6 +665,11 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 					encodersBlocked += adaptor.getNumberOfEncodersBlocked();
 					encodersNotOpened += adaptor.getNumberOfEncoderNotOpenedErrors();
 					publishTimeoutError += adaptor.getNumberOfPublishTimeoutError();
+
+					DataStore dataStore = adaptor.getDataStore();
+					if (dataStore instanceof MapDBStore && ((MapDBStore) dataStore).isGroupCommitEnabled()) {
+						groupCommitInfo.add(scope.getName(), getMapDBGroupCommitInfoJSObject((MapDBStore) dataStore));
+					}
 				}
 			}
 		}
@@ -617,6 +684,17 @@ public class StatsCollector implements IStatsCollector, ApplicationContextAware,
 		jsonObject.addProperty(StatsCollector.VERTX_WORKER_THREAD_QUEUE_SIZE, getVertWorkerQueueSize());
 		jsonObject.addProperty(StatsCollector.WEBRTC_VERTX_WORKER_THREAD_QUEUE_SIZE, getWebRTCVertxWorkerQueueSize());
 
+		//pool is created if it's enabled and a WebRTC stream is ingested
+		RTMPAdaptorPool adaptorPool = RTMPAdaptorPool.getCreatedInstance();
+		if (adaptorPool != null) {
+			jsonObject.add(StatsCollector.WEBRTC_ADAPTOR_POOL, getWebRTCAdaptorPoolInfoJSObject(adaptorPool));
+		}
+
+		//commit metrics of the applications that use group commit
+		if (!groupCommitInfo.entrySet().isEmpty()) {
+			jsonObject.add(StatsCollector.MAPDB_GROUP_COMMIT, groupCommitInfo);
+		}
+
 		//add timing info
 		jsonObject.add(StatsCollector.SERVER_TIMING, getServerTime());
 
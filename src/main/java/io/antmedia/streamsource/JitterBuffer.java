@@ -0,0 +1,363 @@
+package io.antmedia.streamsource;
+
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_move_ref;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Jitter buffer of a pulled stream.
+ *
+ * Packets are kept in a ring of preallocated AVPackets and their data is moved into the ring
+ * without copying so that no object is allocated per packet. The ring only grows if it's full.
+ * Packet times are rescaled to milliseconds when they are added so that releasing does not need the time bases.
+ *
+ * Buffer starts releasing the packets when the buffered duration exceeds the buffer time
+ * and packets are released in real time relative to the first released packet. If the buffer becomes empty,
+ * it's an underrun and buffer waits for the buffer time again.
+ *
+ * Packets are added by the fetcher and released in the release threads of the {@link JitterBufferWheel}.
+ */
+public class JitterBuffer {
+
+	protected static Logger logger = LoggerFactory.getLogger(JitterBuffer.class);
+
+	public interface IPacketWriter {
+		void writePacket(AVPacket packet);
+	}
+
+	/**
+	 * Packet count in the initial ring is the buffer time in ms divided by this value. It's 100 packets per second
+	 */
+	private static final int MS_PER_PACKET_ESTIMATE = 10;
+
+	private static final int MIN_CAPACITY = 64;
+
+	private final String streamId;
+
+	private final long bufferTimeMs;
+
+	private final IPacketWriter packetWriter;
+
+	/**
+	 * Guards the ring indexes and the buffering state. It's not held while writing the packets
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Only one thread releases the packets at a time
+	 */
+	private final ReentrantLock releaseLock = new ReentrantLock();
+
+	private AVPacket[] packets;
+	private long[] packetTimesMs;
+	private int mask;
+
+	/**
+	 * Head and tail are increasing counters and their index in the ring is counter & mask
+	 */
+	private long head;
+	private long tail;
+
+	private boolean buffering = true;
+	private boolean closed = false;
+
+	/**
+	 * Time of the packet released first after buffering
+	 */
+	private long firstReleasedPacketTimeMs;
+
+	/**
+	 * System time that buffering has finished
+	 */
+	private long bufferingFinishTimeMs;
+
+	/**
+	 * True while the buffer is in the wheel
+	 */
+	private boolean scheduled = false;
+
+	private long underrunCount;
+	private long releasedPacketCount;
+	private int maxDepth;
+
+	public JitterBuffer(String streamId, long bufferTimeMs, IPacketWriter packetWriter) {
+		this.streamId = streamId;
+		this.bufferTimeMs = bufferTimeMs;
+		this.packetWriter = packetWriter;
+
+		int capacity = Integer.highestOneBit((int) Math.max(MIN_CAPACITY, bufferTimeMs / MS_PER_PACKET_ESTIMATE) - 1) << 1;
+		packets = new AVPacket[capacity];
+		packetTimesMs = new long[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < capacity; i++) {
+			packets[i] = av_packet_alloc();
+		}
+	}
+
+	/**
+	 * Moves the data of the packet into the buffer. Packet is reset after this call
+	 * @param packet
+	 * @param packetTimeMs presentation time of the packet in milliseconds
+	 * @return true if buffering has finished with this packet and the buffer should be scheduled
+	 * in the {@link JitterBufferWheel}
+	 */
+	public boolean add(AVPacket packet, long packetTimeMs) {
+		lock.lock();
+		try {
+			if (closed) {
+				av_packet_unref(packet);
+				return false;
+			}
+			if (tail - head == packets.length) {
+				grow();
+			}
+			int index = (int) (tail & mask);
+			av_packet_move_ref(packets[index], packet);
+			packetTimesMs[index] = packetTimeMs;
+			tail++;
+
+			int depth = (int) (tail - head);
+			if (depth > maxDepth) {
+				maxDepth = depth;
+			}
+
+			if (buffering && packetTimeMs - packetTimesMs[(int) (head & mask)] > bufferTimeMs) {
+				buffering = false;
+				bufferingFinishTimeMs = System.currentTimeMillis();
+				firstReleasedPacketTimeMs = packetTimesMs[(int) (head & mask)];
+				boolean schedule = !scheduled;
+				scheduled = true;
+				return schedule;
+			}
+			return false;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Doubles the ring. Logical positions of the packets don't change so the releasing thread is not affected
+	 */
+	private void grow() {
+		int capacity = packets.length * 2;
+		AVPacket[] newPackets = new AVPacket[capacity];
+		long[] newPacketTimesMs = new long[capacity];
+		int newMask = capacity - 1;
+		for (long i = head; i < head + packets.length; i++) {
+			newPackets[(int) (i & newMask)] = packets[(int) (i & mask)];
+			newPacketTimesMs[(int) (i & newMask)] = packetTimesMs[(int) (i & mask)];
+		}
+		for (int i = 0; i < capacity; i++) {
+			if (newPackets[i] == null) {
+				newPackets[i] = av_packet_alloc();
+			}
+		}
+		packets = newPackets;
+		packetTimesMs = newPacketTimesMs;
+		mask = newMask;
+		logger.info("Jitter buffer capacity is increased to {} packets for stream: {}", capacity, streamId);
+	}
+
+	/**
+	 * Writes the packets whose time has come
+	 * @param now current system time in milliseconds
+	 * @return system time in milliseconds that the next packet should be released
+	 * or -1 if there is no packet to release because of underrun or close
+	 */
+	public long release(long now) {
+		if (!releaseLock.tryLock()) {
+			//buffer is being closed or the previous release is returning, it's tried again in the next tick
+			return now;
+		}
+		try {
+			while (true) {
+				AVPacket packet;
+				lock.lock();
+				try {
+					if (closed || buffering) {
+						scheduled = false;
+						return -1;
+					}
+					if (head == tail) {
+						buffering = true;
+						scheduled = false;
+						underrunCount++;
+						return -1;
+					}
+					int index = (int) (head & mask);
+					long releaseTimeMs = bufferingFinishTimeMs + (packetTimesMs[index] - firstReleasedPacketTimeMs);
+					if (releaseTimeMs > now) {
+						return releaseTimeMs;
+					}
+					packet = packets[index];
+				}
+				finally {
+					lock.unlock();
+				}
+
+				writePacket(packet);
+
+				lock.lock();
+				try {
+					head++;
+					releasedPacketCount++;
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+		finally {
+			releaseLock.unlock();
+		}
+	}
+
+	private void writePacket(AVPacket packet) {
+		try {
+			packetWriter.writePacket(packet);
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		av_packet_unref(packet);
+	}
+
+	/**
+	 * Writes all packets in the buffer without waiting for their time, closes the buffer and frees the packets.
+	 * Buffer cannot be used after this call
+	 */
+	public void close() {
+		releaseLock.lock();
+		try {
+			long count;
+			lock.lock();
+			try {
+				closed = true;
+				count = tail - head;
+			}
+			finally {
+				lock.unlock();
+			}
+			logger.info("Writing {} buffered packets for stream: {}", count, streamId);
+
+			//closed buffer is not changed by the other threads
+			while (head != tail) {
+				writePacket(packets[(int) (head & mask)]);
+				head++;
+				releasedPacketCount++;
+			}
+			for (AVPacket packet : packets) {
+				av_packet_free(packet);
+				packet.close();
+			}
+		}
+		finally {
+			releaseLock.unlock();
+		}
+	}
+
+	public String getStreamId() {
+		return streamId;
+	}
+
+	public long getBufferTimeMs() {
+		return bufferTimeMs;
+	}
+
+	/**
+	 * @return number of the packets in the buffer
+	 */
+	public int getDepth() {
+		lock.lock();
+		try {
+			return (int) (tail - head);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return duration between the first and the last packets in the buffer
+	 */
+	public long getBufferedDurationMs() {
+		lock.lock();
+		try {
+			if (head == tail) {
+				return 0;
+			}
+			return packetTimesMs[(int) ((tail - 1) & mask)] - packetTimesMs[(int) (head & mask)];
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isBuffering() {
+		lock.lock();
+		try {
+			return buffering;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of times the buffer became empty while releasing
+	 */
+	public long getUnderrunCount() {
+		lock.lock();
+		try {
+			return underrunCount;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public long getReleasedPacketCount() {
+		lock.lock();
+		try {
+			return releasedPacketCount;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return maximum number of the packets in the buffer
+	 */
+	public int getMaxDepth() {
+		lock.lock();
+		try {
+			return maxDepth;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of the preallocated packets in the ring
+	 */
+	public int getCapacity() {
+		lock.lock();
+		try {
+			return packets.length;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package io.antmedia.streamsource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timing wheel that finds the {@link JitterBuffer}s whose packets should be released.
+ *
+ * Each slot of the wheel keeps the buffers whose next packet should be released in that tick.
+ * At every tick only the buffers in the current slot are visited, so idle or buffering streams
+ * don't cost anything. A buffer is scheduled when its buffering finishes and it's rescheduled
+ * after each release until it underruns or it's closed.
+ *
+ * Packets are written in the release threads so that a slow muxer does not delay the other streams.
+ * A buffer is taken out of the wheel while it's being released and it's put back after the release,
+ * so that only one release of a buffer runs at a time and packets of a stream are written in order.
+ */
+public class JitterBufferWheel {
+
+	protected static Logger logger = LoggerFactory.getLogger(JitterBufferWheel.class);
+
+	public static final long TICK_MS = 10;
+
+	private static final int WHEEL_SIZE = 512;
+
+	private static final int RELEASE_THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static JitterBufferWheel instance;
+
+	private static class ScheduledBuffer {
+		private final JitterBuffer buffer;
+		private long releaseTimeMs;
+
+		public ScheduledBuffer(JitterBuffer buffer, long releaseTimeMs) {
+			this.buffer = buffer;
+			this.releaseTimeMs = releaseTimeMs;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private final List<ScheduledBuffer>[] slots = new List[WHEEL_SIZE];
+
+	/**
+	 * Buffers are added to the wheel in the wheel thread. Other threads put them into this queue
+	 */
+	private final Queue<JitterBuffer> newBuffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Buffers whose release has finished in the release threads. They are put back to the wheel in the wheel thread
+	 */
+	private final Queue<ScheduledBuffer> releasedBuffers = new ConcurrentLinkedQueue<>();
+
+	private final ExecutorService releaseExecutor;
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	private long currentTick;
+
+	private volatile int scheduledBufferCount;
+
+	public JitterBufferWheel() {
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			slots[i] = new ArrayList<>();
+		}
+		AtomicInteger threadIndex = new AtomicInteger();
+		releaseExecutor = Executors.newFixedThreadPool(RELEASE_THREAD_COUNT, runnable -> {
+			Thread releaseThread = new Thread(runnable, "jitter-buffer-release-" + threadIndex.incrementAndGet());
+			releaseThread.setDaemon(true);
+			return releaseThread;
+		});
+		thread = new Thread(this::run, "jitter-buffer-wheel");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public static synchronized JitterBufferWheel getInstance() {
+		if (instance == null) {
+			instance = new JitterBufferWheel();
+		}
+		return instance;
+	}
+
+	/**
+	 * Schedules the buffer to release its packets. It's called when {@link JitterBuffer#add} returns true
+	 * @param buffer
+	 */
+	public void schedule(JitterBuffer buffer) {
+		newBuffers.offer(buffer);
+	}
+
+	private void run() {
+		currentTick = System.currentTimeMillis() / TICK_MS;
+		while (running) {
+			long now = System.currentTimeMillis();
+			long nowTick = now / TICK_MS;
+
+			JitterBuffer buffer;
+			while ((buffer = newBuffers.poll()) != null) {
+				scheduledBufferCount++;
+				add(new ScheduledBuffer(buffer, now), currentTick);
+			}
+
+			ScheduledBuffer releasedBuffer;
+			while ((releasedBuffer = releasedBuffers.poll()) != null) {
+				if (releasedBuffer.releaseTimeMs >= 0) {
+					add(releasedBuffer, currentTick);
+				}
+				else {
+					scheduledBufferCount--;
+				}
+			}
+
+			//process the ticks passed since the last run
+			while (currentTick <= nowTick) {
+				processSlot(slots[(int) (currentTick % WHEEL_SIZE)]);
+				currentTick++;
+			}
+
+			try {
+				Thread.sleep(TICK_MS - System.currentTimeMillis() % TICK_MS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	private void processSlot(List<ScheduledBuffer> slot) {
+		for (int i = slot.size() - 1; i >= 0; i--) {
+			ScheduledBuffer scheduledBuffer = slot.get(i);
+			if (scheduledBuffer.releaseTimeMs / TICK_MS > currentTick) {
+				//it's for the next turns of the wheel
+				continue;
+			}
+
+			//remove the item by moving the last one to its place
+			int last = slot.size() - 1;
+			slot.set(i, slot.get(last));
+			slot.remove(last);
+
+			try {
+				releaseExecutor.execute(() -> release(scheduledBuffer));
+			}
+			catch (RejectedExecutionException e) {
+				//wheel is shut down
+				scheduledBufferCount--;
+			}
+		}
+	}
+
+	/**
+	 * Runs in the release threads and passes the buffer back to the wheel thread with its next release time
+	 */
+	private void release(ScheduledBuffer scheduledBuffer) {
+		long nextReleaseTimeMs = -1;
+		try {
+			nextReleaseTimeMs = scheduledBuffer.buffer.release(System.currentTimeMillis());
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		scheduledBuffer.releaseTimeMs = nextReleaseTimeMs;
+		releasedBuffers.offer(scheduledBuffer);
+	}
+
+	private void add(ScheduledBuffer scheduledBuffer, long earliestTick) {
+		long tick = Math.max(scheduledBuffer.releaseTimeMs / TICK_MS, earliestTick);
+		scheduledBuffer.releaseTimeMs = Math.max(scheduledBuffer.releaseTimeMs, tick * TICK_MS);
+		slots[(int) (tick % WHEEL_SIZE)].add(scheduledBuffer);
+	}
+
+	/**
+	 * @return number of the buffers that are releasing packets
+	 */
+	public int getScheduledBufferCount() {
+		return scheduledBufferCount;
+	}
+
+	public void shutdown() {
+		running = false;
+		thread.interrupt();
+		releaseExecutor.shutdown();
+	}
+}
@@ -1,12 +1,14 @@
 package io.antmedia.streamsource;
 
 import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
-import static org.bytedeco.ffmpeg.global.avcodec.av_packet_ref;
 import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avformat.AVFMT_FLAG_NONBLOCK;
 import static org.bytedeco.ffmpeg.global.avformat.av_read_frame;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_alloc_context;
 import static org.bytedeco.ffmpeg.global.avformat.avformat_close_input;
 import static org.bytedeco.ffmpeg.global.avformat.avformat_find_stream_info;
 import static org.bytedeco.ffmpeg.global.avformat.avformat_open_input;
+import static org.bytedeco.ffmpeg.global.avutil.AVERROR_EAGAIN;
 import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_AUDIO;
 import static org.bytedeco.ffmpeg.global.avutil.AVMEDIA_TYPE_VIDEO;
 import static org.bytedeco.ffmpeg.global.avutil.av_dict_free;
@@ -14,16 +16,17 @@ import static org.bytedeco.ffmpeg.global.avutil.av_dict_set;
 import static org.bytedeco.ffmpeg.global.avutil.av_rescale_q;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bytedeco.ffmpeg.avcodec.AVPacket;
 import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOInterruptCB;
 import org.bytedeco.ffmpeg.avutil.AVDictionary;
 import org.bytedeco.ffmpeg.avutil.AVRational;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.Pointer;
 import org.red5.server.api.scope.IScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,9 +59,11 @@ public class StreamFetcher {
 	 * Last packet received time
 	 */
 	private long lastPacketReceivedTime = 0;
-	private boolean threadActive = false;
+	private volatile boolean threadActive = false;
 	private Result cameraError = new Result(false,"");
 	private static final int PACKET_RECEIVED_INTERVAL_TIMEOUT = 3000;
+	private static final long THREAD_FINISH_CHECK_PERIOD_MS = 100;
+	private static final long RESTART_DELAY_MS = 2000;
 	private IScope scope;
 	private AntMediaApplicationAdapter appInstance;
 	private long[] lastDTS;
@@ -85,12 +90,38 @@ public class StreamFetcher {
 	private static final int COUNT_TO_LOG_BUFFER = 500;
 	
 	private int bufferLogCounter;
-	
-	private ConcurrentLinkedQueue<AVPacket> availableBufferQueue = new ConcurrentLinkedQueue<>();
 
 	private AppSettings appSettings;
 	private Vertx vertx;
 
+	/**
+	 * Pool that runs the fetcher if it's set. Otherwise fetcher runs in its own thread
+	 */
+	private StreamFetcherPool fetcherPool;
+
+	/**
+	 * VoD packets whose time comes in this duration are written together
+	 */
+	private int vodReadAheadMs = 0;
+
+	/**
+	 * Number of the consecutive reconnect attempts without receiving a packet. 
+	 * It's used to increase the reconnect delay exponentially
+	 */
+	private int reconnectAttempt = 0;
+
+	/**
+	 * Total number of the reconnects after the source is disconnected
+	 */
+	private volatile long reconnectCount = 0;
+
+	private volatile long workerStartTimeMs = 0;
+
+	/**
+	 * Time from the start of the worker to the first packet in the last connection. It's -1 if no packet is received
+	 */
+	private volatile long timeToFirstPacketMs = -1;
+
 	public interface IStreamFetcherListener {
 
 		void streamFinished (IStreamFetcherListener listener);
@@ -204,231 +235,381 @@ public class StreamFetcher {
 
 	}
 
+	/**
+	 * Reads the packets of the stream and writes them to the MuxAdaptor. 
+	 * 
+	 * It runs as a separate thread if there is no fetcher pool or the source may block. Otherwise it's not started as a thread
+	 * and its steps run on the {@link StreamFetcherPool}. Each step reads a limited number of packets and the
+	 * next step is scheduled so that a pool thread is not kept by a single stream
+	 */
 	public class WorkerThread extends Thread {
 
-		private static final int PACKET_WRITER_PERIOD_IN_MS = 10;
-
 		private static final long STREAM_FETCH_RE_TRY_PERIOD_MS = 3000;
 
+		/**
+		 * Reconnect delay is doubled for each failed attempt up to this value
+		 */
+		private static final long MAX_STREAM_FETCH_RE_TRY_PERIOD_MS = 60000;
+
+		/**
+		 * Number of packets read in a step in pooled mode
+		 */
+		private static final int PACKET_COUNT_IN_STEP = 50;
+
+		/**
+		 * Delay of the next step in pooled mode if there is no packet available to read
+		 */
+		private static final long READ_RETRY_DELAY_MS = 5;
+
+		/**
+		 * Maximum time opening the input can keep a pool thread. Blocking FFmpeg calls are interrupted after it
+		 */
+		private static final long OPEN_STEP_TIMEOUT_MS = 5000;
+
+		/**
+		 * Maximum time a read step can keep a pool thread. Blocking FFmpeg calls are interrupted after it
+		 */
+		private static final long READ_STEP_TIMEOUT_MS = 1000;
+
 		private volatile boolean streamPublished = false;
-		protected AtomicBoolean isJobRunning = new AtomicBoolean(false);
 		AVFormatContext inputFormatContext = null;
 
+		/**
+		 * Buffer of the packets if there is a buffer time
+		 */
+		private volatile JitterBuffer jitterBuffer;
 
+		private long firstPacketTime = 0;
+		private long timeOffset = 0;
 
-		private volatile boolean buffering = false;
-		private ConcurrentLinkedQueue<AVPacket> bufferQueue = new ConcurrentLinkedQueue<>();
+		private AVPacket pkt = null;
 
-		private volatile long bufferingFinishTimeMs;
+		/**
+		 * True if pkt has been read but not written yet because it's not the time to send it
+		 */
+		private boolean packetPending = false;
 
-		private volatile long firstPacketReadyToSentTimeMs;
+		/**
+		 * Interrupts blocking FFmpeg calls when stop is requested in pooled mode
+		 */
+		private AVIOInterruptCB.Callback_Pointer interruptCallback;
 
-		private long lastPacketTimeMsInQueue;
+		/**
+		 * True if the worker runs on the fetcher pool
+		 */
+		private boolean pooled = false;
+
+		/**
+		 * Time in milliseconds that the running pool step should finish. Zero if no step is running
+		 */
+		private volatile long stepDeadlineMs = 0;
 
 		@Override
 		public void run() {
 
 			setThreadActive(true);
-			long firstPacketTime = 0;
-			long bufferDuration = 0;
-			long timeOffset = 0;
+			try {
+				if (openInput()) {
+					long delayMs;
+					while ((delayMs = readPackets(Integer.MAX_VALUE)) >= 0) {
+						if (delayMs > 0) {
+							Thread.sleep(delayMs);
+						}
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				exceptionInThread = true;
+				Thread.currentThread().interrupt();
+			}
+			catch (OutOfMemoryError | Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				exceptionInThread  = true;
+			}
+
+			closeInput();
+		}
+
+		/**
+		 * Starts the worker on the fetcher pool
+		 */
+		public void startInPool() {
+			pooled = true;
+			setThreadActive(true);
+			fetcherPool.execute(this::openStep);
+		}
 
-			AVPacket pkt = null;
-			long packetWriterJobName = -1L;
+		private void openStep() {
+			boolean opened = false;
+			stepDeadlineMs = System.currentTimeMillis() + OPEN_STEP_TIMEOUT_MS;
 			try {
-				inputFormatContext = new AVFormatContext(null); 
-				pkt = avcodec.av_packet_alloc();
-				logger.info("Preparing the StreamFetcher for {}", stream.getStreamUrl());
-				Result result = prepare(inputFormatContext);
+				opened = openInput();
+			}
+			catch (OutOfMemoryError | Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				exceptionInThread  = true;
+			}
+			stepDeadlineMs = 0;
 
+			if (opened) {
+				fetcherPool.fetcherStarted();
+				readStep();
+			}
+			else {
+				closeInput();
+			}
+		}
 
-				if (result.isSuccess()) {
-					boolean audioExist = false;
-					boolean videoExist = false;
-					for (int i = 0; i < inputFormatContext.nb_streams(); i++) {
-						if (inputFormatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_AUDIO) {
-							audioExist = true;
-						}
-						else if (inputFormatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_VIDEO) {
-							videoExist = true;
-						}
-					}
-					
-					muxAdaptor = MuxAdaptor.initializeMuxAdaptor(null,true, scope);
-					// if there is only audio, firstKeyFrameReceivedChecked should be true in advance
-					// because there is no video frame
-					muxAdaptor.setFirstKeyFrameReceivedChecked(!videoExist); 
-					muxAdaptor.setEnableVideo(videoExist);
-					muxAdaptor.setEnableAudio(audioExist);
-					
-					//if stream is rtsp, then it's not AVC
-					muxAdaptor.setAvc(!stream.getStreamUrl().toLowerCase().startsWith("rtsp"));
-										
-					setUpEndPoints(stream.getStreamId(), muxAdaptor);
-
-					muxAdaptor.init(scope, stream.getStreamId(), false);
-
-					logger.info("{} stream count in stream {} is {}", stream.getStreamId(), stream.getStreamUrl(), inputFormatContext.nb_streams());
-
-					if(muxAdaptor.prepareInternal(inputFormatContext)) {
-
-						long currentTime = System.currentTimeMillis();
-						muxAdaptor.setStartTime(currentTime);
-
-						getInstance().startPublish(stream.getStreamId(), 0);
-
-						if (bufferTime > 0) {
-							packetWriterJobName = vertx.setPeriodic(PACKET_WRITER_PERIOD_IN_MS, l-> 
-								vertx.executeBlocking(h-> {
-									writeBufferedPacket();
-									h.complete();
-								}, false, r-> {
-									//no care
-								})
-							);
-						}
+		private void readStep() {
+			long delayMs = -1;
+			stepDeadlineMs = System.currentTimeMillis() + READ_STEP_TIMEOUT_MS;
+			try {
+				delayMs = readPackets(PACKET_COUNT_IN_STEP);
+			}
+			catch (OutOfMemoryError | Exception e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+				exceptionInThread  = true;
+			}
+			stepDeadlineMs = 0;
 
-						while (av_read_frame(inputFormatContext, pkt) >= 0) {
-
-							streamPublished = true;
-							lastPacketReceivedTime = System.currentTimeMillis();
-
-							/**
-							 * Check that dts values are monotically increasing for each stream
-							 */
-							int packetIndex = pkt.stream_index();
-							if (lastDTS[packetIndex] >= pkt.dts()) {
-								logger.info("last dts{} is bigger than incoming dts {}", pkt.dts(), lastDTS[packetIndex]);
-								pkt.dts(lastDTS[packetIndex] + 1);
-								
-							}
-							lastDTS[packetIndex] = pkt.dts();
-							if (pkt.dts() > pkt.pts()) {
-								logger.info("dts ({}) is bigger than pts({})", pkt.dts(), pkt.pts());
-								pkt.pts(pkt.dts());
-							}
-
-							/***************************************************
-							 *  Memory of being paranoid or failing while looking for excellence without understanding the whole picture
-							 *  
-							 *  Increasing pkt.dts plus 1 is a simple hack for fixing dts error if current dts has a value lower 
-							 *  than the last received dts. Because dts should be monotonically increasing. I made this simple hack and it is working. 
-							 *  After that I thought the same may happen for the pts value as well and I have added below fix. 
-							 *  Actually not a fix, it is a bug. Because pts values does not have to be monotonically increasing
-							 *  and if stream has B-Frames then pts value can be lower than the last PTS value. So below
-							 *  code snippet make the stream does not play smoothly. It took about 10 hours to find it this error.
-							 *  
-							 *  I have written this simple memory for me
-							 *  and for the guys who is developing or reviewing this code. 
-							 *  Even if it is time consuming or not reasonable, these kind of tryouts sometimes makes me excited. 
-							 *  I think I may expect to find something great by trying something crazy :) 
-							 *  
-							 *  @mekya - June 12, 2018
-							 *  
-							 *  ---------------------------------------------------
-							 *  
-							 *  if (lastPTS[packetIndex] >= pkt.pts()) {
-							 * 	   pkt.pts(lastPTS[packetIndex] + 1);
-							 *  }
-							 *  lastPTS[packetIndex] = pkt.pts();
-							 *
-							 ******************************************************/
-							if (bufferTime > 0) 
-							{
-								/*
-								 * If there is a bufferTime in the server.
-								 * Generally we don't use this feature most of the time
-								 */
-								AVPacket packet = getAVPacket();
-								av_packet_ref(packet, pkt);
-								bufferQueue.add(packet);
-
-								AVPacket pktHead = bufferQueue.peek();
-								/**
-								 * BufferQueue may be polled in writer thread. 
-								 * It's a very rare case to happen so that check if it's null
-								 */
-								if (pktHead != null) {
-									lastPacketTimeMsInQueue = av_rescale_q(pkt.pts(), inputFormatContext.streams(pkt.stream_index()).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
-									firstPacketTime = av_rescale_q(pktHead.pts(), inputFormatContext.streams(pktHead.stream_index()).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
-									bufferDuration = (lastPacketTimeMsInQueue - firstPacketTime);
-									
-									if ( bufferDuration > bufferTime) {
-										
-										if (buffering) {
-											//have the buffering finish time ms
-											bufferingFinishTimeMs = System.currentTimeMillis();
-											//have the first packet sent time
-											firstPacketReadyToSentTimeMs  = firstPacketTime;
-										}
-										buffering = false;
-									}
+			if (delayMs == 0) {
+				fetcherPool.execute(this::readStep);
+			}
+			else if (delayMs > 0) {
+				fetcherPool.schedule(this::readStep, delayMs);
+			}
+			else {
+				fetcherPool.fetcherFinished();
+				closeInput();
+			}
+		}
 
-									logBufferStatus();
-								}
-							}
-							else {
+		/**
+		 * Opens the input and prepares the MuxAdaptor
+		 * @return true if packets can be read
+		 */
+		private boolean openInput() {
+			if (pooled) {
+				inputFormatContext = avformat_alloc_context();
+				interruptCallback = new AVIOInterruptCB.Callback_Pointer() {
+					@Override
+					public int call(Pointer opaque) {
+						//a step that is blocked longer than its budget is interrupted so that it does not keep the pool thread
+						long deadlineMs = stepDeadlineMs;
+						return stopRequestReceived || (deadlineMs > 0 && System.currentTimeMillis() > deadlineMs) ? 1 : 0;
+					}
+				};
+				AVIOInterruptCB interruptCB = new AVIOInterruptCB();
+				interruptCB.callback(interruptCallback);
+				inputFormatContext.interrupt_callback(interruptCB);
+			}
+			else {
+				inputFormatContext = new AVFormatContext(null); 
+			}
+			pkt = avcodec.av_packet_alloc();
+			logger.info("Preparing the StreamFetcher for {}", stream.getStreamUrl());
+			Result result = prepare(inputFormatContext);
 
-								if(stream.getType().equals(STREAM_TYPE_VOD)) {
 
-									if(firstPacketTime == 0) {
-										int streamIndex = pkt.stream_index();
-										firstPacketTime = System.currentTimeMillis();
-										long firstPacketDtsInMs = av_rescale_q(pkt.dts(), inputFormatContext.streams(streamIndex).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
-										timeOffset = 0 - firstPacketDtsInMs;
-									}
+			if (result.isSuccess()) {
+				boolean audioExist = false;
+				boolean videoExist = false;
+				for (int i = 0; i < inputFormatContext.nb_streams(); i++) {
+					if (inputFormatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_AUDIO) {
+						audioExist = true;
+					}
+					else if (inputFormatContext.streams(i).codecpar().codec_type() == AVMEDIA_TYPE_VIDEO) {
+						videoExist = true;
+					}
+				}
+				
+				muxAdaptor = MuxAdaptor.initializeMuxAdaptor(null,true, scope);
+				// if there is only audio, firstKeyFrameReceivedChecked should be true in advance
+				// because there is no video frame
+				muxAdaptor.setFirstKeyFrameReceivedChecked(!videoExist); 
+				muxAdaptor.setEnableVideo(videoExist);
+				muxAdaptor.setEnableAudio(audioExist);
+				
+				//if stream is rtsp, then it's not AVC
+				muxAdaptor.setAvc(!stream.getStreamUrl().toLowerCase().startsWith("rtsp"));
+									
+				setUpEndPoints(stream.getStreamId(), muxAdaptor);
 
-									long latestTime = System.currentTimeMillis();
+				muxAdaptor.init(scope, stream.getStreamId(), false);
 
-									int streamIndex = pkt.stream_index();
+				logger.info("{} stream count in stream {} is {}", stream.getStreamId(), stream.getStreamUrl(), inputFormatContext.nb_streams());
 
-									AVRational timeBase = inputFormatContext.streams(streamIndex).time_base();
+				if(muxAdaptor.prepareInternal(inputFormatContext)) {
 
-									long pktTime = av_rescale_q(pkt.dts(), timeBase, MuxAdaptor.TIME_BASE_FOR_MS);
+					long currentTime = System.currentTimeMillis();
+					muxAdaptor.setStartTime(currentTime);
 
-									long durationInMs = latestTime - firstPacketTime;
+					getInstance().startPublish(stream.getStreamId(), 0);
 
-									long dtsInMS= timeOffset + pktTime;
+					if (bufferTime > 0) {
+						MuxAdaptor packetMuxAdaptor = muxAdaptor;
+						AVFormatContext packetFormatContext = inputFormatContext;
+						jitterBuffer = new JitterBuffer(stream.getStreamId(), bufferTime, 
+								packet -> packetMuxAdaptor.writePacket(packetFormatContext.streams(packet.stream_index()), packet));
+					}
 
-									while(dtsInMS > durationInMs) {
-										durationInMs = System.currentTimeMillis() - firstPacketTime;
-										Thread.sleep(1);
-									}
-								}
+					if (pooled) {
+						//demuxers supporting non-blocking reads return EAGAIN instead of blocking the pool thread.
+						//It's set after probing because stream info is read in a loop that retries on EAGAIN
+						inputFormatContext.flags(inputFormatContext.flags() | AVFMT_FLAG_NONBLOCK);
+					}
+					return true;
+				}
+				else {
+					logger.error("MuxAdaptor.Prepare for {} returned false", stream.getName());
+				}
+			} 
+			else {
+				logger.error("Prepare for opening the {} has failed", stream.getStreamUrl());
+			}
+			return false;
+		}
 
-								muxAdaptor.writePacket(inputFormatContext.streams(pkt.stream_index()), pkt);
+		/**
+		 * Reads and writes the packets
+		 * @param maxPacketCount maximum number of packets to read
+		 * @return -1 if reading is finished, 0 if maximum number of packets are read, 
+		 * otherwise the time in milliseconds to wait before reading again
+		 */
+		private long readPackets(int maxPacketCount) {
+			for (int count = 0; count < maxPacketCount; count++) {
+
+				if (stopRequestReceived) {
+					logger.warn("Stop request received, breaking the loop for {} ", stream.getStreamId());
+					return -1;
+				}
 
-							}
-							av_packet_unref(pkt);
-							if (stopRequestReceived) {
-								logger.warn("Stop request received, breaking the loop for {} ", stream.getStreamId());
-								break;
-							}
+				if (!packetPending) {
+					int ret = av_read_frame(inputFormatContext, pkt);
+					if (ret < 0) {
+						if (ret == AVERROR_EAGAIN()) {
+							return READ_RETRY_DELAY_MS;
 						}
 						logger.info("Leaving the stream fetcher loop for stream: {}", stream.getStreamId());
+						return -1;
+					}
 
+					if (!streamPublished) {
+						timeToFirstPacketMs = System.currentTimeMillis() - workerStartTimeMs;
+						reconnectAttempt = 0;
+					}
+					streamPublished = true;
+					lastPacketReceivedTime = System.currentTimeMillis();
+
+					/**
+					 * Check that dts values are monotically increasing for each stream
+					 */
+					int packetIndex = pkt.stream_index();
+					if (lastDTS[packetIndex] >= pkt.dts()) {
+						logger.info("last dts{} is bigger than incoming dts {}", pkt.dts(), lastDTS[packetIndex]);
+						pkt.dts(lastDTS[packetIndex] + 1);
+						
 					}
-					else {
-						logger.error("MuxAdaptor.Prepare for {} returned false", stream.getName());
+					lastDTS[packetIndex] = pkt.dts();
+					if (pkt.dts() > pkt.pts()) {
+						logger.info("dts ({}) is bigger than pts({})", pkt.dts(), pkt.pts());
+						pkt.pts(pkt.dts());
 					}
 
-					setCameraError(result);
-				} 
-				else {
-					logger.error("Prepare for opening the {} has failed", stream.getStreamUrl());
+					/***************************************************
+					 *  Memory of being paranoid or failing while looking for excellence without understanding the whole picture
+					 *  
+					 *  Increasing pkt.dts plus 1 is a simple hack for fixing dts error if current dts has a value lower 
+					 *  than the last received dts. Because dts should be monotonically increasing. I made this simple hack and it is working. 
+					 *  After that I thought the same may happen for the pts value as well and I have added below fix. 
+					 *  Actually not a fix, it is a bug. Because pts values does not have to be monotonically increasing
+					 *  and if stream has B-Frames then pts value can be lower than the last PTS value. So below
+					 *  code snippet make the stream does not play smoothly. It took about 10 hours to find it this error.
+					 *  
+					 *  I have written this simple memory for me
+					 *  and for the guys who is developing or reviewing this code. 
+					 *  Even if it is time consuming or not reasonable, these kind of tryouts sometimes makes me excited. 
+					 *  I think I may expect to find something great by trying something crazy :) 
+					 *  
+					 *  @mekya - June 12, 2018
+					 *  
+					 *  ---------------------------------------------------
+					 *  
+					 *  if (lastPTS[packetIndex] >= pkt.pts()) {
+					 * 	   pkt.pts(lastPTS[packetIndex] + 1);
+					 *  }
+					 *  lastPTS[packetIndex] = pkt.pts();
+					 *
+					 ******************************************************/
+					if (bufferTime > 0) 
+					{
+						bufferPacket();
+						continue;
+					}
+				}
+
+				if(stream.getType().equals(STREAM_TYPE_VOD)) {
+					long waitTimeMs = getVoDPacketWaitTimeMs();
+					if (waitTimeMs > vodReadAheadMs) {
+						//packet is kept and written when its time comes. 
+						//Packets in the read ahead duration after it are written together in the next step
+						packetPending = true;
+						return waitTimeMs;
+					}
 				}
+				packetPending = false;
+
+				muxAdaptor.writePacket(inputFormatContext.streams(pkt.stream_index()), pkt);
+				av_packet_unref(pkt);
 			}
-			catch (OutOfMemoryError | Exception e) {
-				logger.error(ExceptionUtils.getStackTrace(e));
-				exceptionInThread  = true;
+			return 0;
+		}
+
+		/**
+		 * VoD sources are sent in real time
+		 * @return time in milliseconds until the packet's time comes
+		 */
+		private long getVoDPacketWaitTimeMs() {
+			int streamIndex = pkt.stream_index();
+			if(firstPacketTime == 0) {
+				firstPacketTime = System.currentTimeMillis();
+				long firstPacketDtsInMs = av_rescale_q(pkt.dts(), inputFormatContext.streams(streamIndex).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
+				timeOffset = 0 - firstPacketDtsInMs;
 			}
 
+			AVRational timeBase = inputFormatContext.streams(streamIndex).time_base();
+
+			long pktTime = av_rescale_q(pkt.dts(), timeBase, MuxAdaptor.TIME_BASE_FOR_MS);
+
+			long durationInMs = System.currentTimeMillis() - firstPacketTime;
+
+			long dtsInMS= timeOffset + pktTime;
+
+			return dtsInMS - durationInMs;
+		}
 
-			if (packetWriterJobName != -1) {
-				logger.info("Removing packet writer job {}", packetWriterJobName);
-				vertx.cancelTimer(packetWriterJobName);
+		/**
+		 * Moves the packet to the jitter buffer and schedules the buffer if buffering has finished.
+		 * Generally we don't use this feature most of the time
+		 */
+		private void bufferPacket() {
+			long packetTimeMs = av_rescale_q(pkt.pts(), inputFormatContext.streams(pkt.stream_index()).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
+			if (jitterBuffer.add(pkt, packetTimeMs)) {
+				JitterBufferWheel.getInstance().schedule(jitterBuffer);
+			}
+			logBufferStatus();
+		}
+
+		/**
+		 * Releases the resources and schedules the restart if it's required
+		 */
+		private void closeInput() {
+			if (jitterBuffer != null) {
+				//remaining packets are written before the trailer
+				jitterBuffer.close();
+				jitterBuffer = null;
 			}
-			writeAllBufferedPackets();
 
 
 			if (muxAdaptor != null) {
@@ -453,6 +634,11 @@ public class StreamFetcher {
 				inputFormatContext = null;
 			}
 
+			if (interruptCallback != null) {
+				interruptCallback.close();
+				interruptCallback = null;
+			}
+
 			if(streamPublished) {
 				getInstance().closeBroadcast(stream.getStreamId());
 				streamPublished=false;
@@ -469,12 +655,11 @@ public class StreamFetcher {
 			}
 
 			if(!stopRequestReceived && restartStream) {
-				logger.info("Stream fetcher will try to fetch source {} after {} ms", stream.getStreamUrl(), STREAM_FETCH_RE_TRY_PERIOD_MS);
-				vertx.setTimer(STREAM_FETCH_RE_TRY_PERIOD_MS, l -> {
-
-					thread = new WorkerThread();
-					thread.start();
-				});
+				long reconnectDelayMs = getReconnectDelayMs();
+				reconnectAttempt++;
+				reconnectCount++;
+				logger.info("Stream fetcher will try to fetch source {} after {} ms", stream.getStreamUrl(), reconnectDelayMs);
+				vertx.setTimer(reconnectDelayMs, l -> startWorker());
 			}
 
 			logger.debug("Leaving thread for {}", stream.getStreamUrl());
@@ -483,6 +668,16 @@ public class StreamFetcher {
 		}
 
 
+		/**
+		 * Reconnect delay increases exponentially while the source is not available. It's randomized 
+		 * between the half and the whole of the delay so that sources disconnected at the same time
+		 * don't reconnect at the same time
+		 */
+		private long getReconnectDelayMs() {
+			long delayMs = Math.min(MAX_STREAM_FETCH_RE_TRY_PERIOD_MS, STREAM_FETCH_RE_TRY_PERIOD_MS << Math.min(reconnectAttempt, 5));
+			return delayMs / 2 + ThreadLocalRandom.current().nextLong(delayMs / 2 + 1);
+		}
+
 		private void setUpEndPoints(String publishedName, MuxAdaptor muxAdaptor) {
 			DataStore dataStore = getInstance().getDataStore();
 			Broadcast broadcast = dataStore.get(publishedName);
@@ -499,126 +694,88 @@ public class StreamFetcher {
 
 		}
 
-		private void writeAllBufferedPackets() 
-		{
-			synchronized (this) {
-				//different threads may write writeBufferedPacket and this method at the same time
-				
-				logger.info("write all buffered packets for stream: {}", stream.getStreamId());
-				while (!bufferQueue.isEmpty()) {
-	
-					AVPacket pkt = bufferQueue.poll();
-					muxAdaptor.writePacket(inputFormatContext.streams(pkt.stream_index()), pkt);
-					av_packet_unref(pkt);
-				}
-	
-				AVPacket pkt;
-				while ((pkt = bufferQueue.poll()) != null) {
-					pkt.close();
-				}
-				
-				while ((pkt = availableBufferQueue.poll()) != null) {
-					pkt.close();
-				}
-			}
-			
-		}
-
-		//TODO: Code dumplication with MuxAdaptor.writeBufferedPacket. It should be refactored.
-		public void writeBufferedPacket() 
-		{
-			synchronized (this) {
-			
-				if (isJobRunning.compareAndSet(false, true)) 
-				{
-					if (!buffering) {
-						while(!bufferQueue.isEmpty()) {
-							AVPacket tempPacket = bufferQueue.peek(); 
-							long pktTime = av_rescale_q(tempPacket.pts(), inputFormatContext.streams(tempPacket.stream_index()).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
-							long now = System.currentTimeMillis();
-							long pktTimeDifferenceMs = pktTime - firstPacketReadyToSentTimeMs; 
-							long passedTime = now - bufferingFinishTimeMs;
-							if (pktTimeDifferenceMs < passedTime) {
-								muxAdaptor.writePacket(inputFormatContext.streams(tempPacket.stream_index()), tempPacket);
-								av_packet_unref(tempPacket);
-								bufferQueue.remove(); //remove the packet from the queue
-								availableBufferQueue.offer(tempPacket);
-							}
-							else {
-								//break the loop and don't block the thread because it's not correct time to send the packet
-								break;
-							}
-							
-						}
-						
-						//update buffering. If bufferQueue is empty, it should start buffering
-						buffering = bufferQueue.isEmpty();
-					}
-					
-					logBufferStatus();
-					
-					System.out.println("buffer log counter: " + bufferLogCounter);
-					isJobRunning.compareAndSet(true, false);
-				}
-			
-			}
-		}
-		
-		
 		public void logBufferStatus() {
-			bufferLogCounter++; //we use this parameter in execute method as well 
+			bufferLogCounter++;
 			if (bufferLogCounter % COUNT_TO_LOG_BUFFER  == 0) {
-				logger.info("WriteBufferedPacket -> Buffering status {}, buffer duration {}ms buffer time {}ms stream: {}", buffering, getBufferedDurationMs(), bufferTime, stream.getStreamId());
+				logger.info("Jitter buffer -> Buffering status {}, buffer duration {}ms buffer time {}ms depth {} underrun count {} stream: {}", 
+						jitterBuffer.isBuffering(), jitterBuffer.getBufferedDurationMs(), bufferTime, jitterBuffer.getDepth(), 
+						jitterBuffer.getUnderrunCount(), stream.getStreamId());
 				bufferLogCounter = 0;
 			}
 		}
-		
+
 		public long getBufferedDurationMs() {
-			AVPacket pktHead = bufferQueue.peek();
-			if (pktHead != null) {
-				long firstPacketInQueueTime = av_rescale_q(pktHead.pts(), inputFormatContext.streams(pktHead.stream_index()).time_base(), MuxAdaptor.TIME_BASE_FOR_MS);
-				return lastPacketTimeMsInQueue - firstPacketInQueueTime;
-			}
-			return 0;
+			JitterBuffer buffer = jitterBuffer;
+			return buffer != null ? buffer.getBufferedDurationMs() : 0;
+		}
+
+		public JitterBuffer getJitterBuffer() {
+			return jitterBuffer;
 		}
 	}
 	
 	
 
 	public void startStream() {
-		new Thread() {
-			@Override
-			public void run() {
-				try {
-					int i = 0;
-					while (threadActive) {
-						Thread.sleep(100);
-						if (i % 50 == 0) {
-							logger.info("waiting for thread to be finished for stream {}", stream.getStreamUrl());
-							i = 0;
-						}
-						i++;
-					}
-					Thread.sleep(2000);
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage());
-					Thread.currentThread().interrupt();
-				}
+		runWhenThreadFinished(() -> {
+			exceptionInThread = false;
+			reconnectAttempt = 0;
+			startWorker();
+			logger.info("StartStream called, new thread is started for {}", stream.getStreamId());
+		});
+	}
+
+	private void startWorker() {
+		workerStartTimeMs = System.currentTimeMillis();
+		thread = new WorkerThread();
+		if (isPoolable()) {
+			thread.startInPool();
+		}
+		else {
+			thread.start();
+		}
+	}
 
-				exceptionInThread = false;
-				thread = new WorkerThread();
-				thread.start();
-				logger.info("StartStream called, new thread is started for {}", stream.getStreamId());
-			}
-		}.start();
+	/**
+	 * Demuxers of network sources like rtsp and rtmp ignore AVFMT_FLAG_NONBLOCK and av_read_frame blocks 
+	 * until a packet arrives or the socket times out. So they run on their own threads and 
+	 * only local files are read on the fetcher pool
+	 * @return true if the stream is read on the fetcher pool
+	 */
+	public boolean isPoolable() {
+		String streamUrl = stream.getStreamUrl();
+		return fetcherPool != null && streamUrl != null 
+				&& (!streamUrl.contains("://") || streamUrl.startsWith("file:"));
+	}
 
+	/**
+	 * Waits for the worker of the previous start to finish without blocking a thread 
+	 * and runs the action on the vertx event loop after the restart delay
+	 * @param action
+	 */
+	private void runWhenThreadFinished(Runnable action) {
+		waitForThreadToFinish(0, action);
 	}
 
-	public AVPacket getAVPacket() {
-		if (!availableBufferQueue.isEmpty()) {
-			return availableBufferQueue.poll();
+	private void waitForThreadToFinish(int checkCount, Runnable action) {
+		if (threadActive) {
+			if (checkCount % 50 == 0) {
+				logger.info("waiting for thread to be finished for stream {}", stream.getStreamUrl());
+			}
+			vertx.setTimer(THREAD_FINISH_CHECK_PERIOD_MS, l -> waitForThreadToFinish(checkCount + 1, action));
+		}
+		else {
+			vertx.setTimer(RESTART_DELAY_MS, l -> action.run());
 		}
-		return new AVPacket();
+	}
+
+	/**
+	 * @return jitter buffer of the running worker to get the buffer depth and underrun metrics. 
+	 * It's null if there is no buffer time or worker is not running
+	 */
+	public JitterBuffer getJitterBuffer() {
+		WorkerThread worker = thread;
+		return worker != null ? worker.getJitterBuffer() : null;
 	}
 
 	/**
@@ -658,23 +815,7 @@ public class StreamFetcher {
 
 	public void restart() {
 		stopStream();
-		new Thread() {
-			@Override
-			public void run() {
-				try {
-					while (threadActive) {
-						Thread.sleep(100);
-					}
-
-					Thread.sleep(2000);
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage());
-					Thread.currentThread().interrupt();
-				}
-				startStream();
-			}
-		}.start();
-
+		runWhenThreadFinished(this::startStream);
 	}
 	/**
 	 * Set timeout when establishing connection
@@ -737,6 +878,34 @@ public class StreamFetcher {
 		this.stream = stream;
 	}
 
+	public StreamFetcherPool getFetcherPool() {
+		return fetcherPool;
+	}
+
+	public void setFetcherPool(StreamFetcherPool fetcherPool) {
+		this.fetcherPool = fetcherPool;
+	}
+
+	public long getReconnectCount() {
+		return reconnectCount;
+	}
+
+	/**
+	 * @return time in milliseconds from the start to the first packet in the last connection
+	 * or -1 if no packet has been received
+	 */
+	public long getTimeToFirstPacketMs() {
+		return timeToFirstPacketMs;
+	}
+
+	public int getVodReadAheadMs() {
+		return vodReadAheadMs;
+	}
+
+	public void setVodReadAheadMs(int vodReadAheadMs) {
+		this.vodReadAheadMs = vodReadAheadMs;
+	}
+
 	public int getBufferTime() {
 		return bufferTime;
 	}
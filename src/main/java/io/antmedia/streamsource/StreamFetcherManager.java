@@ -3,9 +3,12 @@ package io.antmedia.streamsource;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
@@ -14,13 +17,16 @@ import org.apache.tika.utils.ExceptionUtils;
 import org.red5.server.api.scope.IScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
 
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
+import io.antmedia.datastore.db.BroadcastUpdate;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Playlist;
 import io.antmedia.rest.model.Result;
+import io.antmedia.settings.ServerSettings;
 import io.vertx.core.Vertx;
 
 
@@ -35,7 +41,25 @@ public class StreamFetcherManager {
 
 	private int streamCheckerCount = 0;
 
-	private Queue<StreamFetcher> streamFetcherList = new ConcurrentLinkedQueue<>();
+	/**
+	 * Stream fetchers keyed by the stream id of the fetcher
+	 */
+	private Map<String, StreamFetcher> streamFetchers = new ConcurrentHashMap<>();
+
+	/**
+	 * Stream fetchers are checked in this number of steps in the checker interval 
+	 * so that all of them are not checked or restarted at the same time
+	 */
+	private static final int HEALTH_CHECK_SHARD_COUNT = 10;
+
+	private int shardIndex = 0;
+
+	/**
+	 * Stream fetchers to be checked in the current checker interval
+	 */
+	private List<StreamFetcher> fetchersToCheck = new ArrayList<>();
+
+	private boolean restartInCurrentInterval = false;
 
 	/**
 	 * Time period in milli seconds for checking stream fetchers status, restart issues etc. 
@@ -57,6 +81,15 @@ public class StreamFetcherManager {
 	private int lastRestartCount;
 	
 	private AppSettings appSettings;
+	
+	/**
+	 * Pool that runs the stream fetchers. It's null if each fetcher runs in its own thread
+	 */
+	private StreamFetcherPool fetcherPool;
+	
+	private boolean fetcherPoolChecked = false;
+
+	private ServerSettings serverSettings;
 
 
 	public StreamFetcherManager(Vertx vertx, DataStore datastore,IScope scope) {
@@ -70,6 +103,35 @@ public class StreamFetcherManager {
 		return new StreamFetcher(stream, scope, vertx);
 	}
 
+	/**
+	 * @return server settings or null if it's not available in the context
+	 */
+	private ServerSettings getServerSettings() {
+		if (serverSettings == null) {
+			ApplicationContext context = scope.getContext().getApplicationContext();
+			if (context != null && context.containsBean(ServerSettings.BEAN_NAME)) {
+				serverSettings = (ServerSettings) context.getBean(ServerSettings.BEAN_NAME);
+			}
+		}
+		return serverSettings;
+	}
+
+	public StreamFetcherPool getFetcherPool() {
+		if (!fetcherPoolChecked) {
+			fetcherPoolChecked = true;
+			ServerSettings settings = getServerSettings();
+			if (settings != null && settings.getStreamFetcherPoolSize() > 0) {
+				fetcherPool = StreamFetcherPool.getInstance(settings.getStreamFetcherPoolSize());
+			}
+		}
+		return fetcherPool;
+	}
+
+	public void setFetcherPool(StreamFetcherPool fetcherPool) {
+		this.fetcherPool = fetcherPool;
+		this.fetcherPoolChecked = true;
+	}
+
 	public int getStreamCheckerInterval() {
 		return streamCheckerIntervalMs;
 	}
@@ -86,32 +148,50 @@ public class StreamFetcherManager {
 	}
 
 	public boolean checkAlreadyFetch(Broadcast broadcast) {
-		
-		boolean alreadyFetching = false;
-		
-		for (StreamFetcher streamFetcher : streamFetcherList) {
-			if (streamFetcher.getStream().getStreamId().equals(broadcast.getStreamId())) {
-				alreadyFetching = true;
-				break;
-			}
-		}
-		
-		return alreadyFetching;
-		
+		return broadcast.getStreamId() != null && streamFetchers.containsKey(broadcast.getStreamId());
+	}
+
+	/**
+	 * @param streamId
+	 * @return the stream fetcher of the stream or null if it's not being fetched
+	 */
+	public StreamFetcher getStreamFetcher(String streamId) {
+		return streamFetchers.get(streamId);
 	}
 	
-	public void alreadyFetchProcess(StreamFetcher streamScheduler) {
+	/**
+	 * Registers the stream fetcher and starts it. The stream id is reserved before the fetcher is started 
+	 * so that concurrent starts of the same stream do not start two fetchers
+	 * @param streamScheduler
+	 * @return false if there is already a fetcher for the stream
+	 */
+	public boolean alreadyFetchProcess(StreamFetcher streamScheduler) {
 		
-		streamScheduler.startStream();
+		String streamId = streamScheduler.getStream().getStreamId();
+		if (streamFetchers.putIfAbsent(streamId, streamScheduler) != null) {
+			logger.warn("Stream fetcher is already started for stream: {}", streamId);
+			return false;
+		}
 
-		if(!streamFetcherList.contains(streamScheduler)) {
-			streamFetcherList.add(streamScheduler);
+		try {
+			if (streamScheduler.getFetcherPool() == null) {
+				streamScheduler.setFetcherPool(getFetcherPool());
+			}
+			ServerSettings settings = getServerSettings();
+			if (settings != null) {
+				streamScheduler.setVodReadAheadMs(settings.getVodReadAheadMs());
+			}
+			streamScheduler.startStream();
+		}
+		catch (RuntimeException e) {
+			streamFetchers.remove(streamId, streamScheduler);
+			throw e;
 		}
 
 		if (streamFetcherScheduleJobName == -1) {
 			scheduleStreamFetcherJob();
 		}
-		
+		return true;
 	}
 
 
@@ -130,7 +210,9 @@ public class StreamFetcherManager {
 				streamScheduler =  make(broadcast, scope, vertx);
 				streamScheduler.setRestartStream(restartStreamAutomatically);
 				
-				alreadyFetchProcess(streamScheduler);
+				if (!alreadyFetchProcess(streamScheduler)) {
+					streamScheduler = null;
+				}
 			}
 			catch (Exception e) {
 				streamScheduler = null;
@@ -168,13 +250,10 @@ public class StreamFetcherManager {
 		logger.warn("inside of stopStreaming for {}", stream.getStreamId());
 		Result result = new Result(false);
 
-		for (StreamFetcher scheduler : streamFetcherList) {
-			if (scheduler.getStream().getStreamId().equals(stream.getStreamId())) {
-				scheduler.stopStream();
-				streamFetcherList.remove(scheduler);
-				result.setSuccess(true);
-				break;
-			}
+		StreamFetcher scheduler = stream.getStreamId() != null ? streamFetchers.remove(stream.getStreamId()) : null;
+		if (scheduler != null) {
+			scheduler.stopStream();
+			result.setSuccess(true);
 		}
 		return result;
 	}
@@ -325,9 +404,24 @@ public class StreamFetcherManager {
 			vertx.cancelTimer(streamFetcherScheduleJobName);
 		}
 
-		streamFetcherScheduleJobName = vertx.setPeriodic(streamCheckerIntervalMs, l-> {
+		shardIndex = 0;
+		long shardPeriodMs = Math.max(1, streamCheckerIntervalMs / HEALTH_CHECK_SHARD_COUNT);
+		streamFetcherScheduleJobName = vertx.setPeriodic(shardPeriodMs, l-> checkNextShard(shardPeriodMs));
 
-			if (!streamFetcherList.isEmpty()) {
+		logger.info("StreamFetcherSchedule job name {}", streamFetcherScheduleJobName);
+	}
+
+	/**
+	 * Checks or restarts the next part of the stream fetchers. Whether to restart the fetchers 
+	 * is decided at the beginning of each checker interval
+	 * @param shardPeriodMs
+	 */
+	private void checkNextShard(long shardPeriodMs) {
+		if (shardIndex == 0) {
+			fetchersToCheck = new ArrayList<>(streamFetchers.values());
+			restartInCurrentInterval = false;
+
+			if (!fetchersToCheck.isEmpty()) {
 
 				streamCheckerCount++;
 
@@ -341,47 +435,116 @@ public class StreamFetcherManager {
 					countToRestart = (streamCheckerCount * streamCheckIntervalSec) / restartStreamFetcherPeriodSeconds;
 				}
 
-
 				if (countToRestart > lastRestartCount) {
 					lastRestartCount = countToRestart;
 					logger.info("This is {} times that restarting streams", lastRestartCount);
-					restartStreamFetchers();
-				} else {
-					checkStreamFetchersStatus();
+					restartInCurrentInterval = true;
 				}
 			}
+		}
 
-		});
+		//shards are rounded up so that a few fetchers are processed in the first shards
+		int size = fetchersToCheck.size();
+		int fromIndex = (shardIndex * size + HEALTH_CHECK_SHARD_COUNT - 1) / HEALTH_CHECK_SHARD_COUNT;
+		int toIndex = ((shardIndex + 1) * size + HEALTH_CHECK_SHARD_COUNT - 1) / HEALTH_CHECK_SHARD_COUNT;
+		List<StreamFetcher> shard = fetchersToCheck.subList(fromIndex, toIndex);
 
-		logger.info("StreamFetcherSchedule job name {}", streamFetcherScheduleJobName);
+		if (!shard.isEmpty()) {
+			if (restartInCurrentInterval) {
+				restartStreamFetchers(shard, shardPeriodMs);
+			}
+			else {
+				checkStreamFetchersStatus(shard);
+			}
+		}
+
+		shardIndex = (shardIndex + 1) % HEALTH_CHECK_SHARD_COUNT;
 	}
 
 	public void checkStreamFetchersStatus() {
-		for (StreamFetcher streamScheduler : streamFetcherList) {
+		checkStreamFetchersStatus(streamFetchers.values());
+	}
+
+	private void checkStreamFetchersStatus(Collection<StreamFetcher> fetchers) {
+		List<BroadcastUpdate> qualityUpdates = new ArrayList<>();
+		for (StreamFetcher streamScheduler : fetchers) {
 			Broadcast stream = streamScheduler.getStream();
 
 			if (!streamScheduler.isStreamAlive() && datastore != null && stream.getStreamId() != null) 
 			{
 				logger.info("Stream is not alive and setting quality to poor of stream: {} url: {}", stream.getStreamId(), stream.getStreamUrl());
-				datastore.updateSourceQualityParameters(stream.getStreamId(), null, 0, 0);
+				qualityUpdates.add(BroadcastUpdate.sourceQuality(stream.getStreamId(), null, 0, 0));
 			}
 		}
+		if (datastore != null) {
+			BroadcastUpdate.applyAll(datastore, qualityUpdates);
+		}
 	}
 
+	/**
+	 * Restarts all stream fetchers at random times in the checker interval
+	 */
 	public void restartStreamFetchers() {
-		for (StreamFetcher streamScheduler : streamFetcherList) {
+		restartStreamFetchers(streamFetchers.values(), streamCheckerIntervalMs);
+	}
 
-			if (streamScheduler.isStreamAlive()) 
-			{
-				logger.info("Calling stop stream {}", streamScheduler.getStream().getStreamId());
-				streamScheduler.stopStream();
-			}
-			else {
-				logger.info("Stream is not alive {}", streamScheduler.getStream().getStreamId());
-			}
+	/**
+	 * Restarts the stream fetchers at random times in the spread period so that 
+	 * the sources are not reconnected at the same time
+	 * @param fetchers
+	 * @param spreadMs
+	 */
+	private void restartStreamFetchers(Collection<StreamFetcher> fetchers, long spreadMs) {
+		for (StreamFetcher streamScheduler : fetchers) {
+			long delayMs = 1 + ThreadLocalRandom.current().nextLong(Math.max(1, spreadMs));
+			vertx.setTimer(delayMs, l -> restartStreamFetcher(streamScheduler));
+		}
+	}
 
-			streamScheduler.startStream();
+	private void restartStreamFetcher(StreamFetcher streamScheduler) {
+		if (streamFetchers.get(streamScheduler.getStream().getStreamId()) != streamScheduler) {
+			//it's stopped or replaced after restart is scheduled
+			return;
+		}
+
+		if (streamScheduler.isStreamAlive()) 
+		{
+			logger.info("Calling stop stream {}", streamScheduler.getStream().getStreamId());
+			streamScheduler.stopStream();
+		}
+		else {
+			logger.info("Stream is not alive {}", streamScheduler.getStream().getStreamId());
+		}
+
+		streamScheduler.startStream();
+	}
+
+	/**
+	 * @return total number of the reconnects of the stream fetchers after their sources are disconnected
+	 */
+	public long getTotalReconnectCount() {
+		long count = 0;
+		for (StreamFetcher streamFetcher : streamFetchers.values()) {
+			count += streamFetcher.getReconnectCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return average time in milliseconds from start to the first packet of the stream fetchers 
+	 * that have received a packet, or -1 if there is no such fetcher
+	 */
+	public long getAverageTimeToFirstPacketMs() {
+		long total = 0;
+		int count = 0;
+		for (StreamFetcher streamFetcher : streamFetchers.values()) {
+			long timeToFirstPacketMs = streamFetcher.getTimeToFirstPacketMs();
+			if (timeToFirstPacketMs >= 0) {
+				total += timeToFirstPacketMs;
+				count++;
+			}
 		}
+		return count > 0 ? total / count : -1;
 	}
 
 	public DataStore getDatastore() {
@@ -392,12 +555,22 @@ public class StreamFetcherManager {
 		this.datastore = datastore;
 	}
 
-	public Queue<StreamFetcher> getStreamFetcherList() {
-		return streamFetcherList;
+	/**
+	 * @return live view of the stream fetchers. Removing a fetcher from it removes the fetcher from the manager
+	 */
+	public Collection<StreamFetcher> getStreamFetcherList() {
+		return streamFetchers.values();
 	}
 
-	public void setStreamFetcherList(Queue<StreamFetcher> streamFetcherList) {
-		this.streamFetcherList = streamFetcherList;
+	/**
+	 * Replaces the stream fetchers of the manager
+	 * @param streamFetcherList
+	 */
+	public void setStreamFetcherList(Collection<StreamFetcher> streamFetcherList) {
+		streamFetchers.clear();
+		for (StreamFetcher streamFetcher : streamFetcherList) {
+			streamFetchers.put(streamFetcher.getStream().getStreamId(), streamFetcher);
+		}
 	}
 
 
@@ -0,0 +1,98 @@
+package io.antmedia.streamsource;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fixed size thread pool that runs the stream fetchers in pooled mode.
+ *
+ * In pooled mode, a stream fetcher does not have its own thread. It reads a limited number of packets
+ * in each step on the pool and schedules the next step. If there is no packet available,
+ * next step is scheduled with a short delay so that the thread is not blocked by waiting sources.
+ * So that the number of threads does not increase with the number of pulled streams.
+ * Only the sources that do not block the reads are run on the pool, see {@link StreamFetcher#isPoolable()}
+ *
+ * There is one pool in the server and its size is set by {@link io.antmedia.settings.ServerSettings#getStreamFetcherPoolSize()}
+ */
+public class StreamFetcherPool {
+
+	protected static Logger logger = LoggerFactory.getLogger(StreamFetcherPool.class);
+
+	private static StreamFetcherPool instance;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	private final int poolSize;
+
+	private final AtomicInteger activeFetcherCount = new AtomicInteger();
+
+	public StreamFetcherPool(int poolSize) {
+		this.poolSize = poolSize;
+		AtomicInteger threadIndex = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "stream-fetcher-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		executor = new ScheduledThreadPoolExecutor(poolSize, threadFactory);
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * @param poolSize is used only when the pool is created at the first call
+	 * @return the shared pool of the server
+	 */
+	public static synchronized StreamFetcherPool getInstance(int poolSize) {
+		if (instance == null) {
+			logger.info("Creating stream fetcher pool with {} threads", poolSize);
+			instance = new StreamFetcherPool(poolSize);
+		}
+		return instance;
+	}
+
+	public void execute(Runnable step) {
+		executor.execute(() -> runSafely(step));
+	}
+
+	public void schedule(Runnable step, long delayMs) {
+		executor.schedule(() -> runSafely(step), delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	private void runSafely(Runnable step) {
+		try {
+			step.run();
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	public void fetcherStarted() {
+		activeFetcherCount.incrementAndGet();
+	}
+
+	public void fetcherFinished() {
+		activeFetcherCount.decrementAndGet();
+	}
+
+	/**
+	 * @return number of the fetchers that have opened their inputs in the pool
+	 */
+	public int getActiveFetcherCount() {
+		return activeFetcherCount.get();
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
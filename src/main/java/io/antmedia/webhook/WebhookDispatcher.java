@@ -0,0 +1,350 @@
+package io.antmedia.webhook;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the webhook events asynchronously in its own thread pool.
+ *
+ * Events are kept in a queue per URL and at most a limited number of requests are sent to a URL at the same time.
+ * Total number of the waiting events is bounded and new events are dropped if the queue is full.
+ * If sending fails with an {@link IOException}, it's retried with exponential backoff.
+ * If batch size is more than 1, events waiting for the same URL are sent in a single request.
+ */
+public class WebhookDispatcher {
+
+	protected static Logger logger = LoggerFactory.getLogger(WebhookDispatcher.class);
+
+	public interface IHookSender {
+		/**
+		 * Sends the events to the URL
+		 * @param url
+		 * @param events variables of the events. It has one event if batching is not enabled
+		 * @throws IOException if sending fails and it should be retried
+		 */
+		void send(String url, List<Map<String, String>> events) throws IOException;
+	}
+
+	private static class HookEvent {
+		private final Map<String, String> variables;
+		private final long queuedTimeMs;
+
+		public HookEvent(Map<String, String> variables, long queuedTimeMs) {
+			this.variables = variables;
+			this.queuedTimeMs = queuedTimeMs;
+		}
+	}
+
+	private static class UrlQueue {
+		private final Deque<HookEvent> events = new ArrayDeque<>();
+		private int requestCount = 0;
+	}
+
+	/**
+	 * Events that wait for the retry delay. They are counted as dropped if dispatcher is shut down before the retry
+	 */
+	private class RetryTask implements Runnable {
+		private final String url;
+		private final List<HookEvent> batch;
+		private final int attempt;
+
+		public RetryTask(String url, List<HookEvent> batch, int attempt) {
+			this.url = url;
+			this.batch = batch;
+			this.attempt = attempt;
+		}
+
+		@Override
+		public void run() {
+			synchronized (urlQueues) {
+				if (!pendingRetries.remove(this)) {
+					//dropped at shutdown
+					return;
+				}
+			}
+			send(url, batch, attempt);
+		}
+	}
+
+	private static final long RETRY_BASE_DELAY_MS = 1000;
+
+	private final IHookSender sender;
+	private final int queueSize;
+	private final int maxConcurrencyPerUrl;
+	private final int maxRetryCount;
+	private final int batchSize;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Queues of the URLs that have waiting or sending events. It's also the lock of the queues
+	 */
+	private final Map<String, UrlQueue> urlQueues = new HashMap<>();
+
+	/**
+	 * Retries that are scheduled but not started. It's guarded by {@link #urlQueues}
+	 */
+	private final Set<RetryTask> pendingRetries = new HashSet<>();
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong retryCount = new AtomicLong();
+	private final AtomicLong totalLatencyMs = new AtomicLong();
+
+	/**
+	 * @param sender sends the events
+	 * @param threadCount number of threads that send the events
+	 * @param queueSize maximum number of the events waiting to be sent
+	 * @param maxConcurrencyPerUrl maximum number of requests sent to a URL at the same time
+	 * @param maxRetryCount number of retries after the first attempt fails
+	 * @param batchSize maximum number of events sent in a request
+	 */
+	public WebhookDispatcher(IHookSender sender, int threadCount, int queueSize, int maxConcurrencyPerUrl, int maxRetryCount, int batchSize) {
+		this.sender = sender;
+		this.queueSize = queueSize;
+		this.maxConcurrencyPerUrl = Math.max(1, maxConcurrencyPerUrl);
+		this.maxRetryCount = maxRetryCount;
+		this.batchSize = Math.max(1, batchSize);
+
+		AtomicInteger threadIndex = new AtomicInteger();
+		executor = new ScheduledThreadPoolExecutor(Math.max(1, threadCount), runnable -> {
+			Thread thread = new Thread(runnable, "webhook-dispatcher-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Puts the event to the queue of the URL
+	 * @param url
+	 * @param variables
+	 * @return false if the event is dropped because the queue is full or dispatcher is shut down
+	 */
+	public boolean dispatch(String url, Map<String, String> variables) {
+		if (queuedCount.incrementAndGet() > queueSize) {
+			queuedCount.decrementAndGet();
+			droppedCount.incrementAndGet();
+			logger.warn("Webhook event is dropped because queue is full. url:{} event:{}", url, variables);
+			return false;
+		}
+
+		synchronized (urlQueues) {
+			//checked under the same lock with the drain in shutdown so that an event is either drained or rejected here
+			if (executor.isShutdown()) {
+				queuedCount.decrementAndGet();
+				droppedCount.incrementAndGet();
+				logger.warn("Webhook event is dropped because dispatcher is shut down. url:{} event:{}", url, variables);
+				return false;
+			}
+			urlQueues.computeIfAbsent(url, k -> new UrlQueue()).events.add(new HookEvent(variables, System.currentTimeMillis()));
+		}
+		sendNext(url);
+		return true;
+	}
+
+	/**
+	 * Sends the next events of the URL if concurrency limit of the URL allows
+	 */
+	private void sendNext(String url) {
+		List<HookEvent> batch;
+		synchronized (urlQueues) {
+			UrlQueue urlQueue = urlQueues.get(url);
+			if (urlQueue == null || urlQueue.events.isEmpty() || urlQueue.requestCount >= maxConcurrencyPerUrl 
+					|| executor.isShutdown()) {
+				return;
+			}
+			batch = new ArrayList<>();
+			while (batch.size() < batchSize && !urlQueue.events.isEmpty()) {
+				batch.add(urlQueue.events.poll());
+			}
+			urlQueue.requestCount++;
+		}
+		try {
+			executor.execute(() -> send(url, batch, 0));
+		}
+		catch (RejectedExecutionException e) {
+			//dispatcher is shut down after the check
+			droppedCount.addAndGet(batch.size());
+			finished(url, batch.size());
+		}
+	}
+
+	private void send(String url, List<HookEvent> batch, int attempt) {
+		List<Map<String, String>> events = new ArrayList<>(batch.size());
+		for (HookEvent event : batch) {
+			events.add(event.variables);
+		}
+
+		try {
+			sender.send(url, events);
+
+			long now = System.currentTimeMillis();
+			for (HookEvent event : batch) {
+				totalLatencyMs.addAndGet(now - event.queuedTimeMs);
+			}
+			sentCount.addAndGet(batch.size());
+		}
+		catch (IOException e) {
+			if (attempt < maxRetryCount && !executor.isShutdown()) {
+				long delayMs = (RETRY_BASE_DELAY_MS << attempt) + ThreadLocalRandom.current().nextLong(RETRY_BASE_DELAY_MS);
+				logger.info("Sending webhook to {} failed with {}. It will be retried after {}ms", url, e.getMessage(), delayMs);
+				retryCount.incrementAndGet();
+				RetryTask retryTask = new RetryTask(url, batch, attempt + 1);
+				synchronized (urlQueues) {
+					pendingRetries.add(retryTask);
+				}
+				try {
+					//request of the url is not finished so that next events of the url are not sent before these events
+					executor.schedule(retryTask, delayMs, TimeUnit.MILLISECONDS);
+					return;
+				}
+				catch (RejectedExecutionException rejectedException) {
+					//dispatcher is shut down after the check
+					synchronized (urlQueues) {
+						pendingRetries.remove(retryTask);
+					}
+					logger.warn("Webhook events to {} are dropped because dispatcher is shut down", url);
+					droppedCount.addAndGet(batch.size());
+					finished(url, batch.size());
+					return;
+				}
+			}
+			logger.error("Sending webhook to {} failed after {} attempts. Error: {}", url, attempt + 1, e.getMessage());
+			failedCount.addAndGet(batch.size());
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			failedCount.addAndGet(batch.size());
+		}
+
+		finished(url, batch.size());
+	}
+
+	private void finished(String url, int eventCount) {
+		queuedCount.addAndGet(-eventCount);
+		synchronized (urlQueues) {
+			UrlQueue urlQueue = urlQueues.get(url);
+			urlQueue.requestCount--;
+			if (urlQueue.requestCount == 0 && urlQueue.events.isEmpty()) {
+				urlQueues.remove(url);
+			}
+		}
+		sendNext(url);
+	}
+
+	/**
+	 * Stops accepting the events and waits for the events being sent. 
+	 * Events waiting in the queues are not sent and they are counted as dropped
+	 * @param timeoutMs
+	 */
+	public void shutdown(long timeoutMs) {
+		executor.shutdown();
+		dropWaitingEvents();
+		try {
+			if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		dropPendingRetries();
+	}
+
+	/**
+	 * Removes the retries that are cancelled by {@link ScheduledThreadPoolExecutor#shutdownNow()} or not started yet
+	 */
+	private void dropPendingRetries() {
+		int eventCount = 0;
+		synchronized (urlQueues) {
+			for (RetryTask retryTask : pendingRetries) {
+				eventCount += retryTask.batch.size();
+			}
+			pendingRetries.clear();
+		}
+		if (eventCount > 0) {
+			logger.warn("{} webhook events waiting for retry are dropped because dispatcher is shut down", eventCount);
+			droppedCount.addAndGet(eventCount);
+			queuedCount.addAndGet(-eventCount);
+		}
+	}
+
+	/**
+	 * Removes the events that are not being sent from the queues
+	 */
+	private void dropWaitingEvents() {
+		int eventCount = 0;
+		synchronized (urlQueues) {
+			for (UrlQueue urlQueue : urlQueues.values()) {
+				eventCount += urlQueue.events.size();
+				urlQueue.events.clear();
+			}
+			urlQueues.values().removeIf(urlQueue -> urlQueue.requestCount == 0);
+		}
+		if (eventCount > 0) {
+			logger.warn("{} webhook events are dropped because dispatcher is shut down", eventCount);
+			droppedCount.addAndGet(eventCount);
+			queuedCount.addAndGet(-eventCount);
+		}
+	}
+
+	/**
+	 * @return number of the events waiting or being sent
+	 */
+	public int getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * @return number of the events that cannot be sent after retries
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return number of the events dropped because queue is full or dispatcher is shut down
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @return average time in milliseconds from queueing to sending of the sent events
+	 */
+	public long getAverageLatencyMs() {
+		long sent = sentCount.get();
+		return sent != 0 ? totalLatencyMs.get() / sent : 0;
+	}
+}
@@ -0,0 +1,41 @@
+package io.antmedia.webrtc.adaptor;
+
+import java.nio.Buffer;
+
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * Caches the native addresses of the direct buffers so that a {@link Pointer} is created only for a new buffer.
+ * Decoder and audio track reuse their buffers, so the encoding threads don't create a pointer for each frame.
+ * It's not thread safe, each plane or sample source of an encoder has its own instance
+ */
+public class DirectBufferAddress {
+
+	/**
+	 * Number of the buffers whose addresses are kept. Older ones are replaced in turn
+	 */
+	private static final int CACHE_SIZE = 8;
+
+	private final Buffer[] buffers = new Buffer[CACHE_SIZE];
+
+	private final long[] addresses = new long[CACHE_SIZE];
+
+	private int nextIndex = 0;
+
+	/**
+	 * @param buffer direct buffer
+	 * @return native address of the buffer. Position of the buffer is not added like {@link Pointer#address()}
+	 */
+	public long get(Buffer buffer) {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			if (buffers[i] == buffer) {
+				return addresses[i];
+			}
+		}
+		long address = new Pointer(buffer).address();
+		buffers[nextIndex] = buffer;
+		addresses[nextIndex] = address;
+		nextIndex = (nextIndex + 1) % CACHE_SIZE;
+		return address;
+	}
+}
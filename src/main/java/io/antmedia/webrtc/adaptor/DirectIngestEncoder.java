@@ -0,0 +1,534 @@
+package io.antmedia.webrtc.adaptor;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_FLAG_GLOBAL_HEADER;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_AAC;
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_rescale_ts;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_find_encoder;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_free_context;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_open2;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_parameters_from_context;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_receive_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.avcodec_send_frame;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_alloc_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_free_context;
+import static org.bytedeco.ffmpeg.global.avformat.avformat_new_stream;
+import static org.bytedeco.ffmpeg.global.avutil.AV_CH_LAYOUT_STEREO;
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.AV_SAMPLE_FMT_FLTP;
+import static org.bytedeco.ffmpeg.global.avutil.AV_SAMPLE_FMT_S16;
+import static org.bytedeco.ffmpeg.global.avutil.av_audio_fifo_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_audio_fifo_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_audio_fifo_read;
+import static org.bytedeco.ffmpeg.global.avutil.av_audio_fifo_size;
+import static org.bytedeco.ffmpeg.global.avutil.av_audio_fifo_write;
+import static org.bytedeco.ffmpeg.global.avutil.av_dict_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_dict_set;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_get_buffer;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_make_writable;
+import static org.bytedeco.ffmpeg.global.avutil.av_get_default_channel_layout;
+import static org.bytedeco.ffmpeg.global.avutil.av_make_q;
+import static org.bytedeco.ffmpeg.global.swresample.swr_alloc_set_opts;
+import static org.bytedeco.ffmpeg.global.swresample.swr_convert;
+import static org.bytedeco.ffmpeg.global.swresample.swr_free;
+import static org.bytedeco.ffmpeg.global.swresample.swr_get_out_samples;
+import static org.bytedeco.ffmpeg.global.swresample.swr_init;
+import static org.bytedeco.ffmpeg.global.swscale.SWS_BICUBIC;
+import static org.bytedeco.ffmpeg.global.swscale.sws_freeContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_getCachedContext;
+import static org.bytedeco.ffmpeg.global.swscale.sws_scale;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVAudioFifo;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swresample.SwrContext;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.LongPointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.bytedeco.javacpp.ShortPointer;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IStreamPublishSecurity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.muxer.MuxAdaptor;
+
+/**
+ * Encodes the decoded WebRTC frames and writes the packets to a {@link MuxAdaptor} in the server process.
+ *
+ * It's used instead of publishing the stream to the server over RTMP so that the stream is not muxed to FLV,
+ * sent over the loopback and demuxed again. Encoder settings are the same as {@link RTMPAdaptor#initRecorder}.
+ * Video and audio can be encoded in different threads but a method of the same media is not called concurrently.
+ */
+public class DirectIngestEncoder {
+
+	private static Logger logger = LoggerFactory.getLogger(DirectIngestEncoder.class);
+
+	public static final int FRAME_RATE = 20;
+	public static final int GOP_SIZE = 40;
+	public static final int VIDEO_QUALITY = 29;
+	public static final int AUDIO_SAMPLE_RATE = 44100;
+	public static final int AUDIO_CHANNELS = 2;
+	public static final int AUDIO_BIT_RATE = 64000;
+
+	/**
+	 * Publish mode that the publish security checks get as in the RTMP publish
+	 */
+	private static final String PUBLISH_MODE = "live";
+
+	private final String streamId;
+	private final int width;
+	private final int height;
+	private final boolean enableAudio;
+	private final AntMediaApplicationAdapter appAdaptor;
+
+	private AVFormatContext formatContext;
+	private AVCodecContext videoCodecContext;
+	private AVCodecContext audioCodecContext;
+	private AVStream videoStream;
+	private AVStream audioStream;
+	private AVFrame videoFrame;
+	private AVFrame audioFrame;
+	private AVFrame convertedAudioFrame;
+	private AVPacket videoPacket;
+	private AVPacket audioPacket;
+
+	private SwsContext swsContext;
+	private final PointerPointer<BytePointer> sourcePlanes = new PointerPointer<>(3);
+	/**
+	 * Same memory as {@link #sourcePlanes}. Addresses of the planes are written to it for each frame 
+	 * so that no pointer is created per frame. Pointers are 64 bit in the supported platforms
+	 */
+	private final LongPointer sourcePlaneAddresses = new LongPointer(sourcePlanes);
+	private final IntPointer sourceStrides = new IntPointer(3);
+	private final DirectBufferAddress[] sourcePlaneAddressCache = {new DirectBufferAddress(), new DirectBufferAddress(), new DirectBufferAddress()};
+
+	private SwrContext swrContext;
+	private AVAudioFifo audioFifo;
+	private int inputSampleRate;
+	private int inputChannels;
+	private long audioSampleCount = 0;
+	private final PointerPointer<ShortPointer> inputSamplePlanes = new PointerPointer<>(1);
+	private final LongPointer inputSampleAddress = new LongPointer(inputSamplePlanes);
+	/**
+	 * Samples are copied to this buffer if they are not in a direct buffer
+	 */
+	private ShortBuffer directSamples;
+	private final DirectBufferAddress sampleAddressCache = new DirectBufferAddress();
+
+	private MuxAdaptor muxAdaptor;
+	private volatile boolean started = false;
+	private boolean publishRefused = false;
+
+	private final Object videoLock = new Object();
+	private final Object audioLock = new Object();
+
+	/**
+	 * @param streamId
+	 * @param width width of the encoded video
+	 * @param height height of the encoded video
+	 * @param enableAudio
+	 * @param appAdaptor application that the stream is published to
+	 */
+	public DirectIngestEncoder(String streamId, int width, int height, boolean enableAudio, AntMediaApplicationAdapter appAdaptor) {
+		this.streamId = streamId;
+		this.width = width;
+		this.height = height;
+		this.enableAudio = enableAudio;
+		this.appAdaptor = appAdaptor;
+	}
+
+	/**
+	 * Opens the encoders and prepares the MuxAdaptor
+	 * @return true if the stream is started
+	 */
+	public boolean start() {
+		IScope scope = appAdaptor.getScope();
+		if (!isPublishAllowed(scope)) {
+			logger.warn("Publish is not allowed for stream: {}", streamId);
+			publishRefused = true;
+			return false;
+		}
+
+		formatContext = avformat_alloc_context();
+		if (!openVideoEncoder() || (enableAudio && !openAudioEncoder())) {
+			logger.error("Encoders cannot be opened for stream: {}", streamId);
+			release();
+			return false;
+		}
+
+		muxAdaptor = getNewMuxAdaptor(scope);
+		muxAdaptor.setFirstKeyFrameReceivedChecked(false);
+		muxAdaptor.setEnableVideo(true);
+		muxAdaptor.setEnableAudio(enableAudio);
+		//x264 writes the parameter sets in Annex B format
+		muxAdaptor.setAvc(false);
+		muxAdaptor.init(scope, streamId, false);
+
+		if (!muxAdaptor.prepareInternal(formatContext)) {
+			logger.error("MuxAdaptor.Prepare for {} returned false", streamId);
+			appAdaptor.muxAdaptorRemoved(muxAdaptor);
+			muxAdaptor = null;
+			release();
+			return false;
+		}
+		muxAdaptor.setStartTime(System.currentTimeMillis());
+		appAdaptor.startPublish(streamId, 0);
+		started = true;
+		return true;
+	}
+
+	/**
+	 * Runs the publish security checks of the application because the stream does not pass 
+	 * the checks of the RTMP publish
+	 * @param scope
+	 * @return true if none of the checks refuses the stream
+	 */
+	public boolean isPublishAllowed(IScope scope) {
+		List<IStreamPublishSecurity> publishSecurityList = appAdaptor.getStreamPublishSecurityList();
+		if (publishSecurityList != null) {
+			for (IStreamPublishSecurity publishSecurity : publishSecurityList) {
+				if (!publishSecurity.isPublishAllowed(scope, streamId, PUBLISH_MODE, Collections.emptyMap())) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if {@link #start()} failed because a publish security check refused the stream
+	 */
+	public boolean isPublishRefused() {
+		return publishRefused;
+	}
+
+	public MuxAdaptor getNewMuxAdaptor(IScope scope) {
+		return MuxAdaptor.initializeMuxAdaptor(null, true, scope);
+	}
+
+	private boolean openVideoEncoder() {
+		AVCodec codec = avcodec_find_encoder(AV_CODEC_ID_H264);
+		if (codec == null) {
+			return false;
+		}
+		videoCodecContext = avcodec_alloc_context3(codec);
+		videoCodecContext.width(width);
+		videoCodecContext.height(height);
+		videoCodecContext.pix_fmt(AV_PIX_FMT_YUV420P);
+		videoCodecContext.time_base(MuxAdaptor.TIME_BASE_FOR_MS);
+		videoCodecContext.framerate(av_make_q(FRAME_RATE, 1));
+		videoCodecContext.gop_size(GOP_SIZE);
+		videoCodecContext.max_b_frames(0);
+		videoCodecContext.flags(videoCodecContext.flags() | AV_CODEC_FLAG_GLOBAL_HEADER);
+
+		AVDictionary options = new AVDictionary(null);
+		av_dict_set(options, "preset", "veryfast", 0);
+		av_dict_set(options, "tune", "zerolatency", 0);
+		av_dict_set(options, "crf", String.valueOf(VIDEO_QUALITY), 0);
+		int ret = avcodec_open2(videoCodecContext, codec, options);
+		av_dict_free(options);
+		if (ret < 0) {
+			return false;
+		}
+
+		videoStream = avformat_new_stream(formatContext, null);
+		avcodec_parameters_from_context(videoStream.codecpar(), videoCodecContext);
+		videoStream.time_base(videoCodecContext.time_base());
+
+		videoFrame = av_frame_alloc();
+		videoFrame.format(AV_PIX_FMT_YUV420P);
+		videoFrame.width(width);
+		videoFrame.height(height);
+		videoPacket = av_packet_alloc();
+		return av_frame_get_buffer(videoFrame, 32) >= 0;
+	}
+
+	private boolean openAudioEncoder() {
+		AVCodec codec = avcodec_find_encoder(AV_CODEC_ID_AAC);
+		if (codec == null) {
+			return false;
+		}
+		audioCodecContext = avcodec_alloc_context3(codec);
+		audioCodecContext.sample_fmt(AV_SAMPLE_FMT_FLTP);
+		audioCodecContext.sample_rate(AUDIO_SAMPLE_RATE);
+		audioCodecContext.channels(AUDIO_CHANNELS);
+		audioCodecContext.channel_layout(AV_CH_LAYOUT_STEREO);
+		audioCodecContext.bit_rate(AUDIO_BIT_RATE);
+		audioCodecContext.time_base(av_make_q(1, AUDIO_SAMPLE_RATE));
+		audioCodecContext.flags(audioCodecContext.flags() | AV_CODEC_FLAG_GLOBAL_HEADER);
+		if (avcodec_open2(audioCodecContext, codec, (AVDictionary) null) < 0) {
+			return false;
+		}
+
+		audioStream = avformat_new_stream(formatContext, null);
+		avcodec_parameters_from_context(audioStream.codecpar(), audioCodecContext);
+		audioStream.time_base(audioCodecContext.time_base());
+
+		audioFrame = av_frame_alloc();
+		audioFrame.format(AV_SAMPLE_FMT_FLTP);
+		audioFrame.channel_layout(AV_CH_LAYOUT_STEREO);
+		audioFrame.sample_rate(AUDIO_SAMPLE_RATE);
+		audioFrame.nb_samples(audioCodecContext.frame_size());
+		audioPacket = av_packet_alloc();
+		audioFifo = av_audio_fifo_alloc(AV_SAMPLE_FMT_FLTP, AUDIO_CHANNELS, audioCodecContext.frame_size());
+		return av_frame_get_buffer(audioFrame, 0) >= 0;
+	}
+
+	/**
+	 * Scales and encodes the I420 image
+	 * @param sourceWidth
+	 * @param sourceHeight
+	 * @param planes Y, U and V planes. They should be direct buffers and they're read from their positions
+	 * @param strides strides of the planes
+	 * @param timestampMs presentation time of the frame in milliseconds
+	 */
+	public void encodeVideo(int sourceWidth, int sourceHeight, ByteBuffer[] planes, int[] strides, long timestampMs) {
+		synchronized (videoLock) {
+			if (!started) {
+				return;
+			}
+			swsContext = sws_getCachedContext(swsContext, sourceWidth, sourceHeight, AV_PIX_FMT_YUV420P,
+					width, height, AV_PIX_FMT_YUV420P, SWS_BICUBIC, null, null, (DoublePointer) null);
+			for (int i = 0; i < 3; i++) {
+				sourcePlaneAddresses.put(i, sourcePlaneAddressCache[i].get(planes[i]) + planes[i].position());
+				sourceStrides.put(i, strides[i]);
+			}
+
+			av_frame_make_writable(videoFrame);
+			sws_scale(swsContext, sourcePlanes, sourceStrides, 0, sourceHeight, videoFrame.data(), videoFrame.linesize());
+			videoFrame.pts(timestampMs);
+
+			encode(videoCodecContext, videoFrame, videoStream, videoPacket);
+		}
+	}
+
+	/**
+	 * Resamples and encodes the interleaved 16 bit samples
+	 * @param sampleRate
+	 * @param channels
+	 * @param samples
+	 */
+	public void encodeAudio(int sampleRate, int channels, ShortBuffer samples) {
+		synchronized (audioLock) {
+			if (!started || audioCodecContext == null) {
+				return;
+			}
+			if (swrContext == null || sampleRate != inputSampleRate || channels != inputChannels) {
+				if (!initResampler(sampleRate, channels)) {
+					return;
+				}
+			}
+
+			int inputSampleCount = samples.remaining() / channels;
+			int outputSampleCount = swr_get_out_samples(swrContext, inputSampleCount);
+			if (convertedAudioFrame.nb_samples() < outputSampleCount) {
+				allocateConvertedAudioFrame(outputSampleCount);
+			}
+
+			inputSampleAddress.put(0, getSampleAddress(samples));
+			int convertedSampleCount = swr_convert(swrContext, convertedAudioFrame.data(), convertedAudioFrame.nb_samples(),
+					inputSamplePlanes, inputSampleCount);
+			if (convertedSampleCount > 0) {
+				av_audio_fifo_write(audioFifo, convertedAudioFrame.data(), convertedSampleCount);
+			}
+
+			int frameSize = audioCodecContext.frame_size();
+			while (av_audio_fifo_size(audioFifo) >= frameSize) {
+				av_frame_make_writable(audioFrame);
+				av_audio_fifo_read(audioFifo, audioFrame.data(), frameSize);
+				audioFrame.pts(audioSampleCount);
+				audioSampleCount += frameSize;
+
+				encode(audioCodecContext, audioFrame, audioStream, audioPacket);
+			}
+		}
+	}
+
+	/**
+	 * @return native address of the remaining samples. They're copied to a reused direct buffer if they're not direct
+	 */
+	private long getSampleAddress(ShortBuffer samples) {
+		if (samples.isDirect()) {
+			return sampleAddressCache.get(samples) + (long) samples.position() * Short.BYTES;
+		}
+		if (directSamples == null || directSamples.capacity() < samples.remaining()) {
+			directSamples = ByteBuffer.allocateDirect(samples.remaining() * Short.BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+		}
+		int position = samples.position();
+		directSamples.clear();
+		directSamples.put(samples);
+		samples.position(position);
+		return sampleAddressCache.get(directSamples);
+	}
+
+	private boolean initResampler(int sampleRate, int channels) {
+		if (swrContext != null) {
+			swr_free(swrContext);
+		}
+		swrContext = swr_alloc_set_opts(null, AV_CH_LAYOUT_STEREO, AV_SAMPLE_FMT_FLTP, AUDIO_SAMPLE_RATE,
+				av_get_default_channel_layout(channels), AV_SAMPLE_FMT_S16, sampleRate, 0, null);
+		if (swrContext == null || swr_init(swrContext) < 0) {
+			logger.error("Audio resampler cannot be initialized for stream: {} sample rate:{} channels:{}", streamId, sampleRate, channels);
+			if (swrContext != null) {
+				swr_free(swrContext);
+				swrContext = null;
+			}
+			return false;
+		}
+		inputSampleRate = sampleRate;
+		inputChannels = channels;
+		if (convertedAudioFrame == null) {
+			allocateConvertedAudioFrame(audioCodecContext.frame_size());
+		}
+		return true;
+	}
+
+	private void allocateConvertedAudioFrame(int sampleCount) {
+		if (convertedAudioFrame != null) {
+			av_frame_free(convertedAudioFrame);
+		}
+		convertedAudioFrame = av_frame_alloc();
+		convertedAudioFrame.format(AV_SAMPLE_FMT_FLTP);
+		convertedAudioFrame.channel_layout(AV_CH_LAYOUT_STEREO);
+		convertedAudioFrame.nb_samples(sampleCount);
+		av_frame_get_buffer(convertedAudioFrame, 0);
+	}
+
+	/**
+	 * Sends the frame to the encoder and writes the packets to the MuxAdaptor.
+	 * If frame is null, encoder is flushed
+	 */
+	private void encode(AVCodecContext codecContext, AVFrame frame, AVStream stream, AVPacket packet) {
+		int ret = avcodec_send_frame(codecContext, frame);
+		if (ret < 0) {
+			logger.warn("Cannot send frame to the encoder for stream: {} error: {}", streamId, ret);
+			return;
+		}
+		while (avcodec_receive_packet(codecContext, packet) >= 0) {
+			packet.stream_index(stream.index());
+			av_packet_rescale_ts(packet, codecContext.time_base(), stream.time_base());
+			writePacket(stream, packet);
+			av_packet_unref(packet);
+		}
+	}
+
+	private void writePacket(AVStream stream, AVPacket packet) {
+		//audio and video packets are written in different threads
+		synchronized (this) {
+			muxAdaptor.writePacket(stream, packet);
+		}
+	}
+
+	/**
+	 * Flushes the encoders, writes the trailer and closes the broadcast
+	 */
+	public void stop() {
+		synchronized (videoLock) {
+			synchronized (audioLock) {
+				if (!started) {
+					return;
+				}
+				started = false;
+
+				encode(videoCodecContext, null, videoStream, videoPacket);
+				if (audioCodecContext != null) {
+					encode(audioCodecContext, null, audioStream, audioPacket);
+				}
+
+				logger.info("Writing trailer in Muxadaptor {}", streamId);
+				muxAdaptor.writeTrailer();
+				appAdaptor.muxAdaptorRemoved(muxAdaptor);
+				muxAdaptor = null;
+				appAdaptor.closeBroadcast(streamId);
+
+				release();
+			}
+		}
+	}
+
+	private void release() {
+		if (videoCodecContext != null) {
+			avcodec_free_context(videoCodecContext);
+			videoCodecContext = null;
+		}
+		if (audioCodecContext != null) {
+			avcodec_free_context(audioCodecContext);
+			audioCodecContext = null;
+		}
+		if (videoFrame != null) {
+			av_frame_free(videoFrame);
+			videoFrame = null;
+		}
+		if (audioFrame != null) {
+			av_frame_free(audioFrame);
+			audioFrame = null;
+		}
+		if (convertedAudioFrame != null) {
+			av_frame_free(convertedAudioFrame);
+			convertedAudioFrame = null;
+		}
+		if (videoPacket != null) {
+			av_packet_free(videoPacket);
+			videoPacket = null;
+		}
+		if (audioPacket != null) {
+			av_packet_free(audioPacket);
+			audioPacket = null;
+		}
+
+		if (swsContext != null) {
+			sws_freeContext(swsContext);
+			swsContext = null;
+		}
+		if (swrContext != null) {
+			swr_free(swrContext);
+			swrContext = null;
+		}
+		if (audioFifo != null) {
+			av_audio_fifo_free(audioFifo);
+			audioFifo = null;
+		}
+		if (formatContext != null) {
+			avformat_free_context(formatContext);
+			formatContext = null;
+		}
+	}
+
+	public boolean isStarted() {
+		return started;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public MuxAdaptor getMuxAdaptor() {
+		return muxAdaptor;
+	}
+}
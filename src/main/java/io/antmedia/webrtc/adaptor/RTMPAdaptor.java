@@ -4,17 +4,23 @@ import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
 
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacpp.BytePointer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.webrtc.IceCandidate;
@@ -37,6 +43,7 @@ import org.webrtc.audio.WebRtcAudioTrack;
 import io.antmedia.recorder.FFmpegFrameRecorder;
 import io.antmedia.recorder.Frame;
 import io.antmedia.recorder.FrameRecorder;
+import io.antmedia.rest.WebRTCClientStats;
 import io.antmedia.webrtc.api.IAudioTrackListener;
 import io.antmedia.websocket.WebSocketCommunityHandler;
 
@@ -57,7 +64,10 @@ public class RTMPAdaptor extends Adaptor {
 
 	private ExecutorService audioEncoderExecutor;
 	private volatile boolean isStopped = false;
-	private ScheduledExecutorService signallingExecutor;
+	private ExecutorService signallingExecutor;
+	private ScheduledExecutorService audioTickScheduler;
+	private RTMPAdaptorPool executorPool;
+	private static boolean peerConnectionFactoryInitialized = false;
 	private boolean enableAudio = false;
 
 	private volatile int audioFrameCount = 0;
@@ -73,6 +83,45 @@ public class RTMPAdaptor extends Adaptor {
 	private boolean tcpCandidatesEnabled = true;
 	private int height;
 	private String outputURL;
+	private boolean directIngest = false;
+	private DirectIngestEncoder directIngestEncoder;
+
+	/**
+	 * Buffers reused in the video encoder thread so that nothing is allocated per frame
+	 */
+	private ByteBuffer imageBuffer;
+
+	/**
+	 * Native addresses of the planes that are given to {@link #getImageBuffer}
+	 */
+	private final DirectBufferAddress planeAddressY = new DirectBufferAddress();
+	private final DirectBufferAddress planeAddressU = new DirectBufferAddress();
+	private final DirectBufferAddress planeAddressV = new DirectBufferAddress();
+
+	private static final int IMAGE_VIEW_CACHE_SIZE = 8;
+
+	/**
+	 * Views of the contiguous native images and their addresses. Decoder reuses its frame buffers 
+	 * so the same views are returned for the next frames without creating a buffer
+	 */
+	private final long[] imageViewAddresses = new long[IMAGE_VIEW_CACHE_SIZE];
+	private final ByteBuffer[] imageViews = new ByteBuffer[IMAGE_VIEW_CACHE_SIZE];
+	private int nextImageViewIndex = 0;
+	private final int[] stride = new int[3];
+	private final ByteBuffer[] planes = new ByteBuffer[3];
+
+	public static final int DEFAULT_ENCODER_QUEUE_SIZE = 10;
+
+	/**
+	 * Decoded frames waiting to be encoded. If encoding falls behind, the oldest frames are dropped
+	 * so that the retained native frames are limited. It's also the lock of the queue fields
+	 */
+	private final Deque<VideoFrame> pendingVideoFrames = new ArrayDeque<>();
+	private boolean videoEncodingScheduled = false;
+	private boolean videoQueueClosed = false;
+	private int encoderQueueSize = DEFAULT_ENCODER_QUEUE_SIZE;
+	private final AtomicLong droppedVideoFrameCount = new AtomicLong();
+	private final AtomicLong encodedVideoFrameCount = new AtomicLong();
 	
 	public static FFmpegFrameRecorder initRecorder(String outputURL, int width, int height) {
 		FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputURL, width, height, 1);
@@ -122,10 +171,20 @@ public class RTMPAdaptor extends Adaptor {
 		return null;
 	}
 	
+	/**
+	 * Initializes the WebRTC library once in the process
+	 */
+	private static synchronized void initializePeerConnectionFactory() {
+		if (!peerConnectionFactoryInitialized) {
+			PeerConnectionFactory.initialize(
+					PeerConnectionFactory.InitializationOptions.builder()
+					.createInitializationOptions());
+			peerConnectionFactoryInitialized = true;
+		}
+	}
+
 	public PeerConnectionFactory createPeerConnectionFactory(){
-		PeerConnectionFactory.initialize(
-				PeerConnectionFactory.InitializationOptions.builder()
-				.createInitializationOptions());
+		initializePeerConnectionFactory();
 
         //support internal webrtc codecs
 		SoftwareVideoEncoderFactory encoderFactory = null;
@@ -169,9 +228,23 @@ public class RTMPAdaptor extends Adaptor {
 
 	@Override
 	public void start() {
-		videoEncoderExecutor = Executors.newSingleThreadExecutor();
-		audioEncoderExecutor = Executors.newSingleThreadExecutor();
-		signallingExecutor = Executors.newSingleThreadScheduledExecutor();
+		if (executorPool != null) {
+			videoEncoderExecutor = executorPool.newEncoderExecutor();
+			audioEncoderExecutor = executorPool.newEncoderExecutor();
+			signallingExecutor = executorPool.newSignallingExecutor();
+			audioTickScheduler = executorPool.getAudioTickScheduler();
+		}
+		else {
+			videoEncoderExecutor = Executors.newSingleThreadExecutor();
+			audioEncoderExecutor = Executors.newSingleThreadExecutor();
+			ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+			signallingExecutor = scheduledExecutor;
+			audioTickScheduler = scheduledExecutor;
+		}
+
+		if (webSocketCommunityHandler.getAppAdaptor() != null) {
+			webSocketCommunityHandler.getAppAdaptor().rtmpAdaptorStarted(getStreamId(), this);
+		}
 
 		signallingExecutor.execute(() -> {
 
@@ -216,6 +289,10 @@ public class RTMPAdaptor extends Adaptor {
 		}
 		isStopped  = true;
 
+		if (webSocketCommunityHandler.getAppAdaptor() != null) {
+			webSocketCommunityHandler.getAppAdaptor().rtmpAdaptorStopped(getStreamId(), this);
+		}
+
 		if (audioDataSchedulerFuture != null) {
 			audioDataSchedulerFuture.cancel(false);
 		}
@@ -236,10 +313,16 @@ public class RTMPAdaptor extends Adaptor {
 				logger.error(ExceptionUtils.getStackTrace(e1));
 				Thread.currentThread().interrupt();
 			}
+			closeVideoQueue();
+			if (directIngestEncoder != null) {
+				directIngestEncoder.stop();
+			}
 			try {
 				if (peerConnection != null) {
 					peerConnection.close();
-					recorder.stop();
+					if (recorder != null) {
+						recorder.stop();
+					}
 					peerConnection.dispose();
 					peerConnectionFactory.dispose();
 					peerConnection = null;
@@ -257,7 +340,7 @@ public class RTMPAdaptor extends Adaptor {
 	}
 
 	public void initAudioTrackExecutor() {
-		audioDataSchedulerFuture = signallingExecutor.scheduleAtFixedRate(() -> {
+		audioDataSchedulerFuture = audioTickScheduler.scheduleAtFixedRate(() -> {
 
 			if (startTime == 0) {
 				startTime = System.currentTimeMillis();
@@ -280,6 +363,10 @@ public class RTMPAdaptor extends Adaptor {
 	public void recordSamples(ByteBuffer playoutData) {
 		ShortBuffer audioBuffer = playoutData.asShortBuffer();
 		try {
+			if (directIngestEncoder != null) {
+				directIngestEncoder.encodeAudio(webRtcAudioTrack.getSampleRate(), webRtcAudioTrack.getChannels(), audioBuffer);
+				return;
+			}
 			//null-check recorder because it's asynch and it may not be initialized in video encoder thread
 			if (recorder != null) {
 				
@@ -294,16 +381,44 @@ public class RTMPAdaptor extends Adaptor {
 	}
 	
 	public void initializeRecorder(VideoFrame frame) {
-		if (recorder == null) 
+		if (recorder == null && directIngestEncoder == null) 
 		{
 			int width = (frame.getRotatedWidth() * height) / frame.getRotatedHeight();
 			if (width % 2 == 1) {
 				width++;
 			}
-			recorder = getNewRecorder(outputURL, width, height);
+			if (directIngest) {
+				directIngestEncoder = getNewDirectIngestEncoder(width, height);
+			}
+			else {
+				recorder = getNewRecorder(outputURL, width, height);
+			}
 		}
 	}
 
+	/**
+	 * Creates the encoder that writes the stream to the muxers without publishing it over RTMP
+	 */
+	public DirectIngestEncoder getNewDirectIngestEncoder(int width, int height) {
+		DirectIngestEncoder encoder = new DirectIngestEncoder(getStreamId(), width, height, enableAudio, 
+				webSocketCommunityHandler.getAppAdaptor());
+		if (!encoder.start()) {
+			if (encoder.isPublishRefused()) {
+				webSocketCommunityHandler.sendUnauthorizedMessage(getStreamId(), getSession());
+			}
+			else {
+				webSocketCommunityHandler.sendServerError(getStreamId(), getSession());
+			}
+			//close the connection because it's useless
+			stop();
+		}
+		return encoder;
+	}
+
+	public int getFrameRate() {
+		return directIngestEncoder != null ? DirectIngestEncoder.FRAME_RATE : (int) recorder.getFrameRate();
+	}
+
 
 	@Override
 	public void onAddStream(MediaStream stream) {
@@ -348,60 +463,81 @@ public class RTMPAdaptor extends Adaptor {
 
 						}
 
-						videoEncoderExecutor.execute(() -> {
-							if (enableAudio) {
-								//each audio frame is 10 ms 
-								pts = (long)audioFrameCount * 10;
-								logger.trace("audio frame count: {}", audioFrameCount);
-							}
-							else {
-								pts = (System.currentTimeMillis() - startTime);
-							}
-							
-							//initialize recorder if it's not initialized
-							initializeRecorder(frame);
-							
-							frameNumber = (int)(pts * recorder.getFrameRate() / 1000f);
-
-							if (frameNumber > lastFrameNumber) {
-
-								recorder.setFrameNumber(frameNumber);
-								lastFrameNumber = frameNumber;
-
-								Frame frameCV = new Frame(frame.getRotatedWidth(), frame.getRotatedHeight(), Frame.DEPTH_UBYTE, 2);
-
-								Buffer buffer = frame.getBuffer();
-								int[] stride = new int[3];
-								if (buffer instanceof WrappedNativeI420Buffer) {
-									WrappedNativeI420Buffer wrappedBuffer = (WrappedNativeI420Buffer) buffer;
-									((ByteBuffer)(frameCV.image[0].position(0))).put(wrappedBuffer.getDataY());
-									((ByteBuffer)(frameCV.image[0])).put(wrappedBuffer.getDataU());
-									((ByteBuffer)(frameCV.image[0])).put(wrappedBuffer.getDataV());
-
-									stride[0] = wrappedBuffer.getStrideY();
-									stride[1] = wrappedBuffer.getStrideU();
-									stride[2] = wrappedBuffer.getStrideV();
-
-									try {
-										recorder.recordImage(frameCV.imageWidth, frameCV.imageHeight, frameCV.imageDepth,
-												frameCV.imageChannels, stride, AV_PIX_FMT_YUV420P, frameCV.image);
-
-									} catch (FrameRecorder.Exception e) {
-										logger.error(ExceptionUtils.getStackTrace(e));
-									}
-								}
-								else {
-									logger.error("Buffer is not type of WrappedNativeI420Buffer for stream: {}", recorder.getFilename());
+						if (enqueueVideoFrame(frame)) {
+							executeEncoding();
+						}
+					}
+
+					private void executeEncoding() {
+						try {
+							videoEncoderExecutor.execute(this::encodeNextFrame);
+						}
+						catch (RejectedExecutionException e) {
+							//adaptor is stopped and waiting frames are released in stop
+							logger.debug("Video encoder is stopped for stream: {}", getStreamId());
+						}
+					}
+
+					/**
+					 * Encodes the oldest waiting frame. Each frame is encoded in a separate task so that 
+					 * other streams' tasks are not kept waiting in the shared pool
+					 */
+					private void encodeNextFrame() {
+						encodeNextVideoFrame(this::encode, this::executeEncoding);
+					}
+
+					private void encode(VideoFrame frame) {
+						if (enableAudio) {
+							//each audio frame is 10 ms 
+							pts = (long)audioFrameCount * 10;
+							logger.trace("audio frame count: {}", audioFrameCount);
+						}
+						else {
+							pts = (System.currentTimeMillis() - startTime);
+						}
+						
+						//initialize recorder if it's not initialized
+						initializeRecorder(frame);
+						
+						frameNumber = (int)(pts * getFrameRate() / 1000f);
+
+						if (frameNumber > lastFrameNumber && directIngestEncoder != null) {
+							lastFrameNumber = frameNumber;
+							recordFrameDirectly(frame, pts);
+							encodedVideoFrameCount.incrementAndGet();
+						}
+						else if (frameNumber > lastFrameNumber) {
+
+							recorder.setFrameNumber(frameNumber);
+							lastFrameNumber = frameNumber;
+
+							Buffer buffer = frame.getBuffer();
+							if (buffer instanceof WrappedNativeI420Buffer) {
+								WrappedNativeI420Buffer wrappedBuffer = (WrappedNativeI420Buffer) buffer;
+								ByteBuffer image = getImageBuffer(wrappedBuffer.getDataY(), wrappedBuffer.getDataU(), wrappedBuffer.getDataV());
+
+								stride[0] = wrappedBuffer.getStrideY();
+								stride[1] = wrappedBuffer.getStrideU();
+								stride[2] = wrappedBuffer.getStrideV();
+
+								try {
+									recorder.recordImage(frame.getRotatedWidth(), frame.getRotatedHeight(), Frame.DEPTH_UBYTE,
+											2, stride, AV_PIX_FMT_YUV420P, image);
+									encodedVideoFrameCount.incrementAndGet();
+
+								} catch (FrameRecorder.Exception e) {
+									logger.error(ExceptionUtils.getStackTrace(e));
 								}
 							}
 							else {
-								dropFrameCount ++;
-								logger.debug("dropping video, total drop count: {} frame number: {} recorder frame number: {}", 
-										dropFrameCount, frameNumber, lastFrameNumber);
+								logger.error("Buffer is not type of WrappedNativeI420Buffer for stream: {}", recorder.getFilename());
 							}
-							frame.release();
-						});
-
+						}
+						else {
+							dropFrameCount ++;
+							logger.debug("dropping video, total drop count: {} frame number: {} recorder frame number: {}", 
+									dropFrameCount, frameNumber, lastFrameNumber);
+						}
 					}
 				});
 			}
@@ -415,6 +551,218 @@ public class RTMPAdaptor extends Adaptor {
 
 	}
 
+	/**
+	 * Returns a buffer that has the Y, U and V planes one after another. If the planes are already 
+	 * contiguous in native memory, they are wrapped without copying. Otherwise they are copied to a buffer
+	 * that is reused for the next frames. It's called in the video encoder thread and the returned buffer
+	 * should not be used after the next call
+	 */
+	public ByteBuffer getImageBuffer(ByteBuffer dataY, ByteBuffer dataU, ByteBuffer dataV) {
+		int size = dataY.remaining() + dataU.remaining() + dataV.remaining();
+		if (dataY.isDirect() && dataU.isDirect() && dataV.isDirect() 
+				&& dataY.position() == 0 && dataU.position() == 0 && dataV.position() == 0) 
+		{
+			long addressY = planeAddressY.get(dataY);
+			long addressU = planeAddressU.get(dataU);
+			long addressV = planeAddressV.get(dataV);
+			if (addressU == addressY + dataY.limit() && addressV == addressU + dataU.limit()) {
+				return getImageView(dataY, addressY, size);
+			}
+		}
+
+		if (imageBuffer == null || imageBuffer.capacity() < size) {
+			imageBuffer = ByteBuffer.allocateDirect(size);
+		}
+		imageBuffer.clear();
+		copyPlane(dataY);
+		copyPlane(dataU);
+		copyPlane(dataV);
+		imageBuffer.flip();
+		return imageBuffer;
+	}
+
+	/**
+	 * @return buffer that starts from the Y plane and has all planes. It's created only if there is no cached view 
+	 * for the same address and size
+	 */
+	private ByteBuffer getImageView(ByteBuffer dataY, long address, int size) {
+		for (int i = 0; i < IMAGE_VIEW_CACHE_SIZE; i++) {
+			ByteBuffer imageView = imageViews[i];
+			if (imageView != null && imageViewAddresses[i] == address && imageView.capacity() == size) {
+				imageView.clear();
+				return imageView;
+			}
+		}
+		ByteBuffer imageView = new BytePointer(dataY).capacity(size).limit(size).asBuffer();
+		imageViews[nextImageViewIndex] = imageView;
+		imageViewAddresses[nextImageViewIndex] = address;
+		nextImageViewIndex = (nextImageViewIndex + 1) % IMAGE_VIEW_CACHE_SIZE;
+		return imageView;
+	}
+
+	private void copyPlane(ByteBuffer plane) {
+		//position of the plane is not changed
+		int position = plane.position();
+		imageBuffer.put(plane);
+		plane.position(position);
+	}
+
+	private void recordFrameDirectly(VideoFrame frame, long pts) {
+		Buffer buffer = frame.getBuffer();
+		if (buffer instanceof WrappedNativeI420Buffer) {
+			WrappedNativeI420Buffer wrappedBuffer = (WrappedNativeI420Buffer) buffer;
+			planes[0] = wrappedBuffer.getDataY();
+			planes[1] = wrappedBuffer.getDataU();
+			planes[2] = wrappedBuffer.getDataV();
+			stride[0] = wrappedBuffer.getStrideY();
+			stride[1] = wrappedBuffer.getStrideU();
+			stride[2] = wrappedBuffer.getStrideV();
+			//scaler reads the planes directly so they are not copied
+			directIngestEncoder.encodeVideo(wrappedBuffer.getWidth(), wrappedBuffer.getHeight(), planes, stride, pts);
+		}
+		else {
+			logger.error("Buffer is not type of WrappedNativeI420Buffer for stream: {}", getStreamId());
+		}
+	}
+
+	/**
+	 * Adds the frame to the encoding queue. If the queue is full, the oldest frame is dropped
+	 * @param frame retained frame. It's released when it's encoded or dropped
+	 * @return true if encoding of the queue should be started
+	 */
+	public boolean enqueueVideoFrame(VideoFrame frame) {
+		VideoFrame droppedFrame = null;
+		boolean startEncoding = false;
+		synchronized (pendingVideoFrames) {
+			if (videoQueueClosed) {
+				droppedFrame = frame;
+			}
+			else {
+				if (pendingVideoFrames.size() >= encoderQueueSize) {
+					droppedFrame = pendingVideoFrames.poll();
+					long dropCount = droppedVideoFrameCount.incrementAndGet();
+					if (dropCount % 100 == 1) {
+						logger.warn("Video encoder falls behind for stream: {}. Total dropped frame count: {}", getStreamId(), dropCount);
+					}
+				}
+				pendingVideoFrames.add(frame);
+				if (!videoEncodingScheduled) {
+					videoEncodingScheduled = true;
+					startEncoding = true;
+				}
+			}
+		}
+		if (droppedFrame != null) {
+			droppedFrame.release();
+		}
+		return startEncoding;
+	}
+
+	/**
+	 * @return the oldest frame waiting to be encoded or null if there is not any
+	 */
+	public VideoFrame pollVideoFrame() {
+		synchronized (pendingVideoFrames) {
+			return pendingVideoFrames.poll();
+		}
+	}
+
+	/**
+	 * Encodes the oldest waiting frame. The frame is released and encoding of the next frame is scheduled
+	 * even if the encoder fails so that the queue does not stall
+	 * @param encoder encodes the frame. It should not release the frame
+	 * @param scheduleNext schedules encoding of the next frame if there are frames waiting
+	 */
+	public void encodeNextVideoFrame(Consumer<VideoFrame> encoder, Runnable scheduleNext) {
+		VideoFrame frame = pollVideoFrame();
+		try {
+			if (frame != null) {
+				encoder.accept(frame);
+			}
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		finally {
+			if (frame != null) {
+				frame.release();
+			}
+			if (hasNextVideoFrame()) {
+				scheduleNext.run();
+			}
+		}
+	}
+
+	/**
+	 * @return true if there are frames waiting to be encoded. Otherwise encoding of the queue is finished
+	 * and it's started again with the next frame
+	 */
+	public boolean hasNextVideoFrame() {
+		synchronized (pendingVideoFrames) {
+			if (pendingVideoFrames.isEmpty()) {
+				videoEncodingScheduled = false;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Releases the waiting frames and drops the next frames
+	 */
+	private void closeVideoQueue() {
+		List<VideoFrame> frames;
+		synchronized (pendingVideoFrames) {
+			videoQueueClosed = true;
+			frames = new ArrayList<>(pendingVideoFrames);
+			pendingVideoFrames.clear();
+		}
+		for (VideoFrame frame : frames) {
+			frame.release();
+		}
+	}
+
+	/**
+	 * @return number of the video frames waiting to be encoded
+	 */
+	public int getEncoderQueueDepth() {
+		synchronized (pendingVideoFrames) {
+			return pendingVideoFrames.size();
+		}
+	}
+
+	/**
+	 * @return number of the video frames dropped because encoder falls behind
+	 */
+	public long getDroppedVideoFrameCount() {
+		return droppedVideoFrameCount.get();
+	}
+
+	public long getEncodedVideoFrameCount() {
+		return encodedVideoFrameCount.get();
+	}
+
+	/**
+	 * @param encoderQueueSize maximum number of the video frames waiting to be encoded
+	 */
+	public void setEncoderQueueSize(int encoderQueueSize) {
+		this.encoderQueueSize = Math.max(1, encoderQueueSize);
+	}
+
+	public int getEncoderQueueSize() {
+		return encoderQueueSize;
+	}
+
+	/**
+	 * @return encoding statistics of the stream
+	 */
+	public WebRTCClientStats getWebRTCClientStats() {
+		WebRTCClientStats stats = new WebRTCClientStats(0, 0, 0, 0, encodedVideoFrameCount.get(), audioFrameCount, hashCode());
+		stats.setDroppedVideoFrameCount(droppedVideoFrameCount.get());
+		stats.setEncoderQueueDepth(getEncoderQueueDepth());
+		return stats;
+	}
+
 	@Override
 	public void onSetSuccess() {
 		peerConnection.createAnswer(this, getSdpMediaConstraints());
@@ -479,6 +827,33 @@ public class RTMPAdaptor extends Adaptor {
 		return outputURL;
 	}
 	
+	/**
+	 * @param directIngest if it's true, stream is written to the muxers in the server process 
+	 * instead of being published to the outputURL
+	 */
+	public void setDirectIngest(boolean directIngest) {
+		this.directIngest = directIngest;
+	}
+
+	public boolean isDirectIngest() {
+		return directIngest;
+	}
+
+	/**
+	 * @param executorPool shared threads of the adaptors. If it's null, adaptor creates its own threads
+	 */
+	public void setExecutorPool(RTMPAdaptorPool executorPool) {
+		this.executorPool = executorPool;
+	}
+
+	public RTMPAdaptorPool getExecutorPool() {
+		return executorPool;
+	}
+
+	public DirectIngestEncoder getDirectIngestEncoder() {
+		return directIngestEncoder;
+	}
+
 	public void setRecorder(FFmpegFrameRecorder recorder) {
 		this.recorder = recorder;
 	}
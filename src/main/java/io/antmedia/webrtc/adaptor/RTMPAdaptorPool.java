@@ -0,0 +1,328 @@
+package io.antmedia.webrtc.adaptor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared threads of the RTMPAdaptors.
+ *
+ * Without the pool, each adaptor has its own video encoder, audio encoder and signalling threads.
+ * With the pool, each of them is a {@link SerialExecutor} that runs the tasks of the adaptor in order on a fixed size
+ * thread pool, and the audio of all adaptors is read by a single scheduler thread. So the number of threads
+ * does not increase with the number of WebRTC publishers
+ *
+ * There is one pool in the server and its size is set by {@link io.antmedia.settings.ServerSettings#getWebRTCEncoderPoolSize()}
+ * and its metrics are reported in the system resources info
+ */
+public class RTMPAdaptorPool {
+
+	protected static Logger logger = LoggerFactory.getLogger(RTMPAdaptorPool.class);
+
+	private static RTMPAdaptorPool instance;
+
+	private final ThreadPoolExecutor encoderPool;
+
+	private final ThreadPoolExecutor signallingPool;
+
+	private final ScheduledThreadPoolExecutor audioTickScheduler;
+
+	private final int poolSize;
+
+	private final AtomicInteger activeExecutorCount = new AtomicInteger();
+	private final AtomicLong executedTaskCount = new AtomicLong();
+	private final AtomicLong totalWaitTimeNs = new AtomicLong();
+	private final AtomicLong maxWaitTimeNs = new AtomicLong();
+
+	private static class QueuedTask {
+		private final Runnable runnable;
+		private final long submitTimeNs;
+
+		public QueuedTask(Runnable runnable, long submitTimeNs) {
+			this.runnable = runnable;
+			this.submitTimeNs = submitTimeNs;
+		}
+	}
+
+	/**
+	 * Runs the tasks one by one in the order they are submitted. Tasks may run in different threads of the pool
+	 * but a task starts after the previous one finishes.
+	 * {@link #shutdownNow()} removes the waiting tasks but it does not interrupt the running task
+	 */
+	public class SerialExecutor extends AbstractExecutorService {
+
+		private final ThreadPoolExecutor pool;
+
+		/**
+		 * Waiting tasks. It's also the lock of the executor
+		 */
+		private final Deque<QueuedTask> tasks = new ArrayDeque<>();
+
+		/**
+		 * True if there is a task running or submitted to the pool
+		 */
+		private boolean running = false;
+
+		private boolean shutdown = false;
+
+		private boolean terminated = false;
+
+		private SerialExecutor(ThreadPoolExecutor pool) {
+			this.pool = pool;
+			activeExecutorCount.incrementAndGet();
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			synchronized (tasks) {
+				if (shutdown) {
+					throw new RejectedExecutionException("Executor is shut down");
+				}
+				tasks.add(new QueuedTask(command, System.nanoTime()));
+				if (running) {
+					return;
+				}
+				running = true;
+			}
+			submitNext();
+		}
+
+		private void submitNext() {
+			try {
+				pool.execute(this::runNext);
+			}
+			catch (RejectedExecutionException e) {
+				logger.warn("Tasks are dropped because pool is shut down");
+				synchronized (tasks) {
+					shutdown = true;
+					running = false;
+					tasks.clear();
+					checkTerminated();
+				}
+			}
+		}
+
+		private void runNext() {
+			QueuedTask task;
+			synchronized (tasks) {
+				task = tasks.poll();
+			}
+			if (task != null) {
+				taskStarted(System.nanoTime() - task.submitTimeNs);
+				try {
+					task.runnable.run();
+				}
+				catch (Exception e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+			}
+
+			synchronized (tasks) {
+				if (tasks.isEmpty()) {
+					running = false;
+					checkTerminated();
+					return;
+				}
+			}
+			//next task is submitted again so that the tasks of other adaptors are not kept waiting
+			submitNext();
+		}
+
+		/**
+		 * Should be called with the lock
+		 */
+		private void checkTerminated() {
+			if (shutdown && !running && tasks.isEmpty() && !terminated) {
+				terminated = true;
+				activeExecutorCount.decrementAndGet();
+				tasks.notifyAll();
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			synchronized (tasks) {
+				shutdown = true;
+				checkTerminated();
+			}
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			List<Runnable> waitingTasks = new ArrayList<>();
+			synchronized (tasks) {
+				shutdown = true;
+				for (QueuedTask task : tasks) {
+					waitingTasks.add(task.runnable);
+				}
+				tasks.clear();
+				checkTerminated();
+			}
+			return waitingTasks;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			synchronized (tasks) {
+				return shutdown;
+			}
+		}
+
+		@Override
+		public boolean isTerminated() {
+			synchronized (tasks) {
+				return terminated;
+			}
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			synchronized (tasks) {
+				while (!terminated) {
+					long remainingNs = deadline - System.nanoTime();
+					if (remainingNs <= 0) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(tasks, remainingNs);
+				}
+				return true;
+			}
+		}
+
+		/**
+		 * @return number of the tasks waiting to run
+		 */
+		public int getQueueSize() {
+			synchronized (tasks) {
+				return tasks.size();
+			}
+		}
+	}
+
+	public RTMPAdaptorPool(int poolSize) {
+		this.poolSize = poolSize;
+		encoderPool = createPool(poolSize, "webrtc-encoder-");
+		signallingPool = createPool(poolSize, "webrtc-signalling-");
+		audioTickScheduler = new ScheduledThreadPoolExecutor(1, createThreadFactory("webrtc-audio-tick-"));
+		audioTickScheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	private static ThreadPoolExecutor createPool(int poolSize, String threadName) {
+		return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				createThreadFactory(threadName));
+	}
+
+	private static ThreadFactory createThreadFactory(String threadName) {
+		AtomicInteger threadIndex = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, threadName + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * @param poolSize is used only when the pool is created at the first call
+	 * @return the shared pool of the server
+	 */
+	public static synchronized RTMPAdaptorPool getInstance(int poolSize) {
+		if (instance == null) {
+			logger.info("Creating WebRTC adaptor pool with {} encoder threads", poolSize);
+			instance = new RTMPAdaptorPool(poolSize);
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the shared pool of the server or null if it's not created
+	 */
+	public static synchronized RTMPAdaptorPool getCreatedInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return executor that runs the encoding tasks of an adaptor in order
+	 */
+	public SerialExecutor newEncoderExecutor() {
+		return new SerialExecutor(encoderPool);
+	}
+
+	/**
+	 * @return executor that runs the signalling tasks of an adaptor in order
+	 */
+	public SerialExecutor newSignallingExecutor() {
+		return new SerialExecutor(signallingPool);
+	}
+
+	/**
+	 * Audio of all adaptors is read in this scheduler. It should not be shut down by the adaptors
+	 */
+	public ScheduledExecutorService getAudioTickScheduler() {
+		return audioTickScheduler;
+	}
+
+	private void taskStarted(long waitTimeNs) {
+		executedTaskCount.incrementAndGet();
+		totalWaitTimeNs.addAndGet(waitTimeNs);
+		maxWaitTimeNs.accumulateAndGet(waitTimeNs, Math::max);
+	}
+
+	/**
+	 * @return number of the threads created in the pool
+	 */
+	public int getThreadCount() {
+		return encoderPool.getPoolSize() + signallingPool.getPoolSize() + audioTickScheduler.getPoolSize();
+	}
+
+	/**
+	 * @return number of the executors that are not terminated
+	 */
+	public int getActiveExecutorCount() {
+		return activeExecutorCount.get();
+	}
+
+	public long getExecutedTaskCount() {
+		return executedTaskCount.get();
+	}
+
+	/**
+	 * @return average time in milliseconds from submitting to running of the tasks
+	 */
+	public double getAverageWaitTimeMs() {
+		long count = executedTaskCount.get();
+		return count != 0 ? totalWaitTimeNs.get() / (count * 1e6) : 0;
+	}
+
+	/**
+	 * @return maximum time in milliseconds from submitting to running of a task
+	 */
+	public double getMaxWaitTimeMs() {
+		return maxWaitTimeNs.get() / 1e6;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void shutdown() {
+		encoderPool.shutdownNow();
+		signallingPool.shutdownNow();
+		audioTickScheduler.shutdownNow();
+	}
+}
@@ -1,5 +1,8 @@
 package io.antmedia.websocket;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.websocket.Session;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -17,8 +20,11 @@ import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
 import io.antmedia.IApplicationAdaptorFactory;
 import io.antmedia.StreamIdValidator;
+import io.antmedia.datastore.db.BroadcastCache;
 import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.settings.ServerSettings;
 import io.antmedia.webrtc.adaptor.RTMPAdaptor;
+import io.antmedia.webrtc.adaptor.RTMPAdaptorPool;
 
 public class WebSocketCommunityHandler {
 
@@ -37,6 +43,11 @@ public class WebSocketCommunityHandler {
 	private String appName;
 
 	private AntMediaApplicationAdapter appAdaptor;
+
+	/**
+	 * Send queues of the sessions
+	 */
+	private final Map<Session, WebSocketSender> senders = new HashMap<>();
 	
 	public WebSocketCommunityHandler(ApplicationContext appContext, Session session) {
 		this.appContext = appContext;
@@ -52,6 +63,13 @@ public class WebSocketCommunityHandler {
 		if (connectionContext != null) {
 			connectionContext.stop();
 		}
+		WebSocketSender sender;
+		synchronized (senders) {
+			sender = senders.remove(session);
+		}
+		if (sender != null) {
+			sender.close();
+		}
 	}
 
 	public void onError(Session session, Throwable throwable) {
@@ -89,7 +107,7 @@ public class WebSocketCommunityHandler {
 
 			if (cmd.equals(WebSocketConstants.PUBLISH_COMMAND)) 
 			{
-				Broadcast broadcast = appAdaptor.getDataStore().get(streamId);
+				Broadcast broadcast = BroadcastCache.getBroadcast(appAdaptor.getDataStoreFactory(), appAdaptor.getDataStore(), streamId);
 				if (broadcast != null) {
 					String status = broadcast.getStatus();
 					if (status.endsWith(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING)
@@ -166,6 +184,14 @@ public class WebSocketCommunityHandler {
 		connectionContext.setPortRange(appSettings.getWebRTCPortRangeMin(), appSettings.getWebRTCPortRangeMax());
 		connectionContext.setStunServerUri(appSettings.getStunServerURI());
 		connectionContext.setTcpCandidatesEnabled(appSettings.isWebRTCTcpCandidatesEnabled());
+		ServerSettings serverSettings = getServerSettings();
+		if (serverSettings != null) {
+			connectionContext.setDirectIngest(serverSettings.isWebRTCDirectIngest());
+			connectionContext.setEncoderQueueSize(serverSettings.getWebRTCEncoderQueueSize());
+			if (serverSettings.getWebRTCEncoderPoolSize() > 0) {
+				connectionContext.setExecutorPool(RTMPAdaptorPool.getInstance(serverSettings.getWebRTCEncoderPoolSize()));
+			}
+		}
 		
 		connectionContext.start();
 	}
@@ -174,6 +200,16 @@ public class WebSocketCommunityHandler {
 		return new RTMPAdaptor(outputURL, this, height);
 	}
 
+	/**
+	 * @return server settings or null if it's not available in the context
+	 */
+	private ServerSettings getServerSettings() {
+		if (appContext.containsBean(ServerSettings.BEAN_NAME)) {
+			return (ServerSettings) appContext.getBean(ServerSettings.BEAN_NAME);
+		}
+		return null;
+	}
+
 	public void addICECandidate(final String streamId, RTMPAdaptor connectionContext, String sdpMid, String sdp,
 			long sdpMLineIndex) {
 		if (connectionContext != null) {
@@ -281,18 +317,31 @@ public class WebSocketCommunityHandler {
 	}
 
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Puts the message to the send queue of the session and returns without waiting the message to be sent
+	 */
 	public void sendMessage(String message, final Session session) {
-		synchronized (this) {
-			if (session.isOpen()) {
-				try {
-					session.getBasicRemote().sendText(message);
-				} catch (Exception e) { 
-					//capture all exceptions because some unexpected events may happen it causes some internal errors
-					logger.error(ExceptionUtils.getStackTrace(e));
-				}
-			}
+		getSender(session).send(message);
+	}
+
+	/**
+	 * @return send queue of the session. It's created at the first call
+	 */
+	public WebSocketSender getSender(Session session) {
+		synchronized (senders) {
+			return senders.computeIfAbsent(session, this::createSender);
+		}
+	}
+
+	private WebSocketSender createSender(Session session) {
+		int queueSize = WebSocketSender.DEFAULT_QUEUE_SIZE;
+		long sendTimeoutMs = WebSocketSender.DEFAULT_SEND_TIMEOUT_MS;
+		ServerSettings serverSettings = getServerSettings();
+		if (serverSettings != null) {
+			queueSize = serverSettings.getWebSocketSendQueueSize();
+			sendTimeoutMs = serverSettings.getWebSocketSendTimeoutMs();
 		}
+		return new WebSocketSender(session, queueSize, sendTimeoutMs);
 	}
 	
 	public void sendRoomInformation(JSONArray jsonStreamArray , String roomId) 
@@ -358,6 +407,10 @@ public class WebSocketCommunityHandler {
 		this.appContext = appContext;
 	}
 	
+	public AntMediaApplicationAdapter getAppAdaptor() {
+		return appAdaptor;
+	}
+
 	public void setAppAdaptor(AntMediaApplicationAdapter appAdaptor) {
 		this.appAdaptor = appAdaptor;
 	}
@@ -388,6 +441,14 @@ public class WebSocketCommunityHandler {
 		sendMessage(jsonResponse.toJSONString(), session);
 	}
 
+	public void sendUnauthorizedMessage(String streamId, Session session) {
+		JSONObject jsonResponse = new JSONObject();
+		jsonResponse.put(WebSocketConstants.COMMAND, WebSocketConstants.ERROR_COMMAND);
+		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.UNAUTHORIZED);
+		jsonResponse.put(WebSocketConstants.STREAM_ID, streamId);
+		sendMessage(jsonResponse.toJSONString(), session);
+	}
+
 	public void sendServerError(String streamId, Session session) {
 		JSONObject jsonResponse = new JSONObject();
 		jsonResponse.put(WebSocketConstants.COMMAND, WebSocketConstants.ERROR_COMMAND);
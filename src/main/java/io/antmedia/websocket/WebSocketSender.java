@@ -0,0 +1,268 @@
+package io.antmedia.websocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the messages of a websocket session without blocking the caller.
+ *
+ * Messages are queued and sent one by one with the async remote of the session. If the client stops reading,
+ * the queue fills up or a send does not complete in the timeout. Then the waiting messages are dropped and the session
+ * is closed because a signalling session that misses messages is not usable anymore
+ */
+public class WebSocketSender implements SendHandler {
+
+	private static Logger logger = LoggerFactory.getLogger(WebSocketSender.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	public static final long DEFAULT_SEND_TIMEOUT_MS = 10000;
+
+	private static class QueuedMessage {
+		private final String text;
+		private final long queuedTimeNs;
+
+		public QueuedMessage(String text, long queuedTimeNs) {
+			this.text = text;
+			this.queuedTimeNs = queuedTimeNs;
+		}
+	}
+
+	private final Session session;
+	private final int queueSize;
+	private final long sendTimeoutMs;
+
+	/**
+	 * Messages waiting to be sent. It's also the lock of the sender
+	 */
+	private final Deque<QueuedMessage> messages = new ArrayDeque<>();
+
+	/**
+	 * Message being sent. It's accessed by the thread that sends it or completes it
+	 */
+	private QueuedMessage sendingMessage;
+
+	private boolean sending = false;
+
+	private boolean closed = false;
+
+	/**
+	 * True while the sending thread is in sendText. A result received meanwhile is kept in inlineResult
+	 * and it's handled by the sending thread
+	 */
+	private boolean inSendText = false;
+
+	private SendResult inlineResult;
+
+	private final AtomicLong sentCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong totalLatencyNs = new AtomicLong();
+
+	/**
+	 * @param session
+	 * @param queueSize maximum number of the messages waiting to be sent
+	 * @param sendTimeoutMs session is closed if a message cannot be sent in this duration
+	 */
+	public WebSocketSender(Session session, int queueSize, long sendTimeoutMs) {
+		this.session = session;
+		this.queueSize = Math.max(1, queueSize);
+		this.sendTimeoutMs = sendTimeoutMs;
+	}
+
+	/**
+	 * Puts the message to the queue and returns immediately
+	 * @param message
+	 * @return false if message is dropped because session is not open or sender is closed
+	 */
+	public boolean send(String message) {
+		if (!session.isOpen()) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		QueuedMessage nextMessage;
+		synchronized (messages) {
+			if (closed) {
+				droppedCount.incrementAndGet();
+				return false;
+			}
+			if (messages.size() >= queueSize) {
+				logger.warn("Websocket send queue is full for session: {}. Client is not reading the messages", session.getId());
+				droppedCount.incrementAndGet();
+				nextMessage = null;
+			}
+			else {
+				messages.add(new QueuedMessage(message, System.nanoTime()));
+				if (sending) {
+					return true;
+				}
+				sending = true;
+				nextMessage = messages.poll();
+			}
+		}
+
+		if (nextMessage == null) {
+			close();
+			return false;
+		}
+		sendMessages(nextMessage);
+		return true;
+	}
+
+	/**
+	 * Sends the message and the next ones in a loop while sends complete in the calling thread.
+	 * It returns when a send is pending and the next messages are sent in {@link #onResult(SendResult)}. 
+	 * It does not recurse so that a container that completes the sends inline cannot overflow the stack
+	 */
+	private void sendMessages(QueuedMessage message) {
+		while (message != null) {
+			SendResult result = sendAsync(message);
+			if (result == null) {
+				return;
+			}
+			message = complete(result);
+		}
+	}
+
+	/**
+	 * @return result of the send if it is completed in the calling thread, or null if it is pending
+	 */
+	private SendResult sendAsync(QueuedMessage message) {
+		sendingMessage = message;
+		if (!session.isOpen()) {
+			return new SendResult(new IOException("Session is not open"));
+		}
+		synchronized (messages) {
+			inSendText = true;
+			inlineResult = null;
+		}
+		SendResult result = null;
+		try {
+			RemoteEndpoint.Async remote = session.getAsyncRemote();
+			remote.setSendTimeout(sendTimeoutMs);
+			remote.sendText(message.text, this);
+		}
+		catch (Exception e) {
+			//capture all exceptions because some unexpected events may happen it causes some internal errors
+			logger.error(ExceptionUtils.getStackTrace(e));
+			result = new SendResult(e);
+		}
+		synchronized (messages) {
+			inSendText = false;
+			if (result == null) {
+				result = inlineResult;
+			}
+			inlineResult = null;
+		}
+		return result;
+	}
+
+	/**
+	 * Called when the message is sent. Next messages are sent if there are any
+	 */
+	@Override
+	public void onResult(SendResult result) {
+		synchronized (messages) {
+			if (inSendText) {
+				//send is completed before sendText returns. Sending thread continues with the next message
+				inlineResult = result;
+				return;
+			}
+		}
+		sendMessages(complete(result));
+	}
+
+	/**
+	 * @return next message to be sent or null if there is not any or sender is closed
+	 */
+	private QueuedMessage complete(SendResult result) {
+		if (!result.isOK()) {
+			droppedCount.incrementAndGet();
+			if (session.isOpen()) {
+				logger.warn("Websocket message cannot be sent for session: {} error: {}", session.getId(),
+						result.getException() != null ? result.getException().getMessage() : null);
+			}
+			close();
+			return null;
+		}
+
+		sentCount.incrementAndGet();
+		totalLatencyNs.addAndGet(System.nanoTime() - sendingMessage.queuedTimeNs);
+
+		synchronized (messages) {
+			QueuedMessage nextMessage = messages.poll();
+			if (nextMessage == null) {
+				sending = false;
+			}
+			return nextMessage;
+		}
+	}
+
+	/**
+	 * Drops the waiting messages and closes the session
+	 */
+	public void close() {
+		synchronized (messages) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			droppedCount.addAndGet(messages.size());
+			messages.clear();
+		}
+
+		if (session.isOpen()) {
+			try {
+				session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Messages cannot be sent"));
+			} catch (IOException e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+	}
+
+	/**
+	 * @return number of the messages waiting to be sent
+	 */
+	public int getQueueDepth() {
+		synchronized (messages) {
+			return messages.size();
+		}
+	}
+
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	/**
+	 * @return number of the messages that are not sent because the queue is full or session is closed
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return average time in milliseconds from queueing to sending of the sent messages
+	 */
+	public double getAverageSendLatencyMs() {
+		long count = sentCount.get();
+		return count != 0 ? totalLatencyNs.get() / (count * 1e6) : 0;
+	}
+
+	public boolean isClosed() {
+		synchronized (messages) {
+			return closed;
+		}
+	}
+}
@@ -19,6 +19,7 @@ import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -400,6 +401,37 @@ public class AntMediaApplicationAdaptorUnitTest {
 	}
 
 
+	@Test
+	public void testSendHookEventsFormat() throws IOException {
+		Map<String, String> variables = new HashMap<>();
+		variables.put("id", "stream1");
+		List<Map<String, String>> events = new ArrayList<>();
+		events.add(variables);
+
+		//single event is sent as form parameters if batching is not enabled
+		AntMediaApplicationAdapter spyAdaptor = Mockito.spy(new AntMediaApplicationAdapter());
+		spyAdaptor.setServerSettings(new ServerSettings());
+		Mockito.doReturn(null).when(spyAdaptor).sendPOST(Mockito.anyString(), Mockito.anyMap());
+		Mockito.doReturn(null).when(spyAdaptor).sendJsonPOST(Mockito.anyString(), Mockito.anyList());
+		spyAdaptor.sendHookEvents("http://any_url", events);
+		verify(spyAdaptor).sendPOST("http://any_url", variables);
+		verify(spyAdaptor, never()).sendJsonPOST(Mockito.anyString(), Mockito.anyList());
+
+		//single event is sent as a JSON array if batching is enabled
+		ServerSettings serverSettings = new ServerSettings();
+		serverSettings.setWebhookBatchSize(10);
+		AntMediaApplicationAdapter batchingAdaptor = Mockito.spy(new AntMediaApplicationAdapter());
+		batchingAdaptor.setServerSettings(serverSettings);
+		Mockito.doReturn(null).when(batchingAdaptor).sendPOST(Mockito.anyString(), Mockito.anyMap());
+		Mockito.doReturn(null).when(batchingAdaptor).sendJsonPOST(Mockito.anyString(), Mockito.anyList());
+		batchingAdaptor.sendHookEvents("http://any_url", events);
+		verify(batchingAdaptor).sendJsonPOST("http://any_url", events);
+		verify(batchingAdaptor, never()).sendPOST(Mockito.anyString(), Mockito.anyMap());
+
+		spyAdaptor.getWebhookDispatcher().shutdown(100);
+		batchingAdaptor.getWebhookDispatcher().shutdown(100);
+	}
+
 	@Test
 	public void testNotifyHook() {
 
@@ -427,7 +459,7 @@ public class AntMediaApplicationAdaptorUnitTest {
 		try {
 			ArgumentCaptor<String> captureUrl = ArgumentCaptor.forClass(String.class);
 			ArgumentCaptor<Map> variables = ArgumentCaptor.forClass(Map.class);
-			Mockito.verify(spyAdaptor).sendPOST(captureUrl.capture(), variables.capture());
+			Mockito.verify(spyAdaptor, Mockito.timeout(2000)).sendPOST(captureUrl.capture(), variables.capture());
 			assertEquals(url, captureUrl.getValue());
 
 			Map variablesMap = variables.getValue();
@@ -451,7 +483,7 @@ public class AntMediaApplicationAdaptorUnitTest {
 		try {
 			ArgumentCaptor<String> captureUrl = ArgumentCaptor.forClass(String.class);
 			ArgumentCaptor<Map> variables = ArgumentCaptor.forClass(Map.class);
-			Mockito.verify(spyAdaptor, Mockito.times(2)).sendPOST(captureUrl.capture(), variables.capture());
+			Mockito.verify(spyAdaptor, Mockito.timeout(2000).times(2)).sendPOST(captureUrl.capture(), variables.capture());
 			assertEquals(url, captureUrl.getValue());
 
 			Map variablesMap = variables.getValue();
@@ -699,6 +731,8 @@ public class AntMediaApplicationAdaptorUnitTest {
 		
 		StreamFetcher streamFetcher = mock(StreamFetcher.class);
 		StreamFetcher streamFetcher2 = mock(StreamFetcher.class);
+		when(streamFetcher.getStream()).thenReturn(stream);
+		when(streamFetcher2.getStream()).thenReturn(stream2);
 
 
 		Mockito.doReturn(streamFetcher).when(fetcherManager).make(stream, scope, vertx);
@@ -744,7 +778,6 @@ public class AntMediaApplicationAdaptorUnitTest {
 		verify(streamFetcher2, times(1)).stopStream();
 		
 		assertEquals(0, fetcherManager.getStreamFetcherList().size());
-		assertEquals(0, sfQueue.size());
 
 		verify(cbs, times(1)).stop();
 		verify(muxerAdaptor, times(1)).stop();
@@ -17,7 +17,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.awaitility.Awaitility;
@@ -43,6 +47,8 @@ import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
 
+import com.sun.management.OperatingSystemMXBean;
+
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
 import io.antmedia.IApplicationAdaptorFactory;
@@ -58,6 +64,7 @@ import io.antmedia.muxer.Mp4Muxer;
 import io.antmedia.rest.model.Result;
 import io.antmedia.streamsource.StreamFetcher;
 import io.antmedia.streamsource.StreamFetcherManager;
+import io.antmedia.streamsource.StreamFetcherPool;
 import io.vertx.core.Vertx;
 
 @ContextConfiguration(locations = { "test.xml" })
@@ -268,7 +275,7 @@ public class StreamFetcherUnitTest extends AbstractJUnit4SpringContextTests {
 			StreamFetcher streamFetcher = Mockito.mock(StreamFetcher.class);
 			Broadcast stream =  Mockito.mock(Broadcast.class);
 
-			stream.setStreamId(String.valueOf((Math.random() * 100000)));
+			when(stream.getStreamId()).thenReturn(String.valueOf((Math.random() * 100000)));
 
 			stream.setStreamUrl("anyurl");
 			streamFetcher.setStream(stream);
@@ -330,6 +337,73 @@ public class StreamFetcherUnitTest extends AbstractJUnit4SpringContextTests {
 
 	}
 
+	@Test
+	public void testStreamFetcherRegistry() {
+		StreamFetcherManager fetcherManager = Mockito.spy(new StreamFetcherManager(vertx, new InMemoryDataStore("testdb"), appScope));
+
+		List<Broadcast> streams = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Broadcast stream = new Broadcast("stream" + i, null, null, null, "rtsp://127.0.0.1:6554/test" + i, AntMediaApplicationAdapter.STREAM_SOURCE);
+			try {
+				stream.setStreamId("stream" + i);
+			} catch (Exception e) {
+				fail(e.getMessage());
+			}
+			StreamFetcher streamFetcher = Mockito.mock(StreamFetcher.class);
+			when(streamFetcher.getStream()).thenReturn(stream);
+			when(streamFetcher.getReconnectCount()).thenReturn(2L);
+			when(streamFetcher.getTimeToFirstPacketMs()).thenReturn(i % 2 == 0 ? 100L : -1L);
+			Mockito.doReturn(streamFetcher).when(fetcherManager).make(stream, appScope, vertx);
+			streams.add(stream);
+		}
+
+		for (Broadcast stream : streams) {
+			assertFalse(fetcherManager.checkAlreadyFetch(stream));
+			assertNotNull(fetcherManager.startStreaming(stream));
+			assertTrue(fetcherManager.checkAlreadyFetch(stream));
+		}
+		//already fetching stream is not started again
+		assertNull(fetcherManager.startStreaming(streams.get(0)));
+
+		assertEquals(20, fetcherManager.getStreamFetcherList().size());
+		assertEquals(streams.get(5), fetcherManager.getStreamFetcher("stream5").getStream());
+		assertEquals(40, fetcherManager.getTotalReconnectCount());
+		assertEquals(100, fetcherManager.getAverageTimeToFirstPacketMs());
+
+		StreamFetcher streamFetcher = fetcherManager.getStreamFetcher("stream5");
+		assertTrue(fetcherManager.stopStreaming(streams.get(5)).isSuccess());
+		verify(streamFetcher).stopStream();
+		assertNull(fetcherManager.getStreamFetcher("stream5"));
+		assertFalse(fetcherManager.checkAlreadyFetch(streams.get(5)));
+		assertFalse(fetcherManager.stopStreaming(streams.get(5)).isSuccess());
+		assertEquals(19, fetcherManager.getStreamFetcherList().size());
+
+		fetcherManager.stopCheckerJob();
+	}
+
+	@Test
+	public void testReconnectWithBackoff() {
+		Broadcast stream = new Broadcast("streamSource", "127.0.0.1:8080", "admin", "admin", "rtsp://127.0.0.1:44332/this_does_not_exist",
+				AntMediaApplicationAdapter.STREAM_SOURCE);
+		getInstance().getDataStore().save(stream);
+
+		StreamFetcher fetcher = new StreamFetcher(stream, appScope, vertx);
+		fetcher.setRestartStream(true);
+		assertEquals(0, fetcher.getReconnectCount());
+		assertEquals(-1, fetcher.getTimeToFirstPacketMs());
+
+		fetcher.startStream();
+
+		//first delays are at most 3 and 6 seconds
+		Awaitility.await().atMost(20, TimeUnit.SECONDS).until(() -> fetcher.getReconnectCount() >= 2);
+		assertEquals(-1, fetcher.getTimeToFirstPacketMs());
+
+		fetcher.stopStream();
+		Awaitility.await().atMost(20, TimeUnit.SECONDS).until(() -> !fetcher.isThreadActive());
+
+		getInstance().getDataStore().delete(stream.getStreamId());
+	}
+
 	@Test
 	public void testThreadStopStart() {
 
@@ -578,10 +652,14 @@ public class StreamFetcherUnitTest extends AbstractJUnit4SpringContextTests {
 				e.printStackTrace();
 			}
 
+			assertNotNull(fetcher.getJitterBuffer());
+			assertTrue(fetcher.getJitterBuffer().getDepth() > 0);
+
 			//wait for packaging files
 			fetcher.stopStream();
 
 			Awaitility.await().atMost(15,  TimeUnit.SECONDS).until(() -> !fetcher.isThreadActive());
+			assertNull(fetcher.getJitterBuffer());
 			assertFalse(fetcher.isThreadActive());
 
 			logger.info("before test m3u8 file");
@@ -849,6 +927,143 @@ public class StreamFetcherUnitTest extends AbstractJUnit4SpringContextTests {
 
 	}
 	
+	@Test
+	public void testPooledFetcher() {
+		StreamFetcherPool fetcherPool = new StreamFetcherPool(2);
+		try {
+			Broadcast newCam = new Broadcast("streamSource", "127.0.0.1:8080", "admin", "admin", "src/test/resources/sample_MP4_480.mp4",
+					AntMediaApplicationAdapter.VOD);
+			getInstance().getDataStore().save(newCam);
+
+			StreamFetcher fetcher = new StreamFetcher(newCam, appScope, vertx);
+			fetcher.setFetcherPool(fetcherPool);
+			fetcher.setRestartStream(false);
+
+			fetcher.startStream();
+
+			Awaitility.await().atMost(10, TimeUnit.SECONDS).until(fetcher::isStreamAlive);
+			assertTrue(fetcher.isThreadActive());
+			assertEquals(1, fetcherPool.getActiveFetcherCount());
+
+			fetcher.stopStream();
+
+			Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> !fetcher.isThreadActive());
+			assertEquals(0, fetcherPool.getActiveFetcherCount());
+			assertFalse(fetcher.isExceptionInThread());
+
+			//start again on the pool after it's stopped
+			fetcher.startStream();
+			Awaitility.await().atMost(10, TimeUnit.SECONDS).until(fetcher::isStreamAlive);
+
+			fetcher.stopStream();
+			Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> !fetcher.isThreadActive());
+		}
+		finally {
+			fetcherPool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the same number of VoD sources together with live rtsp sources with a thread per fetcher and with a fetcher pool
+	 * and logs the number of threads, CPU time and time to first packet of the fetchers. 
+	 * Live rtsp sources block in av_read_frame so they keep their own threads in pooled mode
+	 */
+	@Test
+	public void testFetcherThreadAndCpuBenchmark() {
+		getAppSettings().setMp4MuxingEnabled(false);
+		getAppSettings().setHlsMuxingEnabled(false);
+
+		int fetcherCount = 100;
+		int liveFetcherCount = 4;
+		startCameraEmulator();
+
+		long[] threadMode;
+		long[] pooledMode;
+		long[] readAheadMode;
+		StreamFetcherPool fetcherPool = new StreamFetcherPool(4);
+		try {
+			threadMode = runFetchers(fetcherCount, liveFetcherCount, null, 0);
+			pooledMode = runFetchers(fetcherCount, liveFetcherCount, fetcherPool, 0);
+			readAheadMode = runFetchers(fetcherCount, liveFetcherCount, fetcherPool, 200);
+		}
+		finally {
+			fetcherPool.shutdown();
+			stopCameraEmulator();
+		}
+
+		logger.info("{} VoD and {} live fetchers with a thread per fetcher -> threads: {} cpu time: {}ms VoD time to first packet: {}ms live time to first packet: {}ms", 
+				fetcherCount, liveFetcherCount, threadMode[0], threadMode[1], threadMode[2], threadMode[3]);
+		logger.info("{} VoD and {} live fetchers with a pool of {} threads -> threads: {} cpu time: {}ms VoD time to first packet: {}ms live time to first packet: {}ms", 
+				fetcherCount, liveFetcherCount, fetcherPool.getPoolSize(), pooledMode[0], pooledMode[1], pooledMode[2], pooledMode[3]);
+		logger.info("{} VoD and {} live fetchers with a pool of {} threads and 200ms read ahead -> threads: {} cpu time: {}ms VoD time to first packet: {}ms live time to first packet: {}ms", 
+				fetcherCount, liveFetcherCount, fetcherPool.getPoolSize(), readAheadMode[0], readAheadMode[1], readAheadMode[2], readAheadMode[3]);
+
+		assertTrue(pooledMode[0] < threadMode[0]);
+		//blocking live sources do not keep the pool threads so VoD sources on the pool are not delayed by them
+		assertTrue(pooledMode[2] >= 0 && pooledMode[2] < 5000);
+		assertTrue(pooledMode[3] >= 0);
+	}
+
+	/**
+	 * @return number of threads created, process cpu time in ms while fetchers are running, 
+	 * average time to first packet of VoD fetchers and average time to first packet of live fetchers in ms
+	 */
+	private long[] runFetchers(int fetcherCount, int liveFetcherCount, StreamFetcherPool fetcherPool, int vodReadAheadMs) {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		OperatingSystemMXBean osMXBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		int threadCountBefore = threadMXBean.getThreadCount();
+		long cpuTimeBefore = osMXBean.getProcessCpuTime();
+
+		List<StreamFetcher> liveFetchers = new ArrayList<>();
+		for (int i = 0; i < liveFetcherCount; i++) {
+			Broadcast broadcast = new Broadcast("live" + i, "127.0.0.1:8080", "admin", "admin", "rtsp://127.0.0.1:6554/test.flv",
+					AntMediaApplicationAdapter.STREAM_SOURCE);
+			getInstance().getDataStore().save(broadcast);
+
+			StreamFetcher fetcher = new StreamFetcher(broadcast, appScope, vertx);
+			fetcher.setFetcherPool(fetcherPool);
+			fetcher.setRestartStream(false);
+			assertFalse(fetcher.isPoolable());
+			fetcher.startStream();
+			liveFetchers.add(fetcher);
+		}
+
+		List<StreamFetcher> fetchers = new ArrayList<>();
+		for (int i = 0; i < fetcherCount; i++) {
+			Broadcast broadcast = new Broadcast("vod" + i, "127.0.0.1:8080", "admin", "admin", "src/test/resources/sample_MP4_480.mp4",
+					AntMediaApplicationAdapter.VOD);
+			getInstance().getDataStore().save(broadcast);
+
+			StreamFetcher fetcher = new StreamFetcher(broadcast, appScope, vertx);
+			fetcher.setFetcherPool(fetcherPool);
+			fetcher.setVodReadAheadMs(vodReadAheadMs);
+			fetcher.setRestartStream(false);
+			assertEquals(fetcherPool != null, fetcher.isPoolable());
+			fetcher.startStream();
+			fetchers.add(fetcher);
+		}
+
+		List<StreamFetcher> allFetchers = new ArrayList<>(fetchers);
+		allFetchers.addAll(liveFetchers);
+
+		Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> allFetchers.stream().allMatch(StreamFetcher::isStreamAlive));
+		Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> allFetchers.stream().allMatch(fetcher -> fetcher.getTimeToFirstPacketMs() >= 0));
+		long threadCount = threadMXBean.getThreadCount() - (long)threadCountBefore;
+		long vodTimeToFirstPacketMs = (long) fetchers.stream().mapToLong(StreamFetcher::getTimeToFirstPacketMs).average().orElse(-1);
+		long liveTimeToFirstPacketMs = (long) liveFetchers.stream().mapToLong(StreamFetcher::getTimeToFirstPacketMs).average().orElse(-1);
+
+		for (StreamFetcher fetcher : allFetchers) {
+			fetcher.stopStream();
+		}
+		Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() -> allFetchers.stream().noneMatch(StreamFetcher::isThreadActive));
+		long cpuTimeMs = (osMXBean.getProcessCpuTime() - cpuTimeBefore) / 1000000;
+
+		for (StreamFetcher fetcher : allFetchers) {
+			getInstance().getDataStore().delete(fetcher.getStream().getStreamId());
+		}
+		return new long[] {threadCount, cpuTimeMs, vodTimeToFirstPacketMs, liveTimeToFirstPacketMs};
+	}
+
 	@Test
 	public void testStopRequestReceived() {
 		Broadcast stream = new Broadcast("streamSource", "127.0.0.1:8080", "admin", "admin", "rtsp://localhost:44332/this_does_not_exist",
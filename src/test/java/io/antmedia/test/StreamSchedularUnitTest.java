@@ -8,6 +8,7 @@ import static org.bytedeco.ffmpeg.global.avformat.avformat_open_input;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -19,6 +20,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.awaitility.Awaitility;
@@ -35,6 +40,7 @@ import org.junit.Test;
 import org.junit.rules.TestRule;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
+import org.mockito.Mockito;
 import org.red5.server.scope.WebScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +53,7 @@ import org.springframework.test.context.junit4.AbstractJUnit4SpringContextTests;
 import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
 import io.antmedia.datastore.db.DataStore;
+import io.antmedia.datastore.db.InMemoryDataStore;
 import io.antmedia.datastore.db.MapDBStore;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Playlist;
@@ -257,6 +264,61 @@ public class StreamSchedularUnitTest extends AbstractJUnit4SpringContextTests {
 	}
 
 
+	@Test
+	public void testConcurrentStartOfSameStream() throws Exception {
+		StreamFetcherManager streamFetcherManager = Mockito.spy(new StreamFetcherManager(vertx, new InMemoryDataStore("testConcurrentStart"), appScope));
+		Broadcast broadcast = new Broadcast("testConcurrentStart", "127.0.0.1:8080", "admin", "admin", "rtsp://127.0.0.1:6554/test.flv",
+				AntMediaApplicationAdapter.IP_CAMERA);
+		broadcast.setStreamId("testConcurrentStart");
+
+		//first fetcher is still starting when the second start is called
+		CountDownLatch startCalled = new CountDownLatch(1);
+		CountDownLatch finishStart = new CountDownLatch(1);
+		StreamFetcher fetcher1 = mock(StreamFetcher.class);
+		when(fetcher1.getStream()).thenReturn(broadcast);
+		Mockito.doAnswer(invocation -> {
+			startCalled.countDown();
+			finishStart.await(5, TimeUnit.SECONDS);
+			return null;
+		}).when(fetcher1).startStream();
+		StreamFetcher fetcher2 = mock(StreamFetcher.class);
+		when(fetcher2.getStream()).thenReturn(broadcast);
+		Mockito.doReturn(fetcher1, fetcher2).when(streamFetcherManager).make(Mockito.any(), Mockito.any(), Mockito.any());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<StreamFetcher> firstStart = executor.submit(() -> streamFetcherManager.startStreaming(broadcast));
+			assertTrue(startCalled.await(5, TimeUnit.SECONDS));
+
+			assertNull(streamFetcherManager.startStreaming(broadcast));
+			//fetcher created by a start racing with the first one is not registered or started
+			assertFalse(streamFetcherManager.alreadyFetchProcess(fetcher2));
+			Mockito.verify(fetcher2, Mockito.never()).startStream();
+
+			finishStart.countDown();
+			assertEquals(fetcher1, firstStart.get(5, TimeUnit.SECONDS));
+			assertEquals(fetcher1, streamFetcherManager.getStreamFetcher(broadcast.getStreamId()));
+
+			//stopping stops the registered fetcher
+			assertTrue(streamFetcherManager.stopStreaming(broadcast).isSuccess());
+			Mockito.verify(fetcher1).stopStream();
+			assertNull(streamFetcherManager.getStreamFetcher(broadcast.getStreamId()));
+
+			//reserved stream id is released if the fetcher cannot be started
+			StreamFetcher failingFetcher = mock(StreamFetcher.class);
+			when(failingFetcher.getStream()).thenReturn(broadcast);
+			Mockito.doThrow(new IllegalStateException("start failed")).when(failingFetcher).startStream();
+			Mockito.doReturn(failingFetcher).when(streamFetcherManager).make(Mockito.any(), Mockito.any(), Mockito.any());
+			assertNull(streamFetcherManager.startStreaming(broadcast));
+			assertNull(streamFetcherManager.getStreamFetcher(broadcast.getStreamId()));
+		}
+		finally {
+			finishStart.countDown();
+			executor.shutdownNow();
+			streamFetcherManager.stopCheckerJob();
+		}
+	}
+
 	@Test
 	public void testAddCameraBug() {
 
@@ -0,0 +1,166 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.BroadcastCache;
+import io.antmedia.datastore.db.BroadcastUpdate;
+import io.antmedia.datastore.db.DataStore;
+import io.antmedia.datastore.db.DataStoreFactory;
+import io.antmedia.datastore.db.InMemoryDataStore;
+import io.antmedia.datastore.db.MapDBStore;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.muxer.MuxAdaptor;
+
+public class BroadcastCacheTest {
+
+	private static final String DB_NAME = "target/broadcastcachetest.db";
+
+	@Before
+	public void before() {
+		deleteDBFile();
+	}
+
+	@After
+	public void after() {
+		deleteDBFile();
+	}
+
+	private void deleteDBFile() {
+		File f = new File(DB_NAME);
+		if (f.exists()) {
+			f.delete();
+		}
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		DataStore dataStore = mock(DataStore.class);
+		Broadcast broadcast = new Broadcast();
+		when(dataStore.get("stream1")).thenReturn(broadcast);
+
+		BroadcastCache cache = new BroadcastCache(dataStore, 60000, 100);
+
+		assertSame(broadcast, cache.get("stream1"));
+		assertSame(broadcast, cache.get("stream1"));
+		assertSame(broadcast, cache.get("stream1"));
+		verify(dataStore, times(1)).get("stream1");
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(2.0 / 3, cache.getHitRatio(), 0.0001);
+
+		//absent broadcasts are not cached
+		assertNull(cache.get("stream2"));
+		assertNull(cache.get("stream2"));
+		verify(dataStore, times(2)).get("stream2");
+		assertEquals(1, cache.size());
+
+		assertNull(cache.get(null));
+	}
+
+	@Test
+	public void testExpiration() throws InterruptedException {
+		DataStore dataStore = mock(DataStore.class);
+		when(dataStore.get("stream1")).thenReturn(new Broadcast());
+
+		BroadcastCache cache = new BroadcastCache(dataStore, 100, 100);
+		assertNotNull(cache.get("stream1"));
+		assertNotNull(cache.get("stream1"));
+		verify(dataStore, times(1)).get("stream1");
+
+		Thread.sleep(150);
+		assertNotNull(cache.get("stream1"));
+		verify(dataStore, times(2)).get("stream1");
+	}
+
+	@Test
+	public void testEviction() {
+		DataStore dataStore = mock(DataStore.class);
+		for (int i = 0; i < 30; i++) {
+			when(dataStore.get("stream" + i)).thenReturn(new Broadcast());
+		}
+
+		BroadcastCache cache = new BroadcastCache(dataStore, 60000, 10);
+		for (int i = 0; i < 30; i++) {
+			assertNotNull(cache.get("stream" + i));
+			assertTrue(cache.size() <= 10);
+		}
+		assertEquals(30, cache.getMissCount());
+		assertEquals(30 - cache.size(), cache.getEvictionCount());
+	}
+
+	@Test
+	public void testInvalidationOnLocalWrites() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME);
+		BroadcastCache cache = new BroadcastCache(dataStore, 60000, 100);
+
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStreamId("stream1");
+		dataStore.save(broadcast);
+
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED, cache.get("stream1").getStatus());
+
+		dataStore.updateStatus("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, cache.get("stream1").getStatus());
+
+		dataStore.setMp4Muxing("stream1", MuxAdaptor.RECORDING_ENABLED_FOR_STREAM);
+		assertEquals(MuxAdaptor.RECORDING_ENABLED_FOR_STREAM, cache.get("stream1").getMp4Enabled());
+
+		BroadcastUpdate.applyAll(dataStore, Arrays.asList(BroadcastUpdate.status("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED)));
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED, cache.get("stream1").getStatus());
+
+		dataStore.delete("stream1");
+		assertNull(cache.get("stream1"));
+
+		dataStore.save(broadcast);
+		assertNotNull(cache.get("stream1"));
+		dataStore.resetBroadcasts("");
+		assertEquals(0, cache.size());
+
+		dataStore.close();
+	}
+
+	@Test
+	public void testDataStoreFactory() {
+		DataStoreFactory dsf = new DataStoreFactory();
+		dsf.setDataStore(new InMemoryDataStore("db"));
+
+		//disabled when time to live is zero
+		assertNull(dsf.getBroadcastCache());
+
+		dsf.setBroadcastCacheTtl(1000);
+		dsf.setBroadcastCacheMaxSize(100);
+		BroadcastCache cache = dsf.getBroadcastCache();
+		assertNotNull(cache);
+		assertSame(cache, dsf.getBroadcastCache());
+		assertSame(dsf.getDataStore(), cache.getDataStore());
+
+		Broadcast broadcast = new Broadcast();
+		String streamId = dsf.getDataStore().save(broadcast);
+		assertSame(broadcast, BroadcastCache.getBroadcast(dsf, dsf.getDataStore(), streamId));
+		assertEquals(1, cache.size());
+
+		//cache of the previous data store is not used
+		DataStore otherDataStore = new InMemoryDataStore("db");
+		assertNull(BroadcastCache.getBroadcast(dsf, otherDataStore, streamId));
+
+		dsf.setDataStore(otherDataStore);
+		assertSame(otherDataStore, dsf.getBroadcastCache().getDataStore());
+	}
+}
@@ -24,15 +24,24 @@ import org.awaitility.Awaitility;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.Gson;
+
 import dev.morphia.Datastore;
 import dev.morphia.query.Query;
 import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.BroadcastUpdate;
+import io.antmedia.datastore.db.CursorPage;
 import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
+import io.antmedia.datastore.db.IBatchUpdateStore;
+import io.antmedia.datastore.db.ICursorPaginationStore;
 import io.antmedia.datastore.db.InMemoryDataStore;
 import io.antmedia.datastore.db.MapDBStore;
 import io.antmedia.datastore.db.MongoStore;
@@ -115,6 +124,8 @@ public class DBStoresUnitTest {
     testGetVoDIdByStreamId(dataStore);
     testBroadcastListSorting(dataStore);
 		testTotalWebRTCViewerCount(dataStore);
+		testCursorPagination(dataStore);
+		testApplyBatch(dataStore);
 
 	}
 
@@ -154,6 +165,8 @@ public class DBStoresUnitTest {
     	testGetVoDIdByStreamId(dataStore);
     	testBroadcastListSorting(dataStore);
 		testTotalWebRTCViewerCount(dataStore);
+		testCursorPagination(dataStore);
+		testApplyBatch(dataStore);
 	}
 
 	@Test
@@ -209,6 +222,8 @@ public class DBStoresUnitTest {
 		testGetVoDIdByStreamId(dataStore);
 		testBroadcastListSorting(dataStore);
 		testTotalWebRTCViewerCount(dataStore);
+		testCursorPagination(dataStore);
+		testApplyBatch(dataStore);
 	}
 	
 	@Test
@@ -256,6 +271,147 @@ public class DBStoresUnitTest {
 
 	}
 	
+	public void testApplyBatch(DataStore dataStore) {
+		assertTrue(dataStore instanceof IBatchUpdateStore);
+		
+		Broadcast broadcast = new Broadcast();
+		broadcast.setQuality("good");
+		String streamId = dataStore.save(broadcast);
+		Broadcast broadcast2 = new Broadcast();
+		String streamId2 = dataStore.save(broadcast2);
+		Broadcast broadcast3 = new Broadcast();
+		String streamId3 = dataStore.save(broadcast3);
+		assertTrue(dataStore.updateStatus(streamId3, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+		assertTrue(dataStore.updateHLSViewerCount(streamId3, 4));
+		
+		long commitCount = dataStore instanceof MapDBStore ? ((MapDBStore) dataStore).getCommitCount() : 0;
+		
+		//listeners should read the new value when they are notified
+		List<String> notifiedStatuses = new ArrayList<>();
+		if (dataStore instanceof MapDBStore) {
+			((MapDBStore) dataStore).addBroadcastChangeListener(id -> {
+				if (streamId.equals(id)) {
+					notifiedStatuses.add(dataStore.get(id).getStatus());
+				}
+			});
+		}
+		
+		List<BroadcastUpdate> updates = new ArrayList<>();
+		updates.add(BroadcastUpdate.status(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+		updates.add(BroadcastUpdate.hlsViewerCount(streamId2, 3));
+		updates.add(BroadcastUpdate.sourceQuality(streamId, null, 0.5, 12));
+		//status resets the viewer count and diff is applied after it
+		BroadcastUpdate finishUpdate = BroadcastUpdate.status(streamId3, AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED);
+		finishUpdate.setHlsViewerDiff(1);
+		updates.add(finishUpdate);
+		//it should not prevent the other updates
+		updates.add(BroadcastUpdate.hlsViewerCount("not_existing_stream", 5));
+		
+		assertEquals(4, ((IBatchUpdateStore) dataStore).applyBatch(updates));
+		
+		if (dataStore instanceof MapDBStore) {
+			assertEquals(commitCount + 1, ((MapDBStore) dataStore).getCommitCount());
+			assertEquals(1, notifiedStatuses.size());
+			assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, notifiedStatuses.get(0));
+		}
+		
+		Broadcast updated = dataStore.get(streamId);
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, updated.getStatus());
+		assertEquals("good", updated.getQuality());
+		assertEquals(0.5, updated.getSpeed(), 0.001);
+		assertEquals(12, updated.getPendingPacketSize());
+		assertEquals(3, dataStore.get(streamId2).getHlsViewerCount());
+		Broadcast finished = dataStore.get(streamId3);
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED, finished.getStatus());
+		assertEquals(1, finished.getHlsViewerCount());
+		
+		assertEquals(0, ((IBatchUpdateStore) dataStore).applyBatch(new ArrayList<>()));
+		
+		//single updates are used for the data stores that do not support batch
+		DataStore mockDataStore = Mockito.mock(DataStore.class);
+		Mockito.when(mockDataStore.updateHLSViewerCount(streamId2, 3)).thenReturn(true);
+		assertEquals(1, BroadcastUpdate.applyAll(mockDataStore, updates.subList(1, 2)));
+		Mockito.verify(mockDataStore).updateHLSViewerCount(streamId2, 3);
+		
+		assertTrue(dataStore.delete(streamId));
+		assertTrue(dataStore.delete(streamId2));
+		assertTrue(dataStore.delete(streamId3));
+	}
+	
+	public void testCursorPagination(DataStore dataStore) {
+		assertTrue(dataStore instanceof ICursorPaginationStore);
+		ICursorPaginationStore store = (ICursorPaginationStore) dataStore;
+		
+		String streamId = "cursorStream" + RandomStringUtils.randomAlphanumeric(8);
+		for (int i = 0; i < 7; i++) {
+			Broadcast broadcast = new Broadcast();
+			broadcast.setType(AntMediaApplicationAdapter.IP_CAMERA);
+			dataStore.save(broadcast);
+			
+			dataStore.addVod(new VoD("streamName", streamId, "filePath", "vodName", 111, 111, 111, VoD.STREAM_VOD, null));
+			
+			Token token = new Token();
+			token.setTokenId(RandomStringUtils.randomAlphanumeric(12));
+			token.setStreamId(streamId);
+			token.setType(Token.PLAY_TOKEN);
+			token.setExpireDate(Instant.now().getEpochSecond() + 1000);
+			assertTrue(dataStore.saveToken(token));
+		}
+		
+		//page through all broadcasts
+		List<String> ids = new ArrayList<>();
+		String cursor = null;
+		do {
+			CursorPage<Broadcast> page = store.getBroadcastListAfter(cursor, 3, null);
+			assertTrue(page.getList().size() <= 3);
+			for (Broadcast broadcast : page.getList()) {
+				ids.add(broadcast.getStreamId());
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		assertEquals(dataStore.getTotalBroadcastNumber(), ids.size());
+		for (int i = 1; i < ids.size(); i++) {
+			assertTrue(ids.get(i-1).compareTo(ids.get(i)) < 0);
+		}
+		
+		//filter by type
+		int cameraCount = 0;
+		cursor = null;
+		do {
+			CursorPage<Broadcast> page = store.getBroadcastListAfter(cursor, 2, AntMediaApplicationAdapter.IP_CAMERA);
+			for (Broadcast broadcast : page.getList()) {
+				assertEquals(AntMediaApplicationAdapter.IP_CAMERA, broadcast.getType());
+				cameraCount++;
+			}
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		assertTrue(cameraCount >= 7);
+		
+		CursorPage<VoD> vodPage = store.getVodListAfter(null, 4, streamId);
+		assertEquals(4, vodPage.getList().size());
+		assertNotNull(vodPage.getNextCursor());
+		assertEquals(vodPage.getList().get(3).getVodId(), vodPage.getNextCursor());
+		vodPage = store.getVodListAfter(vodPage.getNextCursor(), 4, streamId);
+		assertEquals(3, vodPage.getList().size());
+		assertNull(vodPage.getNextCursor());
+		for (VoD vod : vodPage.getList()) {
+			assertEquals(streamId, vod.getStreamId());
+		}
+		
+		CursorPage<Token> tokenPage = store.listTokensAfter(streamId, null, 5);
+		assertEquals(5, tokenPage.getList().size());
+		assertNotNull(tokenPage.getNextCursor());
+		tokenPage = store.listTokensAfter(streamId, tokenPage.getNextCursor(), 5);
+		assertEquals(2, tokenPage.getList().size());
+		assertNull(tokenPage.getNextCursor());
+		
+		//size is limited
+		assertTrue(store.getBroadcastListAfter(null, 1000, null).getList().size() <= DataStore.MAX_ITEM_IN_ONE_LIST);
+		assertEquals(0, store.getVodListAfter(null, 0, streamId).getList().size());
+		
+		assertTrue(dataStore.revokeTokens(streamId));
+	}
+
 	public void testUnexpectedVodOffset(DataStore dataStore) {
 		clear(dataStore);
 		
@@ -1598,6 +1754,133 @@ public class DBStoresUnitTest {
 		
 	}
 
+	@Test
+	public void testMapDBLiveFieldsMigrationAndPersistence() {
+		
+		//create a db file in the old format that keeps the whole broadcast as json
+		Broadcast oldBroadcast = new Broadcast();
+		oldBroadcast.setStreamId("oldStream");
+		oldBroadcast.setName("old");
+		oldBroadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		oldBroadcast.setHlsViewerCount(12);
+		oldBroadcast.setQuality("good");
+		
+		DB db = DBMaker.fileDB("testdb").fileMmapEnableIfSupported().transactionEnable().make();
+		db.treeMap("BROADCAST").keySerializer(Serializer.STRING).valueSerializer(Serializer.STRING).counterEnable()
+				.createOrOpen().put(oldBroadcast.getStreamId(), new Gson().toJson(oldBroadcast));
+		db.commit();
+		db.close();
+		
+		MapDBStore dataStore = new MapDBStore("testdb");
+		Broadcast broadcast = dataStore.get("oldStream");
+		assertNotNull(broadcast);
+		assertEquals("old", broadcast.getName());
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, broadcast.getStatus());
+		assertEquals(12, broadcast.getHlsViewerCount());
+		assertEquals("good", broadcast.getQuality());
+		assertEquals(1, dataStore.getActiveBroadcastCount());
+		
+		assertTrue(dataStore.updateHLSViewerCount("oldStream", 3));
+		assertTrue(dataStore.updateDuration("oldStream", 5000));
+		assertTrue(dataStore.updateSourceQualityParameters("oldStream", null, 1.5, 7));
+		assertTrue(dataStore.addEndpoint("oldStream", new Endpoint("broadcast id", "stream id", null, "old", "rtmp://test/live", "generic", null)));
+		
+		broadcast = dataStore.get("oldStream");
+		assertEquals(15, broadcast.getHlsViewerCount());
+		assertEquals(5000, broadcast.getDuration());
+		assertEquals("good", broadcast.getQuality());
+		assertEquals(1.5, broadcast.getSpeed(), 0.0001);
+		assertEquals(7, broadcast.getPendingPacketSize());
+		assertEquals(1, broadcast.getEndPointList().size());
+		
+		assertTrue(dataStore.updateStatus("oldStream", AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED));
+		dataStore.close();
+		
+		//live fields should be persisted after reopening
+		dataStore = new MapDBStore("testdb");
+		broadcast = dataStore.get("oldStream");
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED, broadcast.getStatus());
+		assertEquals(0, broadcast.getHlsViewerCount());
+		assertEquals(5000, broadcast.getDuration());
+		assertEquals(1, broadcast.getEndPointList().size());
+		assertEquals(0, dataStore.getActiveBroadcastCount());
+		
+		assertTrue(dataStore.delete("oldStream"));
+		assertNull(dataStore.get("oldStream"));
+		dataStore.close();
+	}
+
+	@Test
+	public void testMapDBSecondaryIndexes() {
+		MapDBStore dataStore = new MapDBStore("testdb");
+		
+		Broadcast camera = new Broadcast("camera", "10.2.40.63:8080", "admin", "admin", null, AntMediaApplicationAdapter.IP_CAMERA);
+		String cameraId = dataStore.save(camera);
+		Broadcast streamSource = new Broadcast("source", null, null, null, "rtsp://test/stream", AntMediaApplicationAdapter.STREAM_SOURCE);
+		String streamSourceId = dataStore.save(streamSource);
+		Broadcast liveStream = new Broadcast();
+		liveStream.setType(AntMediaApplicationAdapter.LIVE_STREAM);
+		String liveStreamId = dataStore.save(liveStream);
+		
+		assertEquals(2, dataStore.getExternalStreamsList().size());
+		assertEquals(1, dataStore.getBroadcastList(0, 10, AntMediaApplicationAdapter.LIVE_STREAM, null, null).size());
+		assertEquals(0, dataStore.getActiveBroadcastCount());
+		
+		assertTrue(dataStore.updateStatus(liveStreamId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+		assertTrue(dataStore.updateStatus(cameraId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+		assertEquals(2, dataStore.getActiveBroadcastCount());
+		
+		//updating other fields should keep the broadcast in its type index
+		Broadcast update = new Broadcast();
+		update.setName("renamed source");
+		assertTrue(dataStore.updateBroadcastFields(streamSourceId, update));
+		assertEquals(2, dataStore.getExternalStreamsList().size());
+		assertEquals(1, dataStore.getBroadcastList(0, 10, AntMediaApplicationAdapter.STREAM_SOURCE, null, null).size());
+		
+		for (int i = 0; i < 3; i++) {
+			dataStore.addVod(new VoD("streamName", liveStreamId, "filePath", "vodName", 111, 111, 111, VoD.STREAM_VOD, null));
+		}
+		VoD otherVod = new VoD("streamName", cameraId, "filePath", "vodName", 111, 111, 111, VoD.STREAM_VOD, null);
+		dataStore.addVod(otherVod);
+		assertEquals(3, dataStore.getVodList(0, 10, null, null, liveStreamId).size());
+		assertEquals(4, dataStore.getVodList(0, 10, null, null, null).size());
+		assertTrue(dataStore.deleteVod(otherVod.getVodId()));
+		assertEquals(0, dataStore.getVodList(0, 10, null, null, cameraId).size());
+		
+		for (int i = 0; i < 5; i++) {
+			Token token = new Token();
+			token.setTokenId("token" + i);
+			token.setStreamId(i < 3 ? liveStreamId : cameraId);
+			token.setType(Token.PLAY_TOKEN);
+			token.setExpireDate(Instant.now().getEpochSecond() + 1000);
+			assertTrue(dataStore.saveToken(token));
+		}
+		assertEquals(3, dataStore.listAllTokens(liveStreamId, 0, 10).size());
+		assertEquals(1, dataStore.listAllTokens(liveStreamId, 2, 10).size());
+		assertEquals(2, dataStore.listAllTokens(cameraId, 0, 10).size());
+		assertTrue(dataStore.deleteToken("token0"));
+		assertEquals(2, dataStore.listAllTokens(liveStreamId, 0, 10).size());
+		
+		dataStore.close();
+		
+		//indexes should be rebuilt on open
+		dataStore = new MapDBStore("testdb");
+		assertEquals(2, dataStore.getActiveBroadcastCount());
+		assertEquals(2, dataStore.getExternalStreamsList().size());
+		assertEquals(3, dataStore.getVodList(0, 10, null, null, liveStreamId).size());
+		assertEquals(2, dataStore.listAllTokens(liveStreamId, 0, 10).size());
+		
+		assertTrue(dataStore.revokeTokens(liveStreamId));
+		assertEquals(0, dataStore.listAllTokens(liveStreamId, 0, 10).size());
+		assertEquals(2, dataStore.listAllTokens(cameraId, 0, 10).size());
+		
+		assertTrue(dataStore.delete(liveStreamId));
+		assertEquals(1, dataStore.getActiveBroadcastCount());
+		assertEquals(0, dataStore.getBroadcastList(0, 10, AntMediaApplicationAdapter.LIVE_STREAM, null, null).size());
+		
+		dataStore.close();
+	}
+
 	@Test
 	public void testDontWriteStatsToDB () {
 		DataStore ds = createDB("memorydb", false);
@@ -2171,13 +2454,11 @@ public class DBStoresUnitTest {
 			dataStore.save(broadcast);
 		}
 		
-		//totalWebRTCViewersCount is still total but not total+total2 due to cache
-		assertEquals(total, dataStore.getTotalWebRTCViewersCount());	
-		
-
+		//counters are updated on save, so total is not cached anymore
 		int finalTotal = total+total2;
+		assertEquals(finalTotal, dataStore.getTotalWebRTCViewersCount());
 		
-		//Alter cache time it solud be total+total2
+		//counters should stay same after reconciliation
 		Awaitility.await().atMost(DataStore.TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME+1100, TimeUnit.MILLISECONDS)
 			.pollDelay(1000, TimeUnit.MILLISECONDS)
 			.until(() -> (finalTotal == dataStore.getTotalWebRTCViewersCount()));
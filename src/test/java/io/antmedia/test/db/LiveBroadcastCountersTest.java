@@ -0,0 +1,146 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.InMemoryDataStore;
+import io.antmedia.datastore.db.LiveBroadcastCounters;
+import io.antmedia.datastore.db.MapDBStore;
+import io.antmedia.datastore.db.types.Broadcast;
+
+public class LiveBroadcastCountersTest {
+
+	@Test
+	public void testCounters() {
+		LiveBroadcastCounters counters = new LiveBroadcastCounters();
+
+		counters.update("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, "10.0.0.1", 3, 5, 1);
+		counters.update("stream2", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, "10.0.0.2", 0, 2, 0);
+		counters.update("stream3", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, null, 1, 0, 0);
+		counters.update("stream4", AntMediaApplicationAdapter.BROADCAST_STATUS_CREATED, "10.0.0.1", 0, 0, 0);
+
+		assertEquals(3, counters.getBroadcastingCount());
+		//broadcasts without origin are local for all hosts
+		assertEquals(2, counters.getLocalLiveBroadcastCount("10.0.0.1"));
+		assertEquals(2, counters.getLocalLiveBroadcastCount("10.0.0.2"));
+		assertEquals(1, counters.getLocalLiveBroadcastCount("10.0.0.3"));
+		assertEquals(4, counters.getTotalHLSViewerCount());
+		assertEquals(7, counters.getTotalWebRTCViewerCount());
+		assertEquals(1, counters.getTotalRTMPViewerCount());
+
+		//origin address should be kept
+		counters.updateLiveFields("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED, 0, 0, 0);
+		assertEquals(2, counters.getBroadcastingCount());
+		assertEquals(1, counters.getLocalLiveBroadcastCount("10.0.0.1"));
+		assertEquals(1, counters.getTotalHLSViewerCount());
+		assertEquals(2, counters.getTotalWebRTCViewerCount());
+		assertEquals(0, counters.getTotalRTMPViewerCount());
+
+		counters.updateLiveFields("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, 0, 0, 0);
+		assertEquals(2, counters.getLocalLiveBroadcastCount("10.0.0.1"));
+
+		counters.addViewerCount("stream2", 2, -1, 4);
+		assertEquals(3, counters.getTotalHLSViewerCount());
+		assertEquals(1, counters.getTotalWebRTCViewerCount());
+		assertEquals(4, counters.getTotalRTMPViewerCount());
+
+		counters.remove("stream2");
+		counters.remove("unknown");
+		assertEquals(2, counters.getBroadcastingCount());
+		assertEquals(1, counters.getLocalLiveBroadcastCount("10.0.0.2"));
+		assertEquals(1, counters.getTotalHLSViewerCount());
+		assertEquals(0, counters.getTotalWebRTCViewerCount());
+		assertEquals(0, counters.getTotalRTMPViewerCount());
+	}
+
+	@Test
+	public void testReconcile() {
+		LiveBroadcastCounters counters = new LiveBroadcastCounters(0);
+		counters.update("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, "10.0.0.1", 3, 5, 1);
+		counters.update("stream2", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, "10.0.0.2", 0, 0, 0);
+
+		//origin address of stream1 should be kept if loader does not know it
+		counters.reconcile(loader -> loader.updateLiveFields("stream1", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, 1, 1, 1));
+		assertEquals(1, counters.getBroadcastingCount());
+		assertEquals(1, counters.getLocalLiveBroadcastCount("10.0.0.1"));
+		assertEquals(0, counters.getLocalLiveBroadcastCount("10.0.0.2"));
+		assertEquals(1, counters.getTotalWebRTCViewerCount());
+
+		//counters should not change if loader fails
+		counters.reconcile(loader -> {
+			loader.update("stream3", AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, null, 10, 10, 10);
+			throw new IllegalStateException("db is not available");
+		});
+		assertEquals(1, counters.getBroadcastingCount());
+		assertEquals(1, counters.getTotalWebRTCViewerCount());
+		assertEquals(1, counters.getTotalHLSViewerCount());
+	}
+
+	@Test
+	public void testInMemoryDataStoreReconcilesExternalChanges() {
+		InMemoryDataStore dataStore = new InMemoryDataStore("testdb");
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		broadcast.setOriginAdress("10.0.0.1");
+		broadcast.setHlsViewerCount(4);
+		String streamId = dataStore.save(broadcast);
+
+		assertEquals(1, dataStore.getActiveBroadcastCount());
+		assertEquals(1, dataStore.getLocalLiveBroadcastCount("10.0.0.1"));
+		assertEquals(0, dataStore.getLocalLiveBroadcastCount("10.0.0.2"));
+		assertEquals(4, dataStore.getTotalHLSViewersCount());
+
+		assertTrue(dataStore.updateHLSViewerCount(streamId, -1));
+		assertEquals(3, dataStore.getTotalHLSViewersCount());
+
+		//reset broadcasts reconciles the counters
+		dataStore.resetBroadcasts("10.0.0.1");
+		assertEquals(0, dataStore.getActiveBroadcastCount());
+		assertEquals(0, dataStore.getTotalHLSViewersCount());
+	}
+
+	@Test
+	public void testMapDBStoreCounters() {
+		MapDBStore dataStore = new MapDBStore("target/counterstest.db");
+		try {
+			Broadcast broadcast = new Broadcast();
+			broadcast.setOriginAdress("10.0.0.1");
+			String streamId = dataStore.save(broadcast);
+
+			assertEquals(0, dataStore.getActiveBroadcastCount());
+			dataStore.updateStatus(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+			assertEquals(1, dataStore.getActiveBroadcastCount());
+			assertEquals(1, dataStore.getLocalLiveBroadcastCount("10.0.0.1"));
+			assertEquals(0, dataStore.getLocalLiveBroadcastCount("10.0.0.2"));
+
+			dataStore.updateRtmpViewerCount(streamId, true);
+			dataStore.updateWebRTCViewerCount(streamId, true);
+			dataStore.updateHLSViewerCount(streamId, 2);
+			assertEquals(1, dataStore.getTotalRTMPViewersCount());
+			assertEquals(1, dataStore.getTotalWebRTCViewersCount());
+			assertEquals(2, dataStore.getTotalHLSViewersCount());
+
+			dataStore.updateStatus(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED);
+			assertEquals(0, dataStore.getLocalLiveBroadcastCount("10.0.0.1"));
+			assertEquals(0, dataStore.getTotalHLSViewersCount());
+
+			dataStore.updateStatus(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+			dataStore.close();
+
+			//counters are built when db is opened
+			dataStore = new MapDBStore("target/counterstest.db");
+			assertEquals(1, dataStore.getLocalLiveBroadcastCount("10.0.0.1"));
+			assertTrue(dataStore.delete(streamId));
+			assertEquals(0, dataStore.getActiveBroadcastCount());
+		}
+		finally {
+			dataStore.close();
+			new File("target/counterstest.db").delete();
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.awaitility.Awaitility;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.BroadcastLiveFields;
+import io.antmedia.datastore.db.MapDBStore;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.Token;
+import io.antmedia.statistic.StatsCollector;
+
+public class MapDBStoreConcurrencyTest {
+
+	protected static Logger logger = LoggerFactory.getLogger(MapDBStoreConcurrencyTest.class);
+
+	private static final String DB_NAME = "target/concurrencytest.db";
+
+	private static final int STREAM_COUNT = 100;
+
+	@Before
+	public void before() {
+		deleteDBFiles();
+	}
+
+	@After
+	public void after() {
+		deleteDBFiles();
+	}
+
+	private void deleteDBFiles() {
+		File dir = new File("target");
+		File[] files = dir.listFiles((d, name) -> name.startsWith("concurrencytest.db"));
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentViewerCountUpdates() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME);
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		String streamId = dataStore.save(broadcast);
+
+		int threadCount = 8;
+		int updatePerThread = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < updatePerThread; j++) {
+					assertTrue(dataStore.updateHLSViewerCount(streamId, 1));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		//no update should be lost while different threads update the same stream
+		assertEquals(threadCount * updatePerThread, dataStore.get(streamId).getHlsViewerCount());
+		dataStore.close();
+	}
+
+	@Test
+	public void testConcurrentWebRTCAndRTMPViewerCountUpdates() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME);
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		String streamId = dataStore.save(broadcast);
+
+		int threadCount = 8;
+		int updatePerThread = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < threadCount; i++) {
+			futures.add(executor.submit(() -> {
+				for (int j = 0; j < updatePerThread; j++) {
+					assertTrue(dataStore.updateWebRTCViewerCount(streamId, true));
+					assertTrue(dataStore.updateRtmpViewerCount(streamId, true));
+					assertTrue(dataStore.updateWebRTCViewerCount(streamId, false));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		Broadcast updated = dataStore.get(streamId);
+		assertEquals(0, updated.getWebRTCViewerCount());
+		assertEquals(threadCount * updatePerThread, updated.getRtmpViewerCount());
+		assertEquals(threadCount * updatePerThread, dataStore.getTotalRTMPViewersCount());
+		assertEquals(0, dataStore.getTotalWebRTCViewersCount());
+
+		//count does not go below zero
+		assertFalse(dataStore.updateWebRTCViewerCount(streamId, false));
+		assertEquals(0, dataStore.get(streamId).getWebRTCViewerCount());
+		
+		//viewer counts of unknown streams are not kept
+		assertFalse(dataStore.updateRtmpViewerCount("unknown", true));
+		assertFalse(dataStore.updateHLSViewerCount("unknown", 1));
+		assertNull(dataStore.get("unknown"));
+		dataStore.close();
+
+		//viewer counts are committed
+		MapDBStore reopened = new MapDBStore(DB_NAME);
+		assertEquals(threadCount * updatePerThread, reopened.get(streamId).getRtmpViewerCount());
+		assertEquals(threadCount * updatePerThread, reopened.getTotalRTMPViewersCount());
+
+		//finishing the stream resets the counts
+		assertTrue(reopened.updateStatus(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED));
+		assertEquals(0, reopened.get(streamId).getRtmpViewerCount());
+		assertEquals(0, reopened.getTotalRTMPViewersCount());
+		reopened.close();
+	}
+
+	@Test
+	public void testViewerCountMigration() {
+		//create a db file that keeps viewer counts in live fields map
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStreamId("oldStream");
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		broadcast.setHlsViewerCount(5);
+		broadcast.setWebRTCViewerCount(3);
+		broadcast.setRtmpViewerCount(1);
+
+		DB db = DBMaker.fileDB(DB_NAME).fileMmapEnableIfSupported().transactionEnable().make();
+		db.treeMap("BROADCAST").keySerializer(Serializer.STRING).valueSerializer(Serializer.STRING).counterEnable()
+				.createOrOpen().put("oldStream", new Gson().toJson(broadcast));
+		db.treeMap("BROADCAST_LIVE_FIELDS").keySerializer(Serializer.STRING).valueSerializer(BroadcastLiveFields.SERIALIZER).counterEnable()
+				.createOrOpen().put("oldStream", BroadcastLiveFields.of(broadcast));
+		db.commit();
+		db.close();
+
+		MapDBStore dataStore = new MapDBStore(DB_NAME);
+		Broadcast migrated = dataStore.get("oldStream");
+		assertEquals(5, migrated.getHlsViewerCount());
+		assertEquals(3, migrated.getWebRTCViewerCount());
+		assertEquals(1, migrated.getRtmpViewerCount());
+		assertEquals(3, dataStore.getTotalWebRTCViewersCount());
+
+		assertTrue(dataStore.updateWebRTCViewerCount("oldStream", false));
+		dataStore.close();
+
+		//counts are not migrated again
+		dataStore = new MapDBStore(DB_NAME);
+		assertEquals(2, dataStore.get("oldStream").getWebRTCViewerCount());
+		assertEquals(5, dataStore.get("oldStream").getHlsViewerCount());
+		dataStore.close();
+	}
+
+	@Test
+	public void testGroupCommit() {
+		MapDBStore dataStore = new MapDBStore(DB_NAME, 60000, 10);
+		assertTrue(dataStore.isGroupCommitEnabled());
+
+		List<String> streamIds = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			streamIds.add(dataStore.save(new Broadcast()));
+		}
+
+		//interval is long, so only batch size triggers commits
+		assertEquals(2, dataStore.getCommitCount());
+		assertEquals(10, dataStore.getLastCommitBatchSize());
+		assertEquals(10, dataStore.getMaxCommitBatchSize());
+		assertEquals(5, dataStore.getPendingCommitCount());
+		assertTrue(dataStore.getMaxCommitTimeMs() >= dataStore.getLastCommitTimeMs());
+
+		//mutations are visible before they are committed
+		assertNotNull(dataStore.get(streamIds.get(24)));
+
+		dataStore.flush();
+		assertEquals(3, dataStore.getCommitCount());
+		assertEquals(5, dataStore.getLastCommitBatchSize());
+		assertEquals(0, dataStore.getPendingCommitCount());
+		assertEquals(25.0 / 3, dataStore.getAverageCommitBatchSize(), 0.001);
+
+		assertTrue(dataStore.updateStatus(streamIds.get(0), AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+		assertEquals(1, dataStore.getPendingCommitCount());
+
+		//close flushes pending mutations
+		dataStore.close();
+
+		dataStore = new MapDBStore(DB_NAME);
+		assertFalse(dataStore.isGroupCommitEnabled());
+		assertEquals(25, dataStore.getTotalBroadcastNumber());
+		assertEquals(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING, dataStore.get(streamIds.get(0)).getStatus());
+
+		//every mutation is committed when group commit is disabled
+		long commitCount = dataStore.getCommitCount();
+		assertTrue(dataStore.updateStatus(streamIds.get(0), AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED));
+		assertEquals(commitCount + 1, dataStore.getCommitCount());
+		assertEquals(0, dataStore.getPendingCommitCount());
+		dataStore.close();
+	}
+
+	@Test
+	public void testGroupCommitInterval() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME, 50, 500);
+		dataStore.save(new Broadcast());
+		assertEquals(1, dataStore.getPendingCommitCount());
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dataStore.getPendingCommitCount() == 0);
+		assertEquals(1, dataStore.getCommitCount());
+
+		//commit metrics are reported in the system resources info
+		JsonObject groupCommitInfo = StatsCollector.getMapDBGroupCommitInfoJSObject(dataStore);
+		assertEquals(1, groupCommitInfo.get(StatsCollector.COMMIT_COUNT).getAsLong());
+		assertEquals(0, groupCommitInfo.get(StatsCollector.PENDING_COMMIT_COUNT).getAsInt());
+		assertEquals(1, groupCommitInfo.get(StatsCollector.MAX_COMMIT_BATCH_SIZE).getAsInt());
+		assertTrue(groupCommitInfo.has(StatsCollector.AVERAGE_COMMIT_TIME_MS));
+		dataStore.close();
+	}
+
+	/**
+	 * Runs concurrent get, updateStatus and validateToken threads and logs the throughput of each operation.
+	 * Run it against the older revision to compare the numbers
+	 */
+	@Test
+	public void testContentionBenchmark() throws Exception {
+		MapDBStore dataStore = new MapDBStore(DB_NAME);
+
+		List<String> streamIds = new ArrayList<>();
+		for (int i = 0; i < STREAM_COUNT; i++) {
+			streamIds.add(dataStore.save(new Broadcast()));
+		}
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicLong getCount = new AtomicLong();
+		AtomicLong updateStatusCount = new AtomicLong();
+		AtomicLong validateTokenCount = new AtomicLong();
+		AtomicLong errorCount = new AtomicLong();
+
+		int threadPerOperation = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threadPerOperation * 3);
+		CountDownLatch startLatch = new CountDownLatch(1);
+
+		for (int i = 0; i < threadPerOperation; i++) {
+			final int threadIndex = i;
+			executor.execute(() -> runUntilStopped(startLatch, running, errorCount, () -> {
+				for (String streamId : streamIds) {
+					assertNotNull(dataStore.get(streamId));
+					getCount.incrementAndGet();
+				}
+			}));
+
+			executor.execute(() -> runUntilStopped(startLatch, running, errorCount, () -> {
+				for (String streamId : streamIds) {
+					String status = (getCount.get() % 2 == 0) ? AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING
+							: AntMediaApplicationAdapter.BROADCAST_STATUS_FINISHED;
+					assertTrue(dataStore.updateStatus(streamId, status));
+					updateStatusCount.incrementAndGet();
+				}
+			}));
+
+			executor.execute(() -> runUntilStopped(startLatch, running, errorCount, () -> {
+				Token token = new Token();
+				token.setTokenId("token" + threadIndex + "_" + validateTokenCount.get());
+				token.setStreamId(streamIds.get(threadIndex));
+				token.setType(Token.PLAY_TOKEN);
+				token.setExpireDate(Instant.now().getEpochSecond() + 1000);
+				assertTrue(dataStore.saveToken(token));
+				assertNotNull(dataStore.validateToken(token));
+				//token is used once
+				assertNull(dataStore.validateToken(token));
+				validateTokenCount.incrementAndGet();
+			}));
+		}
+
+		long durationMs = 3000;
+		startLatch.countDown();
+		Thread.sleep(durationMs);
+		running.set(false);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		logger.info("MapDBStore contention benchmark in {}ms -> get: {} ops/s, updateStatus: {} ops/s, validateToken: {} ops/s",
+				durationMs, getCount.get() * 1000 / durationMs, updateStatusCount.get() * 1000 / durationMs,
+				validateTokenCount.get() * 1000 / durationMs);
+
+		assertEquals(0, errorCount.get());
+		assertTrue(getCount.get() > 0);
+		assertTrue(updateStatusCount.get() > 0);
+		assertTrue(validateTokenCount.get() > 0);
+
+		dataStore.close();
+	}
+
+	private void runUntilStopped(CountDownLatch startLatch, AtomicBoolean running, AtomicLong errorCount, Runnable operation) {
+		try {
+			startLatch.await();
+			while (running.get()) {
+				operation.run();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (Throwable e) {
+			logger.error("Operation failed in benchmark: {}", e.getMessage());
+			errorCount.incrementAndGet();
+		}
+	}
+}
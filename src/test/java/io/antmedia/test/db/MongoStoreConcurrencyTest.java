@@ -0,0 +1,202 @@
+package io.antmedia.test.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.morphia.Datastore;
+import io.antmedia.AntMediaApplicationAdapter;
+import io.antmedia.datastore.db.MongoStore;
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.Token;
+
+/**
+ * Runs concurrent operations on MongoStore against the local mongodb that DBStoresUnitTest uses.
+ * Correctness of the concurrent operations relies on the atomic operations of mongodb
+ */
+public class MongoStoreConcurrencyTest {
+
+	protected static Logger logger = LoggerFactory.getLogger(MongoStoreConcurrencyTest.class);
+
+	private static final String DB_NAME = "concurrencytestdb";
+
+	private static final int THREAD_COUNT = 8;
+
+	private MongoStore dataStore;
+
+	@Before
+	public void before() {
+		dataStore = new MongoStore("localhost", "", "", DB_NAME);
+		clearDB();
+	}
+
+	@After
+	public void after() {
+		clearDB();
+		dataStore.close();
+	}
+
+	private void clearDB() {
+		Datastore store = dataStore.getDataStore();
+		store.delete(store.find(Broadcast.class));
+		for (Token token : dataStore.listAllTokens("tokenStream", 0, Integer.MAX_VALUE)) {
+			dataStore.deleteToken(token.getTokenId());
+		}
+	}
+
+	private <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		CountDownLatch startLatch = new CountDownLatch(1);
+		List<Future<T>> futures = new ArrayList<>();
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			futures.add(executor.submit(() -> {
+				startLatch.await();
+				return task.call();
+			}));
+		}
+		startLatch.countDown();
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : futures) {
+			results.add(future.get(60, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		return results;
+	}
+
+	@Test
+	public void testConcurrentViewerCountUpdates() throws Exception {
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		String streamId = dataStore.save(broadcast);
+
+		int updatePerThread = 100;
+		runConcurrently(() -> {
+			for (int j = 0; j < updatePerThread; j++) {
+				assertTrue(dataStore.updateHLSViewerCount(streamId, 1));
+				assertTrue(dataStore.updateWebRTCViewerCount(streamId, true));
+				assertTrue(dataStore.updateWebRTCViewerCount(streamId, false));
+				assertTrue(dataStore.updateRtmpViewerCount(streamId, true));
+			}
+			return null;
+		});
+
+		//no update should be lost while different threads update the same stream
+		Broadcast updated = dataStore.get(streamId);
+		assertEquals(THREAD_COUNT * updatePerThread, updated.getHlsViewerCount());
+		assertEquals(0, updated.getWebRTCViewerCount());
+		assertEquals(THREAD_COUNT * updatePerThread, updated.getRtmpViewerCount());
+		assertEquals(THREAD_COUNT * updatePerThread, dataStore.getTotalHLSViewersCount());
+	}
+
+	@Test
+	public void testTokenIsValidatedOnce() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			Token token = new Token();
+			token.setTokenId("token" + i);
+			token.setStreamId("tokenStream");
+			token.setType(Token.PLAY_TOKEN);
+			token.setExpireDate(Instant.now().getEpochSecond() + 1000);
+			assertTrue(dataStore.saveToken(token));
+
+			List<Boolean> results = runConcurrently(() -> dataStore.validateToken(token) != null);
+
+			int validCount = 0;
+			for (Boolean result : results) {
+				if (result) {
+					validCount++;
+				}
+			}
+			assertEquals(1, validCount);
+		}
+	}
+
+	@Test
+	public void testExternalStreamIsReturnedOnce() throws Exception {
+		int streamCount = 50;
+		for (int i = 0; i < streamCount; i++) {
+			dataStore.save(new Broadcast("camera" + i, "10.2.40.63:8080", "admin", "admin", null, AntMediaApplicationAdapter.IP_CAMERA));
+		}
+
+		List<List<Broadcast>> results = runConcurrently(dataStore::getExternalStreamsList);
+
+		Set<String> streamIds = new HashSet<>();
+		for (List<Broadcast> streamList : results) {
+			for (Broadcast stream : streamList) {
+				//a stream is returned to only one caller
+				assertTrue(streamIds.add(stream.getStreamId()));
+			}
+		}
+		assertEquals(streamCount, streamIds.size());
+	}
+
+	/**
+	 * Runs concurrent get, updateStatus and updateHLSViewerCount threads and logs the throughput.
+	 * Run it against the older revision to compare the numbers
+	 */
+	@Test
+	public void testLoadBenchmark() throws Exception {
+		List<String> streamIds = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			streamIds.add(dataStore.save(new Broadcast()));
+		}
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicLong operationCount = new AtomicLong();
+		AtomicInteger threadIndex = new AtomicInteger();
+		long durationMs = 3000;
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			futures.add(executor.submit(() -> {
+				int index = threadIndex.getAndIncrement();
+				while (running.get()) {
+					String streamId = streamIds.get((int)(operationCount.get() % streamIds.size()));
+					switch (index % 3) {
+					case 0:
+						assertNotNull(dataStore.get(streamId));
+						break;
+					case 1:
+						assertTrue(dataStore.updateStatus(streamId, AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING));
+						break;
+					default:
+						assertTrue(dataStore.updateHLSViewerCount(streamId, 1));
+						break;
+					}
+					operationCount.incrementAndGet();
+				}
+			}));
+		}
+		Thread.sleep(durationMs);
+		running.set(false);
+		for (Future<?> future : futures) {
+			future.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		logger.info("MongoStore load benchmark with {} threads in {}ms -> {} ops/s",
+				THREAD_COUNT, durationMs, operationCount.get() * 1000 / durationMs);
+		assertTrue(operationCount.get() > 0);
+	}
+}
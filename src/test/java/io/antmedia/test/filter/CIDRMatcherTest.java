@@ -0,0 +1,74 @@
+package io.antmedia.test.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+
+import org.apache.catalina.util.NetMask;
+import org.junit.Test;
+
+import io.antmedia.filter.CIDRMatcher;
+
+public class CIDRMatcherTest {
+
+	@Test
+	public void testIPv4() {
+		CIDRMatcher matcher = CIDRMatcher.compile("127.0.0.1/8, 192.168.5.10/24,10.10.5.2, 172.16.0.0/12");
+		assertEquals(4, matcher.getPrefixCount());
+
+		assertTrue(matcher.matches("127.0.0.1"));
+		assertTrue(matcher.matches("127.255.3.4"));
+		assertTrue(matcher.matches("192.168.5.200"));
+		assertFalse(matcher.matches("192.168.6.1"));
+		assertTrue(matcher.matches("10.10.5.2"));
+		assertFalse(matcher.matches("10.10.5.3"));
+		assertTrue(matcher.matches("172.31.255.255"));
+		assertFalse(matcher.matches("172.32.0.1"));
+
+		//cached decisions are the same
+		assertTrue(matcher.matches("127.0.0.1"));
+		assertFalse(matcher.matches("192.168.6.1"));
+
+		//hostnames and invalid addresses are not resolved
+		assertFalse(matcher.matches("localhost"));
+		assertFalse(matcher.matches("127.0.0"));
+		assertFalse(matcher.matches("127.0.0.256"));
+		assertFalse(matcher.matches(""));
+		assertFalse(matcher.matches(null));
+	}
+
+	@Test
+	public void testIPv6AndInvalidEntries() {
+		CIDRMatcher matcher = CIDRMatcher.compile("::1/128,2001:db8::/32,invalid,10.0.0.0/33,0.0.0.0/0");
+		assertEquals(3, matcher.getPrefixCount());
+
+		assertTrue(matcher.matches("::1"));
+		assertTrue(matcher.matches("0:0:0:0:0:0:0:1"));
+		assertTrue(matcher.matches("2001:db8:1::5"));
+		assertFalse(matcher.matches("2001:db9::1"));
+
+		//0.0.0.0/0 matches all IPv4 addresses
+		assertTrue(matcher.matches("8.8.8.8"));
+
+		CIDRMatcher emptyMatcher = CIDRMatcher.compile(null);
+		assertFalse(emptyMatcher.matches("127.0.0.1"));
+	}
+
+	@Test
+	public void testSameResultWithNetMask() throws Exception {
+		String[] cidrs = {"127.0.0.1/8", "192.168.1.0/23", "10.1.2.3/31", "2001:db8::/48"};
+		CIDRMatcher matcher = CIDRMatcher.compile(String.join(",", cidrs));
+
+		String[] addresses = {"127.1.1.1", "128.0.0.1", "192.168.0.255", "192.168.1.1", "192.168.2.1",
+				"10.1.2.2", "10.1.2.4", "2001:db8:0:1::1", "2001:db8:1::1"};
+		for (String address : addresses) {
+			boolean expected = false;
+			for (String cidr : cidrs) {
+				expected |= new NetMask(cidr).matches(InetAddress.getByName(address));
+			}
+			assertEquals(address, expected, matcher.matches(address));
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package io.antmedia.test.filter;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -37,6 +40,7 @@ import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.DataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.filter.HlsStatisticsFilter;
+import io.antmedia.settings.ServerSettings;
 import io.antmedia.statistic.HlsViewerStats;
 import io.antmedia.statistic.IStreamStats;
 
@@ -123,6 +127,7 @@ public class HlsStatisticsFilterTest {
 		
 		when(context.isRunning()).thenReturn(true);
 		IStreamStats streamStats = mock(IStreamStats.class);
+		when(streamStats.admitViewer(anyString(), anyString())).thenReturn(true);
 		
 		when(context.getBean(HlsViewerStats.BEAN_NAME)).thenReturn(streamStats);
 		
@@ -177,6 +182,81 @@ public class HlsStatisticsFilterTest {
 		
 	}
 	
+	@Test
+	public void testSessionlessViewerId() {
+		FilterConfig filterconfig = mock(FilterConfig.class);
+		ServletContext servletContext = mock(ServletContext.class);
+		ConfigurableWebApplicationContext context = mock(ConfigurableWebApplicationContext.class);
+		
+		when(context.isRunning()).thenReturn(true);
+		IStreamStats streamStats = mock(IStreamStats.class);
+		when(streamStats.admitViewer(anyString(), anyString())).thenReturn(true);
+		when(context.getBean(HlsViewerStats.BEAN_NAME)).thenReturn(streamStats);
+		
+		ServerSettings serverSettings = new ServerSettings();
+		serverSettings.setViewerIdMode(ServerSettings.VIEWER_ID_MODE_CLIENT_HASH);
+		when(context.getBean(ServerSettings.BEAN_NAME)).thenReturn(serverSettings);
+		
+		DataStoreFactory dsf = mock(DataStoreFactory.class);		
+		when(context.getBean(DataStoreFactory.BEAN_NAME)).thenReturn(dsf);
+		DataStore dataStore = mock(DataStore.class);
+		when(dataStore.isAvailable()).thenReturn(true);
+		when(dsf.getDataStore()).thenReturn(dataStore);
+		
+		when(servletContext.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE))
+				.thenReturn(context);
+		when(filterconfig.getServletContext()).thenReturn(servletContext);
+		
+		try {
+			hlsStatisticsFilter.init(filterconfig);
+			String streamId = RandomStringUtils.randomAlphanumeric(8);
+			
+			//same client is the same viewer
+			HttpServletRequest mockRequest = mockSessionlessRequest(streamId, "10.0.0.1", null);
+			hlsStatisticsFilter.doFilter(mockRequest, mockOkResponse(), mock(FilterChain.class));
+			String viewerId = HlsStatisticsFilter.getClientHash(mockRequest);
+			
+			hlsStatisticsFilter.doFilter(mockSessionlessRequest(streamId, "10.0.0.1", null), mockOkResponse(), mock(FilterChain.class));
+			verify(streamStats, times(2)).registerNewViewer(streamId, viewerId);
+			verify(mockRequest, never()).getSession();
+			
+			//another client
+			HttpServletRequest mockRequest2 = mockSessionlessRequest(streamId, "10.0.0.2", null);
+			hlsStatisticsFilter.doFilter(mockRequest2, mockOkResponse(), mock(FilterChain.class));
+			verify(streamStats, times(1)).registerNewViewer(streamId, HlsStatisticsFilter.getClientHash(mockRequest2));
+			
+			//player id is used if it's enabled and sent
+			serverSettings.setViewerIdMode(ServerSettings.VIEWER_ID_MODE_PLAYER_ID);
+			HttpServletRequest mockRequest3 = mockSessionlessRequest(streamId, "10.0.0.1", "player1");
+			hlsStatisticsFilter.doFilter(mockRequest3, mockOkResponse(), mock(FilterChain.class));
+			verify(streamStats, times(1)).registerNewViewer(streamId, "player1");
+			verify(mockRequest3, never()).getSession();
+			
+			hlsStatisticsFilter.doFilter(mockSessionlessRequest(streamId, "10.0.0.1", null), mockOkResponse(), mock(FilterChain.class));
+			verify(streamStats, times(3)).registerNewViewer(streamId, viewerId);
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			fail(ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	private HttpServletResponse mockOkResponse() {
+		HttpServletResponse mockResponse = mock(HttpServletResponse.class);
+		when(mockResponse.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+		return mockResponse;
+	}
+
+	private HttpServletRequest mockSessionlessRequest(String streamId, String remoteAddress, String playerId) {
+		HttpServletRequest mockRequest = mock(HttpServletRequest.class);
+		when(mockRequest.getMethod()).thenReturn("GET");
+		when(mockRequest.getRemoteAddr()).thenReturn(remoteAddress);
+		when(mockRequest.getHeader("User-Agent")).thenReturn("player agent");
+		when(mockRequest.getParameter(HlsStatisticsFilter.PLAYER_ID_PARAM)).thenReturn(playerId);
+		when(mockRequest.getRequestURI()).thenReturn("/LiveApp/streams/"+streamId+".m3u8");
+		return mockRequest;
+	}
+	
 	@Test
 	public void testHLSViewerLimit() {
 		String streamId = RandomStringUtils.randomAlphanumeric(8);
@@ -185,7 +265,7 @@ public class HlsStatisticsFilterTest {
 		ServletContext servletContext = mock(ServletContext.class);
 		ConfigurableWebApplicationContext context = mock(ConfigurableWebApplicationContext.class);
 		
-		IStreamStats streamStats = mock(IStreamStats.class);
+		HlsViewerStats streamStats = spy(new HlsViewerStats());
 		when(context.getBean(HlsViewerStats.BEAN_NAME)).thenReturn(streamStats);
 		
 		when(context.isRunning()).thenReturn(true);
@@ -204,21 +284,38 @@ public class HlsStatisticsFilterTest {
 		Broadcast broadcast = new Broadcast();
 		broadcast.setHlsViewerLimit(2);
 		when(dataStore.get(streamId)).thenReturn(broadcast);
+		streamStats.setDataStore(dataStore);
 
 		
 		try {
 			hlsStatisticsFilter.init(filterconfig);
 			
+			//failed requests of the new viewers do not keep their places
+			String failedSessionId = requestHls(streamId, RandomStringUtils.randomAlphanumeric(16), HttpServletResponse.SC_FORBIDDEN);
+			String failedSessionId2 = requestHls(streamId, RandomStringUtils.randomAlphanumeric(16), HttpServletResponse.SC_NOT_FOUND);
+			verify(streamStats, never()).registerNewViewer(streamId, failedSessionId);
+			verify(streamStats, never()).registerNewViewer(streamId, failedSessionId2);
+			verify(streamStats, times(1)).releaseViewer(streamId, failedSessionId);
+			assertEquals(0, streamStats.getViewerCount(streamId));
+			
 			String sessionId = requestHls(streamId);		
 			verify(streamStats, times(1)).registerNewViewer(streamId, sessionId);
-			broadcast.setHlsViewerCount(1);
 			
 			String sessionId2 = requestHls(streamId);		
 			verify(streamStats, times(1)).registerNewViewer(streamId, sessionId2);
-			broadcast.setHlsViewerCount(2);
+			assertEquals(2, streamStats.getViewerCount(streamId));
 
+			//limit is checked with the viewers in memory without waiting for the viewer count in data store
 			String sessionId3 = requestHls(streamId);		
 			verify(streamStats, never()).registerNewViewer(streamId, sessionId3);
+			assertEquals(2, streamStats.getViewerCount(streamId));
+			
+			//viewers that are already watching are admitted
+			requestHls(streamId, sessionId);
+			verify(streamStats, times(2)).registerNewViewer(streamId, sessionId);
+			
+			//limit is read once for the stream
+			verify(dataStore, times(1)).get(streamId);
 		} catch (ServletException|IOException e) {
 			logger.error(ExceptionUtils.getStackTrace(e));
 			fail(ExceptionUtils.getStackTrace(e));
@@ -232,19 +329,26 @@ public class HlsStatisticsFilterTest {
 	}
 
 	private String requestHls(String streamId) throws IOException, ServletException {
+		return requestHls(streamId, RandomStringUtils.randomAlphanumeric(16));
+	}
+
+	private String requestHls(String streamId, String sessionId) throws IOException, ServletException {
+		return requestHls(streamId, sessionId, HttpServletResponse.SC_OK);
+	}
+
+	private String requestHls(String streamId, String sessionId, int status) throws IOException, ServletException {
 		HttpServletRequest mockRequest = mock(HttpServletRequest.class);
 		HttpServletResponse mockResponse = mock(HttpServletResponse.class);
 		FilterChain mockChain = mock(FilterChain.class);
 		
 		HttpSession session = mock(HttpSession.class);
-		String sessionId = RandomStringUtils.randomAlphanumeric(16);
 		when(session.getId()).thenReturn(sessionId);
 		when(mockRequest.getSession()).thenReturn(session);
 		when(mockRequest.getMethod()).thenReturn("GET");
 		
 		when(mockRequest.getRequestURI()).thenReturn("/LiveApp/streams/"+streamId+".m3u8");
 		
-		when(mockResponse.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+		when(mockResponse.getStatus()).thenReturn(status);
 
 		logger.info("session id {}, stream id {}", sessionId, streamId);
 		hlsStatisticsFilter.doFilter(mockRequest, mockResponse, mockChain);
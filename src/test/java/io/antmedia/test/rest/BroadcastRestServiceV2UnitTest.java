@@ -102,6 +102,7 @@ import io.antmedia.streamsource.StreamFetcher;
 import io.antmedia.streamsource.StreamFetcherManager;
 import io.antmedia.test.StreamFetcherUnitTest;
 import io.antmedia.webrtc.VideoCodec;
+import io.antmedia.webrtc.adaptor.RTMPAdaptor;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.vertx.core.Vertx;
 
@@ -388,6 +389,22 @@ public class BroadcastRestServiceV2UnitTest {
 		webRTCClientStatsList = restServiceSpy.getWebRTCClientStatsListV2(clientCount, 40, streamId);
 		assertEquals(0, webRTCClientStatsList.size());
 
+		//stats of the WebRTC stream ingested in community edition
+		AntMediaApplicationAdapter app = Mockito.mock(AntMediaApplicationAdapter.class);
+		RTMPAdaptor rtmpAdaptor = Mockito.mock(RTMPAdaptor.class);
+		WebRTCClientStats ingestStats = new WebRTCClientStats(0, 0, 0, 0, 100, 200, 0);
+		ingestStats.setDroppedVideoFrameCount(5);
+		Mockito.when(rtmpAdaptor.getWebRTCClientStats()).thenReturn(ingestStats);
+		Mockito.when(app.getRTMPAdaptor(streamId)).thenReturn(rtmpAdaptor);
+		Mockito.doReturn(app).when(restServiceSpy).getApplication();
+
+		webRTCClientStatsList = restServiceSpy.getWebRTCClientStatsListV2(0, 10, streamId);
+		assertEquals(1, webRTCClientStatsList.size());
+		assertEquals(5, webRTCClientStatsList.get(0).getDroppedVideoFrameCount());
+
+		webRTCClientStatsList = restServiceSpy.getWebRTCClientStatsListV2(0, 10, "not_exist");
+		assertEquals(0, webRTCClientStatsList.size());
+
 	}
 
 
@@ -87,6 +87,54 @@ public class HlsViewerStatsTest {
 
 	}
 
+
+	@Test
+	public void testConcurrentRegistrationAndExpiry() throws InterruptedException {
+		HlsViewerStats viewerStats = new HlsViewerStats();
+		DataStore dataStore = new InMemoryDataStore("datastore");
+		viewerStats.setDataStore(dataStore);
+
+		Broadcast broadcast = new Broadcast();
+		broadcast.setStatus(AntMediaApplicationAdapter.BROADCAST_STATUS_BROADCASTING);
+		String streamId = dataStore.save(broadcast);
+
+		int threadCount = 8;
+		int viewerPerThread = 1000;
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			int threadIndex = i;
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < viewerPerThread; j++) {
+					viewerStats.registerNewViewer(streamId, "viewer" + threadIndex + "_" + j);
+					//same viewer is registered by all threads
+					viewerStats.registerNewViewer(streamId, "commonViewer");
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		//viewers are registered without the event loop
+		int viewerCount = threadCount * viewerPerThread + 1;
+		assertEquals(viewerCount, viewerStats.getViewerCount(streamId));
+		assertEquals(viewerCount, viewerStats.getIncreaseCounterMap(streamId));
+
+		viewerStats.updateViewerCounts();
+		assertEquals(viewerCount, dataStore.get(streamId).getHlsViewerCount());
+		assertEquals(0, viewerStats.getIncreaseCounterMap(streamId));
+
+		//only the viewer that keeps requesting stays after its bucket expires
+		viewerStats.setTimeoutMS(500);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).pollInterval(100, TimeUnit.MILLISECONDS).until(() -> {
+			viewerStats.registerNewViewer(streamId, "commonViewer");
+			viewerStats.updateViewerCounts();
+			return viewerStats.getViewerCount(streamId) == 1;
+		});
+		assertEquals(1, dataStore.get(streamId).getHlsViewerCount());
+		assertEquals(1, viewerStats.getTotalViewerCount());
+	}
 	
 	@Test
 	public void testGetTimeout() {
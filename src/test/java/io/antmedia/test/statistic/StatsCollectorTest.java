@@ -42,6 +42,7 @@ import io.antmedia.rest.WebRTCClientStats;
 import io.antmedia.statistic.GPUUtils;
 import io.antmedia.statistic.StatsCollector;
 import io.antmedia.statistic.GPUUtils.MemoryStatus;
+import io.antmedia.webrtc.adaptor.RTMPAdaptorPool;
 import io.antmedia.webrtc.api.IWebRTCAdaptor;
 import io.vertx.core.Vertx;
 
@@ -171,6 +172,16 @@ public class StatsCollectorTest {
 		assertTrue(jsObject.has(StatsCollector.DEAD_LOCKED_THREAD));
 		assertTrue(jsObject.has(StatsCollector.THREAD_COUNT));
 		assertTrue(jsObject.has(StatsCollector.THREAD_PEEK_COUNT));
+		
+		RTMPAdaptorPool adaptorPool = new RTMPAdaptorPool(2);
+		jsObject = StatsCollector.getWebRTCAdaptorPoolInfoJSObject(adaptorPool);
+		assertEquals(2, jsObject.get(StatsCollector.POOL_SIZE).getAsInt());
+		assertTrue(jsObject.has(StatsCollector.THREAD_COUNT));
+		assertTrue(jsObject.has(StatsCollector.POOL_ACTIVE_EXECUTOR_COUNT));
+		assertTrue(jsObject.has(StatsCollector.POOL_EXECUTED_TASK_COUNT));
+		assertTrue(jsObject.has(StatsCollector.POOL_AVERAGE_WAIT_TIME_MS));
+		assertTrue(jsObject.has(StatsCollector.POOL_MAX_WAIT_TIME_MS));
+		adaptorPool.shutdown();
 
 	}
 	
@@ -0,0 +1,165 @@
+package io.antmedia.test.stream;
+
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_alloc;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.awaitility.Awaitility;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.antmedia.streamsource.JitterBuffer;
+import io.antmedia.streamsource.JitterBufferWheel;
+
+public class JitterBufferTest {
+
+	private static final int PACKET_DURATION_MS = 40;
+
+	private AVPacket packet;
+
+	private List<Long> writtenPackets = new CopyOnWriteArrayList<>();
+
+	@Before
+	public void before() {
+		packet = av_packet_alloc();
+		writtenPackets.clear();
+	}
+
+	@After
+	public void after() {
+		av_packet_free(packet);
+		packet.close();
+	}
+
+	private boolean addPacket(JitterBuffer buffer, long index) {
+		packet.pts(index);
+		return buffer.add(packet, index * PACKET_DURATION_MS);
+	}
+
+	@Test
+	public void testBufferingAndRelease() {
+		JitterBuffer buffer = new JitterBuffer("stream1", 200, p -> writtenPackets.add(p.pts()));
+
+		//buffered duration should exceed the buffer time
+		for (int i = 0; i <= 5; i++) {
+			assertFalse(addPacket(buffer, i));
+		}
+		assertTrue(buffer.isBuffering());
+		assertEquals(-1, buffer.release(System.currentTimeMillis()));
+		assertTrue(writtenPackets.isEmpty());
+
+		assertTrue(addPacket(buffer, 6));
+		assertFalse(buffer.isBuffering());
+		assertEquals(7, buffer.getDepth());
+		assertEquals(240, buffer.getBufferedDurationMs());
+
+		//packets are released in real time relative to the first packet
+		long now = System.currentTimeMillis();
+		long nextReleaseTime = buffer.release(now + 100);
+		assertEquals(3, writtenPackets.size());
+		assertTrue(nextReleaseTime > now + 100);
+		assertEquals(4, buffer.getDepth());
+
+		//buffer underruns when it's empty and it waits for the buffer time again
+		assertEquals(-1, buffer.release(now + 10000));
+		assertEquals(7, writtenPackets.size());
+		assertEquals(1, buffer.getUnderrunCount());
+		assertTrue(buffer.isBuffering());
+		assertEquals(7, buffer.getMaxDepth());
+
+		for (int i = 0; i < 7; i++) {
+			assertEquals(i, (long) writtenPackets.get(i));
+		}
+		buffer.close();
+	}
+
+	@Test
+	public void testGrowAndClose() {
+		JitterBuffer buffer = new JitterBuffer("stream1", 100, p -> writtenPackets.add(p.pts()));
+		int capacity = buffer.getCapacity();
+
+		int packetCount = capacity * 3;
+		for (int i = 0; i < packetCount; i++) {
+			addPacket(buffer, i);
+		}
+		assertTrue(buffer.getCapacity() >= packetCount);
+		assertEquals(packetCount, buffer.getDepth());
+
+		//remaining packets are written in order when buffer is closed
+		buffer.close();
+		assertEquals(packetCount, writtenPackets.size());
+		for (int i = 0; i < packetCount; i++) {
+			assertEquals(i, (long) writtenPackets.get(i));
+		}
+
+		//closed buffer does not accept packets
+		assertFalse(addPacket(buffer, packetCount));
+		assertEquals(packetCount, writtenPackets.size());
+	}
+
+	@Test
+	public void testWheelReleasesPackets() {
+		JitterBufferWheel wheel = JitterBufferWheel.getInstance();
+		JitterBuffer buffer = new JitterBuffer("stream1", 100, p -> writtenPackets.add(p.pts()));
+
+		int packetCount = 20;
+		for (int i = 0; i < packetCount; i++) {
+			if (addPacket(buffer, i)) {
+				wheel.schedule(buffer);
+			}
+		}
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> writtenPackets.size() == packetCount);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(buffer::isBuffering);
+		assertEquals(1, buffer.getUnderrunCount());
+
+		buffer.close();
+		assertEquals(packetCount, writtenPackets.size());
+	}
+
+	@Test
+	public void testSlowWriterDoesNotDelayOtherBuffers() {
+		JitterBufferWheel wheel = JitterBufferWheel.getInstance();
+		List<Long> slowWrittenPackets = new CopyOnWriteArrayList<>();
+		JitterBuffer slowBuffer = new JitterBuffer("slowStream", 100, p -> {
+			slowWrittenPackets.add(p.pts());
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		JitterBuffer buffer = new JitterBuffer("stream1", 100, p -> writtenPackets.add(p.pts()));
+
+		int packetCount = 20;
+		for (int i = 0; i < packetCount; i++) {
+			if (addPacket(slowBuffer, i)) {
+				wheel.schedule(slowBuffer);
+			}
+			if (addPacket(buffer, i)) {
+				wheel.schedule(buffer);
+			}
+		}
+
+		//packets of the stream are written in real time while the slow stream is still writing
+		Awaitility.await().atMost(1500, TimeUnit.MILLISECONDS).until(() -> writtenPackets.size() == packetCount);
+		assertTrue(slowWrittenPackets.size() < packetCount);
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> slowWrittenPackets.size() == packetCount);
+		for (int i = 0; i < packetCount; i++) {
+			assertEquals(i, (long) writtenPackets.get(i));
+			assertEquals(i, (long) slowWrittenPackets.get(i));
+		}
+
+		slowBuffer.close();
+		buffer.close();
+	}
+}
@@ -214,6 +214,26 @@ public class TokenFilterTest {
 		streamId = "AgTWuHxp";
 		String requestURI = "/LiveApp/streams/"+ streamId + ".m3u8"; 
 		assertEquals(streamId, TokenFilterManager.getStreamId(requestURI));
+
+		assertEquals(streamId, TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + ".mpd"));
+		assertEquals(streamId, TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + "_480p_1.mp4"));
+		assertEquals(streamId, TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + "_240p0001.ts"));
+		assertEquals(streamId, TokenFilterManager.getStreamId("/Live_App/streams/"+ streamId + ".m3u8"));
+		assertEquals(streamId, TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + "\t.m3u8"));
+		assertNull(TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + "0001.ts"));
+		assertNull(TokenFilterManager.getStreamId("/LiveApp/streams/"+ streamId + ".m3u8.bak"));
+		assertNull(TokenFilterManager.getStreamId("/LiveApp/streams/"));
+		assertNull(TokenFilterManager.getStreamId((String)null));
+
+		//stream id is parsed once for the request
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getRequestURI()).thenReturn(requestURI);
+		assertEquals(streamId, TokenFilterManager.getStreamId(request));
+		verify(request).setAttribute(TokenFilterManager.STREAM_ID_ATTRIBUTE, streamId);
+
+		when(request.getAttribute(TokenFilterManager.STREAM_ID_ATTRIBUTE)).thenReturn(streamId);
+		assertEquals(streamId, TokenFilterManager.getStreamId(request));
+		verify(request, times(1)).getRequestURI();
 	}
 	
 	@Test
@@ -0,0 +1,201 @@
+package io.antmedia.test.webhook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.webhook.WebhookDispatcher;
+
+public class WebhookDispatcherTest {
+
+	private static Map<String, String> event(String id) {
+		Map<String, String> variables = new HashMap<>();
+		variables.put("id", id);
+		return variables;
+	}
+
+	@Test
+	public void testRetryAndFail() {
+		AtomicInteger attemptCount = new AtomicInteger();
+		WebhookDispatcher dispatcher = new WebhookDispatcher((url, events) -> {
+			if (attemptCount.incrementAndGet() < 2) {
+				throw new IOException("connection refused");
+			}
+		}, 2, 10, 1, 2, 1);
+
+		assertTrue(dispatcher.dispatch("http://url1", event("stream1")));
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getSentCount() == 1);
+		assertEquals(2, attemptCount.get());
+		assertEquals(1, dispatcher.getRetryCount());
+		assertEquals(0, dispatcher.getFailedCount());
+		assertEquals(0, dispatcher.getQueuedCount());
+
+		//events that are not sent with IOException are not retried
+		WebhookDispatcher failingDispatcher = new WebhookDispatcher((url, events) -> {
+			throw new IllegalArgumentException("invalid url");
+		}, 2, 10, 1, 2, 1);
+		assertTrue(failingDispatcher.dispatch("invalid url", event("stream1")));
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> failingDispatcher.getFailedCount() == 1);
+		assertEquals(0, failingDispatcher.getRetryCount());
+
+		dispatcher.shutdown(1000);
+		failingDispatcher.shutdown(1000);
+	}
+
+	@Test
+	public void testQueueLimitAndConcurrencyPerUrl() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicInteger activeRequestCount = new AtomicInteger();
+		AtomicInteger maxActiveRequestCount = new AtomicInteger();
+
+		WebhookDispatcher dispatcher = new WebhookDispatcher((url, events) -> {
+			int active = activeRequestCount.incrementAndGet();
+			maxActiveRequestCount.accumulateAndGet(active, Math::max);
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			activeRequestCount.decrementAndGet();
+		}, 4, 5, 2, 0, 1);
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(dispatcher.dispatch("http://url1", event("stream" + i)));
+		}
+		//queue is full
+		assertFalse(dispatcher.dispatch("http://url1", event("stream5")));
+		assertEquals(1, dispatcher.getDroppedCount());
+		assertEquals(5, dispatcher.getQueuedCount());
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> activeRequestCount.get() == 2);
+		latch.countDown();
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getSentCount() == 5);
+		assertEquals(2, maxActiveRequestCount.get());
+		assertEquals(0, dispatcher.getQueuedCount());
+
+		dispatcher.shutdown(1000);
+		assertFalse(dispatcher.dispatch("http://url1", event("stream6")));
+		assertEquals(2, dispatcher.getDroppedCount());
+	}
+
+	@Test
+	public void testBatching() {
+		CountDownLatch latch = new CountDownLatch(1);
+		List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+		WebhookDispatcher dispatcher = new WebhookDispatcher((url, events) -> {
+			batchSizes.add(events.size());
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 2, 100, 1, 0, 10);
+
+		//first event is sent alone and the others wait for it
+		for (int i = 0; i < 13; i++) {
+			dispatcher.dispatch("http://url1", event("stream" + i));
+		}
+		latch.countDown();
+
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getSentCount() == 13);
+		assertEquals(3, batchSizes.size());
+		assertEquals(1, (int) batchSizes.get(0));
+		assertEquals(10, (int) batchSizes.get(1));
+		assertEquals(2, (int) batchSizes.get(2));
+		assertTrue(dispatcher.getAverageLatencyMs() >= 0);
+
+		dispatcher.shutdown(1000);
+	}
+
+	@Test
+	public void testShutdownDropsWaitingEvents() {
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicInteger sendCount = new AtomicInteger();
+		WebhookDispatcher dispatcher = new WebhookDispatcher((url, events) -> {
+			sendCount.incrementAndGet();
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 2, 10, 1, 0, 1);
+
+		for (int i = 0; i < 3; i++) {
+			assertTrue(dispatcher.dispatch("http://url1", event("stream" + i)));
+		}
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> sendCount.get() == 1);
+
+		//events waiting behind the one being sent are dropped
+		dispatcher.shutdown(100);
+		assertEquals(2, dispatcher.getDroppedCount());
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatcher.getQueuedCount() == 0);
+		assertEquals(1, sendCount.get());
+
+		assertFalse(dispatcher.dispatch("http://url1", event("stream3")));
+		assertEquals(3, dispatcher.getDroppedCount());
+		assertEquals(0, dispatcher.getQueuedCount());
+
+		//event waiting for retry is dropped
+		WebhookDispatcher retryingDispatcher = new WebhookDispatcher((url, events) -> {
+			throw new IOException("connection refused");
+		}, 1, 10, 1, 3, 1);
+		assertTrue(retryingDispatcher.dispatch("http://url1", event("stream1")));
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> retryingDispatcher.getRetryCount() == 1);
+
+		retryingDispatcher.shutdown(100);
+		assertEquals(1, retryingDispatcher.getDroppedCount());
+		assertEquals(0, retryingDispatcher.getQueuedCount());
+		assertEquals(0, retryingDispatcher.getFailedCount());
+	}
+
+	@Test
+	public void testDispatchRacingShutdownIsCounted() throws InterruptedException {
+		AtomicInteger sendCount = new AtomicInteger();
+		WebhookDispatcher dispatcher = new WebhookDispatcher((url, events) -> sendCount.addAndGet(events.size()), 
+				2, 100000, 2, 0, 1);
+
+		int threadCount = 4;
+		CountDownLatch startLatch = new CountDownLatch(1);
+		AtomicInteger dispatchCount = new AtomicInteger();
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					startLatch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				for (int j = 0; j < 2000; j++) {
+					dispatcher.dispatch("http://url" + (j % 3), event("stream" + j));
+					dispatchCount.incrementAndGet();
+				}
+			});
+			threads[i].start();
+		}
+		startLatch.countDown();
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> dispatchCount.get() > 100);
+		dispatcher.shutdown(1000);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		//every event is either sent or dropped, none of them stays in the queue after shutdown
+		assertEquals(0, dispatcher.getQueuedCount());
+		assertEquals(threadCount * 2000, dispatcher.getSentCount() + dispatcher.getDroppedCount());
+		assertEquals(dispatcher.getSentCount(), sendCount.get());
+	}
+}
@@ -0,0 +1,104 @@
+package io.antmedia.test.webrtc.adaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.awaitility.Awaitility;
+import org.junit.Test;
+
+import io.antmedia.webrtc.adaptor.RTMPAdaptorPool;
+import io.antmedia.webrtc.adaptor.RTMPAdaptorPool.SerialExecutor;
+
+public class RTMPAdaptorPoolTest {
+
+	@Test
+	public void testSerialOrder() throws InterruptedException {
+		RTMPAdaptorPool pool = new RTMPAdaptorPool(4);
+		SerialExecutor executor1 = pool.newEncoderExecutor();
+		SerialExecutor executor2 = pool.newEncoderExecutor();
+		assertEquals(2, pool.getActiveExecutorCount());
+
+		List<Integer> order1 = new CopyOnWriteArrayList<>();
+		List<Integer> order2 = new CopyOnWriteArrayList<>();
+		AtomicInteger runningCount = new AtomicInteger();
+		AtomicInteger maxRunningCount = new AtomicInteger();
+		for (int i = 0; i < 1000; i++) {
+			int index = i;
+			executor1.execute(() -> {
+				maxRunningCount.accumulateAndGet(runningCount.incrementAndGet(), Math::max);
+				order1.add(index);
+				runningCount.decrementAndGet();
+			});
+			executor2.execute(() -> order2.add(index));
+		}
+
+		executor1.shutdown();
+		executor2.shutdown();
+		assertTrue(executor1.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(executor2.awaitTermination(5, TimeUnit.SECONDS));
+
+		//tasks of an executor don't run at the same time
+		assertEquals(1, maxRunningCount.get());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, (int) order1.get(i));
+			assertEquals(i, (int) order2.get(i));
+		}
+		assertEquals(0, pool.getActiveExecutorCount());
+		assertEquals(2000, pool.getExecutedTaskCount());
+		assertTrue(pool.getAverageWaitTimeMs() >= 0);
+		assertTrue(pool.getMaxWaitTimeMs() >= pool.getAverageWaitTimeMs());
+		assertTrue(pool.getThreadCount() <= 4);
+
+		try {
+			executor1.execute(() -> {});
+			fail("Tasks should not be accepted after shutdown");
+		}
+		catch (RejectedExecutionException e) {
+			//expected
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testShutdownNow() throws InterruptedException {
+		RTMPAdaptorPool pool = new RTMPAdaptorPool(1);
+		SerialExecutor executor = pool.newSignallingExecutor();
+
+		CountDownLatch latch = new CountDownLatch(1);
+		executor.execute(() -> {
+			try {
+				latch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		executor.execute(() -> {});
+		executor.execute(() -> {});
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> executor.getQueueSize() == 2);
+
+		//waiting tasks are removed and running task is not interrupted
+		assertEquals(2, executor.shutdownNow().size());
+		assertTrue(executor.isShutdown());
+		assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+
+		latch.countDown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertTrue(executor.isTerminated());
+		assertEquals(1, pool.getExecutedTaskCount());
+
+		//audio ticks of the adaptors share the same scheduler
+		AtomicInteger tickCount = new AtomicInteger();
+		pool.getAudioTickScheduler().scheduleAtFixedRate(tickCount::incrementAndGet, 0, 10, TimeUnit.MILLISECONDS);
+		Awaitility.await().atMost(5, TimeUnit.SECONDS).until(() -> tickCount.get() > 5);
+		pool.shutdown();
+	}
+}
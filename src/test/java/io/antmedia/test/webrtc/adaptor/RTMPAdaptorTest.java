@@ -2,10 +2,12 @@ package io.antmedia.test.webrtc.adaptor;
 
 import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -14,15 +16,21 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.awaitility.Awaitility;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
 import org.bytedeco.ffmpeg.avutil.AVFrame;
 import org.json.simple.JSONObject;
 import org.junit.Before;
@@ -33,6 +41,9 @@ import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
 import org.mockito.Mockito;
 import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IStreamPublishSecurity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
@@ -46,15 +57,20 @@ import io.antmedia.AntMediaApplicationAdapter;
 import io.antmedia.AppSettings;
 import io.antmedia.IApplicationAdaptorFactory;
 import io.antmedia.integration.MuxingTest;
+import io.antmedia.muxer.MuxAdaptor;
 import io.antmedia.recorder.FFmpegFrameRecorder;
 import io.antmedia.recorder.Frame;
+import io.antmedia.rest.WebRTCClientStats;
 import io.antmedia.webrtc.MockWebRTCAdaptor;
 import io.antmedia.webrtc.VideoCodec;
+import io.antmedia.webrtc.adaptor.DirectIngestEncoder;
 import io.antmedia.webrtc.adaptor.RTMPAdaptor;
 import io.antmedia.websocket.WebSocketCommunityHandler;
 import io.antmedia.websocket.WebSocketConstants;
 
 public class RTMPAdaptorTest {
+
+	protected static Logger logger = LoggerFactory.getLogger(RTMPAdaptorTest.class);
 	
 	@Rule
 	public TestRule watcher = new TestWatcher() {
@@ -156,6 +172,93 @@ public class RTMPAdaptorTest {
 	}
 
 	
+	/**
+	 * Encodes the same frames with the recorder that publishes the stream over RTMP and with the direct ingest encoder
+	 * and logs the CPU time and the latency from giving the frame to writing its packet.
+	 * Recorder writes FLV to a file here so its latency does not include the loopback connection and demuxing
+	 * in the server. It's the lower bound of the RTMP path
+	 */
+	@Test
+	public void testDirectIngestCpuAndLatencyBenchmark() throws IOException {
+		int frameCount = 200;
+		int frameIntervalMs = 1000 / DirectIngestEncoder.FRAME_RATE;
+		byte[] rawFrame = Files.readAllBytes(new File("src/test/resources/raw_frame_640_480_yuv420").toPath());
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		//recorder of the RTMP path
+		File f = new File("target/test-classes/encoded_frame"+(int)(Math.random()*10010)+".flv");
+		RTMPAdaptor adaptor = new RTMPAdaptor(f.getAbsolutePath(), null, 480);
+		FFmpegFrameRecorder recorder = adaptor.getNewRecorder(f.getAbsolutePath(), 640, 480);
+		Frame frameCV = new Frame(640, 480, Frame.DEPTH_UBYTE, 2);
+		((ByteBuffer)(frameCV.image[0].position(0))).put(rawFrame);
+
+		long recorderLatencyNs = 0;
+		long cpuTimeBefore = threadMXBean.getCurrentThreadCpuTime();
+		for (int i = 0; i < frameCount; i++) {
+			long frameTime = System.nanoTime();
+			recorder.setFrameNumber(i);
+			recorder.recordImage(frameCV.imageWidth, frameCV.imageHeight, frameCV.imageDepth,
+					frameCV.imageChannels, new int[]{640, 320, 320}, AV_PIX_FMT_YUV420P, frameCV.image);
+			recorderLatencyNs += System.nanoTime() - frameTime;
+		}
+		recorder.stop();
+		long recorderCpuTimeMs = (threadMXBean.getCurrentThreadCpuTime() - cpuTimeBefore) / 1000000;
+		assertTrue(MuxingTest.testFile(f.getAbsolutePath()));
+
+		//direct ingest encoder writes the packets to the muxer in the same process
+		AntMediaApplicationAdapter appAdaptor = mock(AntMediaApplicationAdapter.class);
+		when(appAdaptor.getScope()).thenReturn(mock(IScope.class));
+		MuxAdaptor muxAdaptor = mock(MuxAdaptor.class);
+		when(muxAdaptor.prepareInternal(Mockito.any())).thenReturn(true);
+
+		long[] frameTimes = new long[frameCount];
+		long[] directLatencyNs = new long[1];
+		int[] videoPacketCount = new int[1];
+		Mockito.doAnswer(invocation -> {
+			AVPacket packet = (AVPacket) invocation.getArguments()[1];
+			int frameIndex = (int) (packet.pts() / frameIntervalMs);
+			if (frameIndex < frameCount) {
+				directLatencyNs[0] += System.nanoTime() - frameTimes[frameIndex];
+				videoPacketCount[0]++;
+			}
+			return null;
+		}).when(muxAdaptor).writePacket(Mockito.any(), Mockito.any(AVPacket.class));
+
+		DirectIngestEncoder encoder = spy(new DirectIngestEncoder("stream1", 640, 480, false, appAdaptor));
+		doReturn(muxAdaptor).when(encoder).getNewMuxAdaptor(Mockito.any());
+		assertTrue(encoder.start());
+
+		ByteBuffer image = ByteBuffer.allocateDirect(rawFrame.length);
+		image.put(rawFrame);
+		ByteBuffer[] planes = new ByteBuffer[3];
+		planes[0] = slice(image, 0, 640 * 480);
+		planes[1] = slice(image, 640 * 480, 320 * 240);
+		planes[2] = slice(image, 640 * 480 + 320 * 240, 320 * 240);
+		int[] strides = new int[] {640, 320, 320};
+
+		cpuTimeBefore = threadMXBean.getCurrentThreadCpuTime();
+		for (int i = 0; i < frameCount; i++) {
+			frameTimes[i] = System.nanoTime();
+			encoder.encodeVideo(640, 480, planes, strides, (long)i * frameIntervalMs);
+		}
+		encoder.stop();
+		long directCpuTimeMs = (threadMXBean.getCurrentThreadCpuTime() - cpuTimeBefore) / 1000000;
+
+		logger.info("{} frames with RTMP recorder -> cpu time: {}ms average latency: {}ms", frameCount, recorderCpuTimeMs, 
+				recorderLatencyNs / frameCount / 1e6);
+		logger.info("{} frames with direct ingest -> cpu time: {}ms average latency: {}ms", frameCount, directCpuTimeMs, 
+				videoPacketCount[0] != 0 ? directLatencyNs[0] / videoPacketCount[0] / 1e6 : 0);
+
+		assertEquals(frameCount, videoPacketCount[0]);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + length);
+		return duplicate.slice();
+	}
+
 	public void testEncode(int width, int height) {
 		//Create FFmpegFRameRecoder
 		File f = new File("target/test-classes/encoded_frame"+(int)(Math.random()*10010)+".flv");
@@ -276,6 +379,19 @@ public class RTMPAdaptorTest {
 		return spy(webSocketHandler);
 	}
 
+	/**
+	 * Mocks the async remote of the session that sends the messages immediately
+	 */
+	private RemoteEndpoint.Async mockAsyncRemote(Session session) {
+		RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+		Mockito.doAnswer(invocation -> {
+			((SendHandler) invocation.getArguments()[1]).onResult(new SendResult());
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+		return asyncRemote;
+	}
+
 
 	@Test
 	public void testCandidate() {
@@ -289,8 +405,7 @@ public class RTMPAdaptorTest {
 		String streamId = "stramId" + (int)(Math.random()*10000);
 		rtmpAdaptor.setStreamId(streamId);
 		Session session = mock(Session.class);
-		RemoteEndpoint.Basic  basicRemote = mock(RemoteEndpoint.Basic .class);
-		when(session.getBasicRemote()).thenReturn(basicRemote);
+		RemoteEndpoint.Async asyncRemote = mockAsyncRemote(session);
 		when(session.isOpen()).thenReturn(true);
 		rtmpAdaptor.setSession(session);
 
@@ -307,12 +422,7 @@ public class RTMPAdaptorTest {
 		jsonObject.put(WebSocketConstants.CANDIDATE_SDP, iceCandidate.sdp);
 		jsonObject.put(WebSocketConstants.STREAM_ID, streamId);
 
-		try {
-			verify(basicRemote).sendText(jsonObject.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonObject.toJSONString()), Mockito.any(SendHandler.class));
 
 
 	}
@@ -352,8 +462,7 @@ public class RTMPAdaptorTest {
 		String streamId = "stramId" + (int)(Math.random()*10000);
 		rtmpAdaptor.setStreamId(streamId);
 		Session session = mock(Session.class);
-		RemoteEndpoint.Basic  basicRemote = mock(RemoteEndpoint.Basic .class);
-		when(session.getBasicRemote()).thenReturn(basicRemote);
+		RemoteEndpoint.Async asyncRemote = mockAsyncRemote(session);
 		when(session.isOpen()).thenReturn(true);
 		rtmpAdaptor.setSession(session);
 
@@ -379,12 +488,7 @@ public class RTMPAdaptorTest {
 		jsonResponseObject.put(WebSocketConstants.SDP, sdp.description);
 		jsonResponseObject.put(WebSocketConstants.TYPE, "offer");
 		jsonResponseObject.put(WebSocketConstants.STREAM_ID, streamId);
-		try {
-			verify(basicRemote).sendText(jsonResponseObject.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponseObject.toJSONString()), Mockito.any(SendHandler.class));
 
 		rtmpAdaptor.stop();
 
@@ -398,12 +502,7 @@ public class RTMPAdaptorTest {
 		jsonObj.put(WebSocketConstants.COMMAND, WebSocketConstants.NOTIFICATION_COMMAND);
 		jsonObj.put(WebSocketConstants.DEFINITION, WebSocketConstants.PUBLISH_FINISHED);
 		jsonObj.put(WebSocketConstants.STREAM_ID, streamId);
-		try {
-			verify(basicRemote).sendText(jsonObj.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonObj.toJSONString()), Mockito.any(SendHandler.class));
 
 	}
 
@@ -505,6 +604,158 @@ public class RTMPAdaptorTest {
 		verify(handler).sendServerError(streamId, session);
 		
 	}
+
+	@Test
+	public void testEncoderQueue() {
+		RTMPAdaptor adaptor = new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", null, 480);
+		adaptor.setEncoderQueueSize(2);
+
+		VideoFrame frame1 = Mockito.mock(VideoFrame.class);
+		VideoFrame frame2 = Mockito.mock(VideoFrame.class);
+		VideoFrame frame3 = Mockito.mock(VideoFrame.class);
+
+		//encoding is started with the first frame
+		assertTrue(adaptor.enqueueVideoFrame(frame1));
+		assertFalse(adaptor.enqueueVideoFrame(frame2));
+
+		//oldest frame is dropped when queue is full
+		assertFalse(adaptor.enqueueVideoFrame(frame3));
+		verify(frame1).release();
+		assertEquals(1, adaptor.getDroppedVideoFrameCount());
+		assertEquals(2, adaptor.getEncoderQueueDepth());
+
+		assertEquals(frame2, adaptor.pollVideoFrame());
+		assertTrue(adaptor.hasNextVideoFrame());
+		assertEquals(frame3, adaptor.pollVideoFrame());
+		assertFalse(adaptor.hasNextVideoFrame());
+		Mockito.verify(frame2, Mockito.never()).release();
+
+		//encoding is started again with the next frame
+		assertTrue(adaptor.enqueueVideoFrame(frame1));
+
+		WebRTCClientStats stats = adaptor.getWebRTCClientStats();
+		assertEquals(1, stats.getDroppedVideoFrameCount());
+		assertEquals(1, stats.getEncoderQueueDepth());
+	}
+
+	@Test
+	public void testEncoderQueueWhenEncodingFails() {
+		RTMPAdaptor adaptor = new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", null, 480);
+
+		VideoFrame frame1 = Mockito.mock(VideoFrame.class);
+		VideoFrame frame2 = Mockito.mock(VideoFrame.class);
+		Runnable scheduleNext = Mockito.mock(Runnable.class);
+
+		assertTrue(adaptor.enqueueVideoFrame(frame1));
+		assertFalse(adaptor.enqueueVideoFrame(frame2));
+
+		//frame is released and next frame is scheduled even if encoder throws
+		adaptor.encodeNextVideoFrame(frame -> {
+			throw new IllegalStateException("encoder error");
+		}, scheduleNext);
+		verify(frame1).release();
+		verify(scheduleNext, Mockito.times(1)).run();
+		assertEquals(1, adaptor.getEncoderQueueDepth());
+
+		adaptor.encodeNextVideoFrame(frame -> {
+			throw new IllegalStateException("encoder error");
+		}, scheduleNext);
+		verify(frame2).release();
+		verify(scheduleNext, Mockito.times(1)).run();
+		assertEquals(0, adaptor.getEncoderQueueDepth());
+
+		//queue does not stall and encoding is started again with the next frame
+		assertTrue(adaptor.enqueueVideoFrame(frame1));
+	}
+
+	@Test
+	public void testGetImageBuffer() {
+		RTMPAdaptor adaptor = new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", null, 480);
+
+		//planes that are contiguous in memory are not copied
+		ByteBuffer image = ByteBuffer.allocateDirect(12);
+		ByteBuffer dataY = ((ByteBuffer) image.duplicate().position(0).limit(8)).slice();
+		ByteBuffer dataU = ((ByteBuffer) image.duplicate().position(8).limit(10)).slice();
+		ByteBuffer dataV = ((ByteBuffer) image.duplicate().position(10).limit(12)).slice();
+
+		ByteBuffer imageBuffer = adaptor.getImageBuffer(dataY, dataU, dataV);
+		assertEquals(12, imageBuffer.remaining());
+		image.put(11, (byte) 5);
+		assertEquals(5, imageBuffer.get(11));
+
+		//view of the same image is reused
+		assertTrue(imageBuffer == adaptor.getImageBuffer(dataY, dataU, dataV));
+
+		//other planes are copied to the same buffer
+		dataY = ByteBuffer.allocateDirect(8);
+		dataU = ByteBuffer.allocateDirect(2);
+		dataV = ByteBuffer.allocateDirect(2);
+		dataV.put(1, (byte) 7);
+
+		imageBuffer = adaptor.getImageBuffer(dataY, dataU, dataV);
+		assertEquals(12, imageBuffer.remaining());
+		assertEquals(7, imageBuffer.get(11));
+		assertEquals(0, dataV.position());
+
+		assertTrue(imageBuffer == adaptor.getImageBuffer(dataY, ByteBuffer.allocate(2), dataV));
+	}
+
+	@Test
+	public void testDirectIngestPublishSecurity() {
+		AntMediaApplicationAdapter appAdaptor = mock(AntMediaApplicationAdapter.class);
+		when(appAdaptor.getScope()).thenReturn(mock(IScope.class));
+		IStreamPublishSecurity allowingSecurity = mock(IStreamPublishSecurity.class);
+		when(allowingSecurity.isPublishAllowed(Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.any())).thenReturn(true);
+		IStreamPublishSecurity refusingSecurity = mock(IStreamPublishSecurity.class);
+		when(appAdaptor.getStreamPublishSecurityList()).thenReturn(Arrays.asList(allowingSecurity, refusingSecurity));
+
+		DirectIngestEncoder encoder = spy(new DirectIngestEncoder("stream1", 640, 480, false, appAdaptor));
+		assertFalse(encoder.start());
+		assertTrue(encoder.isPublishRefused());
+		verify(allowingSecurity).isPublishAllowed(Mockito.any(), Mockito.eq("stream1"), Mockito.anyString(), Mockito.any());
+		verify(refusingSecurity).isPublishAllowed(Mockito.any(), Mockito.eq("stream1"), Mockito.anyString(), Mockito.any());
+		verify(encoder, Mockito.never()).getNewMuxAdaptor(Mockito.any());
+		verify(appAdaptor, Mockito.never()).startPublish(Mockito.anyString(), Mockito.anyLong());
+
+		//publisher gets the unauthorized error and the connection is closed
+		WebSocketCommunityHandler webSocketHandler = mock(WebSocketCommunityHandler.class);
+		when(webSocketHandler.getAppAdaptor()).thenReturn(appAdaptor);
+		RTMPAdaptor adaptor = spy(new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", webSocketHandler, 480));
+		adaptor.setStreamId("stream1");
+		doNothing().when(adaptor).stop();
+		adaptor.getNewDirectIngestEncoder(640, 480);
+		verify(webSocketHandler).sendUnauthorizedMessage(Mockito.eq("stream1"), Mockito.any());
+		verify(webSocketHandler, Mockito.never()).sendServerError(Mockito.anyString(), Mockito.any());
+		verify(adaptor).stop();
+	}
+
+	@Test
+	public void testInitializeDirectIngestEncoder() {
+		RTMPAdaptor adaptor = new RTMPAdaptor("rtmp://127.0.0.1/LiveApp/stream1", null, 480);
+		adaptor.setDirectIngest(true);
+		RTMPAdaptor adaptorSpy = Mockito.spy(adaptor);
+
+		DirectIngestEncoder encoder = Mockito.mock(DirectIngestEncoder.class);
+		doReturn(encoder).when(adaptorSpy).getNewDirectIngestEncoder(640, 480);
+
+		VideoFrame frame = Mockito.mock(VideoFrame.class);
+		when(frame.getRotatedWidth()).thenReturn(480);
+		when(frame.getRotatedHeight()).thenReturn(360);
+
+		adaptorSpy.initializeRecorder(frame);
+		adaptorSpy.initializeRecorder(frame);
+		verify(adaptorSpy, Mockito.times(1)).getNewDirectIngestEncoder(640, 480);
+		verify(adaptorSpy, Mockito.never()).getNewRecorder(Mockito.anyString(), Mockito.anyInt(), Mockito.anyInt());
+		assertEquals(DirectIngestEncoder.FRAME_RATE, adaptorSpy.getFrameRate());
+
+		//audio samples are sent to the encoder instead of the recorder
+		WebRtcAudioTrack audioTrack = Mockito.mock(WebRtcAudioTrack.class);
+		when(audioTrack.getSampleRate()).thenReturn(48000);
+		when(audioTrack.getChannels()).thenReturn(2);
+		adaptorSpy.setWebRtcAudioTrack(audioTrack);
+		adaptorSpy.recordSamples(ByteBuffer.allocate(10));
+		verify(encoder).encodeAudio(Mockito.eq(48000), Mockito.eq(2), Mockito.any());
+	}
 	
 	
 	
@@ -27,5 +27,10 @@ public class WebRTCClientStatsTest {
 		assertEquals(videoPacketCount, clientStats.getVideoPacketCount());
 		assertEquals(audioPacketCount, clientStats.getAudioPacketCount());
 		assertEquals(clientId, clientStats.getClientId());
+
+		clientStats.setDroppedVideoFrameCount(videoPacketCount);
+		clientStats.setEncoderQueueDepth(clientId);
+		assertEquals(videoPacketCount, clientStats.getDroppedVideoFrameCount());
+		assertEquals(clientId, clientStats.getEncoderQueueDepth());
 	}
 }
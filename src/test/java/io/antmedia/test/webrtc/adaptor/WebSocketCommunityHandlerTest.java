@@ -7,11 +7,12 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.IOException;
 import java.util.HashMap;
 
 import javax.websocket.RemoteEndpoint;
-import javax.websocket.RemoteEndpoint.Basic;
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import org.json.simple.JSONArray;
@@ -48,7 +49,7 @@ public class WebSocketCommunityHandlerTest {
 	private WebSocketEndpoint wsHandlerReal;
 	private WebSocketEndpoint wsHandler;
 	private Session session;
-	private Basic basicRemote;
+	private Async asyncRemote;
 	private HashMap userProperties;
 	private ApplicationContext appContext;
 	private DataStore dataStore;
@@ -108,8 +109,13 @@ public class WebSocketCommunityHandlerTest {
 
 		
 		session = mock(Session.class);
-		basicRemote = mock(RemoteEndpoint.Basic.class);
-		when(session.getBasicRemote()).thenReturn(basicRemote);
+		asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+		//messages are sent immediately
+		Mockito.doAnswer(invocation -> {
+			((SendHandler) invocation.getArguments()[1]).onResult(new SendResult());
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
 		
 
 		userProperties = new HashMap<>();
@@ -143,12 +149,7 @@ public class WebSocketCommunityHandlerTest {
 		jsonResponse.put(WebSocketConstants.COMMAND, WebSocketConstants.ERROR_COMMAND);
 		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.NO_STREAM_ID_SPECIFIED);
 
-		try {
-			verify(basicRemote).sendText(jsonResponse.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponse.toJSONString()), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -239,12 +240,7 @@ public class WebSocketCommunityHandlerTest {
 		jsonResponse.put(WebSocketConstants.DEFINITION, WebSocketConstants.NO_STREAM_EXIST);
 		jsonResponse.put(WebSocketConstants.STREAM_ID, streamId);
 		
-		try {
-			verify(basicRemote).sendText(jsonResponse.toJSONString());
-		} catch (IOException e) {
-			e.printStackTrace();
-			fail(e.getMessage());
-		}
+		verify(asyncRemote).sendText(Mockito.eq(jsonResponse.toJSONString()), Mockito.any(SendHandler.class));
 	}
 	
 	@Test
@@ -0,0 +1,178 @@
+package io.antmedia.test.webrtc.adaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import io.antmedia.websocket.WebSocketSender;
+
+public class WebSocketSenderTest {
+
+	@Test
+	public void testSendInOrder() {
+		Session session = mock(Session.class);
+		when(session.isOpen()).thenReturn(true);
+		RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+
+		//keep the handlers to complete the sends later like a slow client
+		List<SendHandler> handlers = new ArrayList<>();
+		Mockito.doAnswer(invocation -> {
+			handlers.add((SendHandler) invocation.getArguments()[1]);
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+
+		WebSocketSender sender = new WebSocketSender(session, 10, 5000);
+		assertTrue(sender.send("message1"));
+		assertTrue(sender.send("message2"));
+		assertTrue(sender.send("message3"));
+
+		//only one message is sent at a time and the others wait in the queue
+		verify(asyncRemote, times(1)).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+		verify(asyncRemote).setSendTimeout(5000);
+		assertEquals(2, sender.getQueueDepth());
+
+		handlers.get(0).onResult(new SendResult());
+		handlers.get(1).onResult(new SendResult());
+		handlers.get(2).onResult(new SendResult());
+
+		InOrder inOrder = Mockito.inOrder(asyncRemote);
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("message1"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("message2"), Mockito.any(SendHandler.class));
+		inOrder.verify(asyncRemote).sendText(Mockito.eq("message3"), Mockito.any(SendHandler.class));
+
+		assertEquals(0, sender.getQueueDepth());
+		assertEquals(3, sender.getSentCount());
+		assertEquals(0, sender.getDroppedCount());
+		assertTrue(sender.getAverageSendLatencyMs() >= 0);
+		assertFalse(sender.isClosed());
+
+		//next message is sent directly because queue is empty
+		assertTrue(sender.send("message4"));
+		verify(asyncRemote).sendText(Mockito.eq("message4"), Mockito.any(SendHandler.class));
+	}
+
+	@Test
+	public void testSendCompletedInline() {
+		Session session = mock(Session.class);
+		when(session.isOpen()).thenReturn(true);
+		RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+
+		//first send is pending until the queue fills up, then sends complete in the calling thread
+		AtomicBoolean completeInline = new AtomicBoolean(false);
+		List<SendHandler> handlers = new ArrayList<>();
+		Mockito.doAnswer(invocation -> {
+			SendHandler handler = (SendHandler) invocation.getArguments()[1];
+			if (completeInline.get()) {
+				handler.onResult(new SendResult());
+			}
+			else {
+				handlers.add(handler);
+			}
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+
+		int messageCount = 10000;
+		WebSocketSender sender = new WebSocketSender(session, messageCount, 5000);
+		for (int i = 0; i < messageCount; i++) {
+			assertTrue(sender.send("message" + i));
+		}
+		assertEquals(messageCount - 1, sender.getQueueDepth());
+
+		//waiting messages are sent in a loop without overflowing the stack
+		completeInline.set(true);
+		handlers.get(0).onResult(new SendResult());
+
+		assertEquals(1, handlers.size());
+		assertEquals(0, sender.getQueueDepth());
+		assertEquals(messageCount, sender.getSentCount());
+		assertEquals(0, sender.getDroppedCount());
+		assertFalse(sender.isClosed());
+		verify(asyncRemote, times(messageCount)).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+
+		//next message is sent directly and completed inline
+		assertTrue(sender.send("last message"));
+		assertEquals(messageCount + 1, sender.getSentCount());
+	}
+
+	@Test
+	public void testCloseWhenQueueIsFull() throws IOException {
+		Session session = mock(Session.class);
+		when(session.isOpen()).thenReturn(true);
+		RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+
+		//client does not read the messages so sends never complete
+		WebSocketSender sender = new WebSocketSender(session, 2, 5000);
+		assertTrue(sender.send("message1"));
+		assertTrue(sender.send("message2"));
+		assertTrue(sender.send("message3"));
+		verify(session, never()).close(Mockito.any(CloseReason.class));
+
+		assertFalse(sender.send("message4"));
+		assertTrue(sender.isClosed());
+		verify(session).close(Mockito.any(CloseReason.class));
+
+		//waiting messages and the new one are dropped
+		assertEquals(0, sender.getQueueDepth());
+		assertEquals(3, sender.getDroppedCount());
+
+		assertFalse(sender.send("message5"));
+		assertEquals(4, sender.getDroppedCount());
+		verify(session, times(1)).close(Mockito.any(CloseReason.class));
+	}
+
+	@Test
+	public void testCloseWhenSendFails() throws IOException {
+		Session session = mock(Session.class);
+		when(session.isOpen()).thenReturn(true);
+		RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+		when(session.getAsyncRemote()).thenReturn(asyncRemote);
+		Mockito.doAnswer(invocation -> {
+			((SendHandler) invocation.getArguments()[1]).onResult(new SendResult(new IOException("timeout")));
+			return null;
+		}).when(asyncRemote).sendText(Mockito.anyString(), Mockito.any(SendHandler.class));
+
+		WebSocketSender sender = new WebSocketSender(session, 10, 5000);
+		sender.send("message1");
+
+		assertTrue(sender.isClosed());
+		assertEquals(0, sender.getSentCount());
+		assertEquals(1, sender.getDroppedCount());
+		verify(session).close(Mockito.any(CloseReason.class));
+	}
+
+	@Test
+	public void testSessionNotOpen() throws IOException {
+		Session session = mock(Session.class);
+		when(session.isOpen()).thenReturn(false);
+
+		WebSocketSender sender = new WebSocketSender(session, 10, 5000);
+		assertFalse(sender.send("message1"));
+
+		verify(session, never()).getAsyncRemote();
+		verify(session, never()).close(Mockito.any(CloseReason.class));
+		assertEquals(1, sender.getDroppedCount());
+	}
+}